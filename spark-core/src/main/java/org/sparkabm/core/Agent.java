@@ -11,6 +11,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.sparkabm.math.SimulationTime;
 
@@ -27,9 +28,9 @@ public abstract class Agent implements Serializable {
     private static final long serialVersionUID = 1L;
 
     // Internal private variable which assigns the unique id to each agent
-    // TODO: Is it useful?
-    private int id = ++idCounter;
-    private static int idCounter = 0;
+    private int id = getIdCounter().incrementAndGet();
+    // Ids of agents created without a simulation context
+    private static final AtomicInteger idCounter = new AtomicInteger();
 
     // True when agent is dead. Can be accessed using isDead() method.
     boolean dead = false;
@@ -44,6 +45,10 @@ public abstract class Agent implements Serializable {
     // TODO: restore after serialization somehow, need to check the observer type (maybe)
     transient Agent prev, next;
 
+    // Index of the agent in the observer's storage (-1 if the agent is not stored).
+    // Maintained by observer implementations which keep agents in arrays
+    transient int slot = -1;
+
 
     // TODO: there are problems with links and spatial parallelization,
     // so links list is transient
@@ -251,6 +256,45 @@ public abstract class Agent implements Serializable {
         return this.getClass().getSimpleName() + id;
     }
 
+    /**
+     * Returns the unique id of the agent. The id does not change
+     * during the agent's lifetime.
+     *
+     * @return
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the id counter of the current simulation context
+     * (or the global counter if no context is bound)
+     */
+    private static AtomicInteger getIdCounter() {
+        SimulationContext context = SimulationContext.current();
+        return context != null ? context.getAgentIdCounter() : idCounter;
+    }
+
+    /**
+     * Returns the last assigned id
+     *
+     * @return
+     */
+    static int getLastId() {
+        return getIdCounter().get();
+    }
+
+    /**
+     * Sets the last assigned id. Agents restored from a checkpoint
+     * keep their ids and new agents get the same ids as in the
+     * simulation which saved the checkpoint
+     *
+     * @param lastId
+     */
+    static void setLastId(int lastId) {
+        getIdCounter().set(lastId);
+    }
+
     // TODO: better implementation required
 
     /**
@@ -270,6 +314,8 @@ public abstract class Agent implements Serializable {
 
         ois.defaultReadObject();
 
+        // transient fields are not initialized during deserialization
+        slot = -1;
 
         // restore the agent in the observer
         if (deepSerialization) {
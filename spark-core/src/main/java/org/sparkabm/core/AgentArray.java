@@ -0,0 +1,236 @@
+package org.sparkabm.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Storage for agents of the same type.
+ * Agents are kept in a growable array and each stored agent knows
+ * its index (slot) in the array. Removed agents are not deleted
+ * immediately: they stay in the array as tombstones (their dead flag
+ * is set) until the array is compacted. So the array can be
+ * iterated directly while agents are removed.
+ *
+ * @author Monad
+ */
+final class AgentArray {
+    // Agents (tombstones are possible)
+    Agent[] data;
+    // The number of stored agents (including tombstones)
+    int size;
+
+    // Removed agents which are not compacted yet
+    private Agent[] removed;
+    // The number of removed agents
+    private int removedSize;
+    // The smallest slot of removed agents
+    private int firstRemoved;
+
+    // Compares agents by their slots
+    private static final Comparator<Agent> DESCENDING_SLOTS = new Comparator<Agent>() {
+        public int compare(Agent a, Agent b) {
+            return b.slot - a.slot;
+        }
+    };
+
+
+    /**
+     * Default constructor
+     */
+    AgentArray() {
+        data = new Agent[100];
+        removed = new Agent[10];
+        firstRemoved = Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * Returns the number of live agents
+     *
+     * @return
+     */
+    int liveSize() {
+        return size - removedSize;
+    }
+
+
+    /**
+     * Ensures that the array can hold the given number of agents
+     *
+     * @param minCapacity
+     */
+    private void ensureCapacity(int minCapacity) {
+        int oldCapacity = data.length;
+        if (minCapacity > oldCapacity) {
+            int newCapacity = (oldCapacity * 3) / 2 + 1;
+            if (newCapacity < minCapacity)
+                newCapacity = minCapacity;
+            data = Arrays.copyOf(data, newCapacity);
+        }
+    }
+
+
+    /**
+     * Adds an agent at the end of the array
+     *
+     * @param agent
+     */
+    void add(Agent agent) {
+        ensureCapacity(size + 1);
+        agent.slot = size;
+        data[size++] = agent;
+    }
+
+
+    /**
+     * Adds all agents from the list at the end of the array.
+     * Dead agents are skipped.
+     *
+     * @param list
+     */
+    void addAll(ArrayList<Agent> list) {
+        int n = list.size();
+        ensureCapacity(size + n);
+
+        for (int i = 0; i < n; i++) {
+            Agent agent = list.get(i);
+            if (agent.dead)
+                continue;
+
+            agent.slot = size;
+            data[size++] = agent;
+        }
+    }
+
+
+    /**
+     * Marks an agent as removed. The agent's dead flag
+     * should be already set.
+     *
+     * @param agent
+     * @return false if the agent is not in the array
+     */
+    boolean markRemoved(Agent agent) {
+        int slot = agent.slot;
+        if (slot < 0 || slot >= size || data[slot] != agent)
+            return false;
+
+        if (removedSize == removed.length)
+            removed = Arrays.copyOf(removed, removedSize * 2);
+
+        removed[removedSize++] = agent;
+        if (slot < firstRemoved)
+            firstRemoved = slot;
+
+        return true;
+    }
+
+
+    /**
+     * Removes all tombstones.
+     * If preserveOrder is true then live agents are shifted
+     * (in one pass starting from the first removed agent) and their
+     * order is preserved. Otherwise each removed agent is replaced
+     * with the last agent in the array, so the cost is proportional
+     * to the number of removed agents.
+     *
+     * @param preserveOrder
+     */
+    void compact(boolean preserveOrder) {
+        if (removedSize == 0)
+            return;
+
+        int oldSize = size;
+
+        if (preserveOrder) {
+            int j = firstRemoved;
+            for (int i = firstRemoved; i < size; i++) {
+                Agent agent = data[i];
+                if (agent.dead) {
+                    agent.slot = -1;
+                    continue;
+                }
+
+                agent.slot = j;
+                data[j++] = agent;
+            }
+
+            size = j;
+        } else {
+            // Process agents in the descending order of slots: the result
+            // does not depend on the order in which agents were removed
+            Arrays.sort(removed, 0, removedSize, DESCENDING_SLOTS);
+
+            for (int i = 0; i < removedSize; i++) {
+                Agent agent = removed[i];
+                int slot = agent.slot;
+                // Swap with the last agent (which can be also removed)
+                Agent last = data[--size];
+                if (last != agent) {
+                    data[slot] = last;
+                    last.slot = slot;
+                }
+
+                agent.slot = -1;
+            }
+        }
+
+        Arrays.fill(data, size, oldSize, null);
+        Arrays.fill(removed, 0, removedSize, null);
+        removedSize = 0;
+        firstRemoved = Integer.MAX_VALUE;
+    }
+
+
+    /**
+     * Copies all live agents into the given array
+     *
+     * @param dest
+     * @param offset
+     * @return the offset after the last copied agent
+     */
+    int copyTo(Agent[] dest, int offset) {
+        if (removedSize == 0) {
+            System.arraycopy(data, 0, dest, offset, size);
+            return offset + size;
+        }
+
+        for (int i = 0; i < size; i++) {
+            Agent agent = data[i];
+            if (!agent.dead)
+                dest[offset++] = agent;
+        }
+
+        return offset;
+    }
+
+
+    /**
+     * Adds all live agents into the given list
+     *
+     * @param dest
+     */
+    @SuppressWarnings("unchecked")
+    <T extends Agent> void copyTo(ArrayList<T> dest) {
+        dest.ensureCapacity(dest.size() + liveSize());
+
+        for (int i = 0; i < size; i++) {
+            Agent agent = data[i];
+            if (!agent.dead)
+                dest.add((T) agent);
+        }
+    }
+
+
+    /**
+     * Returns a snapshot of all live agents
+     *
+     * @return
+     */
+    Agent[] toArray() {
+        Agent[] result = new Agent[liveSize()];
+        copyTo(result, 0);
+        return result;
+    }
+}
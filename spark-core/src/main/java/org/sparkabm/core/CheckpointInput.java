@@ -0,0 +1,544 @@
+package org.sparkabm.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static org.sparkabm.core.CheckpointOutput.*;
+
+/**
+ * Reads an object graph written by CheckpointOutput. Objects are created
+ * without calling their constructors when they are referenced for the first time,
+ * their fields are set by the finish() method. Hash-based collections are
+ * filled after all fields are set (hash codes may depend on fields).
+ *
+ * @author Monad
+ */
+class CheckpointInput {
+    private static final Logger logger = Logger.getLogger(CheckpointInput.class.getName());
+
+    /**
+     * Unsynchronized buffer (data streams read primitives byte by byte)
+     */
+    private static class BlockInputStream extends InputStream {
+        private final InputStream in;
+        private final byte[] buf = new byte[1 << 16];
+        private int pos, n;
+
+        BlockInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (pos == n && !fill())
+                return -1;
+
+            return buf[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+
+            if (pos == n) {
+                // Large blocks are read directly
+                if (len >= buf.length)
+                    return in.read(b, off, len);
+
+                if (!fill())
+                    return -1;
+            }
+
+            len = Math.min(len, n - pos);
+            System.arraycopy(buf, pos, b, off, len);
+            pos += len;
+            return len;
+        }
+
+        private boolean fill() throws IOException {
+            pos = 0;
+            n = Math.max(in.read(buf), 0);
+            return n > 0;
+        }
+    }
+
+
+    /**
+     * Description of a read class
+     */
+    private static class ClassInfo {
+        byte kind;
+        Class<?> type;
+        // Fields (null for fields which do not exist anymore)
+        Field[] fields;
+        char[] types;
+        // Creates objects without calling constructors
+        Constructor<?> allocator;
+    }
+
+
+    private final DataInputStream in;
+    private final Observer observer;
+    private final SparkModel model;
+    private final ClassLoader classLoader;
+
+    // All objects in the order of their ids
+    private final ArrayList<Object> objects = new ArrayList<Object>();
+    // Classes of objects
+    private final ArrayList<ClassInfo> objectClasses = new ArrayList<ClassInfo>();
+    private int read;
+
+    private final ArrayList<ClassInfo> classes = new ArrayList<ClassInfo>();
+
+    // Elements of collections (filled in the end)
+    private final ArrayList<Object[]> elements = new ArrayList<Object[]>();
+    private final ArrayList<Object> collections = new ArrayList<Object>();
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    // sun.reflect.ReflectionFactory (called by reflection)
+    private static Object reflectionFactory;
+    private static Method newConstructorForSerialization;
+
+
+    /**
+     * Creates a reader
+     *
+     * @param in
+     * @param observer
+     * @param model
+     * @param classLoader loads model classes
+     */
+    CheckpointInput(InputStream in, Observer observer, SparkModel model, ClassLoader classLoader) {
+        this.in = new DataInputStream(new BlockInputStream(in));
+        this.observer = observer;
+        this.model = model;
+        this.classLoader = classLoader;
+    }
+
+
+    /**
+     * Returns the number of read objects
+     *
+     * @return
+     */
+    int getObjectCount() {
+        return objects.size();
+    }
+
+
+    int readInt() throws IOException {
+        return in.readInt();
+    }
+
+
+    long readLong() throws IOException {
+        return in.readLong();
+    }
+
+
+    boolean readBoolean() throws IOException {
+        return in.readBoolean();
+    }
+
+
+    String readString() throws IOException {
+        int n = in.readInt();
+        if (n < 0)
+            return null;
+
+        byte[] bytes = new byte[n];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+
+    /**
+     * Loads a class
+     */
+    private Class<?> loadClass(String name) throws IOException {
+        try {
+            return Class.forName(name, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Class " + name + " is not found", e);
+        }
+    }
+
+
+    /**
+     * Reads a value. Fields of new objects are not set
+     * until the finish() method is called.
+     *
+     * @return
+     * @throws IOException
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Object readObject() throws IOException {
+        byte tag = in.readByte();
+
+        switch (tag) {
+            case NULL:
+                return null;
+            case REF:
+                return objects.get(in.readInt());
+            case NEW:
+                return readNew();
+            case STRING:
+                return readString();
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHAR:
+                return in.readChar();
+            case BOOLEAN:
+                return in.readBoolean();
+            case ENUM:
+                Class cl = loadClass(readString());
+                return Enum.valueOf(cl, readString());
+            case CLASS:
+                return loadClass(readString());
+            case SERIALIZED:
+                return readSerialized();
+            case EXTERNAL:
+                int index = in.readInt();
+                return index == EXTERNAL_OBSERVER ? observer : model;
+            case OBJECT:
+                return new Object();
+            case THREAD_LOCAL:
+                return new ThreadLocal();
+        }
+
+        throw new IOException("Unknown tag: " + tag);
+    }
+
+
+    /**
+     * Reads an object saved with Java serialization
+     */
+    private Object readSerialized() throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        try {
+            Observer.MyObjectInputStream ois = new Observer.MyObjectInputStream(new ByteArrayInputStream(bytes));
+            ois.cl = classLoader;
+            ois.setUserClass(classLoader != null);
+            return ois.readObject();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+
+    /**
+     * Creates a new object of the graph
+     */
+    private Object readNew() throws IOException {
+        ClassInfo info = readClassInfo();
+        Object obj;
+
+        if (info.kind == KIND_PRIMITIVE_ARRAY || info.kind == KIND_ARRAY) {
+            obj = Array.newInstance(info.type.getComponentType(), in.readInt());
+        } else {
+            try {
+                obj = info.allocator.newInstance();
+            } catch (Exception e) {
+                throw new IOException("Cannot create an object of " + info.type, e);
+            }
+        }
+
+        objects.add(obj);
+        objectClasses.add(info);
+        return obj;
+    }
+
+
+    /**
+     * Reads the index of a class (and its description if the class
+     * is used for the first time)
+     */
+    private ClassInfo readClassInfo() throws IOException {
+        int index = in.readInt();
+        if (index < classes.size())
+            return classes.get(index);
+
+        if (index != classes.size())
+            throw new IOException("Wrong class index: " + index);
+
+        ClassInfo info = new ClassInfo();
+        info.kind = in.readByte();
+        info.type = loadClass(readString());
+
+        if (info.kind == KIND_FIELDS) {
+            int n = in.readInt();
+            info.fields = new Field[n];
+            info.types = new char[n];
+
+            for (int i = 0; i < n; i++) {
+                int level = in.readByte();
+                String name = readString();
+                info.types[i] = in.readChar();
+                info.fields[i] = findField(info.type, level, name, info.types[i]);
+            }
+
+            info.allocator = getAllocator(info.type);
+        } else if (info.kind == KIND_COLLECTION || info.kind == KIND_MAP) {
+            try {
+                info.allocator = info.type.getConstructor();
+            } catch (NoSuchMethodException e) {
+                throw new IOException(e);
+            }
+        }
+
+        classes.add(info);
+        return info;
+    }
+
+
+    /**
+     * Finds a field of the class (or its superclass)
+     */
+    private static Field findField(Class<?> cl, int level, String name, char type) {
+        for (int i = 0; i < level && cl != null; i++)
+            cl = cl.getSuperclass();
+
+        if (cl != null) {
+            try {
+                Field f = cl.getDeclaredField(name);
+                if (typeCode(f.getType()) == type) {
+                    f.setAccessible(true);
+                    return f;
+                }
+            } catch (NoSuchFieldException e) {
+                // Ignore
+            }
+        }
+
+        logger.warning("Field " + name + " of " + cl + " is not restored");
+        return null;
+    }
+
+
+    /**
+     * Returns a constructor which creates objects of the given class
+     * without calling any constructor of the class
+     */
+    private static synchronized Constructor<?> getAllocator(Class<?> cl) throws IOException {
+        try {
+            if (newConstructorForSerialization == null) {
+                Class<?> factory = Class.forName("sun.reflect.ReflectionFactory");
+                reflectionFactory = factory.getMethod("getReflectionFactory").invoke(null);
+                newConstructorForSerialization = factory.getMethod("newConstructorForSerialization",
+                        Class.class, Constructor.class);
+            }
+
+            Constructor<?> c = (Constructor<?>) newConstructorForSerialization.invoke(reflectionFactory,
+                    cl, Object.class.getDeclaredConstructor());
+            c.setAccessible(true);
+            return c;
+        } catch (Exception e) {
+            throw new IOException("Cannot create objects of " + cl, e);
+        }
+    }
+
+
+    /**
+     * Reads contents of all objects
+     *
+     * @throws IOException
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void finish() throws IOException {
+        try {
+            while (read < objects.size()) {
+                readContents(objects.get(read), objectClasses.get(read));
+                read++;
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+
+        // Fill collections in the reverse order: nested collections
+        // are usually found later than collections which contain them
+        for (int i = collections.size() - 1; i >= 0; i--) {
+            Object c = collections.get(i);
+            Object[] values = elements.get(i);
+
+            if (c instanceof Map) {
+                Map map = (Map) c;
+                for (int k = 0; k < values.length; k += 2)
+                    map.put(values[k], values[k + 1]);
+            } else {
+                Collection list = (Collection) c;
+                for (Object v : values)
+                    list.add(v);
+            }
+        }
+
+        collections.clear();
+        elements.clear();
+    }
+
+
+    /**
+     * Reads contents of an object
+     */
+    private void readContents(Object obj, ClassInfo info) throws IOException, IllegalAccessException {
+        switch (info.kind) {
+            case KIND_FIELDS:
+                Field[] fields = info.fields;
+                char[] types = info.types;
+
+                for (int i = 0; i < fields.length; i++) {
+                    Field f = fields[i];
+                    switch (types[i]) {
+                        case 'I':
+                            int iv = in.readInt();
+                            if (f != null) f.setInt(obj, iv);
+                            break;
+                        case 'D':
+                            double dv = in.readDouble();
+                            if (f != null) f.setDouble(obj, dv);
+                            break;
+                        case 'Z':
+                            boolean zv = in.readBoolean();
+                            if (f != null) f.setBoolean(obj, zv);
+                            break;
+                        case 'J':
+                            long jv = in.readLong();
+                            if (f != null) f.setLong(obj, jv);
+                            break;
+                        case 'F':
+                            float fv = in.readFloat();
+                            if (f != null) f.setFloat(obj, fv);
+                            break;
+                        case 'S':
+                            short sv = in.readShort();
+                            if (f != null) f.setShort(obj, sv);
+                            break;
+                        case 'B':
+                            byte bv = in.readByte();
+                            if (f != null) f.setByte(obj, bv);
+                            break;
+                        case 'C':
+                            char cv = in.readChar();
+                            if (f != null) f.setChar(obj, cv);
+                            break;
+                        default:
+                            Object v = readObject();
+                            if (f != null) f.set(obj, v);
+                    }
+                }
+                break;
+
+            case KIND_PRIMITIVE_ARRAY:
+                readArray(obj);
+                break;
+
+            case KIND_ARRAY:
+                Object[] array = (Object[]) obj;
+                for (int i = 0; i < array.length; i++)
+                    array[i] = readObject();
+                break;
+
+            case KIND_COLLECTION:
+            case KIND_MAP:
+                int n = in.readInt();
+                if (info.kind == KIND_MAP)
+                    n *= 2;
+
+                Object[] values = new Object[n];
+                for (int i = 0; i < n; i++)
+                    values[i] = readObject();
+
+                collections.add(obj);
+                elements.add(values);
+                break;
+        }
+    }
+
+
+    /**
+     * Reads elements of a primitive array
+     */
+    private void readArray(Object array) throws IOException {
+        int n = Array.getLength(array);
+        ByteBuffer buf = buffer;
+        byte[] bytes = buf.array();
+
+        if (array instanceof double[]) {
+            double[] a = (double[]) array;
+            for (int i = 0; i < n; ) {
+                int k = Math.min(n - i, buf.capacity() / 8);
+                in.readFully(bytes, 0, k * 8);
+                buf.clear();
+                buf.asDoubleBuffer().get(a, i, k);
+                i += k;
+            }
+        } else if (array instanceof int[]) {
+            int[] a = (int[]) array;
+            for (int i = 0; i < n; ) {
+                int k = Math.min(n - i, buf.capacity() / 4);
+                in.readFully(bytes, 0, k * 4);
+                buf.clear();
+                buf.asIntBuffer().get(a, i, k);
+                i += k;
+            }
+        } else if (array instanceof long[]) {
+            long[] a = (long[]) array;
+            for (int i = 0; i < n; ) {
+                int k = Math.min(n - i, buf.capacity() / 8);
+                in.readFully(bytes, 0, k * 8);
+                buf.clear();
+                buf.asLongBuffer().get(a, i, k);
+                i += k;
+            }
+        } else if (array instanceof float[]) {
+            float[] a = (float[]) array;
+            for (int i = 0; i < n; ) {
+                int k = Math.min(n - i, buf.capacity() / 4);
+                in.readFully(bytes, 0, k * 4);
+                buf.clear();
+                buf.asFloatBuffer().get(a, i, k);
+                i += k;
+            }
+        } else if (array instanceof byte[]) {
+            in.readFully((byte[]) array);
+        } else if (array instanceof boolean[]) {
+            boolean[] a = (boolean[]) array;
+            for (int i = 0; i < n; i++)
+                a[i] = in.readBoolean();
+        } else if (array instanceof short[]) {
+            short[] a = (short[]) array;
+            for (int i = 0; i < n; i++)
+                a[i] = in.readShort();
+        } else if (array instanceof char[]) {
+            char[] a = (char[]) array;
+            for (int i = 0; i < n; i++)
+                a[i] = in.readChar();
+        }
+    }
+}
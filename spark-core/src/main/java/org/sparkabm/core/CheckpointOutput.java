@@ -0,0 +1,710 @@
+package org.sparkabm.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.logging.Logger;
+
+/**
+ * Writes an object graph into a checkpoint stream. Each object gets an id
+ * when it is referenced for the first time, later references write the id only.
+ * Objects are written breadth first (no recursion), so long chains of objects
+ * (linked lists of agents, space nodes, etc.) do not overflow the stack.
+ * <p>
+ * Objects of model and framework classes are written field by field (including
+ * transient fields, so derived structures like hash grids are restored exactly).
+ * Fields marked with {@link CheckpointTransient} are not written.
+ * A description of each class (names and types of fields) is written once.
+ * Primitive arrays are written as raw blocks. Standard collections are written
+ * by their elements. Other serializable JDK objects are written with Java
+ * serialization (they cannot reference the object graph).
+ *
+ * @author Monad
+ */
+class CheckpointOutput {
+    private static final Logger logger = Logger.getLogger(CheckpointOutput.class.getName());
+
+    /* Value tags */
+    static final byte NULL = 0;
+    static final byte REF = 1;
+    static final byte NEW = 2;
+    static final byte STRING = 3;
+    static final byte INT = 4;
+    static final byte LONG = 5;
+    static final byte DOUBLE = 6;
+    static final byte FLOAT = 7;
+    static final byte SHORT = 8;
+    static final byte BYTE = 9;
+    static final byte CHAR = 10;
+    static final byte BOOLEAN = 11;
+    static final byte ENUM = 12;
+    static final byte CLASS = 13;
+    static final byte SERIALIZED = 14;
+    static final byte EXTERNAL = 15;
+    static final byte OBJECT = 16;
+    static final byte THREAD_LOCAL = 17;
+
+    /* Class kinds */
+    static final byte KIND_FIELDS = 1;
+    static final byte KIND_PRIMITIVE_ARRAY = 2;
+    static final byte KIND_ARRAY = 3;
+    static final byte KIND_COLLECTION = 4;
+    static final byte KIND_MAP = 5;
+
+    /* Indices of external objects */
+    static final int EXTERNAL_OBSERVER = 0;
+    static final int EXTERNAL_MODEL = 1;
+
+    /* Collections which are written by their elements */
+    static final HashSet<String> collectionClasses = new HashSet<String>();
+
+    static {
+        String[] names = {
+                "java.util.ArrayList", "java.util.LinkedList", "java.util.ArrayDeque",
+                "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet",
+                "java.util.PriorityQueue", "java.util.Vector", "java.util.Stack",
+                "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+                "java.util.IdentityHashMap", "java.util.Hashtable",
+                "java.util.concurrent.ConcurrentHashMap",
+                "java.util.concurrent.ConcurrentLinkedQueue",
+                "java.util.concurrent.CopyOnWriteArrayList"};
+
+        for (String name : names)
+            collectionClasses.add(name);
+    }
+
+
+    /**
+     * Unsynchronized buffer (data streams write primitives byte by byte)
+     */
+    private static class BlockOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buf = new byte[1 << 16];
+        private int n;
+
+        BlockOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (n == buf.length)
+                flushBuffer();
+
+            buf[n++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > buf.length - n) {
+                flushBuffer();
+                if (len > buf.length) {
+                    out.write(b, off, len);
+                    return;
+                }
+            }
+
+            System.arraycopy(b, off, buf, n, len);
+            n += len;
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buf, 0, n);
+            n = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+    }
+
+
+    /**
+     * Description of a written class
+     */
+    private static class ClassInfo {
+        final int index;
+        final byte kind;
+        // Fields of objects (KIND_FIELDS only)
+        Field[] fields;
+        char[] types;
+        // Levels of classes which declare fields (0 is the class itself)
+        int[] levels;
+        // True if the description is written
+        boolean written;
+
+        ClassInfo(int index, byte kind) {
+            this.index = index;
+            this.kind = kind;
+        }
+    }
+
+
+    private final DataOutputStream out;
+    private final Observer observer;
+    private final SparkModel model;
+
+    // Ids of all objects (open addressing by identity hash codes,
+    // a slot contains id + 1 or 0 if the slot is empty)
+    private Object[] keys = new Object[1 << 12];
+    private int[] values = new int[1 << 12];
+    // Objects in the order of their ids
+    private final ArrayList<Object> objects = new ArrayList<Object>();
+    // The number of objects which are written completely
+    private int written;
+
+    private final HashMap<Class<?>, ClassInfo> classes = new HashMap<Class<?>, ClassInfo>();
+
+    // Classes which are not supported (to log them once)
+    private final HashSet<Class<?>> unsupported = new HashSet<Class<?>>();
+
+    // Buffer for primitive arrays
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+
+    /**
+     * Creates a writer
+     *
+     * @param out
+     * @param observer written as a reference to the observer of a restored model
+     * @param model    written as a reference to a restored model
+     */
+    CheckpointOutput(OutputStream out, Observer observer, SparkModel model) {
+        this.out = new DataOutputStream(new BlockOutputStream(out));
+        this.observer = observer;
+        this.model = model;
+    }
+
+
+    /**
+     * Returns the number of written objects
+     *
+     * @return
+     */
+    int getObjectCount() {
+        return objects.size();
+    }
+
+
+    void writeInt(int v) throws IOException {
+        out.writeInt(v);
+    }
+
+
+    void writeLong(long v) throws IOException {
+        out.writeLong(v);
+    }
+
+
+    void writeBoolean(boolean v) throws IOException {
+        out.writeBoolean(v);
+    }
+
+
+    void writeString(String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    /**
+     * Writes a value. The contents of new objects are written
+     * by the finish() method.
+     *
+     * @param obj
+     * @throws IOException
+     */
+    void writeObject(Object obj) throws IOException {
+        if (obj == null) {
+            out.writeByte(NULL);
+            return;
+        }
+
+        int id = getId(obj);
+        if (id >= 0) {
+            out.writeByte(REF);
+            out.writeInt(id);
+            return;
+        }
+
+        Class<?> cl = obj.getClass();
+
+        // Immutable values
+        if (cl == String.class) {
+            out.writeByte(STRING);
+            writeString((String) obj);
+            return;
+        }
+
+        if (cl == Integer.class) {
+            out.writeByte(INT);
+            out.writeInt((Integer) obj);
+            return;
+        }
+
+        if (cl == Double.class) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) obj);
+            return;
+        }
+
+        if (cl == Long.class) {
+            out.writeByte(LONG);
+            out.writeLong((Long) obj);
+            return;
+        }
+
+        if (cl == Boolean.class) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) obj);
+            return;
+        }
+
+        if (cl == Float.class) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) obj);
+            return;
+        }
+
+        if (cl == Short.class) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) obj);
+            return;
+        }
+
+        if (cl == Byte.class) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) obj);
+            return;
+        }
+
+        if (cl == Character.class) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) obj);
+            return;
+        }
+
+        if (obj instanceof Enum) {
+            out.writeByte(ENUM);
+            writeString(((Enum<?>) obj).getDeclaringClass().getName());
+            writeString(((Enum<?>) obj).name());
+            return;
+        }
+
+        if (obj instanceof Class) {
+            out.writeByte(CLASS);
+            writeString(((Class<?>) obj).getName());
+            return;
+        }
+
+        if (obj == observer) {
+            out.writeByte(EXTERNAL);
+            out.writeInt(EXTERNAL_OBSERVER);
+            return;
+        }
+
+        if (obj == model) {
+            out.writeByte(EXTERNAL);
+            out.writeInt(EXTERNAL_MODEL);
+            return;
+        }
+
+        if (cl == Object.class) {
+            out.writeByte(OBJECT);
+            return;
+        }
+
+        if (cl == ThreadLocal.class) {
+            out.writeByte(THREAD_LOCAL);
+            return;
+        }
+
+        ClassInfo info = getClassInfo(cl, obj);
+        if (info == null) {
+            writeLeaf(obj);
+            return;
+        }
+
+        // A new object of the graph
+        putId(obj, objects.size());
+        objects.add(obj);
+
+        out.writeByte(NEW);
+        writeClassInfo(info, cl);
+
+        if (info.kind == KIND_PRIMITIVE_ARRAY || info.kind == KIND_ARRAY)
+            out.writeInt(Array.getLength(obj));
+    }
+
+
+    /**
+     * Returns the id of an object (-1 if the object has no id)
+     */
+    private int getId(Object obj) {
+        int mask = keys.length - 1;
+        int i = System.identityHashCode(obj) * 0x9E3779B9 & mask;
+
+        while (true) {
+            Object key = keys[i];
+            if (key == obj)
+                return values[i] - 1;
+            if (key == null)
+                return -1;
+
+            i = (i + 1) & mask;
+        }
+    }
+
+
+    /**
+     * Sets the id of an object
+     */
+    private void putId(Object obj, int id) {
+        // Load factor is 0.5
+        if ((objects.size() + 1) * 2 > keys.length) {
+            Object[] oldKeys = keys;
+            int[] oldValues = values;
+
+            keys = new Object[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null)
+                    insert(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        insert(obj, id + 1);
+    }
+
+
+    private void insert(Object obj, int value) {
+        int mask = keys.length - 1;
+        int i = System.identityHashCode(obj) * 0x9E3779B9 & mask;
+
+        while (keys[i] != null)
+            i = (i + 1) & mask;
+
+        keys[i] = obj;
+        values[i] = value;
+    }
+
+
+    /**
+     * Writes an object which does not belong to the graph
+     */
+    private void writeLeaf(Object obj) throws IOException {
+        Class<?> cl = obj.getClass();
+
+        if (obj instanceof Serializable && !cl.isSynthetic() && cl.getName().indexOf('/') < 0) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(obj);
+            oos.close();
+
+            out.writeByte(SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+            return;
+        }
+
+        if (unsupported.add(cl))
+            logger.warning("Objects of " + cl.getName() + " cannot be saved in a checkpoint, null is written");
+
+        out.writeByte(NULL);
+    }
+
+
+    /**
+     * Returns true if objects of the given class are written field by field
+     */
+    static boolean isGraphClass(Class<?> cl) {
+        String name = cl.getName();
+
+        if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("sun.")
+                || name.startsWith("jdk.") || name.startsWith("com.sun."))
+            return false;
+
+        // Lambdas cannot be created again
+        return !cl.isSynthetic() && name.indexOf('/') < 0;
+    }
+
+
+    /**
+     * Returns a description of the given class (the description is written
+     * when a class is used for the first time).
+     * Returns null for classes of leaf objects.
+     */
+    private ClassInfo getClassInfo(Class<?> cl, Object obj) {
+        // Collections with comparators are saved as leaves
+        if (obj instanceof SortedSet && ((SortedSet<?>) obj).comparator() != null)
+            return null;
+        if (obj instanceof SortedMap && ((SortedMap<?, ?>) obj).comparator() != null)
+            return null;
+        if (obj instanceof PriorityQueue && ((PriorityQueue<?>) obj).comparator() != null)
+            return null;
+
+        ClassInfo info = classes.get(cl);
+        if (info != null)
+            return info;
+
+        byte kind;
+        if (cl.isArray()) {
+            kind = cl.getComponentType().isPrimitive() ? KIND_PRIMITIVE_ARRAY : KIND_ARRAY;
+        } else if (collectionClasses.contains(cl.getName())) {
+            kind = obj instanceof Map ? KIND_MAP : KIND_COLLECTION;
+        } else if (isGraphClass(cl)) {
+            kind = KIND_FIELDS;
+        } else {
+            return null;
+        }
+
+        info = new ClassInfo(classes.size(), kind);
+        classes.put(cl, info);
+
+        if (kind == KIND_FIELDS) {
+            ArrayList<Field> fields = new ArrayList<Field>();
+            ArrayList<Integer> levels = new ArrayList<Integer>();
+
+            int level = 0;
+            for (Class<?> c = cl; c != null && c != Object.class; c = c.getSuperclass(), level++) {
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers()) || f.isSynthetic() && !f.getName().startsWith("this$"))
+                        continue;
+
+                    if (f.isAnnotationPresent(CheckpointTransient.class))
+                        continue;
+
+                    f.setAccessible(true);
+                    fields.add(f);
+                    levels.add(level);
+                }
+            }
+
+            info.fields = fields.toArray(new Field[fields.size()]);
+            info.types = new char[info.fields.length];
+            info.levels = new int[info.fields.length];
+
+            for (int i = 0; i < info.fields.length; i++) {
+                info.types[i] = typeCode(info.fields[i].getType());
+                info.levels[i] = levels.get(i);
+            }
+        }
+
+        return info;
+    }
+
+
+    /**
+     * Writes the index of a class. The description of the class
+     * is written after its index when the class is used for the first time.
+     */
+    private void writeClassInfo(ClassInfo info, Class<?> cl) throws IOException {
+        out.writeInt(info.index);
+        if (info.written)
+            return;
+
+        info.written = true;
+        out.writeByte(info.kind);
+        writeString(cl.getName());
+
+        if (info.kind == KIND_FIELDS) {
+            out.writeInt(info.fields.length);
+            for (int i = 0; i < info.fields.length; i++) {
+                out.writeByte(info.levels[i]);
+                writeString(info.fields[i].getName());
+                out.writeChar(info.types[i]);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the code of a field type
+     */
+    static char typeCode(Class<?> type) {
+        if (type == int.class) return 'I';
+        if (type == double.class) return 'D';
+        if (type == boolean.class) return 'Z';
+        if (type == long.class) return 'J';
+        if (type == float.class) return 'F';
+        if (type == short.class) return 'S';
+        if (type == byte.class) return 'B';
+        if (type == char.class) return 'C';
+        return 'L';
+    }
+
+
+    /**
+     * Writes contents of all new objects
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        try {
+            // New objects are added while contents are written
+            while (written < objects.size()) {
+                writeContents(objects.get(written++));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+
+        out.flush();
+    }
+
+
+    /**
+     * Writes contents of an object
+     */
+    private void writeContents(Object obj) throws IOException, IllegalAccessException {
+        ClassInfo info = classes.get(obj.getClass());
+
+        switch (info.kind) {
+            case KIND_FIELDS:
+                Field[] fields = info.fields;
+                char[] types = info.types;
+
+                for (int i = 0; i < fields.length; i++) {
+                    Field f = fields[i];
+                    switch (types[i]) {
+                        case 'I':
+                            out.writeInt(f.getInt(obj));
+                            break;
+                        case 'D':
+                            out.writeDouble(f.getDouble(obj));
+                            break;
+                        case 'Z':
+                            out.writeBoolean(f.getBoolean(obj));
+                            break;
+                        case 'J':
+                            out.writeLong(f.getLong(obj));
+                            break;
+                        case 'F':
+                            out.writeFloat(f.getFloat(obj));
+                            break;
+                        case 'S':
+                            out.writeShort(f.getShort(obj));
+                            break;
+                        case 'B':
+                            out.writeByte(f.getByte(obj));
+                            break;
+                        case 'C':
+                            out.writeChar(f.getChar(obj));
+                            break;
+                        default:
+                            writeObject(f.get(obj));
+                    }
+                }
+                break;
+
+            case KIND_PRIMITIVE_ARRAY:
+                writeArray(obj);
+                break;
+
+            case KIND_ARRAY:
+                Object[] array = (Object[]) obj;
+                for (Object v : array)
+                    writeObject(v);
+                break;
+
+            case KIND_COLLECTION:
+                Collection<?> c = (Collection<?>) obj;
+                out.writeInt(c.size());
+                for (Object v : c)
+                    writeObject(v);
+                break;
+
+            case KIND_MAP:
+                Map<?, ?> map = (Map<?, ?>) obj;
+                out.writeInt(map.size());
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    writeObject(e.getKey());
+                    writeObject(e.getValue());
+                }
+                break;
+        }
+    }
+
+
+    /**
+     * Writes elements of a primitive array as a raw block
+     */
+    private void writeArray(Object array) throws IOException {
+        int n = Array.getLength(array);
+        ByteBuffer buf = buffer;
+
+        if (array instanceof double[]) {
+            double[] a = (double[]) array;
+            for (int i = 0; i < n; ) {
+                int k = Math.min(n - i, buf.capacity() / 8);
+                buf.clear();
+                buf.asDoubleBuffer().put(a, i, k);
+                out.write(buf.array(), 0, k * 8);
+                i += k;
+            }
+        } else if (array instanceof int[]) {
+            int[] a = (int[]) array;
+            for (int i = 0; i < n; ) {
+                int k = Math.min(n - i, buf.capacity() / 4);
+                buf.clear();
+                buf.asIntBuffer().put(a, i, k);
+                out.write(buf.array(), 0, k * 4);
+                i += k;
+            }
+        } else if (array instanceof long[]) {
+            long[] a = (long[]) array;
+            for (int i = 0; i < n; ) {
+                int k = Math.min(n - i, buf.capacity() / 8);
+                buf.clear();
+                buf.asLongBuffer().put(a, i, k);
+                out.write(buf.array(), 0, k * 8);
+                i += k;
+            }
+        } else if (array instanceof float[]) {
+            float[] a = (float[]) array;
+            for (int i = 0; i < n; ) {
+                int k = Math.min(n - i, buf.capacity() / 4);
+                buf.clear();
+                buf.asFloatBuffer().put(a, i, k);
+                out.write(buf.array(), 0, k * 4);
+                i += k;
+            }
+        } else if (array instanceof byte[]) {
+            out.write((byte[]) array);
+        } else if (array instanceof boolean[]) {
+            boolean[] a = (boolean[]) array;
+            for (boolean v : a)
+                out.writeBoolean(v);
+        } else if (array instanceof short[]) {
+            for (short v : (short[]) array)
+                out.writeShort(v);
+        } else if (array instanceof char[]) {
+            for (char v : (char[]) array)
+                out.writeChar(v);
+        }
+    }
+}
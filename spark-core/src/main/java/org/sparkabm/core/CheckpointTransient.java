@@ -0,0 +1,18 @@
+package org.sparkabm.core;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field which is not saved in checkpoints. The field is null
+ * after a checkpoint is loaded, so its value must be created again
+ * when it is needed.
+ *
+ * @author Monad
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CheckpointTransient {
+}
@@ -0,0 +1,247 @@
+package org.sparkabm.core;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates accessors for get/set methods of model variables and for
+ * model methods. Accessors are generated by LambdaMetafactory when
+ * the model class is visible from this class loader. Models loaded by
+ * their own class loaders get accessors which call exact method handles.
+ * Instance methods are bound to the model.
+ *
+ * @author Monad
+ */
+final class ModelAccessors {
+    private static final Logger logger = Logger.getLogger(ModelAccessors.class.getName());
+
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    private ModelAccessors() {
+    }
+
+
+    /**
+     * Creates a getter of a double value
+     */
+    static DoubleSupplier doubleGetter(Method method, Object model) throws IllegalAccessException {
+        Object g = generate(method, model, DoubleSupplier.class, "getAsDouble",
+                MethodType.methodType(double.class), MethodType.methodType(double.class));
+        if (g != null)
+            return (DoubleSupplier) g;
+
+        final MethodHandle h = handle(method, model, MethodType.methodType(double.class));
+        return new DoubleSupplier() {
+            public double getAsDouble() {
+                try {
+                    return (double) h.invokeExact();
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Creates a getter of an integer value
+     */
+    static IntSupplier intGetter(Method method, Object model) throws IllegalAccessException {
+        Object g = generate(method, model, IntSupplier.class, "getAsInt",
+                MethodType.methodType(int.class), MethodType.methodType(int.class));
+        if (g != null)
+            return (IntSupplier) g;
+
+        final MethodHandle h = handle(method, model, MethodType.methodType(int.class));
+        return new IntSupplier() {
+            public int getAsInt() {
+                try {
+                    return (int) h.invokeExact();
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Creates a getter of a boolean value
+     */
+    static BooleanSupplier booleanGetter(Method method, Object model) throws IllegalAccessException {
+        Object g = generate(method, model, BooleanSupplier.class, "getAsBoolean",
+                MethodType.methodType(boolean.class), MethodType.methodType(boolean.class));
+        if (g != null)
+            return (BooleanSupplier) g;
+
+        final MethodHandle h = handle(method, model, MethodType.methodType(boolean.class));
+        return new BooleanSupplier() {
+            public boolean getAsBoolean() {
+                try {
+                    return (boolean) h.invokeExact();
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Creates a getter of any value (primitive values are boxed)
+     */
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> getter(Method method, Object model) throws IllegalAccessException {
+        Class<?> ret = wrap(method.getReturnType());
+        Object g = generate(method, model, Supplier.class, "get",
+                MethodType.methodType(Object.class), MethodType.methodType(ret));
+        if (g != null)
+            return (Supplier<Object>) g;
+
+        final MethodHandle h = handle(method, model, MethodType.methodType(Object.class));
+        return new Supplier<Object>() {
+            public Object get() {
+                try {
+                    return (Object) h.invokeExact();
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Creates a setter (values are cast to the type of the argument)
+     */
+    @SuppressWarnings("unchecked")
+    static Consumer<Object> setter(Method method, Object model) throws IllegalAccessException {
+        Class<?> arg = wrap(method.getParameterTypes()[0]);
+        Object g = generate(method, model, Consumer.class, "accept",
+                MethodType.methodType(void.class, Object.class), MethodType.methodType(void.class, arg));
+        if (g != null)
+            return (Consumer<Object>) g;
+
+        final MethodHandle h = handle(method, model, MethodType.methodType(void.class, Object.class));
+        return new Consumer<Object>() {
+            public void accept(Object value) {
+                try {
+                    h.invokeExact(value);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Creates an action which calls a method without arguments
+     * (the result of the method is ignored)
+     */
+    static Runnable action(Method method, Object model) throws IllegalAccessException {
+        Object g = generate(method, model, Runnable.class, "run",
+                MethodType.methodType(void.class), MethodType.methodType(void.class));
+        if (g != null)
+            return (Runnable) g;
+
+        final MethodHandle h = handle(method, model, MethodType.methodType(void.class));
+        return new Runnable() {
+            public void run() {
+                try {
+                    h.invokeExact();
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Generates an implementation of a functional interface which calls the method
+     *
+     * @return null if the implementation cannot be generated
+     */
+    private static Object generate(Method method, Object model, Class<?> iface, String name,
+                                   MethodType samType, MethodType instantiatedType) {
+        Class<?> cls = method.getDeclaringClass();
+        if (!Modifier.isPublic(cls.getModifiers()) || !isVisible(cls))
+            return null;
+
+        try {
+            MethodHandle impl = lookup.unreflect(method);
+            boolean isStatic = Modifier.isStatic(method.getModifiers());
+            MethodType factoryType = isStatic ? MethodType.methodType(iface) : MethodType.methodType(iface, cls);
+
+            CallSite site = LambdaMetafactory.metafactory(lookup, name, factoryType,
+                    samType, impl, instantiatedType);
+
+            return isStatic ? site.getTarget().invoke() : site.getTarget().invoke(model);
+        } catch (Throwable e) {
+            logger.log(Level.FINE, "Cannot generate an accessor for " + method, e);
+            return null;
+        }
+    }
+
+
+    /**
+     * Returns true if lambdas generated in this class can refer to the class
+     */
+    private static boolean isVisible(Class<?> cls) {
+        try {
+            return Class.forName(cls.getName(), false, ModelAccessors.class.getClassLoader()) == cls;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Returns a method handle of the given type bound to the model
+     */
+    private static MethodHandle handle(Method method, Object model, MethodType type) throws IllegalAccessException {
+        MethodHandle h = lookup.unreflect(method);
+        if (!Modifier.isStatic(method.getModifiers()))
+            h = h.bindTo(model);
+
+        return h.asType(type);
+    }
+
+
+    /**
+     * Returns the wrapper class of a primitive type
+     */
+    private static Class<?> wrap(Class<?> type) {
+        if (!type.isPrimitive())
+            return type;
+
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+
+    /**
+     * Throws unchecked exceptions as they are and wraps checked exceptions
+     */
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException)
+            return (RuntimeException) e;
+
+        if (e instanceof Error)
+            throw (Error) e;
+
+        return new RuntimeException(e);
+    }
+}
@@ -19,8 +19,14 @@ public class ModelMethod {
     /* Reference to the method inside model class */
     private Method method;
 
+    /* Generated call of the method for the model */
+    private final Runnable action;
+
+    /* The model for which the action is created */
+    private final SparkModel model;
+
     /* The number of times this method to be invoked during synchronization */
-    private int callsCount;
+    private volatile int callsCount;
 
 
     /**
@@ -39,9 +45,11 @@ public class ModelMethod {
      * @param name
      * @param method
      */
-    private ModelMethod(String name, Method method) {
+    private ModelMethod(String name, Method method, SparkModel model) throws IllegalAccessException {
         this.name = name;
         this.method = method;
+        this.model = model;
+        this.action = ModelAccessors.action(method, model);
         this.callsCount = 0;
     }
 
@@ -70,8 +78,11 @@ public class ModelMethod {
         }
 
         if (method != null) {
-            ModelMethod mm = new ModelMethod(name, method);
-            return mm;
+            try {
+                return new ModelMethod(name, method, model);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
         }
 
         return null;
@@ -92,15 +103,23 @@ public class ModelMethod {
      * @return true if a method was invoked
      * @throws Exception
      */
-    public synchronized boolean synchronize(SparkModel model) throws Exception {
-        boolean flag = callsCount > 0;
-
-        while (callsCount > 0) {
-            callsCount--;
-            method.invoke(model);
+    public boolean synchronize(SparkModel model) throws Exception {
+        // Most of the time there are no calls
+        if (callsCount == 0)
+            return false;
+
+        synchronized (this) {
+            while (callsCount > 0) {
+                callsCount--;
+
+                if (model == this.model)
+                    action.run();
+                else
+                    method.invoke(model);
+            }
         }
 
-        return flag;
+        return true;
     }
 
 
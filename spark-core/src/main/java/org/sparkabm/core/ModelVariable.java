@@ -1,6 +1,11 @@
 package org.sparkabm.core;
 
 import java.lang.reflect.Method;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 import org.sparkabm.utils.AbstractChangeEvent;
 import org.w3c.dom.NamedNodeMap;
@@ -10,7 +15,10 @@ import org.w3c.dom.Node;
 
 
 /**
- * Represents a model variable for parameters and charts
+ * Represents a model variable for parameters and charts.
+ * Get/set methods are called through generated accessors
+ * (see ModelAccessors); values of Double, Integer and Boolean
+ * variables with primitive getters are compared without boxing.
  *
  * @author Monad
  */
@@ -25,25 +33,45 @@ public class ModelVariable extends AbstractChangeEvent {
             variables = new HashMap<String, ModelVariable>();
         }
     */
+    /* Kinds of getters */
+    private static final int NONE = 0;
+    private static final int OBJECT = 1;
+    private static final int DOUBLE = 2;
+    private static final int INTEGER = 3;
+    private static final int BOOLEAN = 4;
+
+    /* Bits which do not correspond to any primitive value
+     * (a NaN which is never returned by Double.doubleToLongBits) */
+    private static final long NO_BITS = 0x7ff8000000000001L;
+
     /* Variable's name */
     private String name;
 
     /* Variable's type: should be consistent with set/get methods */
     private Class<?> type;
 
-    /* Get method of the variable, null means that the variable is write only */
-    private Method getMethod;
+    /* Kind of the getter, NONE means that the variable is write only */
+    private int getterKind;
 
-    /* Set method of the variable, null means that the variable is read only */
-    private Method setMethod;
+    /* Getters of the variable (only one of them is not null) */
+    private DoubleSupplier doubleGetter;
+    private IntSupplier intGetter;
+    private BooleanSupplier booleanGetter;
+    private Supplier<Object> getter;
+
+    /* Setter of the variable, null means that the variable is read only */
+    private Consumer<Object> setter;
 
     /* Variable's value. Could be null */
     private Object value;
 
+    /* Bits of the primitive value (NO_BITS for other values) */
+    private volatile long valueBits = NO_BITS;
+
     /* True means that a new value was assigned to the variable
      * and this value should be later synchronized with SPARK model.
      */
-    private boolean writeFlag;
+    private volatile boolean writeFlag;
 
 
     /**
@@ -107,16 +135,21 @@ public class ModelVariable extends AbstractChangeEvent {
 //			var.setMethod = ModelManager.getInstance().getModel().getClass().getMethod(sset);
 //			var.getMethod = GUIModelManager.getModelClass().getMethod(sget);
 //			var.setMethod = GUIModelManager.getModelClass().getMethod(sset, var.type);
+            Method getMethod = null;
+            Method setMethod = null;
+
             try {
                 if (sget != null)
-                    var.getMethod = model.getClass().getMethod(sget);
+                    getMethod = model.getClass().getMethod(sget);
             } catch (Exception e) {
             }
             try {
                 if (sset != null)
-                    var.setMethod = model.getClass().getMethod(sset, var.type);
+                    setMethod = model.getClass().getMethod(sset, var.type);
             } catch (Exception e) {
             }
+
+            var.createAccessors(model, getMethod, setMethod);
         } catch (Exception e) {
             // TODO: do we need to process any exception here?
             throw e;
@@ -126,6 +159,50 @@ public class ModelVariable extends AbstractChangeEvent {
     }
 
 
+    /**
+     * Creates accessors for the given get/set methods
+     */
+    private void createAccessors(SparkModel model, Method getMethod, Method setMethod) throws Exception {
+        if (getMethod != null) {
+            Class<?> ret = getMethod.getReturnType();
+
+            if (ret == double.class && type == Double.class) {
+                getterKind = DOUBLE;
+                doubleGetter = ModelAccessors.doubleGetter(getMethod, model);
+            } else if (ret == int.class && type == Integer.class) {
+                getterKind = INTEGER;
+                intGetter = ModelAccessors.intGetter(getMethod, model);
+            } else if (ret == boolean.class && type == Boolean.class) {
+                getterKind = BOOLEAN;
+                booleanGetter = ModelAccessors.booleanGetter(getMethod, model);
+            } else {
+                getterKind = OBJECT;
+                getter = ModelAccessors.getter(getMethod, model);
+            }
+        }
+
+        if (setMethod != null)
+            setter = ModelAccessors.setter(setMethod, model);
+    }
+
+
+    /**
+     * Returns bits of a primitive value
+     */
+    private static long toBits(Object value) {
+        if (value instanceof Double)
+            return Double.doubleToLongBits((Double) value);
+
+        if (value instanceof Integer)
+            return (Integer) value;
+
+        if (value instanceof Boolean)
+            return (Boolean) value ? 1 : 0;
+
+        return NO_BITS;
+    }
+
+
     /**
      * Returns variable's value
      *
@@ -149,6 +226,7 @@ public class ModelVariable extends AbstractChangeEvent {
 
                 writeFlag = true;
                 this.value = value;
+                this.valueBits = NO_BITS;
             }
 
             fireStateChanged();
@@ -164,6 +242,7 @@ public class ModelVariable extends AbstractChangeEvent {
 
             writeFlag = true;
             this.value = value;
+            this.valueBits = toBits(value);
         }
 
         fireStateChanged();
@@ -202,32 +281,85 @@ public class ModelVariable extends AbstractChangeEvent {
      * Synchronizes variable's value with the SPARK value.
      * Call it synchronously with model run.
      */
-    public synchronized void synchronizeValue() throws Exception {
+    public void synchronizeValue() throws Exception {
         // New value was assigned (from an interface)
-        if (writeFlag && setMethod != null && value != null) {
-            // TODO: should it be model instance instead of null?
-            writeFlag = false;
-            setMethod.invoke(null, value);
+        if (writeFlag && setter != null) {
+            Object newValue;
+            synchronized (this) {
+                newValue = value;
+                if (newValue != null)
+                    writeFlag = false;
+            }
+
+            if (newValue != null)
+                setter.accept(newValue);
 
             // do not return and get the value later: for some
             // variables it makes sense to set it first and then
             // read again to ensure that a new value was set properly.
         }
 
-        if (getMethod != null) {
-            // TODO: should it be model instance instead of null?
-            Object newValue = getMethod.invoke(null);
+        long bits;
 
+        switch (getterKind) {
+            case DOUBLE:
+                bits = Double.doubleToLongBits(doubleGetter.getAsDouble());
+                break;
+
+            case INTEGER:
+                bits = intGetter.getAsInt();
+                break;
+
+            case BOOLEAN:
+                bits = booleanGetter.getAsBoolean() ? 1 : 0;
+                break;
+
+            case OBJECT:
+                synchronizeObject(getter.get());
+                return;
+
+            default:
+                return;
+        }
+
+        // The value is not changed
+        if (bits == valueBits)
+            return;
+
+        Object newValue;
+        if (getterKind == DOUBLE)
+            newValue = Double.longBitsToDouble(bits);
+        else if (getterKind == INTEGER)
+            newValue = (int) bits;
+        else
+            newValue = bits != 0;
+
+        synchronized (this) {
+            value = newValue;
+            valueBits = bits;
+        }
+
+        fireStateChanged();
+    }
+
+
+    /**
+     * Synchronizes a value returned by a getter of objects
+     */
+    private void synchronizeObject(Object newValue) {
+        synchronized (this) {
             if (newValue == null) {
-                if (value != null) {
-                    value = newValue;
-                    fireStateChanged();
-                }
-            } else if (!newValue.equals(value)) {
-                value = newValue;
-                fireStateChanged();
+                if (value == null)
+                    return;
+            } else if (newValue.equals(value)) {
+                return;
             }
+
+            value = newValue;
+            valueBits = toBits(newValue);
         }
+
+        fireStateChanged();
     }
 
 }
@@ -27,6 +27,7 @@ import org.sparkabm.space.Space;
 
 import org.sparkabm.math.RationalNumber;
 import org.sparkabm.math.SimulationTime;
+import org.sparkabm.math.RandomGenerator;
 import org.sparkabm.math.RandomHelper;
 
 /**
@@ -47,7 +48,8 @@ public final class Observer {
     public static final int HIGH_PRIORITY = 0;
     public static final int LOW_PRIORITY = 1000;
 
-    // Instance
+    // Instance which is used when no simulation context is bound
+    // to the current thread
     // TODO: should be removed later
     static volatile Observer instance;
 
@@ -63,6 +65,10 @@ public final class Observer {
         ModelSimulationTime() {
         }
 
+        ModelSimulationTime(long tick, RationalNumber time) {
+            super(tick, time);
+        }
+
         protected void advanceTick() {
             super.advanceTick();
         }
@@ -89,6 +95,9 @@ public final class Observer {
     /* True when inside setup method */
     private boolean setupFlag;
 
+    /* True if the order of agents is preserved when agents are removed */
+    private boolean preserveOrder = true;
+
 
     /**
      * Returns true if setup method is executed
@@ -187,7 +196,7 @@ public final class Observer {
     private final PriorityQueue<AgentTime> actionQueue;
 
     // Simulation time
-    private final ModelSimulationTime time;
+    private ModelSimulationTime time;
 
     /* List of all spaces */
     private final ArrayList<Space> spacesList;
@@ -200,7 +209,6 @@ public final class Observer {
     // TODO: be careful with agents which are added and then removed in the
     // same step
     // New agents queue
-    // TODO: ObserverParallel can use ParrallelArray for new agents also
     // TODO: maybe ArrayList is better?
     private final HashMap<Class<? extends Agent>, ArrayList<Agent>> newAgents;
     private final ArrayList<Agent> removedQueue;
@@ -265,6 +273,31 @@ public final class Observer {
     }
 
 
+    /**
+     * Specifies whether the order of agents should be preserved when
+     * agents are removed. If false then a removed agent can be replaced
+     * with another agent of the same type, so the iteration order changes
+     * but removal is faster. The default value is true.
+     *
+     * @param preserveOrder
+     */
+    public void setPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+        impl.setPreserveOrder(preserveOrder);
+    }
+
+
+    /**
+     * Returns true if the order of agents is preserved when
+     * agents are removed
+     *
+     * @return
+     */
+    public boolean isPreserveOrder() {
+        return preserveOrder;
+    }
+
+
     /**
      * Returns true if serial mode is on
      *
@@ -312,11 +345,19 @@ public final class Observer {
     }
 
     /**
-     * Gets the instance of the observer
+     * Gets the instance of the observer. It is the observer of the
+     * simulation context bound to the current thread (if any).
      *
      * @return observer an instance of the observer
+     * @see org.sparkabm.core.SimulationContext
      */
     public static Observer getInstance() {
+        if (SimulationContext.used) {
+            SimulationContext context = SimulationContext.current();
+            if (context != null)
+                return context.getObserver();
+        }
+
         return instance;
     }
 
@@ -335,6 +376,7 @@ public final class Observer {
      * @return
      */
     public static Space getDefaultSpace() {
+        Observer instance = getInstance();
         if (instance != null)
             return instance.defaultSpace;
 
@@ -348,6 +390,7 @@ public final class Observer {
      * @return
      */
     public static Space getSpace(String name) {
+        Observer instance = getInstance();
         if (instance != null) {
             return instance.spacesMap.get(name);
         }
@@ -681,6 +724,9 @@ public final class Observer {
 
             // Parallel Mode
             case ExecutionMode.PARALLEL_MODE:
+                if (impl.bufferAgent(agent))
+                    break;
+
                 synchronized (newAgents) {
                     list = newAgents.get(cl);
 
@@ -789,7 +835,9 @@ public final class Observer {
     }
 
     /**
-     * Processes a queue of removed agents
+     * Processes a queue of removed agents.
+     * All removed agents are physically removed from the context
+     * in one batch.
      */
     private synchronized void processRemovedAgents() {
         for (int i = 0; i < removedQueue.size(); i++) {
@@ -811,6 +859,7 @@ public final class Observer {
         }
 
         removedQueue.clear();
+        impl.compactAgents();
     }
 
     /**
@@ -1191,6 +1240,238 @@ public final class Observer {
 		impl.loadAgents(ois);*/
     }
 
+    /* Checkpoint format */
+    private static final int CHECKPOINT_MAGIC = 0x5350434B;
+    private static final int CHECKPOINT_VERSION = 1;
+
+
+    /**
+     * Writes a checkpoint of the simulation: the simulation time, agent types
+     * and their action queue, spaces (with data layers and hash grids),
+     * agents with their links, fields of the model class and the random generator.
+     * The checkpoint can be restored with loadCheckpoint() in a new
+     * observer of the same model. Call between simulation steps only.
+     *
+     * @param model
+     * @param out  a buffered stream is recommended
+     * @throws Exception
+     */
+    public synchronized void saveCheckpoint(SparkModel model, OutputStream out)
+            throws Exception {
+        if (setupFlag || removedQueue.size() != 0)
+            throw new Exception("Could not save a checkpoint during agent's processing");
+
+        for (ArrayList<Agent> list : newAgents.values()) {
+            if (list.size() != 0)
+                throw new Exception("Could not save a checkpoint during agent's processing");
+        }
+
+        long t0 = System.currentTimeMillis();
+
+        CheckpointOutput cp = new CheckpointOutput(out, this, model);
+        cp.writeInt(CHECKPOINT_MAGIC);
+        cp.writeInt(CHECKPOINT_VERSION);
+        cp.writeString(model.getClass().getName());
+
+        cp.writeInt(executionMode);
+        cp.writeBoolean(preserveOrder);
+
+        // Time
+        cp.writeLong(time.getTick());
+        cp.writeObject(time.getTime());
+
+        // Agent types and the action queue
+        cp.writeObject(agentTypes);
+        cp.writeObject(new ArrayList<AgentTime>(actionQueue));
+
+        // Spaces
+        cp.writeInt(spacesList.size());
+        for (Space space : spacesList) {
+            cp.writeString(getSpaceName(space));
+            cp.writeObject(space);
+        }
+
+        cp.writeString(defaultSpace != null ? getSpaceName(defaultSpace) : null);
+
+        // Model fields
+        ArrayList<Field> fields = getModelFields(model);
+        cp.writeInt(fields.size());
+        for (Field field : fields) {
+            cp.writeString(field.getName());
+            cp.writeObject(field.get(model));
+        }
+
+        // Random generator
+        cp.writeObject(RandomHelper.getGenerator());
+
+        // Agents (the order of agents of each type is preserved)
+        cp.writeInt(Agent.getLastId());
+        cp.writeObject(impl.getAgents());
+
+        cp.finish();
+
+        logger.info("Checkpoint is saved: " + cp.getObjectCount() + " objects, "
+                + (System.currentTimeMillis() - t0) + " ms");
+    }
+
+
+    /**
+     * Restores a checkpoint written by saveCheckpoint(). The observer should
+     * be created for the given model but the setup method should not be called.
+     * All spaces and agents of the observer are replaced.
+     *
+     * @param model
+     * @param in   a buffered stream is recommended
+     * @throws Exception
+     */
+    public synchronized void loadCheckpoint(SparkModel model, InputStream in)
+            throws Exception {
+        long t0 = System.currentTimeMillis();
+
+        CheckpointInput cp = new CheckpointInput(in, this, model, model.getClass().getClassLoader());
+        if (cp.readInt() != CHECKPOINT_MAGIC)
+            throw new Exception("Not a checkpoint");
+
+        int version = cp.readInt();
+        if (version != CHECKPOINT_VERSION)
+            throw new Exception("Unsupported checkpoint version: " + version);
+
+        String modelName = cp.readString();
+        if (!modelName.equals(model.getClass().getName()))
+            throw new Exception("The checkpoint is created for " + modelName);
+
+        int mode = cp.readInt();
+        if (mode != executionMode)
+            logger.info("The checkpoint is created in the " + ExecutionMode.toString(mode)
+                    + " mode, the current mode is " + ExecutionMode.toString(executionMode));
+
+        boolean order = cp.readBoolean();
+
+        long tick = cp.readLong();
+        RationalNumber t = (RationalNumber) cp.readObject();
+
+        @SuppressWarnings("unchecked")
+        HashMap<Class<? extends Agent>, AgentType> types = (HashMap<Class<? extends Agent>, AgentType>) cp.readObject();
+        @SuppressWarnings("unchecked")
+        ArrayList<AgentTime> actions = (ArrayList<AgentTime>) cp.readObject();
+
+        int n = cp.readInt();
+        String[] spaceNames = new String[n];
+        Space[] spaces = new Space[n];
+        for (int i = 0; i < n; i++) {
+            spaceNames[i] = cp.readString();
+            spaces[i] = (Space) cp.readObject();
+        }
+
+        String defaultSpaceName = cp.readString();
+
+        n = cp.readInt();
+        String[] fieldNames = new String[n];
+        Object[] fieldValues = new Object[n];
+        for (int i = 0; i < n; i++) {
+            fieldNames[i] = cp.readString();
+            fieldValues[i] = cp.readObject();
+        }
+
+        Object random = cp.readObject();
+        int lastId = cp.readInt();
+        Agent[] agents = (Agent[]) cp.readObject();
+
+        // Read all objects
+        cp.finish();
+
+        // Replace the state
+        newAgents.clear();
+        removedQueue.clear();
+        impl.clear();
+
+        defaultSpace = null;
+        spacesList.clear();
+        spacesMap.clear();
+
+        for (int i = 0; i < spaces.length; i++)
+            addSpace(spaceNames[i], spaces[i]);
+
+        if (defaultSpaceName != null)
+            setDefaultSpace(defaultSpaceName);
+
+        time = new ModelSimulationTime(tick, t);
+
+        agentTypes.clear();
+        agentTypes.putAll(types);
+        actionQueue.clear();
+        actionQueue.addAll(actions);
+
+        setPreserveOrder(order);
+
+        // Model fields
+        for (Field field : getModelFields(model)) {
+            for (int i = 0; i < fieldNames.length; i++) {
+                if (fieldNames[i].equals(field.getName())) {
+                    field.set(model, fieldValues[i]);
+                    break;
+                }
+            }
+        }
+
+        // Copy the state of the random generator
+        RandomGenerator generator = RandomHelper.getGenerator();
+        for (Class<?> c = generator.getClass(); c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()))
+                    continue;
+
+                field.setAccessible(true);
+                field.set(generator, field.get(random));
+            }
+        }
+
+        // Agents (consecutive agents of the same type are added together)
+        ArrayList<Agent> list = new ArrayList<Agent>();
+
+        for (int i = 0; i < agents.length; i++) {
+            Agent agent = agents[i];
+            agent.slot = -1;
+            agent.prev = agent.next = null;
+            lastId = Math.max(lastId, agent.getId());
+
+            list.add(agent);
+            if (i == agents.length - 1 || agents[i + 1].getClass() != agent.getClass()) {
+                impl.addAllAgents(list, agent.getClass());
+                list = new ArrayList<Agent>();
+            }
+        }
+
+        // New agents get the same ids as after saving the checkpoint
+        Agent.setLastId(lastId);
+
+        logger.info("Checkpoint is loaded: " + cp.getObjectCount() + " objects, "
+                + (System.currentTimeMillis() - t0) + " ms");
+    }
+
+
+    /**
+     * Returns fields declared in the model class (instance fields
+     * and static fields which can be changed)
+     */
+    private static ArrayList<Field> getModelFields(SparkModel model) {
+        ArrayList<Field> fields = new ArrayList<Field>();
+
+        for (Class<?> c = model.getClass(); c != SparkModel.class && c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int mod = field.getModifiers();
+                if (Modifier.isStatic(mod) && Modifier.isFinal(mod) || field.isSynthetic())
+                    continue;
+
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+
+        return fields;
+    }
+
+
     public static class MyObjectInputStream extends ObjectInputStream {
         protected ClassLoader cl = null;
         protected boolean userClass = false;
@@ -15,12 +15,14 @@ import org.sparkabm.math.SimulationTime;
 /**
  * Implementation of the abstract context.
  * Agents are sorted by types and all agents of the same type
- * are stored in the array list
+ * are stored in the growable array. Removed agents are compacted
+ * after all removed agents are processed, so agents are iterated
+ * without copying.
  */
 class Observer1 extends ObserverImpl {
     private static final Logger logger = Logger.getLogger(Observer1.class.getName());
     // All agents and their types
-    private final HashMap<Class<? extends Agent>, ArrayList<Agent>> agents;
+    private final HashMap<Class<? extends Agent>, AgentArray> agents;
     // List of all types of agents
     private final ArrayList<Class<? extends Agent>> listOfTypes;
     private final HashMap<Class<? extends Agent>, Boolean> staticFlags;
@@ -33,7 +35,7 @@ class Observer1 extends ObserverImpl {
      */
     Observer1() {
         logger.info("Creating Observer1");
-        agents = new HashMap<Class<? extends Agent>, ArrayList<Agent>>();
+        agents = new HashMap<Class<? extends Agent>, AgentArray>();
         listOfTypes = new ArrayList<Class<? extends Agent>>();
         staticFlags = new HashMap<Class<? extends Agent>, Boolean>();
         statistics = new HashMap<Class<? extends Agent>, Long>();
@@ -65,12 +67,12 @@ class Observer1 extends ObserverImpl {
      * @param agent
      */
     protected synchronized void addAgent(Agent agent, Class<? extends Agent> cl) {
-        ArrayList<Agent> list = agents.get(cl);
+        AgentArray list = agents.get(cl);
 
         if (list != null) {
             list.add(agent);
         } else {
-            list = new ArrayList<Agent>(100);
+            list = new AgentArray();
             list.add(agent);
             agents.put(cl, list);
             listOfTypes.add(cl);
@@ -85,10 +87,10 @@ class Observer1 extends ObserverImpl {
 
 
     protected synchronized void addAllAgents(ArrayList<Agent> newAgents, Class<? extends Agent> cl) {
-        ArrayList<Agent> list = agents.get(cl);
+        AgentArray list = agents.get(cl);
 
         if (list == null) {
-            list = new ArrayList<Agent>(100);
+            list = new AgentArray();
             agents.put(cl, list);
             listOfTypes.add(cl);
             statistics.put(cl, 0l);
@@ -104,7 +106,8 @@ class Observer1 extends ObserverImpl {
 
 
     /**
-     * Removes the agent from the context
+     * Removes the agent from the context.
+     * The agent stays in the array until the next compaction.
      *
      * @param agent
      */
@@ -112,23 +115,34 @@ class Observer1 extends ObserverImpl {
     protected synchronized boolean removeAgent(Agent agent) {
         Class<? extends Agent> cl = agent.getClass();
 
-        ArrayList<Agent> list = agents.get(cl);
+        AgentArray list = agents.get(cl);
 
         if (list != null) {
-            return list.remove(agent);
+            return list.markRemoved(agent);
         }
 
         return false;
     }
 
+
+    /**
+     * Removes all dead agents
+     */
+    @Override
+    protected synchronized void compactAgents() {
+        for (AgentArray list : agents.values()) {
+            list.compact(preserveOrder);
+        }
+    }
+
     /**
      * Returns the number of agents of a specific type
      */
     public synchronized int getAgentsNumber(Class<? extends Agent> type) {
-        ArrayList<Agent> list = agents.get(type);
+        AgentArray list = agents.get(type);
 
         if (list != null)
-            return list.size();
+            return list.liveSize();
         else
             return 0;
     }
@@ -141,7 +155,7 @@ class Observer1 extends ObserverImpl {
         int n = 0;
         for (Class<? extends Agent> type : agents.keySet()) {
             if (derived(type, kind)) {
-                n += agents.get(type).size();
+                n += agents.get(type).liveSize();
             }
         }
 
@@ -169,9 +183,10 @@ class Observer1 extends ObserverImpl {
             if (staticFlags.get(type))
                 continue;
 
-//			Agent[] agents = getAgents(types[j]);
-            Agent[] agents = getAgents(type);
-            int n = agents.length;
+            AgentArray list = agents.get(type);
+            // Agents added during the step are not processed
+            Agent[] agents = list.data;
+            int n = list.size;
 
             long start = System.currentTimeMillis();
 
@@ -195,11 +210,15 @@ class Observer1 extends ObserverImpl {
 //		if (staticFlags.get(type))
 //			continue;
 
-        Agent[] agents = getAgents(type);
-        if (agents == null)
+        AgentArray list = this.agents.get(type);
+        if (list == null)
             return;
 
-        int n = agents.length;
+        // Read the backing array directly: new agents are added
+        // after the first n elements (possibly into a new array) and
+        // removed agents are not compacted during the step
+        Agent[] agents = list.data;
+        int n = list.size;
 
 //			long start = System.currentTimeMillis();
 
@@ -214,25 +233,24 @@ class Observer1 extends ObserverImpl {
     }
 
 
-    // A trick used to avoid explicit cast operation
-    Agent[] tmp = new Agent[0];
-
     @SuppressWarnings("unchecked")
     public synchronized <T extends Agent> T[] getAgents(Class<T> type) {
-        if (agents.containsKey(type)) {
-            ArrayList<T> set = (ArrayList<T>) agents.get(type);
-            T[] tmp = (T[]) new Agent[set.size()];
-            return agents.get(type).toArray(tmp);
-        } else
+        AgentArray list = agents.get(type);
+
+        if (list != null)
+            return (T[]) list.toArray();
+        else
             return null;
     }
 
 
-    @SuppressWarnings("unchecked")
     public synchronized <T extends Agent> ArrayList<T> getAgentsList(Class<T> type) {
-        if (agents.containsKey(type)) {
+        AgentArray list = agents.get(type);
+
+        if (list != null) {
             // Create a copy
-            ArrayList<T> result = new ArrayList(agents.get(type));
+            ArrayList<T> result = new ArrayList<T>(list.liveSize());
+            list.copyTo(result);
             return result;
         } else
             return null;
@@ -241,13 +259,13 @@ class Observer1 extends ObserverImpl {
 
     @SuppressWarnings("unchecked")
     public synchronized <T extends Agent> ArrayList<T> getAgentsListOfKind(Class<T> kind) {
-        ArrayList<ArrayList<Agent>> types = new ArrayList<ArrayList<Agent>>();
+        ArrayList<AgentArray> types = new ArrayList<AgentArray>();
 
         int n = 0;
         for (Class<? extends Agent> type : agents.keySet()) {
             if (derived(type, kind)) {
-                ArrayList<Agent> list = agents.get(type);
-                n += list.size();
+                AgentArray list = agents.get(type);
+                n += list.liveSize();
                 types.add(list);
             }
         }
@@ -257,7 +275,7 @@ class Observer1 extends ObserverImpl {
 
         ArrayList<Agent> allAgents = new ArrayList<Agent>(n);
         for (int i = 0; i < types.size(); i++) {
-            allAgents.addAll(types.get(i));
+            types.get(i).copyTo(allAgents);
         }
 
         return (ArrayList<T>) allAgents;
@@ -265,13 +283,19 @@ class Observer1 extends ObserverImpl {
 
 
     public synchronized Agent[] getAgents() {
-        ArrayList<Agent> all = new ArrayList<Agent>();
+        int n = 0;
+        for (AgentArray list : agents.values()) {
+            n += list.liveSize();
+        }
+
+        Agent[] all = new Agent[n];
+        int offset = 0;
 
-        for (ArrayList<Agent> list : agents.values()) {
-            all.addAll(list);
+        for (AgentArray list : agents.values()) {
+            offset = list.copyTo(all, offset);
         }
 
-        return all.toArray(tmp);
+        return all;
     }
 
 
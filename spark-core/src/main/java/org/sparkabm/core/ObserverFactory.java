@@ -1,5 +1,7 @@
 package org.sparkabm.core;
 
+import java.util.concurrent.ForkJoinPool;
+
 //import com.spinn3r.log5j.Logger;
 
 /**
@@ -26,15 +28,23 @@ public class ObserverFactory {
         ObserverImpl impl = cl.newInstance();
         executionMode = impl.filterExecutionMode(executionMode);
 
-        // Create a new observer
-        Observer.instance = new Observer(impl, executionMode);
+        // Create a new observer. Random generators of the current
+        // context are reset by the observer
+        Observer observer = new Observer(impl, executionMode);
+
+        SimulationContext context = SimulationContext.current();
+        if (context != null)
+            context.setObserver(observer);
+        else
+            Observer.instance = observer;
 
-        return Observer.instance;
+        return observer;
     }
 
 
     /**
-     * Creates an Observer for the given model
+     * Creates an Observer for the given model. If a simulation context
+     * is bound to the current thread then the observer belongs to this context.
      *
      * @param model
      * @param observerName  if null then a default observer is used
@@ -51,8 +61,13 @@ public class ObserverFactory {
         }
 
         Observer observer = create(observerName, executionMode);
+        observer.setPreserveOrder(model.getPreserveAgentOrder());
         model.setObserver(observer);
 
+        SimulationContext context = SimulationContext.current();
+        if (context != null)
+            context.setModel(model);
+
         return observer;
     }
 
@@ -64,6 +79,28 @@ public class ObserverFactory {
      */
     public static String[] getObserversList() {
         return new String[]{"Observer1",
-                "Observer2", "ObserverParallel"};
+                "Observer2", "ObserverParallel", "ObserverForkJoin"};
+    }
+
+
+    /**
+     * Sets the fork/join pool which is used by parallel observers.
+     * If null then a default pool is used.
+     *
+     * @param pool
+     */
+    public static void setForkJoinPool(ForkJoinPool pool) {
+        ObserverForkJoin.setPool(pool);
+    }
+
+
+    /**
+     * Returns the fork/join pool which is used by parallel observers
+     * and by spaces in the parallel mode
+     *
+     * @return
+     */
+    public static ForkJoinPool getForkJoinPool() {
+        return ObserverForkJoin.getPool();
     }
 }
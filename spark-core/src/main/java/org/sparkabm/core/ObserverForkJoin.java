@@ -0,0 +1,449 @@
+/*
+  Copyright 2008 by Alexey Solovyev and University of Pittsburgh
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package org.sparkabm.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+import org.sparkabm.math.RandomHelper;
+import org.sparkabm.math.RandomStream;
+import org.sparkabm.math.SimulationTime;
+
+/**
+ * Parallel implementation of the abstract context.
+ * Agents are sorted by types and all agents of the same type
+ * are stored in a growable array. The array is split into chunks
+ * which are processed by a fork/join pool (with work stealing).
+ * Dead agents are not removed immediately: they are compacted
+ * in bulk after all removed agents are processed.
+ * Each chunk uses its own random stream, so random numbers drawn by
+ * agents do not depend on the thread which processes the chunk.
+ * Other results of parallel steps still depend on thread scheduling:
+ * ids of new agents, the order of values added to grids, and
+ * the order of nodes in hash grid cells.
+ */
+class ObserverForkJoin extends ObserverImpl {
+    private static final Logger logger = Logger.getLogger(ObserverForkJoin.class.getName());
+
+    // The minimal number of agents in one chunk
+    private static final int MIN_CHUNK_SIZE = 256;
+    // The number of chunks per worker thread (for load balancing)
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    // A pool shared by all instances
+    private static ForkJoinPool pool;
+
+    /**
+     * Parameters of one parallel step
+     */
+    private static class Step {
+        final Agent[] agents;
+        final int chunkSize;
+        final SimulationTime time;
+        final long tick;
+        // The simulation context of the calling thread
+        final SimulationContext context;
+        // Agents created in each chunk
+        final ArrayList<Agent>[] newAgents;
+
+        @SuppressWarnings("unchecked")
+        Step(Agent[] agents, int n, int chunkSize, SimulationTime time, long tick) {
+            this.agents = agents;
+            this.chunkSize = chunkSize;
+            this.time = time;
+            this.tick = tick;
+            this.context = SimulationContext.current();
+            this.newAgents = (ArrayList<Agent>[]) new ArrayList<?>[(n + chunkSize - 1) / chunkSize];
+        }
+    }
+
+
+    /**
+     * Steps a range of agents. Ranges are split at chunk boundaries,
+     * so the same agents always belong to the same chunk independently
+     * of the thread which processes the chunk.
+     */
+    @SuppressWarnings("serial")
+    private static class StepTask extends RecursiveAction {
+        private final Step step;
+        private final int lo, hi;
+
+        StepTask(Step step, int lo, int hi) {
+            this.step = step;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        protected void compute() {
+            int chunks = (hi - lo + step.chunkSize - 1) / step.chunkSize;
+
+            if (chunks > 1) {
+                int mid = lo + (chunks / 2) * step.chunkSize;
+                invokeAll(new StepTask(step, lo, mid), new StepTask(step, mid, hi));
+                return;
+            }
+
+            // Worker threads use the context of the calling thread
+            SimulationContext prevContext = null;
+            if (step.context != null)
+                prevContext = SimulationContext.bind(step.context);
+
+            // Each chunk has its own random stream and its own list of new agents
+            int chunk = lo / step.chunkSize;
+            RandomStream prevStream = RandomHelper.bindStream(RandomHelper.getStream(chunk));
+            ArrayList<Agent> prevAgents = currentNewAgents.get();
+            ArrayList<Agent> newAgents = new ArrayList<Agent>();
+            currentNewAgents.set(newAgents);
+
+            try {
+                Agent[] agents = step.agents;
+                SimulationTime time = step.time;
+
+                for (int i = lo; i < hi; i++) {
+                    Agent agent = agents[i];
+                    if (agent.isDead()) continue;
+
+                    if (time != null)
+                        agent.step(time);
+                    else
+                        agent.step(step.tick);
+                }
+            } finally {
+                RandomHelper.bindStream(prevStream);
+                currentNewAgents.set(prevAgents);
+
+                if (step.context != null)
+                    SimulationContext.bind(prevContext);
+            }
+
+            if (newAgents.size() > 0)
+                step.newAgents[chunk] = newAgents;
+        }
+    }
+
+
+    // New agents created in the chunk which is processed by the current thread
+    private static final ThreadLocal<ArrayList<Agent>> currentNewAgents = new ThreadLocal<ArrayList<Agent>>();
+
+    // All agents
+    private final HashMap<Class<? extends Agent>, AgentArray> agents;
+    // List of all types of agents
+    private final ArrayList<Class<? extends Agent>> listOfTypes;
+    // Agents created during parallel steps (in the order of chunks)
+    private final ArrayList<Agent> pendingAgents;
+
+
+    /**
+     * The default constructor
+     */
+    ObserverForkJoin() {
+        logger.info("Creating ObserverForkJoin (parallelism = " + getPool().getParallelism() + ")");
+        agents = new HashMap<Class<? extends Agent>, AgentArray>();
+        listOfTypes = new ArrayList<Class<? extends Agent>>();
+        pendingAgents = new ArrayList<Agent>();
+    }
+
+
+    /**
+     * Sets the pool which is used for processing agents.
+     * If null then a default pool is created.
+     *
+     * @param newPool
+     */
+    static synchronized void setPool(ForkJoinPool newPool) {
+        pool = newPool;
+    }
+
+
+    /**
+     * Returns the pool which is used for processing agents.
+     * The parallelism of the default pool is defined by the
+     * "spark.parallelism" system property (the number of available
+     * processors by default).
+     *
+     * @return
+     */
+    static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            int n = Integer.getInteger("spark.parallelism", Runtime.getRuntime().availableProcessors());
+            if (n < 1)
+                n = 1;
+
+            pool = new ForkJoinPool(n);
+        }
+
+        return pool;
+    }
+
+
+    @Override
+    public int filterExecutionMode(int mode) {
+        return ExecutionMode.PARALLEL_MODE;
+    }
+
+
+    /**
+     * Removes all agents, data layers and the space from the context
+     */
+    @Override
+    public synchronized void clear() {
+        agents.clear();
+        listOfTypes.clear();
+        pendingAgents.clear();
+    }
+
+
+    /**
+     * Removes all agents
+     */
+    @Override
+    public synchronized void clearAgents() {
+        agents.clear();
+        listOfTypes.clear();
+        pendingAgents.clear();
+    }
+
+
+    /**
+     * Returns the storage for the given type of agents
+     *
+     * @param cl
+     * @return
+     */
+    private AgentArray getArray(Class<? extends Agent> cl) {
+        AgentArray list = agents.get(cl);
+
+        if (list == null) {
+            list = new AgentArray();
+            agents.put(cl, list);
+            listOfTypes.add(cl);
+
+            observer.setAgentType(cl);
+        }
+
+        return list;
+    }
+
+
+    /**
+     * Adds the agent into the context
+     *
+     * @param agent
+     */
+    @Override
+    protected synchronized void addAgent(Agent agent, Class<? extends Agent> cl) {
+        getArray(cl).add(agent);
+    }
+
+
+    /**
+     * Agents created during a parallel step are kept in the list
+     * of the current chunk. They are added into the context in the
+     * order of chunks, so the order of agents does not depend
+     * on the scheduling of threads.
+     */
+    @Override
+    protected boolean bufferAgent(Agent agent) {
+        ArrayList<Agent> list = currentNewAgents.get();
+        if (list == null)
+            return false;
+
+        list.add(agent);
+        return true;
+    }
+
+
+    @Override
+    protected synchronized void addAllAgents(ArrayList<Agent> newAgents, Class<? extends Agent> cl) {
+        getArray(cl).addAll(newAgents);
+    }
+
+
+    /**
+     * Removes the agent from the context.
+     * The agent is marked as dead by the observer and it is physically
+     * removed during the next compaction.
+     *
+     * @param agent
+     */
+    @Override
+    protected synchronized boolean removeAgent(Agent agent) {
+        AgentArray list = agents.get(agent.getClass());
+
+        if (list == null)
+            return false;
+
+        return list.markRemoved(agent);
+    }
+
+
+    @Override
+    protected synchronized void compactAgents() {
+        for (AgentArray list : agents.values()) {
+            list.compact(preserveOrder);
+        }
+
+        // Add agents created during the last step (dead agents are skipped)
+        for (int i = 0; i < pendingAgents.size(); i++) {
+            Agent agent = pendingAgents.get(i);
+            if (agent.dead)
+                continue;
+
+            getArray(agent.getClass()).add(agent);
+        }
+
+        pendingAgents.clear();
+    }
+
+
+    @Override
+    public synchronized int getAgentsNumber(Class<? extends Agent> type) {
+        AgentArray list = agents.get(type);
+        if (list == null)
+            return 0;
+
+        return list.liveSize();
+    }
+
+
+    @Override
+    public synchronized int getAgentsNumberOfKind(Class<? extends Agent> kind) {
+        int n = 0;
+        for (Class<? extends Agent> type : agents.keySet()) {
+            if (derived(type, kind)) {
+                n += agents.get(type).liveSize();
+            }
+        }
+
+        return n;
+    }
+
+
+    /**
+     * Steps all agents in the given array
+     *
+     * @param list
+     * @param time
+     * @param tick
+     */
+    private void stepAgents(AgentArray list, SimulationTime time, long tick) {
+        Agent[] data;
+        int n;
+
+        synchronized (this) {
+            data = list.data;
+            n = list.size;
+        }
+
+        if (n == 0)
+            return;
+
+        ForkJoinPool pool = getPool();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, n / (pool.getParallelism() * CHUNKS_PER_THREAD));
+
+        // New agents are added into separate lists during the parallel step,
+        // so data is not modified here
+        Step step = new Step(data, n, chunkSize, time, tick);
+        pool.invoke(new StepTask(step, 0, n));
+
+        synchronized (this) {
+            for (ArrayList<Agent> newAgents : step.newAgents) {
+                if (newAgents != null)
+                    pendingAgents.addAll(newAgents);
+            }
+        }
+    }
+
+
+    /**
+     * @param tick
+     * @deprecated Processes all agents
+     */
+    @Deprecated
+    @Override
+    public void processAllAgents(long tick) {
+        int k = listOfTypes.size();
+
+        for (int j = 0; j < k; j++) {
+            stepAgents(agents.get(listOfTypes.get(j)), null, tick);
+        }
+    }
+
+
+    @Override
+    public void processAgents(Class<? extends Agent> type, SimulationTime time) {
+        AgentArray list = agents.get(type);
+
+        if (list == null)
+            return;
+
+        stepAgents(list, time, 0);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <T extends Agent> T[] getAgents(Class<T> type) {
+        AgentArray list = agents.get(type);
+
+        if (list == null)
+            return null;
+
+        return (T[]) list.toArray();
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <T extends Agent> ArrayList<T> getAgentsList(Class<T> type) {
+        AgentArray list = agents.get(type);
+
+        if (list == null)
+            return null;
+
+        ArrayList<T> result = new ArrayList<T>(list.liveSize());
+        list.copyTo(result);
+
+        return result;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized <T extends Agent> ArrayList<T> getAgentsListOfKind(Class<T> kind) {
+        ArrayList<T> result = null;
+
+        for (Class<? extends Agent> type : listOfTypes) {
+            if (!derived(type, kind))
+                continue;
+
+            if (result == null)
+                result = new ArrayList<T>();
+
+            agents.get(type).copyTo(result);
+        }
+
+        return result;
+    }
+
+
+    @Override
+    public synchronized Agent[] getAgents() {
+        ArrayList<Agent> all = new ArrayList<Agent>();
+
+        for (Class<? extends Agent> type : listOfTypes) {
+            agents.get(type).copyTo(all);
+        }
+
+        return all.toArray(new Agent[all.size()]);
+    }
+}
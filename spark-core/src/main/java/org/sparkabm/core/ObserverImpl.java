@@ -14,6 +14,9 @@ abstract class ObserverImpl {
     // A reference to the Observer
     protected Observer observer;
 
+    // If true then the order of agents is preserved when agents are removed
+    protected boolean preserveOrder = true;
+
 
     /**
      * Default constructor
@@ -34,6 +37,17 @@ abstract class ObserverImpl {
     }
 
 
+    /**
+     * Specifies whether the order of agents should be preserved
+     * when agents are removed
+     *
+     * @param preserveOrder
+     */
+    void setPreserveOrder(boolean preserveOrder) {
+        this.preserveOrder = preserveOrder;
+    }
+
+
     /**
      * Verifies that the given execution mode is supported by the implementation
      * Returns a supported mode if the given mode is not appropriate
@@ -65,6 +79,18 @@ abstract class ObserverImpl {
      */
     protected abstract void addAgent(Agent agent, Class<? extends Agent> cl);
 
+    /**
+     * Buffers an agent created during a parallel step.
+     * Returns false if the implementation does not buffer agents
+     * (then the agent is added into the observer's queue).
+     *
+     * @param agent
+     * @return
+     */
+    protected boolean bufferAgent(Agent agent) {
+        return false;
+    }
+
     /**
      * Adds all agents from the array list into the context
      *
@@ -80,6 +106,14 @@ abstract class ObserverImpl {
      */
     protected abstract boolean removeAgent(Agent agent);
 
+    /**
+     * Physically removes all agents which were removed from the context
+     * since the last call of this method. It is called after all removed
+     * agents are processed (never during agent steps).
+     */
+    protected void compactAgents() {
+    }
+
     /**
      * Returns the number of specific agents
      *
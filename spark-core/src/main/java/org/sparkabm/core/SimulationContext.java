@@ -0,0 +1,181 @@
+package org.sparkabm.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sparkabm.math.RandomGenerator;
+import org.sparkabm.math.RandomHelper;
+
+/**
+ * A context of one simulation: the observer (with its spaces, agents and
+ * simulation time) and random number generators. A context is bound to
+ * the thread which runs the simulation. Observer.getInstance() and
+ * RandomHelper methods called in this thread use objects of the bound context,
+ * so several simulations can run concurrently in one JVM.
+ * The observer which is created by ObserverFactory in a thread with a bound
+ * context belongs to this context. If no context is bound then the global
+ * observer is used (as before).
+ * <p>
+ * Static model variables are shared by all simulations of the same model class.
+ * Independent simulations of the same model should load the model classes
+ * with separate class loaders (as SparkModelXMLFactory does).
+ *
+ * @author Monad
+ */
+public final class SimulationContext {
+    // A context bound to the current thread
+    private static final ThreadLocal<SimulationContext> current = new ThreadLocal<SimulationContext>();
+    // True after a context was bound to some thread
+    static volatile boolean used = false;
+
+    // Name of the context (for logging)
+    private final String name;
+    // Random number generators
+    private final RandomGenerator random;
+    // Ids of agents of the simulation
+    private final AtomicInteger agentIds = new AtomicInteger();
+
+    // The observer of the simulation
+    private volatile Observer observer;
+    // The model of the simulation
+    private volatile SparkModel model;
+
+
+    /**
+     * Creates a new context
+     *
+     * @param name
+     */
+    public SimulationContext(String name) {
+        this.name = name;
+        this.random = new RandomGenerator();
+    }
+
+
+    /**
+     * Returns the context bound to the current thread
+     *
+     * @return null if no context is bound
+     */
+    public static SimulationContext current() {
+        if (!used)
+            return null;
+
+        return current.get();
+    }
+
+
+    /**
+     * Binds the context to the current thread
+     *
+     * @param context a context to bind (null removes the current context)
+     * @return the previously bound context
+     */
+    public static SimulationContext bind(SimulationContext context) {
+        SimulationContext prev = current.get();
+        if (context == null) {
+            current.remove();
+            RandomHelper.bindGenerator(null);
+        } else {
+            used = true;
+            current.set(context);
+            RandomHelper.bindGenerator(context.random);
+        }
+
+        return prev;
+    }
+
+
+    /**
+     * Executes the task with the context bound to the current thread.
+     * The previous context is restored after the task is finished.
+     *
+     * @param task
+     * @return the result of the task
+     * @throws Exception
+     */
+    public <T> T execute(Callable<T> task) throws Exception {
+        SimulationContext prev = bind(this);
+        try {
+            return task.call();
+        } finally {
+            bind(prev);
+        }
+    }
+
+
+    /**
+     * Returns the name of the context
+     *
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Returns the random number generators of the context
+     *
+     * @return
+     */
+    public RandomGenerator getRandom() {
+        return random;
+    }
+
+
+    /**
+     * Returns the counter of agent ids of the context
+     *
+     * @return
+     */
+    AtomicInteger getAgentIdCounter() {
+        return agentIds;
+    }
+
+
+    /**
+     * Returns the observer of the context
+     *
+     * @return null if the observer is not created yet
+     */
+    public Observer getObserver() {
+        return observer;
+    }
+
+
+    /**
+     * Sets the observer of the context
+     *
+     * @param observer
+     */
+    void setObserver(Observer observer) {
+        this.observer = observer;
+    }
+
+
+    /**
+     * Returns the model of the context
+     *
+     * @return null if the model is not loaded yet
+     */
+    public SparkModel getModel() {
+        return model;
+    }
+
+
+    /**
+     * Sets the model of the context
+     *
+     * @param model
+     */
+    void setModel(SparkModel model) {
+        this.model = model;
+    }
+
+
+    @Override
+    public String toString() {
+        return "SimulationContext(" + name + ")";
+    }
+}
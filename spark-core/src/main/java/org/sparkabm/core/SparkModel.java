@@ -21,6 +21,7 @@ public abstract class SparkModel {
 
     private String defaultObserverName = ObserverFactory.DEFAULT_OBSERVER_NAME;
     private int defaultExecutionMode = ExecutionMode.SERIAL_MODE;
+    private boolean preserveAgentOrder = true;
 
     /* Agent types of the model */
     private final ArrayList<Observer.AgentType> agentTypes =
@@ -85,6 +86,17 @@ public abstract class SparkModel {
     }
 
 
+    /**
+     * Returns true if the order of agents should be preserved
+     * when agents are removed
+     *
+     * @return
+     */
+    public final boolean getPreserveAgentOrder() {
+        return preserveAgentOrder;
+    }
+
+
     /**
      * Adds a method
      *
@@ -322,6 +334,17 @@ public abstract class SparkModel {
         }
 
 
+        /**
+         * Specifies whether the order of agents should be preserved
+         * when agents are removed
+         *
+         * @param preserveAgentOrder
+         */
+        protected void setPreserveAgentOrder(boolean preserveAgentOrder) {
+            model.preserveAgentOrder = preserveAgentOrder;
+        }
+
+
         /**
          * Adds a method
          *
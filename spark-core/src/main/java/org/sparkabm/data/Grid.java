@@ -474,17 +474,31 @@ public class Grid implements AdvancedDataLayer {
      * Diffusion with a mask.
      * No diffusion to all cells with a positive mask value.
      */
-    public void diffuse(double p, Grid mask) {
+    public void diffuse(final double p, Grid mask) {
         if (mask.xSize != xSize || mask.ySize != ySize)
             return;
 
         if (dataCopy == null)
             dataCopy = new double[xSize][ySize];
 
-        double[][] maskData = mask.getData();
+        final double[][] maskData = mask.getData();
+
+        ParallelRows.process(xSize, ySize, (x0, x1) -> diffuse(p, maskData, x0, x1));
+
+        double[][] temp = data;
+        data = dataCopy;
+        readData = writeData = data;
+        dataCopy = temp;
+    }
+
+
+    /**
+     * Diffusion with a mask for rows x0, ..., x1 - 1
+     */
+    private void diffuse(double p, double[][] maskData, int x0, int x1) {
         double q = p / 8;
 
-        for (int x = 0; x < xSize; x++) {
+        for (int x = x0; x < x1; x++) {
             for (int y = 0; y < ySize; y++) {
                 if (maskData[x][y] > 0.0) {
                     // No diffusion
@@ -498,40 +512,40 @@ public class Grid implements AdvancedDataLayer {
 
                 for (int i = -1; i <= 1; i++) {
                     for (int j = -1; j <= 1; j++) {
-                        int x1 = x + i;
-                        int y1 = y + j;
+                        int x2 = x + i;
+                        int y2 = y + j;
 
-                        // Bound x1
-                        if (x1 < 0) {
+                        // Bound x2
+                        if (x2 < 0) {
                             if (wrapX)
-                                x1 = xSize - 1;
+                                x2 = xSize - 1;
                             else
                                 continue;
-                        } else if (x1 == xSize) {
+                        } else if (x2 == xSize) {
                             if (wrapX)
-                                x1 = 0;
+                                x2 = 0;
                             else
                                 continue;
                         }
 
-                        // Bound y1
-                        if (y1 < 0) {
+                        // Bound y2
+                        if (y2 < 0) {
                             if (wrapY)
-                                y1 = ySize - 1;
+                                y2 = ySize - 1;
                             else
                                 continue;
-                        } else if (y1 == ySize) {
+                        } else if (y2 == ySize) {
                             if (wrapY)
-                                y1 = 0;
+                                y2 = 0;
                             else
                                 continue;
                         }
 
-                        if (maskData[x1][y1] > 0.0)
+                        if (maskData[x2][y2] > 0.0)
                             continue;
 
                         n++;
-                        v += data[x1][y1];
+                        v += data[x2][y2];
                     } // j
                 } // i
 
@@ -539,11 +553,6 @@ public class Grid implements AdvancedDataLayer {
                 dataCopy[x][y] = data[x][y] * pp + v * q;
             } // y
         } // x
-
-        double[][] temp = data;
-        data = dataCopy;
-        readData = writeData = data;
-        dataCopy = temp;
     }
 
 
@@ -577,10 +586,31 @@ public class Grid implements AdvancedDataLayer {
     }
 
 
+    /**
+     * Swaps the data array and the auxiliary array after diffusion
+     */
+    private void swapDataCopy() {
+        double[][] temp = data;
+        data = dataCopy;
+        // TODO: is it correct?
+        readData = writeData = data;
+        dataCopy = temp;
+    }
+
+
     /**
      * Diffusion operation for the FF-topology
      */
     protected void diffuseFF(final double p) {
+        ParallelRows.process(xSize, ySize, (x0, x1) -> diffuseFF(p, x0, x1));
+        swapDataCopy();
+    }
+
+
+    /**
+     * Diffusion operation for the FF-topology for rows x0, ..., x1 - 1
+     */
+    private void diffuseFF(final double p, int x0, int x1) {
         final int xSize2 = xSize - 1;
         final int ySize2 = ySize - 1;
         final double p2 = 1 - p;
@@ -588,83 +618,78 @@ public class Grid implements AdvancedDataLayer {
 
         // TODO: it is assumed that xSize >= 2 and ySize >= 2
 
-        // Diffusion for corners
-        // (0,0)
-        double pp = p2 + 5 * q;
-        dataCopy[0][0] = data[0][0] * pp +
-                q * (data[1][0] + data[0][1] + data[1][1]);
-
-        // (xSize2,0)
-        dataCopy[xSize2][0] = data[xSize2][0] * pp +
-                q * (data[xSize2 - 1][0] + data[xSize2 - 1][1] + data[xSize2][1]);
-
-        // (xSize2,ySize2)
-        dataCopy[xSize2][ySize2] = data[xSize2][ySize2] * pp +
-                q * (data[xSize2 - 1][ySize2] + data[xSize2 - 1][ySize2 - 1] + data[xSize2][ySize2 - 1]);
-
-        // (0,ySize2)
-        dataCopy[0][ySize2] = data[0][ySize2] * pp +
-                q * (data[1][ySize2] + data[1][ySize2 - 1] + data[0][ySize2 - 1]);
-
-
-        // Diffusion for borders
-        // Left, x = 0
-        pp = p2 + 3 * q;
-
-        double[] data1 = data[0];
-        double[] data2 = data[1];
-        double[] r = dataCopy[0];
-        for (int y = 1; y < ySize2; y++) {
-            r[y] = data1[y] * pp +
-                    q * (data1[y - 1] + data1[y + 1] +
-                            data2[y - 1] + data2[y] + data2[y + 1]);
-        }
-
-        // Right, x = xSize2
-        data1 = data[xSize2];
-        data2 = data[xSize2 - 1];
-        r = dataCopy[xSize2];
-        for (int y = 1; y < ySize2; y++) {
-            r[y] = data1[y] * pp +
-                    q * (data1[y - 1] + data1[y + 1] +
-                            data2[y - 1] + data2[y] + data2[y + 1]);
-        }
-
-        // Bottom, y = 0
-        for (int x = 1; x < xSize2; x++) {
-            dataCopy[x][0] = data[x][0] * pp +
-                    q * (data[x - 1][0] + data[x + 1][0] +
-                            data[x - 1][1] + data[x][1] + data[x + 1][1]);
-        }
-
-        // Top, y = ySize2
-        for (int x = 1; x < xSize2; x++) {
-            dataCopy[x][ySize2] = data[x][ySize2] * pp +
-                    q * (data[x - 1][ySize2] + data[x + 1][ySize2] +
-                            data[x - 1][ySize2 - 1] + data[x][ySize2 - 1] + data[x + 1][ySize2 - 1]);
-        }
-
-
-        // Diffusion for the center
-        for (int x = 1; x < xSize2; x++) {
-            double[] data0 = data[x - 1];
-            data1 = data[x];
-            data2 = data[x + 1];
-            r = dataCopy[x];
-
-            for (int y = 1; y < ySize2; y++) {
-                r[y] = data1[y] * p2 +
-                        q * (data0[y - 1] + data0[y] + data0[y + 1] +
-                                data1[y - 1] + data1[y + 1] +
-                                data2[y - 1] + data2[y] + data2[y + 1]);
+        for (int x = x0; x < x1; x++) {
+            if (x == 0) {
+                // Diffusion for corners
+                // (0,0)
+                double pp = p2 + 5 * q;
+                dataCopy[0][0] = data[0][0] * pp +
+                        q * (data[1][0] + data[0][1] + data[1][1]);
+
+                // (0,ySize2)
+                dataCopy[0][ySize2] = data[0][ySize2] * pp +
+                        q * (data[1][ySize2] + data[1][ySize2 - 1] + data[0][ySize2 - 1]);
+
+                // Left border, x = 0
+                pp = p2 + 3 * q;
+
+                double[] data1 = data[0];
+                double[] data2 = data[1];
+                double[] r = dataCopy[0];
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * pp +
+                            q * (data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
+            } else if (x == xSize2) {
+                // Diffusion for corners
+                // (xSize2,0)
+                double pp = p2 + 5 * q;
+                dataCopy[xSize2][0] = data[xSize2][0] * pp +
+                        q * (data[xSize2 - 1][0] + data[xSize2 - 1][1] + data[xSize2][1]);
+
+                // (xSize2,ySize2)
+                dataCopy[xSize2][ySize2] = data[xSize2][ySize2] * pp +
+                        q * (data[xSize2 - 1][ySize2] + data[xSize2 - 1][ySize2 - 1] + data[xSize2][ySize2 - 1]);
+
+                // Right border, x = xSize2
+                pp = p2 + 3 * q;
+
+                double[] data1 = data[xSize2];
+                double[] data2 = data[xSize2 - 1];
+                double[] r = dataCopy[xSize2];
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * pp +
+                            q * (data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
+            } else {
+                double pp = p2 + 3 * q;
+
+                // Bottom, y = 0
+                dataCopy[x][0] = data[x][0] * pp +
+                        q * (data[x - 1][0] + data[x + 1][0] +
+                                data[x - 1][1] + data[x][1] + data[x + 1][1]);
+
+                // Top, y = ySize2
+                dataCopy[x][ySize2] = data[x][ySize2] * pp +
+                        q * (data[x - 1][ySize2] + data[x + 1][ySize2] +
+                                data[x - 1][ySize2 - 1] + data[x][ySize2 - 1] + data[x + 1][ySize2 - 1]);
+
+                // Diffusion for the center
+                double[] data0 = data[x - 1];
+                double[] data1 = data[x];
+                double[] data2 = data[x + 1];
+                double[] r = dataCopy[x];
+
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * p2 +
+                            q * (data0[y - 1] + data0[y] + data0[y + 1] +
+                                    data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
             }
         }
-
-        double[][] temp = data;
-        data = dataCopy;
-        // TODO: is it correct?
-        readData = writeData = data;
-        dataCopy = temp;
     }
 
 
@@ -672,6 +697,15 @@ public class Grid implements AdvancedDataLayer {
      * Diffusion operation for the FT-topology
      */
     protected void diffuseFT(final double p) {
+        ParallelRows.process(xSize, ySize, (x0, x1) -> diffuseFT(p, x0, x1));
+        swapDataCopy();
+    }
+
+
+    /**
+     * Diffusion operation for the FT-topology for rows x0, ..., x1 - 1
+     */
+    private void diffuseFT(final double p, int x0, int x1) {
         final int xSize2 = xSize - 1;
         final int ySize2 = ySize - 1;
         final double p2 = 1 - p;
@@ -679,89 +713,78 @@ public class Grid implements AdvancedDataLayer {
 
         // TODO: it is assumed that xSize >= 2 and ySize >= 2
 
-        // Diffusion for corners
-        // (0,0)
-        double pp = p2 + 3 * q;
-        dataCopy[0][0] = data[0][0] * pp +
-                q * (data[1][0] + data[0][1] + data[1][1] +
-                        data[0][ySize2] + data[1][ySize2]);
-
-        // (xSize2,0)
-        dataCopy[xSize2][0] = data[xSize2][0] * pp +
-                q * (data[xSize2 - 1][0] + data[xSize2 - 1][1] + data[xSize2][1] +
-                        data[xSize2 - 1][ySize2] + data[xSize2][ySize2]);
-
-        // (xSize2,ySize2)
-        dataCopy[xSize2][ySize2] = data[xSize2][ySize2] * pp +
-                q * (data[xSize2 - 1][ySize2] + data[xSize2 - 1][ySize2 - 1] + data[xSize2][ySize2 - 1] +
-                        data[xSize2 - 1][0] + data[xSize2][0]);
-
-        // (0,ySize2)
-        dataCopy[0][ySize2] = data[0][ySize2] * pp +
-                q * (data[1][ySize2] + data[1][ySize2 - 1] + data[0][ySize2 - 1] +
-                        data[0][0] + data[1][0]);
-
-
-        // Diffusion for borders
-        // Left, x = 0
-        pp = p2 + 3 * q;
-
-        double[] data1 = data[0];
-        double[] data2 = data[1];
-        double[] r = dataCopy[0];
-        for (int y = 1; y < ySize2; y++) {
-            r[y] = data1[y] * pp +
-                    q * (data1[y - 1] + data1[y + 1] +
-                            data2[y - 1] + data2[y] + data2[y + 1]);
-        }
-
-        // Right, x = xSize2
-        data1 = data[xSize2];
-        data2 = data[xSize2 - 1];
-        r = dataCopy[xSize2];
-        for (int y = 1; y < ySize2; y++) {
-            r[y] = data1[y] * pp +
-                    q * (data1[y - 1] + data1[y + 1] +
-                            data2[y - 1] + data2[y] + data2[y + 1]);
-        }
-
-        // Bottom, y = 0
-        for (int x = 1; x < xSize2; x++) {
-            dataCopy[x][0] = data[x][0] * p2 +
-                    q * (data[x - 1][0] + data[x + 1][0] +
-                            data[x - 1][1] + data[x][1] + data[x + 1][1] +
-                            data[x - 1][ySize2] + data[x][ySize2] + data[x + 1][ySize2]);
-        }
-
-        // Top, y = ySize2
-        for (int x = 1; x < xSize2; x++) {
-            dataCopy[x][ySize2] = data[x][ySize2] * p2 +
-                    q * (data[x - 1][ySize2] + data[x + 1][ySize2] +
-                            data[x - 1][ySize2 - 1] + data[x][ySize2 - 1] + data[x + 1][ySize2 - 1] +
-                            data[x - 1][0] + data[x][0] + data[x + 1][0]);
-        }
-
-
-        // Diffusion for the center
-        for (int x = 1; x < xSize2; x++) {
-            double[] data0 = data[x - 1];
-            data1 = data[x];
-            data2 = data[x + 1];
-            r = dataCopy[x];
-
-            for (int y = 1; y < ySize2; y++) {
-                r[y] = data1[y] * p2 +
-                        q * (data0[y - 1] + data0[y] + data0[y + 1] +
-                                data1[y - 1] + data1[y + 1] +
-                                data2[y - 1] + data2[y] + data2[y + 1]);
+        for (int x = x0; x < x1; x++) {
+            if (x == 0) {
+                // Diffusion for corners
+                // (0,0)
+                double pp = p2 + 3 * q;
+                dataCopy[0][0] = data[0][0] * pp +
+                        q * (data[1][0] + data[0][1] + data[1][1] +
+                                data[0][ySize2] + data[1][ySize2]);
+
+                // (0,ySize2)
+                dataCopy[0][ySize2] = data[0][ySize2] * pp +
+                        q * (data[1][ySize2] + data[1][ySize2 - 1] + data[0][ySize2 - 1] +
+                                data[0][0] + data[1][0]);
+
+                // Left border, x = 0
+                double[] data1 = data[0];
+                double[] data2 = data[1];
+                double[] r = dataCopy[0];
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * pp +
+                            q * (data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
+            } else if (x == xSize2) {
+                // Diffusion for corners
+                // (xSize2,0)
+                double pp = p2 + 3 * q;
+                dataCopy[xSize2][0] = data[xSize2][0] * pp +
+                        q * (data[xSize2 - 1][0] + data[xSize2 - 1][1] + data[xSize2][1] +
+                                data[xSize2 - 1][ySize2] + data[xSize2][ySize2]);
+
+                // (xSize2,ySize2)
+                dataCopy[xSize2][ySize2] = data[xSize2][ySize2] * pp +
+                        q * (data[xSize2 - 1][ySize2] + data[xSize2 - 1][ySize2 - 1] + data[xSize2][ySize2 - 1] +
+                                data[xSize2 - 1][0] + data[xSize2][0]);
+
+                // Right border, x = xSize2
+                double[] data1 = data[xSize2];
+                double[] data2 = data[xSize2 - 1];
+                double[] r = dataCopy[xSize2];
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * pp +
+                            q * (data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
+            } else {
+                // Bottom, y = 0
+                dataCopy[x][0] = data[x][0] * p2 +
+                        q * (data[x - 1][0] + data[x + 1][0] +
+                                data[x - 1][1] + data[x][1] + data[x + 1][1] +
+                                data[x - 1][ySize2] + data[x][ySize2] + data[x + 1][ySize2]);
+
+                // Top, y = ySize2
+                dataCopy[x][ySize2] = data[x][ySize2] * p2 +
+                        q * (data[x - 1][ySize2] + data[x + 1][ySize2] +
+                                data[x - 1][ySize2 - 1] + data[x][ySize2 - 1] + data[x + 1][ySize2 - 1] +
+                                data[x - 1][0] + data[x][0] + data[x + 1][0]);
+
+                // Diffusion for the center
+                double[] data0 = data[x - 1];
+                double[] data1 = data[x];
+                double[] data2 = data[x + 1];
+                double[] r = dataCopy[x];
+
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * p2 +
+                            q * (data0[y - 1] + data0[y] + data0[y + 1] +
+                                    data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
             }
         }
-
-        double[][] temp = data;
-        data = dataCopy;
-        // TODO: is it correct?
-        readData = writeData = data;
-        dataCopy = temp;
     }
 
 
@@ -769,98 +792,95 @@ public class Grid implements AdvancedDataLayer {
      * Diffusion operation for the TF-topology
      */
     protected void diffuseTF(final double p) {
+        ParallelRows.process(xSize, ySize, (x0, x1) -> diffuseTF(p, x0, x1));
+        swapDataCopy();
+    }
+
+
+    /**
+     * Diffusion operation for the TF-topology for rows x0, ..., x1 - 1
+     */
+    private void diffuseTF(final double p, int x0, int x1) {
         final int xSize2 = xSize - 1;
         final int ySize2 = ySize - 1;
         final double p2 = 1 - p;
         final double q = p / 8.0;
+        final double pp = p2 + 3 * q;
 
         // TODO: it is assumed that xSize >= 2 and ySize >= 2
 
-        // Diffusion for corners
-        // (0,0)
-        double pp = p2 + 3 * q;
-        dataCopy[0][0] = data[0][0] * pp +
-                q * (data[1][0] + data[0][1] + data[1][1] +
-                        data[xSize2][0] + data[xSize2][1]);
-
-        // (xSize2,0)
-        dataCopy[xSize2][0] = data[xSize2][0] * pp +
-                q * (data[xSize2 - 1][0] + data[xSize2 - 1][1] + data[xSize2][1] +
-                        data[0][0] + data[0][1]);
-
-        // (xSize2,ySize2)
-        dataCopy[xSize2][ySize2] = data[xSize2][ySize2] * pp +
-                q * (data[xSize2 - 1][ySize2] + data[xSize2 - 1][ySize2 - 1] + data[xSize2][ySize2 - 1] +
-                        data[0][ySize2 - 1] + data[0][ySize2]);
-
-        // (0,ySize2)
-        dataCopy[0][ySize2] = data[0][ySize2] * pp +
-                q * (data[1][ySize2] + data[1][ySize2 - 1] + data[0][ySize2 - 1] +
-                        data[xSize2][ySize2 - 1] + data[xSize2][ySize2]);
-
-
-        // Diffusion for borders
-        // Left, x = 0
-        pp = p2 + 3 * q;
-
-        double[] data0 = data[xSize2];
-        double[] data1 = data[0];
-        double[] data2 = data[1];
-        double[] r = dataCopy[0];
-        for (int y = 1; y < ySize2; y++) {
-            r[y] = data1[y] * p2 +
-                    q * (data0[y - 1] + data0[y] + data0[y + 1] +
-                            data1[y - 1] + data1[y + 1] +
-                            data2[y - 1] + data2[y] + data2[y + 1]);
-        }
-
-        // Right, x = xSize2
-        data0 = data[xSize2 - 1];
-        data1 = data[xSize2];
-        data2 = data[0];
-        r = dataCopy[xSize2];
-        for (int y = 1; y < ySize2; y++) {
-            r[y] = data1[y] * p2 +
-                    q * (data0[y - 1] + data0[y] + data0[y + 1] +
-                            data1[y - 1] + data1[y + 1] +
-                            data2[y - 1] + data2[y] + data2[y + 1]);
-        }
-
-        // Bottom, y = 0
-        for (int x = 1; x < xSize2; x++) {
-            dataCopy[x][0] = data[x][0] * pp +
-                    q * (data[x - 1][0] + data[x + 1][0] +
-                            data[x - 1][1] + data[x][1] + data[x + 1][1]);
-        }
-
-        // Top, y = ySize2
-        for (int x = 1; x < xSize2; x++) {
-            dataCopy[x][ySize2] = data[x][ySize2] * pp +
-                    q * (data[x - 1][ySize2] + data[x + 1][ySize2] +
-                            data[x - 1][ySize2 - 1] + data[x][ySize2 - 1] + data[x + 1][ySize2 - 1]);
-        }
-
-
-        // Diffusion for the center
-        for (int x = 1; x < xSize2; x++) {
-            data0 = data[x - 1];
-            data1 = data[x];
-            data2 = data[x + 1];
-            r = dataCopy[x];
-
-            for (int y = 1; y < ySize2; y++) {
-                r[y] = data1[y] * p2 +
-                        q * (data0[y - 1] + data0[y] + data0[y + 1] +
-                                data1[y - 1] + data1[y + 1] +
-                                data2[y - 1] + data2[y] + data2[y + 1]);
+        for (int x = x0; x < x1; x++) {
+            if (x == 0) {
+                // Diffusion for corners
+                // (0,0)
+                dataCopy[0][0] = data[0][0] * pp +
+                        q * (data[1][0] + data[0][1] + data[1][1] +
+                                data[xSize2][0] + data[xSize2][1]);
+
+                // (0,ySize2)
+                dataCopy[0][ySize2] = data[0][ySize2] * pp +
+                        q * (data[1][ySize2] + data[1][ySize2 - 1] + data[0][ySize2 - 1] +
+                                data[xSize2][ySize2 - 1] + data[xSize2][ySize2]);
+
+                // Left border, x = 0
+                double[] data0 = data[xSize2];
+                double[] data1 = data[0];
+                double[] data2 = data[1];
+                double[] r = dataCopy[0];
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * p2 +
+                            q * (data0[y - 1] + data0[y] + data0[y + 1] +
+                                    data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
+            } else if (x == xSize2) {
+                // Diffusion for corners
+                // (xSize2,0)
+                dataCopy[xSize2][0] = data[xSize2][0] * pp +
+                        q * (data[xSize2 - 1][0] + data[xSize2 - 1][1] + data[xSize2][1] +
+                                data[0][0] + data[0][1]);
+
+                // (xSize2,ySize2)
+                dataCopy[xSize2][ySize2] = data[xSize2][ySize2] * pp +
+                        q * (data[xSize2 - 1][ySize2] + data[xSize2 - 1][ySize2 - 1] + data[xSize2][ySize2 - 1] +
+                                data[0][ySize2 - 1] + data[0][ySize2]);
+
+                // Right border, x = xSize2
+                double[] data0 = data[xSize2 - 1];
+                double[] data1 = data[xSize2];
+                double[] data2 = data[0];
+                double[] r = dataCopy[xSize2];
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * p2 +
+                            q * (data0[y - 1] + data0[y] + data0[y + 1] +
+                                    data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
+            } else {
+                // Bottom, y = 0
+                dataCopy[x][0] = data[x][0] * pp +
+                        q * (data[x - 1][0] + data[x + 1][0] +
+                                data[x - 1][1] + data[x][1] + data[x + 1][1]);
+
+                // Top, y = ySize2
+                dataCopy[x][ySize2] = data[x][ySize2] * pp +
+                        q * (data[x - 1][ySize2] + data[x + 1][ySize2] +
+                                data[x - 1][ySize2 - 1] + data[x][ySize2 - 1] + data[x + 1][ySize2 - 1]);
+
+                // Diffusion for the center
+                double[] data0 = data[x - 1];
+                double[] data1 = data[x];
+                double[] data2 = data[x + 1];
+                double[] r = dataCopy[x];
+
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = data1[y] * p2 +
+                            q * (data0[y - 1] + data0[y] + data0[y + 1] +
+                                    data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
             }
         }
-
-        double[][] temp = data;
-        data = dataCopy;
-        // TODO: is it correct?
-        readData = writeData = data;
-        dataCopy = temp;
     }
 
 
@@ -868,6 +888,15 @@ public class Grid implements AdvancedDataLayer {
      * Diffusion operation for the TT-topology
      */
     protected void diffuseTT(final double p) {
+        ParallelRows.process(xSize, ySize, (x0, x1) -> diffuseTT(p, x0, x1));
+        swapDataCopy();
+    }
+
+
+    /**
+     * Diffusion operation for the TT-topology for rows x0, ..., x1 - 1
+     */
+    private void diffuseTT(final double p, int x0, int x1) {
         final int xSize2 = xSize - 1;
         final int ySize2 = ySize - 1;
         final double p2 = 1 - p;
@@ -875,91 +904,81 @@ public class Grid implements AdvancedDataLayer {
 
         // TODO: it is assumed that xSize >= 2 and ySize >= 2
 
-        // Diffusion for corners
-        // (0,0)
-        dataCopy[0][0] = p2 * data[0][0] +
-                q * (data[1][0] + data[1][1] + data[0][1] + data[xSize2][1] +
-                        data[xSize2][0] + data[xSize2][ySize2] + data[0][ySize2] + data[1][ySize2]);
-
-        // (xSize2,0)
-        dataCopy[xSize2][0] = p2 * data[xSize2][0] +
-                q * (data[0][0] + data[0][1] + data[xSize2][1] + data[xSize2 - 1][1] +
-                        data[xSize2 - 1][0] + data[xSize2 - 1][ySize2] + data[xSize2][ySize2] + data[0][ySize2]);
-
-        // (0,ySize2)
-        dataCopy[0][ySize2] = p2 * data[0][ySize2] +
-                q * (data[1][ySize2] + data[1][0] + data[0][0] + data[xSize2][0] +
-                        data[xSize2][ySize2] + data[xSize2][ySize2 - 1] + data[0][ySize2 - 1] + data[1][ySize2 - 1]);
-
-        // (xSize2,ySize2)
-        dataCopy[xSize2][ySize2] = p2 * data[xSize2][ySize2] +
-                q * (data[0][ySize2] + data[0][0] + data[xSize2][0] + data[xSize2 - 1][0] +
-                        data[xSize2 - 1][ySize2] + data[xSize2 - 1][ySize2 - 1] +
-                        data[xSize2][ySize2 - 1] + data[0][ySize2 - 1]);
-
-        // Diffusion for borders
-        // Left, x = 0
-
-        double[] data0 = data[xSize2];
-        double[] data1 = data[0];
-        double[] data2 = data[1];
-        double[] r = dataCopy[0];
-        for (int y = 1; y < ySize2; y++) {
-            r[y] = p2 * data1[y] +
-                    q * (data0[y - 1] + data0[y] + data0[y + 1] +
-                            data1[y - 1] + data1[y + 1] +
-                            data2[y - 1] + data2[y] + data2[y + 1]);
-        }
-
-        // Right, x = xSize2
-        data0 = data[xSize2 - 1];
-        data1 = data[xSize2];
-        data2 = data[0];
-        r = dataCopy[xSize2];
-        for (int y = 1; y < ySize2; y++) {
-            r[y] = p2 * data1[y] +
-                    q * (data0[y - 1] + data0[y] + data0[y + 1] +
-                            data1[y - 1] + data1[y + 1] +
-                            data2[y - 1] + data2[y] + data2[y + 1]);
-        }
-
-        // Bottom, y = 0
-        for (int x = 1; x < xSize2; x++) {
-            dataCopy[x][0] = p2 * data[x][0] +
-                    q * (data[x - 1][ySize2] + data[x - 1][0] + data[x - 1][1] +
-                            data[x][ySize2] + data[x][1] +
-                            data[x + 1][ySize2] + data[x + 1][0] + data[x + 1][1]);
-        }
-
-        // Top, y = ySize2
-        for (int x = 1; x < xSize2; x++) {
-            dataCopy[x][ySize2] = p2 * data[x][ySize2] +
-                    q * (data[x - 1][ySize2 - 1] + data[x - 1][ySize2] + data[x - 1][0] +
-                            data[x][ySize2 - 1] + data[x][0] +
-                            data[x + 1][ySize2 - 1] + data[x + 1][ySize2] + data[x + 1][0]);
-        }
-
-
-        // Diffusion for the center
-        for (int x = 1; x < xSize2; x++) {
-            data0 = data[x - 1];
-            data1 = data[x];
-            data2 = data[x + 1];
-            r = dataCopy[x];
-
-            for (int y = 1; y < ySize2; y++) {
-                r[y] = p2 * data1[y] +
-                        q * (data0[y - 1] + data0[y] + data0[y + 1] +
-                                data1[y - 1] + data1[y + 1] +
-                                data2[y - 1] + data2[y] + data2[y + 1]);
+        for (int x = x0; x < x1; x++) {
+            if (x == 0) {
+                // Diffusion for corners
+                // (0,0)
+                dataCopy[0][0] = p2 * data[0][0] +
+                        q * (data[1][0] + data[1][1] + data[0][1] + data[xSize2][1] +
+                                data[xSize2][0] + data[xSize2][ySize2] + data[0][ySize2] + data[1][ySize2]);
+
+                // (0,ySize2)
+                dataCopy[0][ySize2] = p2 * data[0][ySize2] +
+                        q * (data[1][ySize2] + data[1][0] + data[0][0] + data[xSize2][0] +
+                                data[xSize2][ySize2] + data[xSize2][ySize2 - 1] + data[0][ySize2 - 1] + data[1][ySize2 - 1]);
+
+                // Left border, x = 0
+                double[] data0 = data[xSize2];
+                double[] data1 = data[0];
+                double[] data2 = data[1];
+                double[] r = dataCopy[0];
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = p2 * data1[y] +
+                            q * (data0[y - 1] + data0[y] + data0[y + 1] +
+                                    data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
+            } else if (x == xSize2) {
+                // Diffusion for corners
+                // (xSize2,0)
+                dataCopy[xSize2][0] = p2 * data[xSize2][0] +
+                        q * (data[0][0] + data[0][1] + data[xSize2][1] + data[xSize2 - 1][1] +
+                                data[xSize2 - 1][0] + data[xSize2 - 1][ySize2] + data[xSize2][ySize2] + data[0][ySize2]);
+
+                // (xSize2,ySize2)
+                dataCopy[xSize2][ySize2] = p2 * data[xSize2][ySize2] +
+                        q * (data[0][ySize2] + data[0][0] + data[xSize2][0] + data[xSize2 - 1][0] +
+                                data[xSize2 - 1][ySize2] + data[xSize2 - 1][ySize2 - 1] +
+                                data[xSize2][ySize2 - 1] + data[0][ySize2 - 1]);
+
+                // Right border, x = xSize2
+                double[] data0 = data[xSize2 - 1];
+                double[] data1 = data[xSize2];
+                double[] data2 = data[0];
+                double[] r = dataCopy[xSize2];
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = p2 * data1[y] +
+                            q * (data0[y - 1] + data0[y] + data0[y + 1] +
+                                    data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
+            } else {
+                // Bottom, y = 0
+                dataCopy[x][0] = p2 * data[x][0] +
+                        q * (data[x - 1][ySize2] + data[x - 1][0] + data[x - 1][1] +
+                                data[x][ySize2] + data[x][1] +
+                                data[x + 1][ySize2] + data[x + 1][0] + data[x + 1][1]);
+
+                // Top, y = ySize2
+                dataCopy[x][ySize2] = p2 * data[x][ySize2] +
+                        q * (data[x - 1][ySize2 - 1] + data[x - 1][ySize2] + data[x - 1][0] +
+                                data[x][ySize2 - 1] + data[x][0] +
+                                data[x + 1][ySize2 - 1] + data[x + 1][ySize2] + data[x + 1][0]);
+
+                // Diffusion for the center
+                double[] data0 = data[x - 1];
+                double[] data1 = data[x];
+                double[] data2 = data[x + 1];
+                double[] r = dataCopy[x];
+
+                for (int y = 1; y < ySize2; y++) {
+                    r[y] = p2 * data1[y] +
+                            q * (data0[y - 1] + data0[y] + data0[y + 1] +
+                                    data1[y - 1] + data1[y + 1] +
+                                    data2[y - 1] + data2[y] + data2[y + 1]);
+                }
             }
         }
-
-        double[][] temp = data;
-        data = dataCopy;
-        // TODO: is it correct?
-        readData = writeData = data;
-        dataCopy = temp;
     }
 
 
@@ -42,6 +42,9 @@ public class Grid3d implements AdvancedDataLayer {
 
     // Data stored in the grid
     protected double[][][] data;
+
+    protected double[][][] readData;
+    protected double[][][] writeData;
     // Auxiliary array for some computations
     private double[][][] dataCopy;
 
@@ -104,6 +107,8 @@ public class Grid3d implements AdvancedDataLayer {
         this.zMax = space.getZMax();
 
         data = new double[xSize][ySize][zSize];
+        readData = data;
+        writeData = data;
     }
 
     /**
@@ -392,22 +397,27 @@ public class Grid3d implements AdvancedDataLayer {
     // ************************************
 
     public double getValue(Vector p) {
-        return data[findX(p.x)][findY(p.y)][findZ(p.z)];
+        return readData[findX(p.x)][findY(p.y)][findZ(p.z)];
     }
 
     public double addValue(Vector p, double value) {
-        return data[findX(p.x)][findY(p.y)][findZ(p.z)] += value;
+        int x = findX(p.x);
+        int y = findY(p.y);
+        int z = findZ(p.z);
+
+        writeData[x][y][z] += value;
+        return readData[x][y][z];
     }
 
     public void setValue(Vector p, double value) {
-        data[findX(p.x)][findY(p.y)][findZ(p.z)] = value;
+        writeData[findX(p.x)][findY(p.y)][findZ(p.z)] = value;
     }
 
     public void setValue(double value) {
         for (int i = 0; i < xSize; i++)
             for (int j = 0; j < ySize; j++)
                 for (int k = 0; k < zSize; k++)
-                    data[i][j][k] = value;
+                    writeData[i][j][k] = value;
     }
 
     /**
@@ -421,7 +431,7 @@ public class Grid3d implements AdvancedDataLayer {
         int y = findY(p.y);
         int z = findZ(p.z);
 
-        double v = data[x][y][z];
+        double v = readData[x][y][z];
         int x1 = 0, y1 = 0, z1 = 0;
 
         for (int k = -1; k <= 1; k++)
@@ -468,11 +478,11 @@ public class Grid3d implements AdvancedDataLayer {
                     }
 
 
-                    if (data[xx][yy][zz] > v) {
+                    if (readData[xx][yy][zz] > v) {
                         x1 = i;
                         y1 = j;
                         z1 = k;
-                        v = data[xx][yy][zz];
+                        v = readData[xx][yy][zz];
                     }
                 }
             }
@@ -499,9 +509,9 @@ public class Grid3d implements AdvancedDataLayer {
         int z0 = restrictZ(z - 1);
         int z1 = restrictZ(z + 1);
 
-        double dx = data[x1][y][z] - data[x0][y][z];
-        double dy = data[x][y1][z] - data[x][y0][z];
-        double dz = data[x][y][z1] - data[x][y][z0];
+        double dx = readData[x1][y][z] - readData[x0][y][z];
+        double dy = readData[x][y1][z] - readData[x][y0][z];
+        double dz = readData[x][y][z1] - readData[x][y][z0];
 
         return new Vector(dx / (2 * xStep), dy / (2 * yStep), dz / (2 * zStep));
     }
@@ -512,7 +522,7 @@ public class Grid3d implements AdvancedDataLayer {
         int y = findY(p.y);
         int z = findZ(p.z);
 
-        double v = data[x][y][z];
+        double v = readData[x][y][z];
         int x1 = 0, y1 = 0, z1 = 0;
 
         for (int i = -1; i <= 1; i++)
@@ -558,15 +568,15 @@ public class Grid3d implements AdvancedDataLayer {
                             zz = zSize - 1;
                     }
 
-                    if (data[xx][yy][zz] > v) {
+                    if (readData[xx][yy][zz] > v) {
                         x1 = i;
                         y1 = j;
                         z1 = k;
-                        v = data[xx][yy][zz];
+                        v = readData[xx][yy][zz];
                     }
                 }
 
-        double dv = v - data[x][y][z];
+        double dv = v - readData[x][y][z];
         return new Vector(x1 * dv, y1 * dv, z1 * dv);
     }
 
@@ -592,7 +602,7 @@ public class Grid3d implements AdvancedDataLayer {
         for (int i = xBorder; i < xSize2; i++)
             for (int j = yBorder; j < ySize2; j++)
                 for (int k = zBorder; k < zSize2; k++)
-                    v += data[i][j][k];
+                    v += readData[i][j][k];
 
         return v;
     }
@@ -608,7 +618,7 @@ public class Grid3d implements AdvancedDataLayer {
                 v.z = zMin + zStep / 2;
 
                 for (int k = 0; k < zSize; k++, v.z += zStep)
-                    data[i][j][k] = f.getValue(v);
+                    writeData[i][j][k] = f.getValue(v);
             }
         }
     }
@@ -625,7 +635,7 @@ public class Grid3d implements AdvancedDataLayer {
         for (int i = xBorder; i < xSize2; i++)
             for (int j = yBorder; j < ySize2; j++)
                 for (int k = zBorder; k < zSize2; k++)
-                    data[i][j][k] *= value;
+                    writeData[i][j][k] *= value;
     }
 
     public void add(double value) {
@@ -636,7 +646,7 @@ public class Grid3d implements AdvancedDataLayer {
         for (int i = xBorder; i < xSize2; i++)
             for (int j = yBorder; j < ySize2; j++)
                 for (int k = zBorder; k < zSize2; k++)
-                    data[i][j][k] += value;
+                    writeData[i][j][k] += value;
     }
 
     // TODO: implement with 3d matrix
@@ -705,40 +715,45 @@ public class Grid3d implements AdvancedDataLayer {
         convolution(diffusion);
     }
 
-    public void diffuse(double p) {
+    public void diffuse(final double p) {
         assert (0 <= p && p <= 1);
 
+        // Create a temporary buffer for diffused data
+        final boolean clear = dataCopy != null;
+        if (dataCopy == null)
+            dataCopy = new double[xSize][ySize][zSize];
+
+        ParallelRows.process(xSize, ySize * zSize, (x0, x1) -> diffuse(p, clear, x0, x1));
+
+        double[][][] temp = data;
+        data = dataCopy;
+        readData = writeData = data;
+        dataCopy = temp;
+    }
+
+
+    /**
+     * Diffusion operation for x-slices x0, ..., x1 - 1
+     */
+    private void diffuse(double p, boolean clear, int x0, int x1) {
         double q = p / 26;
         // TODO: better implementation with borders (and without them)
         int xSize2 = xSize - xBorder;
         int ySize2 = ySize - yBorder;
         int zSize2 = zSize - zBorder;
 
-        // Create a temporary buffer for diffused data
-        if (dataCopy == null)
-            dataCopy = new double[xSize][ySize][zSize];
-        else {
+        if (clear) {
             // Fill it with zeros
-            for (int i = xBorder; i < xSize2; i++)
+            for (int i = Math.max(x0, xBorder); i < Math.min(x1, xSize2); i++)
                 for (int j = yBorder; j < ySize2; j++)
                     for (int k = zBorder; k < zSize2; k++)
                         dataCopy[i][j][k] = 0;
 
             // TODO: implement this for all borders
             // The border values should be unchanged
-            /*
-             * for (int i = 0; i < xBorder; i++) { for (int j = 0; j < ySize;
-             * j++) { for (int k = 0; k < zSize; k++) { dataCopy[i][j] =
-             * data[i][j]; dataCopy[i + xSize2][j] = data[i + xSize2][j]; } } }
-             *
-             * for (int i = 0; i < xSize; i++) { for (int j = 0; j < yBorder;
-             * j++) { dataCopy[i][j] = data[i][j]; dataCopy[i][j + ySize2] =
-             * data[i][j + ySize2]; } }
-             */
-
         }
 
-        for (int x = xBorder; x < xSize2; x++) {
+        for (int x = Math.max(x0, xBorder); x < Math.min(x1, xSize2); x++) {
             for (int y = yBorder; y < ySize2; y++) {
                 for (int z = yBorder; z < zSize2; z++) {
                     double v = data[x][y][z] * (1 - p);
@@ -796,10 +811,6 @@ public class Grid3d implements AdvancedDataLayer {
                 }
             }
         }
-
-        double[][][] temp = data;
-        data = dataCopy;
-        dataCopy = temp;
     }
 
     // TODO: zMin and zMax should be arguments
@@ -818,7 +829,7 @@ public class Grid3d implements AdvancedDataLayer {
         for (int i = x0; i <= x1; i++)
             for (int j = y0; j <= y1; j++)
                 for (int k = z0; k <= z1; k++)
-                    val += data[i][j][k];
+                    val += readData[i][j][k];
 
         return val;
     }
@@ -834,13 +845,13 @@ public class Grid3d implements AdvancedDataLayer {
             if (filterGrid.xSize == this.xSize
                     && filterGrid.ySize == this.ySize
                     && filterGrid.zSize == this.zSize) {
-                double[][][] filterData = filterGrid.data;
+                double[][][] filterData = filterGrid.readData;
 
                 for (int i = 0; i < xSize; i++)
                     for (int j = 0; j < ySize; j++) {
                         for (int k = 0; k < zSize; k++) {
                             if (filterData[i][j][k] == val)
-                                v += data[i][j][k];
+                                v += readData[i][j][k];
                         }
                     }
             }
@@ -854,23 +865,23 @@ public class Grid3d implements AdvancedDataLayer {
 
     // TODO z should be an argument
     public double getValue(int x, int y) {
-        return data[x][y][0];
+        return readData[x][y][0];
     }
 
     // TODO: z should be an argument
     public void setValue(int x, int y, double value) {
-        data[x][y][0] = value;
+        writeData[x][y][0] = value;
     }
 
 
     public double getMax() {
-        double max = data[0][0][0];
+        double max = readData[0][0][0];
 
         for (int k = 0; k < zSize; k++)
             for (int i = 0; i < xSize; i++)
                 for (int j = 0; j < ySize; j++) {
-                    if (data[i][j][k] > max)
-                        max = data[i][j][k];
+                    if (readData[i][j][k] > max)
+                        max = readData[i][j][k];
                 }
 
         return max;
@@ -878,13 +889,13 @@ public class Grid3d implements AdvancedDataLayer {
 
 
     public double getMin() {
-        double min = data[0][0][0];
+        double min = readData[0][0][0];
 
         for (int k = 0; k < zSize; k++)
             for (int i = 0; i < xSize; i++)
                 for (int j = 0; j < ySize; j++) {
-                    if (data[i][j][k] < min)
-                        min = data[i][j][k];
+                    if (readData[i][j][k] < min)
+                        min = readData[i][j][k];
                 }
 
         return min;
@@ -0,0 +1,225 @@
+package org.sparkabm.data;
+
+import org.sparkabm.math.Function;
+import org.sparkabm.space.Space;
+import org.sparkabm.math.Vector;
+
+
+/**
+ * Implementation of the 3d-grid for the concurrent execution mode.
+ * Two persistent buffers are used (as in Grid_concurrent). If dirty row
+ * tracking is enabled then only changed x-slices are copied at the
+ * beginning of a step.
+ *
+ * @author Monad
+ */
+public class Grid3d_concurrent extends Grid3d {
+    /**
+     * Serial version UID
+     */
+    private static final long serialVersionUID = -2101815683338236571L;
+
+    // If true then only changed slices are copied at the beginning of a step
+    private boolean trackDirtyRows;
+
+    // The buffer which receives writes during the next step
+    private transient double[][][] backData;
+    // The data array after the last step (for detecting replaced arrays)
+    private transient double[][][] lastData;
+
+    // Slices which are changed after the last synchronization of buffers
+    private transient boolean[] dirtyRows;
+    private transient int[] dirtyList;
+    private transient int dirtyCount;
+    // If true then all slices should be copied
+    private transient boolean allDirty;
+
+
+    /**
+     * Basic constructor
+     *
+     * @param space
+     * @param xSize
+     * @param ySize
+     * @param zSize
+     */
+    protected Grid3d_concurrent(Space space, int xSize, int ySize, int zSize) {
+        super(space, xSize, ySize, zSize);
+    }
+
+
+    /**
+     * Enables or disables dirty row (x-slice) tracking.
+     * Changes made directly in the array returned by getData()
+     * are not tracked.
+     *
+     * @param flag
+     */
+    public void setDirtyRowTracking(boolean flag) {
+        if (flag && !trackDirtyRows) {
+            dirtyRows = new boolean[xSize];
+            dirtyList = new int[xSize];
+            dirtyCount = 0;
+            allDirty = true;
+        }
+
+        trackDirtyRows = flag;
+    }
+
+
+    /**
+     * Returns true if dirty row tracking is enabled
+     *
+     * @return
+     */
+    public boolean isDirtyRowTracking() {
+        return trackDirtyRows;
+    }
+
+
+    /**
+     * Marks the x-slice as changed
+     *
+     * @param x
+     */
+    protected final void markRow(int x) {
+        if (!trackDirtyRows || allDirty)
+            return;
+
+        if (dirtyRows == null) {
+            // After deserialization
+            dirtyRows = new boolean[xSize];
+            dirtyList = new int[xSize];
+            allDirty = true;
+            return;
+        }
+
+        if (!dirtyRows[x]) {
+            dirtyRows[x] = true;
+            dirtyList[dirtyCount++] = x;
+        }
+    }
+
+
+    /**
+     * Marks all slices as changed
+     */
+    protected final void markAll() {
+        allDirty = true;
+    }
+
+
+    @Override
+    public double addValue(Vector p, double value) {
+        double v = super.addValue(p, value);
+        markRow(findX(p.x));
+        return v;
+    }
+
+
+    @Override
+    public void setValue(Vector p, double value) {
+        super.setValue(p, value);
+        markRow(findX(p.x));
+    }
+
+
+    @Override
+    public void setValue(int x, int y, double value) {
+        super.setValue(x, y, value);
+        markRow(x);
+    }
+
+
+    @Override
+    public void setValue(double value) {
+        super.setValue(value);
+        markAll();
+    }
+
+
+    @Override
+    public void setValue(Function f) {
+        super.setValue(f);
+        markAll();
+    }
+
+
+    @Override
+    public void multiply(double value) {
+        super.multiply(value);
+        markAll();
+    }
+
+
+    @Override
+    public void add(double value) {
+        super.add(value);
+        markAll();
+    }
+
+
+    /**
+     * Copies the x-slice of data into the back buffer
+     *
+     * @param i
+     */
+    private void copySlice(int i) {
+        double[][] src = data[i];
+        double[][] dst = backData[i];
+
+        for (int j = 0; j < ySize; j++) {
+            System.arraycopy(src[j], 0, dst[j], 0, zSize);
+        }
+    }
+
+
+    @Override
+    public void beginStep() {
+        if (backData == null || backData == data) {
+            backData = new double[xSize][ySize][zSize];
+            allDirty = true;
+        }
+
+        // The data array was replaced (by diffuse(), for instance)
+        if (data != lastData)
+            allDirty = true;
+
+        // Synchronize the buffers
+        if (!trackDirtyRows || allDirty || dirtyRows == null) {
+            for (int i = 0; i < xSize; i++)
+                copySlice(i);
+        } else {
+            for (int k = 0; k < dirtyCount; k++)
+                copySlice(dirtyList[k]);
+        }
+
+        if (dirtyRows != null) {
+            for (int k = 0; k < dirtyCount; k++)
+                dirtyRows[dirtyList[k]] = false;
+        }
+
+        dirtyCount = 0;
+        allDirty = false;
+
+        readData = data;
+        writeData = backData;
+    }
+
+
+    @Override
+    public void endStep() {
+        if (readData != writeData) {
+            // Swap the buffers
+            backData = readData;
+            data = writeData;
+        } else {
+            // The buffers were replaced during the step
+            data = writeData;
+            allDirty = true;
+        }
+
+        readData = writeData = data;
+        lastData = data;
+    }
+}
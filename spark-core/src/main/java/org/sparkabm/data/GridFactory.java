@@ -13,6 +13,67 @@ import org.sparkabm.space.Space;
  * @author Monad
  */
 public class GridFactory {
+    /**
+     * Implementations of grids in the parallel mode
+     */
+    public enum ParallelStrategy {
+        /* All writes are synchronized (Grid_parallel) */
+        LOCK,
+        /* Added values are accumulated in per-thread buffers and
+           other writes use striped locks (Grid_parallelDelta) */
+        DELTA
+    }
+
+    /* The default strategy of grids in the parallel mode */
+    private static ParallelStrategy parallelStrategy = ParallelStrategy.LOCK;
+
+
+    /**
+     * Sets the default strategy for grids created in the parallel mode
+     *
+     * @param strategy
+     */
+    public static void setParallelStrategy(ParallelStrategy strategy) {
+        if (strategy == null)
+            strategy = ParallelStrategy.LOCK;
+
+        parallelStrategy = strategy;
+    }
+
+
+    /**
+     * Returns the default strategy for grids created in the parallel mode
+     *
+     * @return
+     */
+    public static ParallelStrategy getParallelStrategy() {
+        return parallelStrategy;
+    }
+
+
+    /**
+     * Sets the minimal number of grid cells for which diffusion
+     * is computed in parallel (in blocks of rows on the shared pool).
+     * Results do not depend on the number of threads.
+     *
+     * @param cells 0 to always use the parallel diffusion,
+     *              Integer.MAX_VALUE to never use it
+     */
+    public static void setParallelDiffusionThreshold(int cells) {
+        ParallelRows.setThreshold(cells);
+    }
+
+
+    /**
+     * Returns the minimal number of grid cells for parallel diffusion
+     *
+     * @return
+     */
+    public static int getParallelDiffusionThreshold() {
+        return ParallelRows.getThreshold();
+    }
+
+
     /**
      * Creates a 2d-grid of the specific size in the default space
      *
@@ -46,6 +107,21 @@ public class GridFactory {
      * @return
      */
     public static Grid createGrid(Space space, int xSize, int ySize) {
+        return createGrid(space, xSize, ySize, parallelStrategy);
+    }
+
+
+    /**
+     * Creates a 2d-grid of the specific size in the given space.
+     * The strategy defines the grid implementation in the parallel mode.
+     *
+     * @param space
+     * @param xSize
+     * @param ySize
+     * @param parallelStrategy
+     * @return
+     */
+    public static Grid createGrid(Space space, int xSize, int ySize, ParallelStrategy parallelStrategy) {
         if (!(space instanceof BoundedSpace)) {
             throw new Error("A 2d-grid cannot be created in the given space: " + space);
         }
@@ -60,6 +136,9 @@ public class GridFactory {
                 return new Grid_concurrent(space, xSize, ySize);
 
             case ExecutionMode.PARALLEL_MODE:
+                if (parallelStrategy == ParallelStrategy.DELTA)
+                    return new Grid_parallelDelta(space, xSize, ySize);
+
                 return new Grid_parallel(space, xSize, ySize);
         }
 
@@ -86,8 +165,8 @@ public class GridFactory {
             case ExecutionMode.SERIAL_MODE:
                 return new Grid3d(space, xSize, ySize, zSize);
 
-//		case ExecutionMode.CONCURRENT_MODE:
-//			return new Grid3d_concurrent(space, xSize, ySize);
+            case ExecutionMode.CONCURRENT_MODE:
+                return new Grid3d_concurrent(space, xSize, ySize, zSize);
 
 //		case ExecutionMode.PARALLEL_MODE:
 //			return new Grid3d_parallel(space, xSize, ySize);
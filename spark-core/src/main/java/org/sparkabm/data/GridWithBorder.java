@@ -633,42 +633,50 @@ public class GridWithBorder implements AdvancedDataLayer {
     }
 
 
-    public void diffuse(double p) {
+    public void diffuse(final double p) {
         assert (0 <= p && p <= 1);
 
+        // Create a temporary buffer for diffused data
+        // (borders of a new buffer are not initialized)
+        final boolean copyBorders = dataCopy != null;
+        if (dataCopy == null)
+            dataCopy = new double[xSize][ySize];
+
+        ParallelRows.process(xSize, ySize, (x0, x1) -> diffuse(p, copyBorders, x0, x1));
+
+        double[][] temp = data;
+        data = dataCopy;
+        // TODO: is it correct?
+        readData = writeData = data;
+        dataCopy = temp;
+    }
+
+
+    /**
+     * Diffusion operation for rows x0, ..., x1 - 1
+     */
+    private void diffuse(double p, boolean copyBorders, int x0, int x1) {
         double q = p / 8;
         // TODO: better implementation with borders (and without them)
         int xSize2 = xSize - xBorder;
         int ySize2 = ySize - yBorder;
 
-        // Create a temporary buffer for diffused data
-        if (dataCopy == null)
-            dataCopy = new double[xSize][ySize];
-        else {
-            // Fill it with zeros
-            for (int i = xBorder; i < xSize2; i++)
-                for (int j = yBorder; j < ySize2; j++)
-                    dataCopy[i][j] = 0;
-
-            // The border values should be unchanged
-            for (int i = 0; i < xBorder; i++) {
-                for (int j = 0; j < ySize; j++) {
-                    dataCopy[i][j] = data[i][j];
-                    dataCopy[i + xSize2][j] = data[i + xSize2][j];
+        if (copyBorders) {
+            for (int x = x0; x < x1; x++) {
+                // The border values should be unchanged
+                if (x < xBorder || x >= xSize2) {
+                    System.arraycopy(data[x], 0, dataCopy[x], 0, ySize);
+                    continue;
                 }
-            }
 
-            for (int i = 0; i < xSize; i++) {
                 for (int j = 0; j < yBorder; j++) {
-                    dataCopy[i][j] = data[i][j];
-                    dataCopy[i][j + ySize2] = data[i][j + ySize2];
+                    dataCopy[x][j] = data[x][j];
+                    dataCopy[x][j + ySize2] = data[x][j + ySize2];
                 }
             }
-
         }
 
-
-        for (int x = xBorder; x < xSize2; x++) {
+        for (int x = Math.max(x0, xBorder); x < Math.min(x1, xSize2); x++) {
             for (int y = yBorder; y < ySize2; y++) {
                 double v = data[x][y] * (1 - p);
 //				dataCopy[x][y] += data[x][y] * (1 - p);
@@ -693,12 +701,6 @@ public class GridWithBorder implements AdvancedDataLayer {
                 dataCopy[x][y] = v;
             }
         }
-
-        double[][] temp = data;
-        data = dataCopy;
-        // TODO: is it correct?
-        readData = writeData = data;
-        dataCopy = temp;
     }
 
 
@@ -1,10 +1,16 @@
 package org.sparkabm.data;
 
+import org.sparkabm.math.Function;
 import org.sparkabm.space.Space;
+import org.sparkabm.math.Vector;
 
 
 /**
- * Implementation of the grid for the concurrent execution mode
+ * Implementation of the grid for the concurrent execution mode.
+ * Two persistent buffers are used: values are read from one buffer
+ * and written into another buffer during a step, the buffers are swapped
+ * at the end of the step. If dirty row tracking is enabled then only
+ * changed rows are copied between buffers at the beginning of a step.
  *
  * @author Monad
  */
@@ -14,6 +20,21 @@ public class Grid_concurrent extends Grid {
      */
     private static final long serialVersionUID = 7481145279817269519L;
 
+    // If true then only changed rows are copied at the beginning of a step
+    private boolean trackDirtyRows;
+
+    // The buffer which receives writes during the next step
+    private transient double[][] backData;
+    // The data array after the last step (for detecting replaced arrays)
+    private transient double[][] lastData;
+
+    // Rows which are changed after the last synchronization of buffers
+    private transient boolean[] dirtyRows;
+    private transient int[] dirtyList;
+    private transient int dirtyCount;
+    // If true then all rows should be copied
+    private transient boolean allDirty;
+
 
     /**
      * Basic constructor
@@ -27,21 +48,180 @@ public class Grid_concurrent extends Grid {
     }
 
 
+    /**
+     * Enables or disables dirty row tracking.
+     * If enabled then rows which are not changed during a step are not
+     * copied at the beginning of the next step. Changes made directly
+     * in the array returned by getData() are not tracked, so this mode
+     * should not be used if the data array is modified directly.
+     *
+     * @param flag
+     */
+    public void setDirtyRowTracking(boolean flag) {
+        if (flag && !trackDirtyRows) {
+            dirtyRows = new boolean[xSize];
+            dirtyList = new int[xSize];
+            dirtyCount = 0;
+            allDirty = true;
+        }
+
+        trackDirtyRows = flag;
+    }
+
+
+    /**
+     * Returns true if dirty row tracking is enabled
+     *
+     * @return
+     */
+    public boolean isDirtyRowTracking() {
+        return trackDirtyRows;
+    }
+
+
+    /**
+     * Marks the row as changed
+     *
+     * @param x
+     */
+    protected final void markRow(int x) {
+        if (!trackDirtyRows || allDirty)
+            return;
+
+        if (dirtyRows == null) {
+            // After deserialization
+            dirtyRows = new boolean[xSize];
+            dirtyList = new int[xSize];
+            allDirty = true;
+            return;
+        }
+
+        if (!dirtyRows[x]) {
+            // Rows can be marked by several threads in the parallel mode
+            synchronized (dirtyList) {
+                if (!dirtyRows[x]) {
+                    dirtyList[dirtyCount++] = x;
+                    dirtyRows[x] = true;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Marks all rows as changed
+     */
+    protected final void markAll() {
+        allDirty = true;
+    }
+
+
+    @Override
+    public double addValue(Vector p, double value) {
+        double v = super.addValue(p, value);
+        markRow(findX(p.x));
+        return v;
+    }
+
+
+    @Override
+    public void setValue(Vector p, double value) {
+        super.setValue(p, value);
+        markRow(findX(p.x));
+    }
+
+
+    @Override
+    public void setValue(int x, int y, double value) {
+        super.setValue(x, y, value);
+        markRow(x);
+    }
+
+
+    @Override
+    public void addValue(int x, int y, double value) {
+        super.addValue(x, y, value);
+        markRow(x);
+    }
+
+
+    @Override
+    public void setValue(double value) {
+        super.setValue(value);
+        markAll();
+    }
+
+
+    @Override
+    public void setValue(Function f) {
+        super.setValue(f);
+        markAll();
+    }
+
+
+    @Override
+    public void multiply(double value) {
+        super.multiply(value);
+        markAll();
+    }
+
+
+    @Override
+    public void add(double value) {
+        super.add(value);
+        markAll();
+    }
+
+
     @Override
     public void beginStep() {
-        writeData = new double[xSize][ySize];
+        if (backData == null || backData == data) {
+            backData = new double[xSize][ySize];
+            allDirty = true;
+        }
+
+        // The data array was replaced (by diffuse(), for instance)
+        if (data != lastData)
+            allDirty = true;
+
+        // Synchronize the buffers
+        if (!trackDirtyRows || allDirty || dirtyRows == null) {
+            for (int i = 0; i < xSize; i++) {
+                System.arraycopy(data[i], 0, backData[i], 0, ySize);
+            }
+        } else {
+            for (int k = 0; k < dirtyCount; k++) {
+                int i = dirtyList[k];
+                System.arraycopy(data[i], 0, backData[i], 0, ySize);
+            }
+        }
 
-        // Create a copy of the existing data
-        for (int i = 0; i < xSize; i++) {
-            System.arraycopy(data[i], 0, writeData[i], 0, ySize);
+        if (dirtyRows != null) {
+            for (int k = 0; k < dirtyCount; k++)
+                dirtyRows[dirtyList[k]] = false;
         }
 
+        dirtyCount = 0;
+        allDirty = false;
+
         readData = data;
+        writeData = backData;
     }
 
 
     @Override
     public void endStep() {
-        readData = data = writeData;
+        if (readData != writeData) {
+            // Swap the buffers
+            backData = readData;
+            data = writeData;
+        } else {
+            // The buffers were replaced during the step
+            data = writeData;
+            allDirty = true;
+        }
+
+        readData = writeData = data;
+        lastData = data;
     }
 }
@@ -43,6 +43,7 @@ public class Grid_parallel extends Grid_concurrent {
 
         synchronized (writeData) {
             writeData[x][y] += value;
+            markRow(x);
         }
 
         return readData[x][y];
@@ -58,6 +59,7 @@ public class Grid_parallel extends Grid_concurrent {
 
         synchronized (writeData) {
             writeData[x][y] = value;
+            markRow(x);
         }
     }
 
@@ -67,6 +69,8 @@ public class Grid_parallel extends Grid_concurrent {
             for (int i = 0; i < xSize; i++)
                 for (int j = 0; j < ySize; j++)
                     writeData[i][j] = value;
+
+            markAll();
         }
     }
 
@@ -83,6 +87,8 @@ public class Grid_parallel extends Grid_concurrent {
                     writeData[i][j] = f.getValue(v);
                 }
             }
+
+            markAll();
         }
     }
 
@@ -97,6 +103,8 @@ public class Grid_parallel extends Grid_concurrent {
                 for (int j = 0; j < ySize; j++)
                     data[j] *= value;
             }
+
+            markAll();
         }
     }
 
@@ -108,6 +116,8 @@ public class Grid_parallel extends Grid_concurrent {
                 for (int j = 0; j < ySize; j++)
                     data[j] += value;
             }
+
+            markAll();
         }
     }
 
@@ -115,6 +125,15 @@ public class Grid_parallel extends Grid_concurrent {
     public void setValue(int x, int y, double value) {
         synchronized (writeData) {
             writeData[x][y] = value;
+            markRow(x);
+        }
+    }
+
+
+    public void addValue(int x, int y, double value) {
+        synchronized (writeData) {
+            writeData[x][y] += value;
+            markRow(x);
         }
     }
 
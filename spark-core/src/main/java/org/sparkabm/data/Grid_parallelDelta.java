@@ -0,0 +1,296 @@
+package org.sparkabm.data;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.sparkabm.core.ObserverFactory;
+import org.sparkabm.math.Function;
+import org.sparkabm.space.Space;
+import org.sparkabm.math.Vector;
+
+/**
+ * Implementation of the grid for the parallel execution mode
+ * without a global lock. Each thread accumulates added values in its own
+ * delta buffer, all buffers are added to the grid at the end of a step.
+ * Values which are set directly are protected by striped row locks.
+ * Added values are applied after all set operations of the same step.
+ *
+ * @author Monad
+ */
+public class Grid_parallelDelta extends Grid_concurrent {
+    /**
+     * Serial version UID
+     */
+    private static final long serialVersionUID = -3482290766106353473L;
+
+    // The number of row locks (a power of 2)
+    private static final int STRIPES = 64;
+
+    /**
+     * Values added by one thread
+     */
+    private static final class Delta {
+        // Rows are created when they are changed for the first time
+        final double[][] values;
+        // Changed rows
+        final boolean[] touched;
+        final int[] rows;
+        int count;
+        // The thread which owns the buffer
+        final WeakReference<Thread> owner;
+
+        Delta(int xSize) {
+            values = new double[xSize][];
+            touched = new boolean[xSize];
+            rows = new int[xSize];
+            owner = new WeakReference<Thread>(Thread.currentThread());
+        }
+
+        /**
+         * Returns true if the owner thread is terminated
+         */
+        boolean isDead() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+
+    // Row locks
+    private transient Object[] locks;
+    // Delta buffers of all threads
+    private transient ArrayList<Delta> deltas;
+    private transient ThreadLocal<Delta> localDelta;
+    // The pool of the threads which own delta buffers
+    private transient ForkJoinPool pool;
+    // True between beginStep() and endStep()
+    private transient volatile boolean inStep;
+
+
+    /**
+     * Basic constructor
+     *
+     * @param space
+     * @param xSize
+     * @param ySize
+     */
+    protected Grid_parallelDelta(Space space, int xSize, int ySize) {
+        super(space, xSize, ySize);
+        init();
+    }
+
+
+    /**
+     * Initializes auxiliary objects
+     */
+    private void init() {
+        locks = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            locks[i] = new Object();
+
+        deltas = new ArrayList<Delta>();
+        localDelta = new ThreadLocal<Delta>();
+    }
+
+
+    /**
+     * Returns the delta buffer of the current thread
+     *
+     * @return
+     */
+    private Delta getDelta() {
+        Delta delta = localDelta.get();
+        if (delta == null) {
+            delta = new Delta(xSize);
+            localDelta.set(delta);
+
+            synchronized (deltas) {
+                deltas.add(delta);
+            }
+        }
+
+        return delta;
+    }
+
+
+    /**
+     * Adds the value into the delta buffer of the current thread
+     */
+    private void addDelta(int x, int y, double value) {
+        Delta delta = getDelta();
+        double[] row = delta.values[x];
+
+        if (row == null) {
+            row = new double[ySize];
+            delta.values[x] = row;
+        }
+
+        if (!delta.touched[x]) {
+            delta.touched[x] = true;
+            delta.rows[delta.count++] = x;
+        }
+
+        row[y] += value;
+    }
+
+
+    /**
+     * Adds all delta buffers to the grid. Buffers of terminated
+     * threads are removed after they are applied
+     */
+    private void applyDeltas() {
+        synchronized (deltas) {
+            for (int k = 0; k < deltas.size(); k++) {
+                Delta delta = deltas.get(k);
+                if (delta.isDead())
+                    deltas.remove(k--);
+
+                for (int i = 0; i < delta.count; i++) {
+                    int x = delta.rows[i];
+                    double[] row = delta.values[x];
+                    double[] data = writeData[x];
+
+                    for (int j = 0; j < ySize; j++)
+                        data[j] += row[j];
+
+                    Arrays.fill(row, 0);
+                    delta.touched[x] = false;
+                    markRow(x);
+                }
+
+                delta.count = 0;
+            }
+        }
+    }
+
+
+    /**
+     * Runs the action while all row locks are held
+     */
+    private void lockAll(int i, Runnable action) {
+        if (i == STRIPES) {
+            action.run();
+            return;
+        }
+
+        synchronized (locks[i]) {
+            lockAll(i + 1, action);
+        }
+    }
+
+
+    //************************************
+    // DataLayer interface implementation
+    //************************************
+
+
+    @Override
+    public double addValue(Vector p, double value) {
+        int x = findX(p.x);
+        int y = findY(p.y);
+
+        addValue(x, y, value);
+        return readData[x][y];
+    }
+
+
+    @Override
+    public void addValue(int x, int y, double value) {
+        if (inStep) {
+            addDelta(x, y, value);
+            return;
+        }
+
+        // Values are added directly outside of steps
+        synchronized (locks[x & (STRIPES - 1)]) {
+            writeData[x][y] += value;
+        }
+
+        markRow(x);
+    }
+
+
+    @Override
+    public void setValue(Vector p, double value) {
+        setValue(findX(p.x), findY(p.y), value);
+    }
+
+
+    @Override
+    public void setValue(int x, int y, double value) {
+        synchronized (locks[x & (STRIPES - 1)]) {
+            writeData[x][y] = value;
+        }
+
+        markRow(x);
+    }
+
+
+    // Bulk operations lock all rows. They should not be called
+    // concurrently with addValue(), because added values
+    // are not applied until the end of a step
+
+    @Override
+    public void setValue(final double value) {
+        lockAll(0, () -> Grid_parallelDelta.super.setValue(value));
+    }
+
+
+    @Override
+    public void setValue(final Function f) {
+        lockAll(0, () -> Grid_parallelDelta.super.setValue(f));
+    }
+
+
+    @Override
+    public void multiply(final double value) {
+        lockAll(0, () -> Grid_parallelDelta.super.multiply(value));
+    }
+
+
+    @Override
+    public void add(final double value) {
+        lockAll(0, () -> Grid_parallelDelta.super.add(value));
+    }
+
+
+    @Override
+    public void beginStep() {
+        super.beginStep();
+
+        // Buffers of threads of an old pool are not used anymore
+        // (all buffers are empty between steps)
+        ForkJoinPool currentPool = ObserverFactory.getForkJoinPool();
+        if (currentPool != pool) {
+            pool = currentPool;
+            synchronized (deltas) {
+                deltas.clear();
+            }
+            localDelta = new ThreadLocal<Delta>();
+        }
+
+        inStep = true;
+    }
+
+
+    @Override
+    public void endStep() {
+        inStep = false;
+        applyDeltas();
+        super.endStep();
+    }
+
+
+    /**
+     * Custom deserialization is needed.
+     */
+    private void readObject(ObjectInputStream ois) throws IOException,
+            ClassNotFoundException {
+
+        ois.defaultReadObject();
+        init();
+    }
+}
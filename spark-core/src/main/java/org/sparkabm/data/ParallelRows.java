@@ -0,0 +1,112 @@
+package org.sparkabm.data;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.sparkabm.core.ObserverFactory;
+
+/**
+ * Processes rows of a grid in blocks on the shared fork/join pool.
+ * Each block is a range of consecutive rows, so a task works
+ * with contiguous arrays. Small grids are processed in the current thread.
+ *
+ * @author Monad
+ */
+final class ParallelRows {
+    /**
+     * Processes a block of rows
+     */
+    interface Rows {
+        /**
+         * Processes rows x0, ..., x1 - 1
+         */
+        void process(int x0, int x1);
+    }
+
+
+    // Grids with fewer cells are processed serially
+    private static volatile int threshold = 1 << 16;
+    // The number of blocks per worker thread (for load balancing)
+    private static final int BLOCKS_PER_THREAD = 4;
+
+
+    /**
+     * Sets the minimal number of cells for parallel processing
+     *
+     * @param cells
+     */
+    static void setThreshold(int cells) {
+        threshold = cells;
+    }
+
+
+    /**
+     * Returns the minimal number of cells for parallel processing
+     *
+     * @return
+     */
+    static int getThreshold() {
+        return threshold;
+    }
+
+
+    /**
+     * Processes rows 0, ..., rows - 1. Blocks are processed in parallel
+     * if the grid is large enough.
+     *
+     * @param rows
+     * @param cellsPerRow
+     * @param task
+     */
+    static void process(int rows, int cellsPerRow, Rows task) {
+        if (rows < 2 || (long) rows * cellsPerRow < threshold) {
+            task.process(0, rows);
+            return;
+        }
+
+        ForkJoinPool pool = ObserverFactory.getForkJoinPool();
+        int parallelism = pool.getParallelism();
+
+        if (parallelism < 2) {
+            task.process(0, rows);
+            return;
+        }
+
+        int blocks = Math.min(rows, parallelism * BLOCKS_PER_THREAD);
+        int blockSize = (rows + blocks - 1) / blocks;
+
+        pool.invoke(new BlockTask(task, 0, rows, blockSize));
+    }
+
+
+    /**
+     * Splits a range of rows into blocks
+     */
+    @SuppressWarnings("serial")
+    private static class BlockTask extends RecursiveAction {
+        private final Rows task;
+        private final int lo, hi;
+        private final int blockSize;
+
+        BlockTask(Rows task, int lo, int hi, int blockSize) {
+            this.task = task;
+            this.lo = lo;
+            this.hi = hi;
+            this.blockSize = blockSize;
+        }
+
+        @Override
+        protected void compute() {
+            int blocks = (hi - lo + blockSize - 1) / blockSize;
+
+            if (blocks > 1) {
+                int mid = lo + (blocks / 2) * blockSize;
+                invokeAll(new BlockTask(task, lo, mid, blockSize),
+                        new BlockTask(task, mid, hi, blockSize));
+                return;
+            }
+
+            task.process(lo, hi);
+        }
+    }
+}
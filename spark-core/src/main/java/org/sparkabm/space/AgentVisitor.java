@@ -0,0 +1,19 @@
+package org.sparkabm.space;
+
+/**
+ * A callback for neighbour queries which do not create lists of agents.
+ * In the serial mode, the visitor may remove the visited agent but it
+ * should not create, move or remove other agents of the same space.
+ *
+ * @param <T> the type of visited agents
+ * @see org.sparkabm.space.Space#visitAgents(SpaceAgent, Class, AgentVisitor)
+ */
+public interface AgentVisitor<T extends SpaceAgent> {
+    /**
+     * Called for each agent found by a query
+     *
+     * @param agent
+     * @return false to stop the query
+     */
+    boolean visit(T agent);
+}
@@ -176,22 +176,7 @@ public class GridSpace extends BoundedSpace {
      * @return
      */
     protected ArrayList<SpaceAgent> getAgents(SpaceNode node) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-//		result.clear();
-
-        int x0 = hashGrid.findX(node.position.x);
-        int y0 = hashGrid.findY(node.position.y);
-
-        SpaceNode first = hashGrid.getNode(x0, y0);
-        SpaceNode next = first.next;
-
-        while (next != first) {
-            result.add(next.agent);
-            next = next.next;
-        }
-
-        return result;
+        return collectAgents(node, null, false);
     }
 
     /**
@@ -201,26 +186,8 @@ public class GridSpace extends BoundedSpace {
      * @param type
      * @return
      */
-    @SuppressWarnings("unchecked")
     protected <T extends SpaceAgent> ArrayList<T> getAgents(SpaceNode node, Class<T> type) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-//		result.clear();
-
-        int x0 = hashGrid.findX(node.position.x);
-        int y0 = hashGrid.findY(node.position.y);
-
-        SpaceNode first = hashGrid.getNode(x0, y0);
-        SpaceNode next = first.next;
-
-        while (next != first) {
-            if (next.agent.getClass() == type) {
-                result.add(next.agent);
-            }
-            next = next.next;
-        }
-
-        return (ArrayList<T>) result;
+        return collectAgents(node, type, false);
     }
 
 
@@ -231,27 +198,39 @@ public class GridSpace extends BoundedSpace {
      * @param type
      * @return
      */
-    @SuppressWarnings("unchecked")
     protected <T extends SpaceAgent> ArrayList<T> getAgentsOfKind(SpaceNode node, Class<T> type) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-//		result.clear();
+        return collectAgents(node, type, true);
+    }
 
+
+    /**
+     * Visits all agents in the cell of the space node
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T extends SpaceAgent> int visitAgents(SpaceNode node, Class<T> type, boolean ofKind,
+                                                     AgentVisitor<? super T> visitor) {
         int x0 = hashGrid.findX(node.position.x);
         int y0 = hashGrid.findY(node.position.y);
 
         SpaceNode first = hashGrid.getNode(x0, y0);
         SpaceNode next = first.next;
+        int count = 0;
 
         while (next != first) {
-            if (type.isInstance(next.agent)) {
-                result.add(next.agent);
-            }
-
+            SpaceNode current = next;
+            // The visitor can remove the current node
             next = next.next;
+
+            if (!matches(current.agent, type, ofKind))
+                continue;
+
+            count++;
+            if (visitor != null && !visitor.visit((T) current.agent))
+                return count;
         }
 
-        return (ArrayList<T>) result;
+        return count;
     }
 
 
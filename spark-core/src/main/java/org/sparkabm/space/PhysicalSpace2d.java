@@ -189,89 +189,7 @@ public class PhysicalSpace2d extends StandardSpace {
      */
     @Override
     protected ArrayList<SpaceAgent> getAgents(SpaceNode node) {
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-
-        Shape shape0 = null;
-        XForm x0 = null;
-
-        if (node instanceof PhysicalNode) {
-            Body body = ((PhysicalNode) node).body;
-            if (body != null) {
-                shape0 = body.getShapeList();
-                x0 = body.getXForm();
-            }
-        }
-
-        if (shape0 == null) {
-            // Create a special shape
-            double r = node.getRelativeSize();
-            Vector p = node.getPosition();
-
-            CircleDef cd = new CircleDef();
-            cd.radius = (float) r;
-
-            shape0 = new CircleShape(cd);
-            x0 = new XForm();
-            x0.position = new Vec2((float) p.x, (float) p.y);
-        }
-
-        AABB aabb = new AABB();
-        shape0.computeAABB(aabb, x0);
-
-        // Get all shapes inside the AABB
-        Shape[] shapes = world.query(aabb, 10000);
-
-        // Iterate over all shapes
-        for (Shape shape : shapes) {
-            Body b = shape.getBody();
-            if (b == null)
-                continue;
-
-            Object data = b.getUserData();
-            if (data == null || !(data instanceof PhysicalNode))
-                continue;
-
-            PhysicalNode n = (PhysicalNode) data;
-            SpaceAgent agent = n.agent;
-
-            Manifold manifold = new Manifold();
-            XForm x1 = b.getXForm();
-
-            if (shape0 instanceof CircleShape) {
-                // 0: Circle
-                CircleShape s0 = (CircleShape) shape0;
-
-                if (shape instanceof PolygonShape) {
-                    // 1: Polygon
-                    CollideCircle.collidePolygonAndCircle(manifold, (PolygonShape) shape, x1, s0, x0);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
-                } else if (shape instanceof CircleShape) {
-                    // 1: Circle
-                    CollideCircle.collideCircles(manifold, (CircleShape) shape, x1, s0, x0);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
-                }
-            } else if (shape0 instanceof PolygonShape) {
-                // 0: Polygon
-                PolygonShape s0 = (PolygonShape) shape0;
-
-                if (shape instanceof PolygonShape) {
-                    // 1: Polygon
-                    CollidePoly.collidePolygons(manifold, s0, x0, (PolygonShape) shape, x1);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
-                } else if (shape instanceof CircleShape) {
-                    // 1: Circle
-                    CollideCircle.collidePolygonAndCircle(manifold, s0, x0, (CircleShape) shape, x1);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
-                }
-
-            }
-        }
-
-        return result;
+        return collectAgents(node, null, false);
     }
 
 
@@ -283,93 +201,8 @@ public class PhysicalSpace2d extends StandardSpace {
      * @return
      */
     @Override
-    @SuppressWarnings("unchecked")
     protected <T extends SpaceAgent> ArrayList<T> getAgents(SpaceNode node, Class<T> type) {
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-
-        Shape shape0 = null;
-        XForm x0 = null;
-
-        if (node instanceof PhysicalNode) {
-            Body body = ((PhysicalNode) node).body;
-            if (body != null) {
-                shape0 = body.getShapeList();
-                x0 = body.getXForm();
-            }
-        }
-
-        if (shape0 == null) {
-            // Create a special shape
-            double r = node.getRelativeSize();
-            Vector p = node.getPosition();
-
-            CircleDef cd = new CircleDef();
-            cd.radius = (float) r;
-
-            shape0 = new CircleShape(cd);
-            x0 = new XForm();
-            x0.position = new Vec2((float) p.x, (float) p.y);
-        }
-
-        AABB aabb = new AABB();
-        shape0.computeAABB(aabb, x0);
-
-        // Get all shapes inside the AABB
-        Shape[] shapes = world.query(aabb, 10000);
-
-        // Iterate over all shapes
-        for (Shape shape : shapes) {
-            Body b = shape.getBody();
-            if (b == null)
-                continue;
-
-            Object data = b.getUserData();
-            if (data == null || !(data instanceof PhysicalNode))
-                continue;
-
-            PhysicalNode n = (PhysicalNode) data;
-            SpaceAgent agent = n.agent;
-            if (agent.getClass() != type)
-                continue;
-
-            Manifold manifold = new Manifold();
-            XForm x1 = b.getXForm();
-
-            if (shape0 instanceof CircleShape) {
-                // 0: Circle
-                CircleShape s0 = (CircleShape) shape0;
-
-                if (shape instanceof PolygonShape) {
-                    // 1: Polygon
-                    CollideCircle.collidePolygonAndCircle(manifold, (PolygonShape) shape, x1, s0, x0);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
-                } else if (shape instanceof CircleShape) {
-                    // 1: Circle
-                    CollideCircle.collideCircles(manifold, (CircleShape) shape, x1, s0, x0);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
-                }
-            } else if (shape0 instanceof PolygonShape) {
-                // 0: Polygon
-                PolygonShape s0 = (PolygonShape) shape0;
-
-                if (shape instanceof PolygonShape) {
-                    // 1: Polygon
-                    CollidePoly.collidePolygons(manifold, s0, x0, (PolygonShape) shape, x1);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
-                } else if (shape instanceof CircleShape) {
-                    // 1: Circle
-                    CollideCircle.collidePolygonAndCircle(manifold, s0, x0, (CircleShape) shape, x1);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
-                }
-
-            }
-        }
-
-        return (ArrayList<T>) result;
+        return collectAgents(node, type, false);
     }
 
 
@@ -381,10 +214,18 @@ public class PhysicalSpace2d extends StandardSpace {
      * @return
      */
     @Override
-    @SuppressWarnings("unchecked")
     protected <T extends SpaceAgent> ArrayList<T> getAgentsOfKind(SpaceNode node, Class<T> kind) {
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
+        return collectAgents(node, kind, true);
+    }
+
 
+    /**
+     * Visits all agents whose shapes collide with the shape of the space node
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T extends SpaceAgent> int visitAgents(SpaceNode node, Class<T> type, boolean ofKind,
+                                                     AgentVisitor<? super T> visitor) {
         Shape shape0 = null;
         XForm x0 = null;
 
@@ -415,6 +256,10 @@ public class PhysicalSpace2d extends StandardSpace {
         // Get all shapes inside the AABB
         Shape[] shapes = world.query(aabb, 10000);
 
+        // One manifold for all tests
+        Manifold manifold = new Manifold();
+        int count = 0;
+
         // Iterate over all shapes
         for (Shape shape : shapes) {
             Body b = shape.getBody();
@@ -427,10 +272,10 @@ public class PhysicalSpace2d extends StandardSpace {
 
             PhysicalNode n = (PhysicalNode) data;
             SpaceAgent agent = n.agent;
-            if (!kind.isInstance(agent))
+            if (!matches(agent, type, ofKind))
                 continue;
 
-            Manifold manifold = new Manifold();
+            manifold.pointCount = 0;
             XForm x1 = b.getXForm();
 
             if (shape0 instanceof CircleShape) {
@@ -440,13 +285,9 @@ public class PhysicalSpace2d extends StandardSpace {
                 if (shape instanceof PolygonShape) {
                     // 1: Polygon
                     CollideCircle.collidePolygonAndCircle(manifold, (PolygonShape) shape, x1, s0, x0);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
                 } else if (shape instanceof CircleShape) {
                     // 1: Circle
                     CollideCircle.collideCircles(manifold, (CircleShape) shape, x1, s0, x0);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
                 }
             } else if (shape0 instanceof PolygonShape) {
                 // 0: Polygon
@@ -455,19 +296,30 @@ public class PhysicalSpace2d extends StandardSpace {
                 if (shape instanceof PolygonShape) {
                     // 1: Polygon
                     CollidePoly.collidePolygons(manifold, s0, x0, (PolygonShape) shape, x1);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
                 } else if (shape instanceof CircleShape) {
                     // 1: Circle
                     CollideCircle.collidePolygonAndCircle(manifold, s0, x0, (CircleShape) shape, x1);
-                    if (manifold.pointCount > 0)
-                        result.add(agent);
                 }
+            }
 
+            if (manifold.pointCount > 0) {
+                count++;
+                if (visitor != null && !visitor.visit((T) agent))
+                    return count;
             }
         }
 
-        return (ArrayList<T>) result;
+        return count;
+    }
+
+
+    /**
+     * The JBox2D world is not thread-safe, so node updates
+     * are never processed tile-parallel
+     */
+    @Override
+    TiledNodeQueue createTiledQueue() {
+        return null;
     }
 
 
@@ -500,6 +352,8 @@ public class PhysicalSpace2d extends StandardSpace {
                 node.body.setXForm(pos, angle);
             }
         }
+
+        super.postProcess();
     }
 
     /**
@@ -13,8 +13,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
 
+import org.sparkabm.core.CheckpointTransient;
 import org.sparkabm.core.ExecutionMode;
 import org.sparkabm.core.Observer;
+import org.sparkabm.core.ObserverFactory;
 import org.sparkabm.data.DataLayer;
 import org.sparkabm.data.Grid;
 import org.sparkabm.math.Vector;
@@ -36,6 +38,9 @@ public abstract class Space implements Serializable {
     private int spaceIndex;
 
     private transient ArrayList<SpaceNode> nodeQueue;
+    /* Private queues of threads (for the parallel mode), created again when needed */
+    @CheckpointTransient
+    private transient TiledNodeQueue tiledQueue;
     private final int executionMode;
 
 
@@ -138,34 +143,87 @@ public abstract class Space implements Serializable {
 
 
     /**
-     * Processes all nodes (in concurrent execution mode)
+     * Processes all nodes (in concurrent and parallel execution modes)
      */
     public final void processNodes() {
+        if (tiledQueue != null) {
+            tiledQueue.process(ObserverFactory.getForkJoinPool());
+        }
+
         for (SpaceNode node : nodeQueue) {
-            if ((node.state & SpaceNode.NODE_IS_REMOVING) != 0) {
-                removeNode0(node);
-                continue;
-            }
+            processNode(node);
+        }
 
-            if ((node.state & SpaceNode.NODE_IS_CREATING) != 0) {
-                if ((node.state & SpaceNode.NODE_IS_MOVING) != 0) {
-                    addNodeAndMove0(node);
-                    node.newPosition.set(node.position);
-                } else {
-                    addNode0(node);
-                }
+        nodeQueue.clear();
+
+        // Private queues are used in the parallel mode if the space supports them
+        if (tiledQueue == null && executionMode == ExecutionMode.PARALLEL_MODE) {
+            tiledQueue = createTiledQueue();
+        }
+
+        postProcess();
+    }
+
+
+    /**
+     * Processes a queued node
+     *
+     * @param node
+     */
+    final void processNode(SpaceNode node) {
+        if ((node.state & SpaceNode.NODE_IS_REMOVING) != 0) {
+            removeNode0(node);
+            return;
+        }
+
+        if ((node.state & SpaceNode.NODE_IS_CREATING) != 0) {
+            if ((node.state & SpaceNode.NODE_IS_MOVING) != 0) {
+                addNodeAndMove0(node);
+                node.newPosition.set(node.position);
             } else {
-                if ((node.state & SpaceNode.NODE_IS_MOVING) != 0) {
-                    changeNodePosition0(node);
-                    node.newPosition.set(node.position);
-                }
+                addNode0(node);
+            }
+        } else {
+            if ((node.state & SpaceNode.NODE_IS_MOVING) != 0) {
+                changeNodePosition0(node);
+                node.newPosition.set(node.position);
             }
+        }
+
+        node.state = 0;
+    }
+
 
-            node.state = 0;
+    /**
+     * Creates a queue for processing nodes tile-parallel in the parallel mode.
+     * Returns null if the space does not support tiles
+     * (then one shared queue is used).
+     *
+     * @return
+     */
+    TiledNodeQueue createTiledQueue() {
+        return null;
+    }
+
+
+    /**
+     * Adds the node into a queue in the parallel mode
+     *
+     * @param node
+     * @param flag
+     */
+    private void queueParallel(SpaceNode node, int flag) {
+        if (tiledQueue != null) {
+            tiledQueue.add(node, flag);
+            return;
         }
 
-        nodeQueue.clear();
-        postProcess();
+        synchronized (nodeQueue) {
+            if (node.state == 0) {
+                nodeQueue.add(node);
+            }
+            node.state |= flag;
+        }
     }
 
 
@@ -208,12 +266,7 @@ public abstract class Space implements Serializable {
                 break;
 
             case ExecutionMode.PARALLEL_MODE:
-                synchronized (nodeQueue) {
-                    if (node.state == 0) {
-                        nodeQueue.add(node);
-                    }
-                    node.state |= SpaceNode.NODE_IS_CREATING;
-                }
+                queueParallel(node, SpaceNode.NODE_IS_CREATING);
                 break;
 
             default:
@@ -267,12 +320,7 @@ public abstract class Space implements Serializable {
                 break;
 
             case ExecutionMode.PARALLEL_MODE:
-                synchronized (nodeQueue) {
-                    if (node.state == 0) {
-                        nodeQueue.add(node);
-                    }
-                    node.state |= SpaceNode.NODE_IS_CREATING;
-                }
+                queueParallel(node, SpaceNode.NODE_IS_CREATING);
                 break;
 
             default:
@@ -322,12 +370,7 @@ public abstract class Space implements Serializable {
                 break;
 
             case ExecutionMode.PARALLEL_MODE:
-                synchronized (nodeQueue) {
-                    if (node.state == 0) {
-                        nodeQueue.add(node);
-                    }
-                    node.state |= SpaceNode.NODE_IS_CREATING;
-                }
+                queueParallel(node, SpaceNode.NODE_IS_CREATING);
                 break;
 
             default:
@@ -373,12 +416,7 @@ public abstract class Space implements Serializable {
                 break;
 
             case ExecutionMode.PARALLEL_MODE:
-                synchronized (nodeQueue) {
-                    if (node.state == 0) {
-                        nodeQueue.add(node);
-                    }
-                    node.state |= SpaceNode.NODE_IS_REMOVING;
-                }
+                queueParallel(node, SpaceNode.NODE_IS_REMOVING);
                 break;
 
             default:
@@ -409,12 +447,7 @@ public abstract class Space implements Serializable {
                 break;
 
             case ExecutionMode.PARALLEL_MODE:
-                synchronized (nodeQueue) {
-                    if (node.state == 0) {
-                        nodeQueue.add(node);
-                    }
-                    node.state |= SpaceNode.NODE_IS_MOVING;
-                }
+                queueParallel(node, SpaceNode.NODE_IS_MOVING);
                 break;
 
             default:
@@ -554,6 +587,499 @@ public abstract class Space implements Serializable {
     protected abstract <T extends SpaceAgent> ArrayList<T> getAgentsOfKind(SpaceNode node, Class<T> type);
 
 
+    /**
+     * Visits all agents intersecting with the space node.
+     * If type is not null then only agents of this type (or derived from
+     * this type if ofKind is true) are visited. If visitor is null then
+     * agents are counted only. The query stops when the visitor returns false.
+     * This implementation creates a list of agents, subclasses should
+     * override it.
+     *
+     * @param node
+     * @param type
+     * @param ofKind
+     * @param visitor
+     * @return the number of visited agents
+     */
+    @SuppressWarnings("unchecked")
+    protected <T extends SpaceAgent> int visitAgents(SpaceNode node, Class<T> type, boolean ofKind,
+                                                     AgentVisitor<? super T> visitor) {
+        ArrayList<? extends SpaceAgent> agents;
+
+        if (type == null)
+            agents = getAgents(node);
+        else if (ofKind)
+            agents = getAgentsOfKind(node, type);
+        else
+            agents = getAgents(node, type);
+
+        if (agents == null)
+            return 0;
+
+        int n = agents.size();
+        if (visitor == null)
+            return n;
+
+        for (int i = 0; i < n; i++) {
+            if (!visitor.visit((T) agents.get(i)))
+                return i + 1;
+        }
+
+        return n;
+    }
+
+
+    /**
+     * Returns true if the agent passes the type filter of visitAgents()
+     *
+     * @param agent
+     * @param type
+     * @param ofKind
+     * @return
+     */
+    static boolean matches(SpaceAgent agent, Class<?> type, boolean ofKind) {
+        if (type == null)
+            return true;
+
+        return ofKind ? type.isInstance(agent) : agent.getClass() == type;
+    }
+
+
+    /**
+     * Creates a list of agents intersecting with the space node.
+     * Subclasses which implement visitAgents() can use this method
+     * for implementing getAgents() methods.
+     *
+     * @param node
+     * @param type
+     * @param ofKind
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    protected final <T extends SpaceAgent> ArrayList<T> collectAgents(SpaceNode node, Class<T> type, boolean ofKind) {
+        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
+        Collector collector = new Collector();
+        collector.list = result;
+
+        visitAgents(node, type, ofKind, collector);
+
+        return (ArrayList<T>) result;
+    }
+
+
+    /**
+     * Adds visited agents into a list
+     */
+    private static final class Collector implements AgentVisitor<SpaceAgent> {
+        ArrayList<SpaceAgent> list;
+
+        public boolean visit(SpaceAgent agent) {
+            list.add(agent);
+            return true;
+        }
+    }
+
+
+    /**
+     * Finds the first visited agent
+     */
+    private static final class FirstMatch implements AgentVisitor<SpaceAgent> {
+        SpaceAgent exclude;
+        SpaceAgent result;
+
+        public boolean visit(SpaceAgent agent) {
+            if (agent == exclude)
+                return true;
+
+            result = agent;
+            return false;
+        }
+    }
+
+
+    /**
+     * Reusable objects of queries for one thread
+     */
+    private static final class QueryState {
+        final Collector collector = new Collector();
+        final FirstMatch firstMatch = new FirstMatch();
+        final ArrayList<SpaceAgent> buffer = new ArrayList<SpaceAgent>();
+
+        // A temporary node for circle queries
+        CircleNode node;
+        boolean nodeInUse;
+    }
+
+
+    /* Query objects of all threads */
+    private transient ThreadLocal<QueryState> queryState;
+
+
+    /**
+     * Returns query objects of the current thread
+     *
+     * @return
+     */
+    private QueryState getQueryState() {
+        ThreadLocal<QueryState> local = queryState;
+        if (local == null) {
+            synchronized (this) {
+                if (queryState == null)
+                    queryState = new ThreadLocal<QueryState>();
+                local = queryState;
+            }
+        }
+
+        QueryState state = local.get();
+        if (state == null) {
+            state = new QueryState();
+            local.set(state);
+        }
+
+        return state;
+    }
+
+
+    /**
+     * Visits agents intersecting with the given circle.
+     * A temporary node of the current thread is used (a new node
+     * is created if the temporary node is used by an enclosing query).
+     */
+    private <T extends SpaceAgent> int visitAgents(Vector v, double radius, Class<T> type, boolean ofKind,
+                                                   AgentVisitor<? super T> visitor) {
+        QueryState state = getQueryState();
+        CircleNode node;
+
+        if (state.nodeInUse) {
+            node = new CircleNode(this, radius);
+        } else {
+            if (state.node == null)
+                state.node = new CircleNode(this, radius);
+
+            node = state.node;
+            node.setRadius0(radius);
+            state.nodeInUse = true;
+        }
+
+        node.position.set(v);
+
+        try {
+            return visitAgents(node, type, ofKind, visitor);
+        } finally {
+            if (node == state.node)
+                state.nodeInUse = false;
+        }
+    }
+
+
+    /**
+     * Visits all agents at the place occupied by the agent
+     * (the agent itself is also visited).
+     * No lists are created, so this method is faster than getAgents().
+     *
+     * @param agent
+     * @param visitor
+     * @return the number of visited agents
+     */
+    public int visitAgents(SpaceAgent agent, AgentVisitor<SpaceAgent> visitor) {
+        return visitAgents(agent.node, null, false, visitor);
+    }
+
+
+    /**
+     * Visits all agents of the given type at the place occupied by the agent
+     *
+     * @param agent
+     * @param type
+     * @param visitor
+     * @return the number of visited agents
+     */
+    public <T extends SpaceAgent> int visitAgents(SpaceAgent agent, Class<T> type, AgentVisitor<? super T> visitor) {
+        return visitAgents(agent.node, type, false, visitor);
+    }
+
+
+    /**
+     * Visits all agents derived from the given type at the place occupied by the agent
+     *
+     * @param agent
+     * @param kind
+     * @param visitor
+     * @return the number of visited agents
+     */
+    public <T extends SpaceAgent> int visitAgentsOfKind(SpaceAgent agent, Class<T> kind, AgentVisitor<? super T> visitor) {
+        return visitAgents(agent.node, kind, true, visitor);
+    }
+
+
+    /**
+     * Visits all agents in the specific circle neighborhood
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param visitor
+     * @return the number of visited agents
+     */
+    public int visitAgents(Vector v, double radius, AgentVisitor<SpaceAgent> visitor) {
+        return visitAgents(v, radius, null, false, visitor);
+    }
+
+
+    /**
+     * Visits all agents of the given type in the specific circle neighborhood
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param type
+     * @param visitor
+     * @return the number of visited agents
+     */
+    public <T extends SpaceAgent> int visitAgents(Vector v, double radius, Class<T> type,
+                                                  AgentVisitor<? super T> visitor) {
+        return visitAgents(v, radius, type, false, visitor);
+    }
+
+
+    /**
+     * Visits all agents derived from the given type in the specific circle neighborhood
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param kind
+     * @param visitor
+     * @return the number of visited agents
+     */
+    public <T extends SpaceAgent> int visitAgentsOfKind(Vector v, double radius, Class<T> kind,
+                                                        AgentVisitor<? super T> visitor) {
+        return visitAgents(v, radius, kind, true, visitor);
+    }
+
+
+    /**
+     * Returns the number of agents of the given type at the place
+     * occupied by the agent (the agent itself is also counted).
+     * If type is null then all agents are counted.
+     *
+     * @param agent
+     * @param type
+     * @return
+     */
+    public int countAgents(SpaceAgent agent, Class<? extends SpaceAgent> type) {
+        return visitAgents(agent.node, type, false, null);
+    }
+
+
+    /**
+     * Returns the number of agents derived from the given type
+     * at the place occupied by the agent
+     *
+     * @param agent
+     * @param kind
+     * @return
+     */
+    public int countAgentsOfKind(SpaceAgent agent, Class<? extends SpaceAgent> kind) {
+        return visitAgents(agent.node, kind, true, null);
+    }
+
+
+    /**
+     * Returns the number of agents of the given type in the specific
+     * circle neighborhood. If type is null then all agents are counted.
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param type
+     * @return
+     */
+    public int countAgents(Vector v, double radius, Class<? extends SpaceAgent> type) {
+        return visitAgents(v, radius, type, false, null);
+    }
+
+
+    /**
+     * Returns the number of agents derived from the given type in the specific
+     * circle neighborhood
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param kind
+     * @return
+     */
+    public int countAgentsOfKind(Vector v, double radius, Class<? extends SpaceAgent> kind) {
+        return visitAgents(v, radius, kind, true, null);
+    }
+
+
+    /**
+     * Finds the first agent which passes the filter (the query stops
+     * at the first match)
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends SpaceAgent> T findAgent(SpaceNode node, Vector v, double radius,
+                                               Class<T> type, boolean ofKind, SpaceAgent exclude) {
+        FirstMatch first = getQueryState().firstMatch;
+        // The visitor is not reentrant, but it does not call other queries
+        first.exclude = exclude;
+        first.result = null;
+
+        if (node != null)
+            visitAgents(node, type, ofKind, first);
+        else
+            visitAgents(v, radius, type, ofKind, first);
+
+        T result = (T) first.result;
+        first.exclude = null;
+        first.result = null;
+
+        return result;
+    }
+
+
+    /**
+     * Returns any agent of the given type (other than the agent itself)
+     * at the place occupied by the agent or null if there are no such agents
+     *
+     * @param agent
+     * @param type
+     * @return
+     */
+    public <T extends SpaceAgent> T findAgent(SpaceAgent agent, Class<T> type) {
+        return findAgent(agent.node, null, 0, type, false, agent);
+    }
+
+
+    /**
+     * Returns any agent derived from the given type (other than the agent itself)
+     * at the place occupied by the agent or null if there are no such agents
+     *
+     * @param agent
+     * @param kind
+     * @return
+     */
+    public <T extends SpaceAgent> T findAgentOfKind(SpaceAgent agent, Class<T> kind) {
+        return findAgent(agent.node, null, 0, kind, true, agent);
+    }
+
+
+    /**
+     * Returns any agent of the given type in the specific circle neighborhood
+     * or null if there are no such agents
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param type
+     * @return
+     */
+    public <T extends SpaceAgent> T findAgent(Vector v, double radius, Class<T> type) {
+        return findAgent(null, v, radius, type, false, null);
+    }
+
+
+    /**
+     * Returns any agent derived from the given type in the specific circle neighborhood
+     * or null if there are no such agents
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param kind
+     * @return
+     */
+    public <T extends SpaceAgent> T findAgentOfKind(Vector v, double radius, Class<T> kind) {
+        return findAgent(null, v, radius, kind, true, null);
+    }
+
+
+    /**
+     * Adds agents which pass the filter into the list
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends SpaceAgent> ArrayList<T> fillAgents(SpaceNode node, Vector v, double radius,
+                                                           Class<T> type, boolean ofKind, ArrayList<T> dest) {
+        QueryState state = getQueryState();
+        if (dest == null)
+            dest = (ArrayList<T>) state.buffer;
+
+        dest.clear();
+
+        Collector collector = state.collector;
+        // The visitor is not reentrant, but it does not call other queries
+        collector.list = (ArrayList<SpaceAgent>) dest;
+
+        if (node != null)
+            visitAgents(node, type, ofKind, collector);
+        else
+            visitAgents(v, radius, type, ofKind, collector);
+
+        collector.list = null;
+        return dest;
+    }
+
+
+    /**
+     * Puts all agents of the given type at the place occupied by the agent
+     * into the given list (the list is cleared first). If dest is null then
+     * a list of the current thread is used: this list is reused by the next
+     * call of this method in the same thread.
+     *
+     * @param agent
+     * @param type
+     * @param dest
+     * @return the list with agents
+     */
+    public <T extends SpaceAgent> ArrayList<T> getAgents(SpaceAgent agent, Class<T> type, ArrayList<T> dest) {
+        return fillAgents(agent.node, null, 0, type, false, dest);
+    }
+
+
+    /**
+     * Puts all agents derived from the given type at the place occupied by the agent
+     * into the given list (the list is cleared first). If dest is null then
+     * a reusable list of the current thread is used.
+     *
+     * @param agent
+     * @param kind
+     * @param dest
+     * @return the list with agents
+     */
+    public <T extends SpaceAgent> ArrayList<T> getAgentsOfKind(SpaceAgent agent, Class<T> kind, ArrayList<T> dest) {
+        return fillAgents(agent.node, null, 0, kind, true, dest);
+    }
+
+
+    /**
+     * Puts all agents of the given type in the specific circle neighborhood
+     * into the given list (the list is cleared first). If dest is null then
+     * a reusable list of the current thread is used.
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param type
+     * @param dest
+     * @return the list with agents
+     */
+    public <T extends SpaceAgent> ArrayList<T> getAgents(Vector v, double radius, Class<T> type,
+                                                         ArrayList<T> dest) {
+        return fillAgents(null, v, radius, type, false, dest);
+    }
+
+
+    /**
+     * Puts all agents derived from the given type in the specific circle neighborhood
+     * into the given list (the list is cleared first). If dest is null then
+     * a reusable list of the current thread is used.
+     *
+     * @param v      - the center of the circle
+     * @param radius - the radius of the circle
+     * @param kind
+     * @param dest
+     * @return the list with agents
+     */
+    public <T extends SpaceAgent> ArrayList<T> getAgentsOfKind(Vector v, double radius, Class<T> kind,
+                                                               ArrayList<T> dest) {
+        return fillAgents(null, v, radius, kind, true, dest);
+    }
+
+
     /**
      * Returns the vector representing the distance between v1 and v2
      *
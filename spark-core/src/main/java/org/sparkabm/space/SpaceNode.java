@@ -83,6 +83,18 @@ public abstract class SpaceNode implements Serializable {
     }
 
 
+    /**
+     * Copies the current position into the given vector
+     *
+     * @param dest
+     * @return dest
+     */
+    public Vector getPosition(Vector dest) {
+        dest.set(position);
+        return dest;
+    }
+
+
     /**
      * Returns node's space
      *
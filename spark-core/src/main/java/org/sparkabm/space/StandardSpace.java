@@ -10,6 +10,9 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.sparkabm.core.ObserverFactory;
 
 
 public class StandardSpace extends BoundedSpace {
@@ -17,6 +20,77 @@ public class StandardSpace extends BoundedSpace {
     private int hashXSize = 120;
     private int hashYSize = 120;
 
+    // The desired average number of nodes in one hash grid cell
+    private static final double NODES_PER_CELL = 2.0;
+    // The hash grid is rebuilt when the number of nodes or the maximum
+    // node radius changes by this factor
+    private static final double DRIFT_FACTOR = 2.0;
+    // The maximum number of cells is (this number) * (number of nodes)
+    private static final int MAX_CELLS_PER_NODE = 4;
+    // The maximum number of cells for a small number of nodes
+    private static final int MIN_MAX_CELLS = 14400;
+
+    // If true then the hash grid is resized automatically
+    // (off by default: resizing changes the order of neighbours)
+    private boolean adaptiveHashGrid = false;
+
+    // The number of nodes in the hash grid
+    private transient LongAdder nodeCount = new LongAdder();
+    // The number of nodes and the maximum radius for the current hash grid
+    private transient long lastNodeCount;
+    private transient double lastNodeRadius;
+    // The number of times the hash grid was rebuilt
+    private transient int rebuildCount;
+
+
+    /**
+     * Occupancy statistics of the hash grid
+     */
+    public static class HashGridStatistics {
+        /* Dimensions of the hash grid */
+        public final int xCells, yCells;
+        /* Size of one cell */
+        public final double xStep, yStep;
+        /* Total number of nodes */
+        public final long nodes;
+        /* Number of non-empty cells */
+        public final int occupiedCells;
+        /* Maximum number of nodes in one cell */
+        public final int maxNodesPerCell;
+        /* Number of times the hash grid was rebuilt */
+        public final int rebuildCount;
+
+        HashGridStatistics(int xCells, int yCells, double xStep, double yStep,
+                           long nodes, int occupiedCells, int maxNodesPerCell, int rebuildCount) {
+            this.xCells = xCells;
+            this.yCells = yCells;
+            this.xStep = xStep;
+            this.yStep = yStep;
+            this.nodes = nodes;
+            this.occupiedCells = occupiedCells;
+            this.maxNodesPerCell = maxNodesPerCell;
+            this.rebuildCount = rebuildCount;
+        }
+
+        /**
+         * Returns the average number of nodes in a non-empty cell
+         *
+         * @return
+         */
+        public double getMeanOccupancy() {
+            return occupiedCells > 0 ? (double) nodes / occupiedCells : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Hash grid " + xCells + "x" + yCells + "; nodes = " + nodes
+                    + "; occupied cells = " + occupiedCells
+                    + "; max nodes per cell = " + maxNodesPerCell
+                    + "; mean occupancy = " + getMeanOccupancy()
+                    + "; rebuilds = " + rebuildCount;
+        }
+    }
+
 
 //public boolean debugflag;
 
@@ -38,7 +112,8 @@ public class StandardSpace extends BoundedSpace {
                          boolean wrapX, boolean wrapY) {
         super(xMin, xMax, yMin, yMax, wrapX, wrapY);
 
-        // TODO: automatically adjust hash grid size
+        // The initial size of the hash grid
+        // (it is adjusted automatically if the hash grid is adaptive)
         hashXSize = (int) (xMax - xMin);
         hashYSize = (int) (yMax - yMin);
 
@@ -57,14 +132,196 @@ public class StandardSpace extends BoundedSpace {
     }
 
 
+    /**
+     * In the parallel mode, the space is split into tiles.
+     * Each tile is a block of hash grid columns (a tile can be empty
+     * if the hash grid is small).
+     */
+    @Override
+    TiledNodeQueue createTiledQueue() {
+        int parallelism = ObserverFactory.getForkJoinPool().getParallelism();
+        final int tileCount = Math.max(2, parallelism * 2);
+
+        return new TiledNodeQueue(this, new TiledNodeQueue.Partition() {
+            public int getTile(double x, double y) {
+                // The hash grid can be rebuilt, so its size is not fixed
+                return (int) ((long) hashGrid.findX(x) * tileCount / hashXSize);
+            }
+
+            public int getUpdateTile(SpaceNode node) {
+                int state = node.state;
+                boolean created = (state & SpaceNode.NODE_IS_CREATING) != 0;
+
+                // A created node is not linked with any hash grid cell yet
+                if ((state & SpaceNode.NODE_IS_REMOVING) != 0)
+                    return created ? -2 : getTile(node.position.x, node.position.y);
+
+                int dst;
+                if ((state & SpaceNode.NODE_IS_MOVING) != 0)
+                    dst = getTile(restrictX(node.newPosition.x), restrictY(node.newPosition.y));
+                else
+                    dst = getTile(node.position.x, node.position.y);
+
+                if (created)
+                    return dst;
+
+                int src = getTile(node.position.x, node.position.y);
+                return src == dst ? src : -1;
+            }
+        }, tileCount);
+    }
+
+
     @Override
     protected void postProcess() {
 //		hashGrid.verifyIntegrity();
+        if (adaptiveHashGrid)
+            adjustHashGrid();
+    }
+
+
+    /**
+     * Turns on/off automatic resizing of the hash grid (off by default).
+     * If the hash grid is not adaptive then its size is between 10x10
+     * and 120x120 and it is defined by the space dimensions only.
+     * Resizing changes the order in which neighbours are found,
+     * so results of stochastic models can be different.
+     *
+     * @param adaptive
+     */
+    public void setAdaptiveHashGrid(boolean adaptive) {
+        this.adaptiveHashGrid = adaptive;
+    }
+
+
+    /**
+     * Returns true if the hash grid is resized automatically
+     *
+     * @return
+     */
+    public boolean isAdaptiveHashGrid() {
+        return adaptiveHashGrid;
+    }
+
+
+    /**
+     * Returns occupancy statistics of the hash grid
+     *
+     * @return
+     */
+    public HashGridStatistics getHashGridStatistics() {
+        int occupied = 0;
+        int max = 0;
+
+        for (int i = 0; i < hashXSize; i++) {
+            for (int j = 0; j < hashYSize; j++) {
+                SpaceNode first = hashGrid.getNode(i, j);
+                int n = 0;
+                for (SpaceNode next = first.next; next != first; next = next.next)
+                    n++;
+
+                if (n > 0)
+                    occupied++;
+
+                if (n > max)
+                    max = n;
+            }
+        }
+
+        return new HashGridStatistics(hashXSize, hashYSize,
+                hashGrid.getXStep(), hashGrid.getYStep(),
+                nodeCount.sum(), occupied, max, rebuildCount);
+    }
+
+
+    /**
+     * Returns true if the value changed by more than DRIFT_FACTOR
+     */
+    private static boolean drifted(double value, double oldValue) {
+        if (oldValue <= 0)
+            return value > 0;
+
+        return value > oldValue * DRIFT_FACTOR || value * DRIFT_FACTOR < oldValue;
+    }
+
+
+    /**
+     * Rebuilds the hash grid if the number of nodes or the maximum
+     * node radius changed significantly. The cell size is at least
+     * the maximum node diameter (so the neighborhood of any node is
+     * in 3x3 cells) and it is chosen such that a cell contains
+     * NODES_PER_CELL nodes on average.
+     */
+    private void adjustHashGrid() {
+        long n = nodeCount.sum();
+        double r = maximumNodeRadius;
+
+        if (!drifted(n, lastNodeCount) && !drifted(r, lastNodeRadius))
+            return;
+
+        lastNodeCount = n;
+        lastNodeRadius = r;
+
+        if (n == 0)
+            return;
+
+        double cellSize = Math.max(2 * r, Math.sqrt(xSize * ySize * NODES_PER_CELL / n));
+        double nx = Math.max(1, Math.floor(xSize / cellSize));
+        double ny = Math.max(1, Math.floor(ySize / cellSize));
+
+        // Limit the memory used by the hash grid
+        double maxCells = Math.max(MIN_MAX_CELLS, (double) n * MAX_CELLS_PER_NODE);
+        if (nx * ny > maxCells) {
+            double k = Math.sqrt(maxCells / (nx * ny));
+            nx = Math.max(1, Math.floor(nx * k));
+            ny = Math.max(1, Math.floor(ny * k));
+        }
+
+        if ((int) nx != hashXSize || (int) ny != hashYSize)
+            rebuildHashGrid((int) nx, (int) ny);
+    }
+
+
+    /**
+     * Creates a new hash grid and moves all nodes into it
+     *
+     * @param xCells
+     * @param yCells
+     */
+    private void rebuildHashGrid(int xCells, int yCells) {
+        HashGrid2d oldGrid = hashGrid;
+        int oldXSize = hashXSize;
+        int oldYSize = hashYSize;
+
+        hashGrid = new HashGrid2d(this, xCells, yCells);
+        hashXSize = xCells;
+        hashYSize = yCells;
+        rebuildCount++;
+
+        for (int i = 0; i < oldXSize; i++) {
+            for (int j = 0; j < oldYSize; j++) {
+                SpaceNode first = oldGrid.getNode(i, j);
+                SpaceNode next = first.next;
+
+                while (next != first) {
+                    SpaceNode node = next;
+                    next = next.next;
+
+                    SpaceNode node1 = hashGrid.getNode(node.position.x, node.position.y);
+                    node.next = node1.next;
+                    node1.next.prev = node;
+                    node.prev = node1;
+                    node1.next = node;
+                }
+            }
+        }
     }
 
 
     @Override
     protected void addNode0(SpaceNode node) {
+        nodeCount.increment();
+
         SpaceNode node1 = hashGrid.getNode(node.position.x, node.position.y);
         node.next = node1.next;
         node1.next.prev = node;
@@ -77,6 +334,8 @@ public class StandardSpace extends BoundedSpace {
 
     @Override
     protected void addNodeAndMove0(SpaceNode node) {
+        nodeCount.increment();
+
         double x = restrictX(node.newPosition.x);
         double y = restrictY(node.newPosition.y);
 
@@ -96,6 +355,11 @@ public class StandardSpace extends BoundedSpace {
      */
     @Override
     protected void removeNode0(SpaceNode node) {
+        // A node which was created and removed during the same step
+        // is not in the hash grid
+        if (node.next != node)
+            nodeCount.decrement();
+
         node.prev.next = node.next;
         node.next.prev = node.prev;
 
@@ -146,58 +410,7 @@ public class StandardSpace extends BoundedSpace {
      * @return
      */
     protected ArrayList<SpaceAgent> getAgents(SpaceNode node) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-//		result.clear();
-
-        int x0 = hashGrid.findX(node.position.x);
-        int y0 = hashGrid.findY(node.position.y);
-
-        double radius = node.getRelativeSize() + maximumNodeRadius;
-        int xOffset = (int) (radius / hashGrid.getXStep()) + 1;
-        int yOffset = (int) (radius / hashGrid.getYStep()) + 1;
-
-//		int i0 = -5, i1 = 5;
-//		int j0 = -5, j1 = 5;
-        int i0 = -xOffset, i1 = xOffset;
-        int j0 = -yOffset, j1 = yOffset;
-
-        if (!wrapX) {
-            if (x0 + i0 < 0)
-                i0 = -x0;
-
-            if (x0 + i1 >= hashXSize)
-                i1 = hashXSize - 1 - x0;
-        }
-
-        if (!wrapY) {
-            if (y0 + j0 < 0)
-                j0 = -y0;
-
-            if (y0 + j1 >= hashYSize)
-                j1 = hashYSize - 1 - y0;
-        }
-
-        for (int i = i0; i <= i1; i++) {
-            // TODO: For non-torus topology here will be problems with multiple checks
-            int x = hashGrid.restrictX(x0 + i);
-
-            for (int j = j0; j <= j1; j++) {
-                int y = hashGrid.restrictY(y0 + j);
-
-                SpaceNode first = hashGrid.getNode(x, y);
-                SpaceNode next = first.next;
-
-                while (next != first) {
-                    if (node.intersects(next))
-                        result.add(next.agent);
-                    next = next.next;
-                }
-
-            }
-        }
-
-        return result;
+        return collectAgents(node, null, false);
     }
 
     /**
@@ -207,62 +420,8 @@ public class StandardSpace extends BoundedSpace {
      * @param type
      * @return
      */
-    @SuppressWarnings("unchecked")
     protected <T extends SpaceAgent> ArrayList<T> getAgents(SpaceNode node, Class<T> type) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-
-//		result.clear();
-
-        int x0 = hashGrid.findX(node.position.x);
-        int y0 = hashGrid.findY(node.position.y);
-
-        double radius = node.getRelativeSize() + maximumNodeRadius;
-        int xOffset = (int) (radius / hashGrid.getXStep()) + 1;
-        int yOffset = (int) (radius / hashGrid.getYStep()) + 1;
-
-//		int i0 = -5, i1 = 5;
-//		int j0 = -5, j1 = 5;
-        int i0 = -xOffset, i1 = xOffset;
-        int j0 = -yOffset, j1 = yOffset;
-        if (!wrapX) {
-            if (x0 + i0 < 0)
-                i0 = -x0;
-
-            if (x0 + i1 >= hashXSize)
-                i1 = hashXSize - 1 - x0;
-        }
-
-        if (!wrapY) {
-            if (y0 + j0 < 0)
-                j0 = -y0;
-
-            if (y0 + j1 >= hashYSize)
-                j1 = hashYSize - 1 - y0;
-        }
-
-        for (int i = i0; i <= i1; i++) {
-            // TODO: For non-torus topology here will be problems with multiple checks
-            int x = hashGrid.restrictX(x0 + i);
-
-            for (int j = j0; j <= j1; j++) {
-                int y = hashGrid.restrictY(y0 + j);
-
-                SpaceNode first = hashGrid.getNode(x, y);
-                SpaceNode next = first.next;
-
-                while (next != first) {
-                    if (next.agent.getClass() == type) {
-                        if (node.intersects(next))
-                            result.add(next.agent);
-                    }
-                    next = next.next;
-                }
-
-            }
-        }
-
-        return (ArrayList<T>) result;
+        return collectAgents(node, type, false);
     }
 
 
@@ -270,16 +429,21 @@ public class StandardSpace extends BoundedSpace {
      * Gets all agents derived from the given type intersecting with the space node
      *
      * @param node
-     * @param type
+     * @param kind
      * @return
      */
-    @SuppressWarnings("unchecked")
     protected <T extends SpaceAgent> ArrayList<T> getAgentsOfKind(SpaceNode node, Class<T> kind) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
+        return collectAgents(node, kind, true);
+    }
 
-//		result.clear();
 
+    /**
+     * Visits all agents intersecting with the space node
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T extends SpaceAgent> int visitAgents(SpaceNode node, Class<T> type, boolean ofKind,
+                                                     AgentVisitor<? super T> visitor) {
         int x0 = hashGrid.findX(node.position.x);
         int y0 = hashGrid.findY(node.position.y);
 
@@ -287,10 +451,9 @@ public class StandardSpace extends BoundedSpace {
         int xOffset = (int) (radius / hashGrid.getXStep()) + 1;
         int yOffset = (int) (radius / hashGrid.getYStep()) + 1;
 
-//		int i0 = -5, i1 = 5;
-//		int j0 = -5, j1 = 5;
         int i0 = -xOffset, i1 = xOffset;
         int j0 = -yOffset, j1 = yOffset;
+
         if (!wrapX) {
             if (x0 + i0 < 0)
                 i0 = -x0;
@@ -307,8 +470,20 @@ public class StandardSpace extends BoundedSpace {
                 j1 = hashYSize - 1 - y0;
         }
 
+        // Visit each cell only once
+        if (i1 - i0 >= hashXSize) {
+            i0 = -x0;
+            i1 = hashXSize - 1 - x0;
+        }
+
+        if (j1 - j0 >= hashYSize) {
+            j0 = -y0;
+            j1 = hashYSize - 1 - y0;
+        }
+
+        int count = 0;
+
         for (int i = i0; i <= i1; i++) {
-            // TODO: For non-torus topology here will be problems with multiple checks
             int x = hashGrid.restrictX(x0 + i);
 
             for (int j = j0; j <= j1; j++) {
@@ -318,17 +493,21 @@ public class StandardSpace extends BoundedSpace {
                 SpaceNode next = first.next;
 
                 while (next != first) {
-                    if (kind.isInstance(next.agent)) {
-                        if (node.intersects(next))
-                            result.add(next.agent);
-                    }
+                    SpaceNode current = next;
+                    // The visitor can remove the current node
                     next = next.next;
-                }
 
+                    if (!matches(current.agent, type, ofKind) || !node.intersects(current))
+                        continue;
+
+                    count++;
+                    if (visitor != null && !visitor.visit((T) current.agent))
+                        return count;
+                }
             }
         }
 
-        return (ArrayList<T>) result;
+        return count;
     }
 
 
@@ -342,6 +521,7 @@ public class StandardSpace extends BoundedSpace {
 
         // Load hash grid
         hashGrid = new HashGrid2d(this, hashXSize, hashYSize);
+        nodeCount = new LongAdder();
     }
 
     /**
@@ -125,73 +125,7 @@ public class StandardSpace3d extends BoundedSpace3d {
      * @return
      */
     protected ArrayList<SpaceAgent> getAgents(SpaceNode node) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-        // result.clear();
-
-        int x0 = hashGrid.findX(node.position.x);
-        int y0 = hashGrid.findY(node.position.y);
-        int z0 = hashGrid.findZ(node.position.z);
-
-        double radius = node.getRelativeSize() + maximumNodeRadius;
-        int xOffset = (int) (radius / hashGrid.getXStep()) + 1;
-        int yOffset = (int) (radius / hashGrid.getYStep()) + 1;
-        int zOffset = (int) (radius / hashGrid.getZStep()) + 1;
-
-        int i0 = -xOffset, i1 = xOffset;
-        int j0 = -yOffset, j1 = yOffset;
-        int k0 = -zOffset, k1 = zOffset;
-
-        // TODO: if (wrapZ) then check that 2 * xOffset < hashXSize and contract
-        // the search area if necessary
-
-        if (!wrapX) {
-            if (x0 + i0 < 0)
-                i0 = -x0;
-
-            if (x0 + i1 >= hashXSize)
-                i1 = hashXSize - 1 - x0;
-        }
-
-        if (!wrapY) {
-            if (y0 + j0 < 0)
-                j0 = -y0;
-
-            if (y0 + j1 >= hashYSize)
-                j1 = hashYSize - 1 - y0;
-        }
-
-        if (!wrapZ) {
-            if (z0 + k0 < 0)
-                k0 = -z0;
-
-            if (z0 + k1 >= hashZSize)
-                k1 = hashZSize - 1 - z0;
-        }
-
-        for (int k = k0; k <= k1; k++) {
-            int z = hashGrid.restrictZ(z0 + k);
-
-            for (int i = i0; i <= i1; i++) {
-                int x = hashGrid.restrictX(x0 + i);
-
-                for (int j = j0; j <= j1; j++) {
-                    int y = hashGrid.restrictY(y0 + j);
-
-                    SpaceNode first = hashGrid.getNode(x, y, z);
-                    SpaceNode next = first.next;
-
-                    while (next != first) {
-                        if (node.intersects(next))
-                            result.add(next.agent);
-                        next = next.next;
-                    }
-
-                }
-            }
-        }
-
-        return result;
+        return collectAgents(node, null, false);
     }
 
     /**
@@ -201,79 +135,9 @@ public class StandardSpace3d extends BoundedSpace3d {
      * @param type
      * @return
      */
-    @SuppressWarnings("unchecked")
     protected <T extends SpaceAgent> ArrayList<T> getAgents(SpaceNode node,
                                                             Class<T> type) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-        // result.clear();
-
-        int x0 = hashGrid.findX(node.position.x);
-        int y0 = hashGrid.findY(node.position.y);
-        int z0 = hashGrid.findZ(node.position.z);
-
-        double radius = node.getRelativeSize() + maximumNodeRadius;
-        int xOffset = (int) (radius / hashGrid.getXStep()) + 1;
-        int yOffset = (int) (radius / hashGrid.getYStep()) + 1;
-        int zOffset = (int) (radius / hashGrid.getZStep()) + 1;
-
-        int i0 = -xOffset, i1 = xOffset;
-        int j0 = -yOffset, j1 = yOffset;
-        int k0 = -zOffset, k1 = zOffset;
-
-        // TODO: if (wrapZ) then check that 2 * xOffset < hashXSize and contract
-        // the search area if necessary
-
-        if (!wrapX) {
-            if (x0 + i0 < 0)
-                i0 = -x0;
-
-            if (x0 + i1 >= hashXSize)
-                i1 = hashXSize - 1 - x0;
-        }
-
-        if (!wrapY) {
-            if (y0 + j0 < 0)
-                j0 = -y0;
-
-            if (y0 + j1 >= hashYSize)
-                j1 = hashYSize - 1 - y0;
-        }
-
-        if (!wrapZ) {
-            if (z0 + k0 < 0)
-                k0 = -z0;
-
-            if (z0 + k1 >= hashZSize)
-                k1 = hashZSize - 1 - z0;
-        }
-
-        for (int k = k0; k <= k1; k++) {
-            int z = hashGrid.restrictZ(z0 + k);
-
-            for (int i = i0; i <= i1; i++) {
-                int x = hashGrid.restrictX(x0 + i);
-
-                for (int j = j0; j <= j1; j++) {
-                    int y = hashGrid.restrictY(y0 + j);
-
-                    SpaceNode first = hashGrid.getNode(x, y, z);
-                    SpaceNode next = first.next;
-
-                    while (next != first) {
-                        if (next.agent.getClass() == type) {
-                            if (node.intersects(next))
-                                result.add(next.agent);
-                        }
-
-                        next = next.next;
-                    }
-                }
-
-            }
-        }
-
-        return (ArrayList<T>) result;
+        return collectAgents(node, type, false);
     }
 
     /**
@@ -281,16 +145,21 @@ public class StandardSpace3d extends BoundedSpace3d {
      * node
      *
      * @param node
-     * @param type
+     * @param kind
      * @return
      */
-    @SuppressWarnings("unchecked")
     protected <T extends SpaceAgent> ArrayList<T> getAgentsOfKind(
             SpaceNode node, Class<T> kind) {
-        // TODO: if the mode is not parallel then can use a global set
-        ArrayList<SpaceAgent> result = new ArrayList<SpaceAgent>(10);
-        // result.clear();
+        return collectAgents(node, kind, true);
+    }
 
+    /**
+     * Visits all agents intersecting with the space node
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T extends SpaceAgent> int visitAgents(SpaceNode node, Class<T> type,
+                                                     boolean ofKind, AgentVisitor<? super T> visitor) {
         int x0 = hashGrid.findX(node.position.x);
         int y0 = hashGrid.findY(node.position.y);
         int z0 = hashGrid.findZ(node.position.z);
@@ -304,9 +173,6 @@ public class StandardSpace3d extends BoundedSpace3d {
         int j0 = -yOffset, j1 = yOffset;
         int k0 = -zOffset, k1 = zOffset;
 
-        // TODO: if (wrapZ) then check that 2 * xOffset < hashXSize and contract
-        // the search area if necessary
-
         if (!wrapX) {
             if (x0 + i0 < 0)
                 i0 = -x0;
@@ -331,6 +197,24 @@ public class StandardSpace3d extends BoundedSpace3d {
                 k1 = hashZSize - 1 - z0;
         }
 
+        // Visit each cell only once
+        if (i1 - i0 >= hashXSize) {
+            i0 = -x0;
+            i1 = hashXSize - 1 - x0;
+        }
+
+        if (j1 - j0 >= hashYSize) {
+            j0 = -y0;
+            j1 = hashYSize - 1 - y0;
+        }
+
+        if (k1 - k0 >= hashZSize) {
+            k0 = -z0;
+            k1 = hashZSize - 1 - z0;
+        }
+
+        int count = 0;
+
         for (int k = k0; k <= k1; k++) {
             int z = hashGrid.restrictZ(z0 + k);
 
@@ -344,18 +228,22 @@ public class StandardSpace3d extends BoundedSpace3d {
                     SpaceNode next = first.next;
 
                     while (next != first) {
-                        if (kind.isInstance(next.agent)) {
-                            if (node.intersects(next))
-                                result.add(next.agent);
-                        }
+                        SpaceNode current = next;
+                        // The visitor can remove the current node
                         next = next.next;
+
+                        if (!matches(current.agent, type, ofKind) || !node.intersects(current))
+                            continue;
+
+                        count++;
+                        if (visitor != null && !visitor.visit((T) current.agent))
+                            return count;
                     }
                 }
-
             }
         }
 
-        return (ArrayList<T>) result;
+        return count;
     }
 
 
@@ -0,0 +1,239 @@
+package org.sparkabm.space;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A queue of node updates for the parallel execution mode.
+ * The space is split into tiles (blocks of hash grid cells).
+ * Each thread has its own private queue for each tile, so no
+ * locks are required for adding nodes. Updates are processed
+ * tile-parallel: an update which touches cells of one tile only
+ * is processed by the task of this tile, all other updates
+ * (boundary moves) are merged serially after all tiles are processed.
+ * Queues of one tile are processed in the order of registration
+ * of threads, so the order of nodes in hash grid cells depends
+ * on thread scheduling.
+ *
+ * @author Monad
+ */
+final class TiledNodeQueue {
+    /**
+     * Partition of a space into tiles
+     */
+    interface Partition {
+        /**
+         * Returns the tile of the point
+         */
+        int getTile(double x, double y);
+
+        /**
+         * Returns the tile where the node update should be
+         * processed, -1 if the update touches several tiles,
+         * or -2 if the update touches no cells (it can be processed
+         * by any tile, e.g. a node which is created and removed
+         * at the same tick)
+         */
+        int getUpdateTile(SpaceNode node);
+    }
+
+
+    // The space
+    private final Space space;
+    private final Partition partition;
+    private final int tileCount;
+
+    /**
+     * Private queues of one thread
+     */
+    private static final class ThreadQueues {
+        // Updates of each tile
+        final ArrayList<SpaceNode>[] tiles;
+        // The thread which owns the queues
+        final WeakReference<Thread> owner;
+
+        @SuppressWarnings("unchecked")
+        ThreadQueues(int tileCount) {
+            tiles = (ArrayList<SpaceNode>[]) new ArrayList<?>[tileCount];
+            for (int i = 0; i < tileCount; i++)
+                tiles[i] = new ArrayList<SpaceNode>();
+
+            owner = new WeakReference<Thread>(Thread.currentThread());
+        }
+
+        /**
+         * Returns true if the owner thread is terminated
+         */
+        boolean isDead() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+
+
+    // Private queues of all threads
+    private final ArrayList<ThreadQueues> allQueues;
+    private ThreadLocal<ThreadQueues> localQueues;
+    // The pool of the threads which own queues
+    private ForkJoinPool pool;
+
+    // Boundary updates for each tile
+    private final ArrayList<SpaceNode>[] boundary;
+
+
+    /**
+     * Creates a queue for the given number of tiles
+     *
+     * @param space
+     * @param partition
+     * @param tileCount
+     */
+    @SuppressWarnings("unchecked")
+    TiledNodeQueue(Space space, Partition partition, int tileCount) {
+        this.space = space;
+        this.partition = partition;
+        this.tileCount = tileCount;
+
+        allQueues = new ArrayList<ThreadQueues>();
+        localQueues = new ThreadLocal<ThreadQueues>();
+
+        boundary = (ArrayList<SpaceNode>[]) new ArrayList<?>[tileCount];
+        for (int i = 0; i < tileCount; i++)
+            boundary[i] = new ArrayList<SpaceNode>();
+    }
+
+
+    /**
+     * Returns the number of tiles
+     *
+     * @return
+     */
+    int getTileCount() {
+        return tileCount;
+    }
+
+
+    /**
+     * Returns private queues of the current thread
+     *
+     * @return
+     */
+    private ArrayList<SpaceNode>[] getLocalQueues() {
+        ThreadQueues queues = localQueues.get();
+        if (queues == null) {
+            queues = new ThreadQueues(tileCount);
+            localQueues.set(queues);
+            synchronized (allQueues) {
+                allQueues.add(queues);
+            }
+        }
+
+        return queues.tiles;
+    }
+
+
+    /**
+     * Sets the state flag of the node and adds the node into
+     * the private queue of the current thread (if the node is
+     * not queued yet)
+     *
+     * @param node
+     * @param flag
+     */
+    void add(SpaceNode node, int flag) {
+        // Usually only one thread changes the node,
+        // so this lock is not contended
+        synchronized (node) {
+            if (node.state == 0) {
+                int tile = partition.getTile(node.position.x, node.position.y);
+                getLocalQueues()[tile].add(node);
+            }
+
+            node.state |= flag;
+        }
+    }
+
+
+    /**
+     * Processes all updates of one tile
+     */
+    @SuppressWarnings("serial")
+    private class TileTask extends RecursiveAction {
+        private final int tile;
+
+        TileTask(int tile) {
+            this.tile = tile;
+        }
+
+        @Override
+        protected void compute() {
+            ArrayList<SpaceNode> boundaryNodes = boundary[tile];
+
+            // allQueues is not modified during the processing
+            for (int k = 0; k < allQueues.size(); k++) {
+                ArrayList<SpaceNode> queue = allQueues.get(k).tiles[tile];
+                int n = queue.size();
+
+                for (int i = 0; i < n; i++) {
+                    SpaceNode node = queue.get(i);
+                    int t = partition.getUpdateTile(node);
+
+                    if (t == tile || t == -2)
+                        space.processNode(node);
+                    else
+                        boundaryNodes.add(node);
+                }
+
+                queue.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Processes all queued updates. Queues of terminated threads
+     * and of threads of an old pool are removed after they are processed
+     *
+     * @param pool
+     */
+    void process(ForkJoinPool pool) {
+        TileTask[] tasks = new TileTask[tileCount];
+        for (int i = 0; i < tileCount; i++)
+            tasks[i] = new TileTask(i);
+
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        // Merge boundary updates
+        for (int i = 0; i < tileCount; i++) {
+            ArrayList<SpaceNode> nodes = boundary[i];
+            for (int j = 0; j < nodes.size(); j++) {
+                space.processNode(nodes.get(j));
+            }
+
+            nodes.clear();
+        }
+
+        // All queues are empty here
+        synchronized (allQueues) {
+            if (pool != this.pool) {
+                this.pool = pool;
+                allQueues.clear();
+                localQueues = new ThreadLocal<ThreadQueues>();
+            } else {
+                for (int k = 0; k < allQueues.size(); k++) {
+                    if (allQueues.get(k).isDead())
+                        allQueues.remove(k--);
+                }
+            }
+        }
+    }
+}
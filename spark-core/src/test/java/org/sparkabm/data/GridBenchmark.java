@@ -0,0 +1,97 @@
+package org.sparkabm.data;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.sparkabm.core.ExecutionMode;
+import org.sparkabm.core.ObserverFactory;
+import org.sparkabm.core.SparkModel;
+import org.sparkabm.space.Space;
+import org.sparkabm.space.StandardSpace;
+import org.sparkabm.math.Vector;
+
+/**
+ * Measures the throughput of addValue() for grids in the parallel mode
+ * with 1..N threads for all parallel strategies.
+ * Usage: GridBenchmark [maxThreads] [gridSize] [steps] [addsPerThread]
+ *
+ * @author Monad
+ */
+public class GridBenchmark {
+    /**
+     * Runs the benchmark
+     *
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int adds = args.length > 3 ? Integer.parseInt(args[3]) : 200000;
+
+        SparkModel model = new SparkModel() {
+            @Override
+            public void setup() {
+            }
+        };
+
+        ObserverFactory.create(model, "ObserverForkJoin", ExecutionMode.PARALLEL_MODE);
+        Space space = new StandardSpace(0, size, 0, size, true, true);
+
+        System.out.println("Grid " + size + "x" + size + ", " + steps + " steps, "
+                + adds + " additions per thread per step");
+        System.out.println("threads\tstrategy\tMadds/s");
+
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+
+            for (GridFactory.ParallelStrategy strategy : GridFactory.ParallelStrategy.values()) {
+                Grid grid = GridFactory.createGrid(space, size, size, strategy);
+
+                // Warm up
+                run(pool, grid, threads, 2, adds, size);
+
+                long t0 = System.nanoTime();
+                run(pool, grid, threads, steps, adds, size);
+                double sec = (System.nanoTime() - t0) * 1e-9;
+
+                double rate = (double) threads * adds * steps / sec / 1e6;
+                System.out.printf("%d\t%s\t%.2f%n", threads, strategy, rate);
+            }
+
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+
+    /**
+     * Runs the given number of steps. Each thread adds values
+     * at random positions.
+     */
+    private static void run(ForkJoinPool pool, final Grid grid, int threads,
+                            int steps, final int adds, final double size) throws Exception {
+        for (int step = 0; step < steps; step++) {
+            grid.beginStep();
+
+            final int seed = step;
+            pool.submit(() -> {
+                IntStream.range(0, threads).parallel().forEach(k -> {
+                    Random rand = new Random(seed * 31 + k);
+                    Vector p = new Vector();
+
+                    for (int i = 0; i < adds; i++) {
+                        p.x = rand.nextDouble() * size;
+                        p.y = rand.nextDouble() * size;
+                        grid.addValue(p, 1.0);
+                    }
+                });
+            }).get();
+
+            grid.endStep();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.sparkabm.runtime.batch;
+
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.sparkabm.utils.XmlDocUtils;
+import org.w3c.dom.Node;
+
+/**
+ * Description of a batch (a 'batch' node of a batch file).
+ * The format is the same as for the GUI batch runner.
+ * Data layers are saved in binary files if the 'datalayers' node
+ * has the attribute format="binary" (values="float|double",
+ * csv-export="true" converts the files into CSV after runs).
+ *
+ * @author Monad
+ */
+class BatchDescription {
+    private static final Logger logger = Logger.getLogger(BatchDescription.class.getName());
+
+    /**
+     * Range of values of a parameter
+     */
+    static class ParameterRange {
+        final String name;
+        final double start;
+        final double end;
+        final double step;
+        // The number of values in the range
+        final int stepsNumber;
+
+        /**
+         * Loads a parameter from the given node
+         *
+         * @param node
+         */
+        ParameterRange(Node node) throws Exception {
+            name = XmlDocUtils.getValue(node, "name", null);
+            if (name == null)
+                throw new Exception("Undefined parameter name");
+
+            start = XmlDocUtils.getDoubleValue(node, "start", 0);
+            end = XmlDocUtils.getDoubleValue(node, "end", 0);
+            double step = XmlDocUtils.getDoubleValue(node, "step", 1);
+            if (step <= 0)
+                step = 1;
+
+            this.step = step;
+            this.stepsNumber = end >= start ? (int) ((end - start) / step) + 1 : 1;
+        }
+
+
+        /**
+         * Returns the i-th value of the range
+         *
+         * @param i
+         * @return
+         */
+        double getValue(int i) {
+            return start + i * step;
+        }
+    }
+
+
+    final long ticks;
+    final int repetitions;
+    final boolean saveData;
+    final String dataFile;
+
+    // Null if the time seed should be used
+    final Long seed;
+
+    final ArrayList<ParameterRange> parameters;
+
+    final int dataLayerInterval;
+    final int dataLayerPrecision;
+    final boolean dataLayerOneFile;
+    final String[] dataLayerNames;
+
+    // Data layers are saved in binary files (GridSeriesWriter)
+    final boolean dataLayerBinary;
+    final boolean dataLayerDouble;
+    // Binary files are exported to CSV files after runs
+    final boolean dataLayerCsvExport;
+
+
+    /**
+     * Creates a batch from the given xml node
+     *
+     * @param node
+     */
+    BatchDescription(Node node) {
+        ticks = XmlDocUtils.getLongValue(node, "ticks", 100);
+        repetitions = Math.max(XmlDocUtils.getIntegerValue(node, "repetitions", 1), 1);
+
+        saveData = XmlDocUtils.getBooleanValue(node, "save-data", true);
+        dataFile = XmlDocUtils.getValue(node, "data-file", "data");
+
+        String s = XmlDocUtils.getValue(node, "seed", null);
+        seed = s != null ? Long.valueOf(s.trim()) : null;
+
+        if (XmlDocUtils.getValue(node, "snapshot-interval", null) != null)
+            logger.info("Snapshots are not saved by this runner (use the batch runner of the GUI module)");
+
+        // Load parameters
+        ArrayList<Node> pars = XmlDocUtils.getChildrenByTagName(node, "parameter");
+        parameters = new ArrayList<ParameterRange>(pars.size());
+
+        for (Node p : pars) {
+            try {
+                parameters.add(new ParameterRange(p));
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "exception", e);
+            }
+        }
+
+        // Load data layers
+        Node grids = XmlDocUtils.getChildByTagName(node, "datalayers");
+
+        if (grids != null) {
+            dataLayerInterval = XmlDocUtils.getIntegerValue(grids, "interval", 1);
+            dataLayerPrecision = XmlDocUtils.getIntegerValue(grids, "precision", 5);
+            dataLayerOneFile = XmlDocUtils.getBooleanValue(grids, "one-file", true);
+            dataLayerBinary = XmlDocUtils.getValue(grids, "format", "csv").trim().equalsIgnoreCase("binary");
+            dataLayerDouble = XmlDocUtils.getValue(grids, "values", "float").trim().equalsIgnoreCase("double");
+            dataLayerCsvExport = XmlDocUtils.getBooleanValue(grids, "csv-export", false);
+
+            ArrayList<String> names = new ArrayList<String>();
+            for (String name : grids.getTextContent().split(",")) {
+                name = name.trim();
+                if (name.length() > 0)
+                    names.add(name);
+            }
+
+            dataLayerNames = names.toArray(new String[names.size()]);
+        } else {
+            dataLayerInterval = 1;
+            dataLayerPrecision = 5;
+            dataLayerOneFile = true;
+            dataLayerNames = new String[0];
+            dataLayerBinary = false;
+            dataLayerDouble = false;
+            dataLayerCsvExport = false;
+        }
+    }
+
+
+    /**
+     * Returns the number of points in the parameter space
+     *
+     * @return
+     */
+    int getPointsNumber() {
+        int n = 1;
+        for (ParameterRange p : parameters)
+            n *= p.stepsNumber;
+
+        return n;
+    }
+
+
+    /**
+     * Returns parameter values of the given point.
+     * The first parameter changes first (as in the GUI parameter sweep).
+     *
+     * @param index
+     * @return
+     */
+    double[] getPoint(int index) {
+        double[] values = new double[parameters.size()];
+
+        for (int i = 0; i < values.length; i++) {
+            ParameterRange p = parameters.get(i);
+            values[i] = p.getValue(index % p.stepsNumber);
+            index /= p.stepsNumber;
+        }
+
+        return values;
+    }
+}
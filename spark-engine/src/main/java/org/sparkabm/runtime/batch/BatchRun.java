@@ -0,0 +1,263 @@
+package org.sparkabm.runtime.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.sparkabm.core.ExecutionMode;
+import org.sparkabm.core.ModelVariable;
+import org.sparkabm.core.SimulationContext;
+import org.sparkabm.core.SparkModel;
+import org.sparkabm.math.RandomHelper;
+import org.sparkabm.modelfile.ModelFileLoader;
+import org.sparkabm.runtime.commands.Command_Stop;
+import org.sparkabm.runtime.data.DataCollectorDescription;
+import org.sparkabm.runtime.internal.SparkModelXMLFactory;
+import org.sparkabm.runtime.internal.engine.StandardSimulationEngine;
+import org.sparkabm.runtime.internal.manager.CommandQueue;
+import org.sparkabm.utils.FileUtils;
+import org.sparkabm.utils.XmlDocUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * One simulation of a batch. Each run loads the model with its own
+ * class loader and executes it in its own simulation context,
+ * so runs can be executed concurrently.
+ *
+ * @author Monad
+ */
+class BatchRun implements Callable<BatchRun> {
+    private static final Logger logger = Logger.getLogger(BatchRun.class.getName());
+
+    /**
+     * Final status of a run
+     */
+    enum Status {
+        NOT_STARTED, COMPLETED, TIMEOUT, FAILED
+    }
+
+
+    private final File modelFile;
+    private final BatchDescription batch;
+
+    // Index of the run in the batch
+    final int index;
+    // Index of the point in the parameter space
+    final int point;
+    final int repetition;
+    final double[] values;
+    final int seed;
+
+    // Output directory
+    final File dir;
+
+    // Results
+    volatile Status status = Status.NOT_STARTED;
+    volatile long ticks;
+    volatile long time;
+    volatile Exception error;
+    // Binary files of data layers
+    final ArrayList<File> gridFiles = new ArrayList<File>();
+
+    // Stops runs after the time limit
+    private final ScheduledExecutorService timer;
+    private final long timeout;
+
+    // Initial state of the run (null if the setup method is used)
+    File warmStart;
+    // The number of ticks between checkpoints (0 means no checkpoints)
+    long checkpointInterval;
+
+
+    /**
+     * Creates a run
+     *
+     * @param modelFile
+     * @param batch
+     * @param index
+     * @param point
+     * @param repetition
+     * @param seed
+     * @param dir
+     * @param timer
+     * @param timeout the time limit in milliseconds (0 means no limit)
+     */
+    BatchRun(File modelFile, BatchDescription batch, int index, int point, int repetition,
+             int seed, File dir, ScheduledExecutorService timer, long timeout) {
+        this.modelFile = modelFile;
+        this.batch = batch;
+        this.index = index;
+        this.point = point;
+        this.repetition = repetition;
+        this.values = batch.getPoint(point);
+        this.seed = seed;
+        this.dir = dir;
+        this.timer = timer;
+        this.timeout = timeout;
+    }
+
+
+    @Override
+    public BatchRun call() {
+        long t0 = System.currentTimeMillis();
+
+        try {
+            dir.mkdirs();
+            SimulationContext context = new SimulationContext(dir.getName());
+
+            context.execute(() -> {
+                FileUtils.beginThreadScope(dir);
+                try {
+                    simulate();
+                } finally {
+                    FileUtils.endThreadScope();
+                }
+
+                return null;
+            });
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Run " + dir.getName() + " failed", e);
+            error = e;
+            status = Status.FAILED;
+        }
+
+        time = System.currentTimeMillis() - t0;
+        return this;
+    }
+
+
+    /**
+     * Loads the model and runs the simulation
+     */
+    private void simulate() throws Exception {
+        Document doc = ModelFileLoader.loadModelFile(modelFile);
+        SparkModel model = SparkModelXMLFactory.loadModel(doc, getRootPath(doc));
+
+        // Create the engine
+        CommandQueue commandQueue = new CommandQueue();
+        StandardSimulationEngine engine = new StandardSimulationEngine(model, commandQueue);
+        engine.setSimulationTime(batch.ticks);
+
+        if (checkpointInterval > 0)
+            engine.setCheckpoint(new File(dir, "checkpoint.bin"), checkpointInterval);
+
+        // All runs start from the same state. Parameters and the seed
+        // are set after the state is loaded
+        if (warmStart != null)
+            engine.loadState(warmStart, null, null);
+
+        // Set parameters
+        HashMap<String, String> parameterVariables = getParameterVariables(doc);
+        for (int i = 0; i < values.length; i++) {
+            String name = batch.parameters.get(i).name;
+            String varName = parameterVariables.get(name);
+            ModelVariable var = model.getVariable(varName != null ? varName : name);
+
+            if (var == null)
+                throw new Exception("Undefined parameter " + name);
+
+            setValue(var, values[i]);
+        }
+
+        RandomHelper.setSeed(seed);
+        if (warmStart != null)
+            RandomHelper.reset(model.getObserver().getExecutionMode() == ExecutionMode.PARALLEL_MODE);
+
+        ArrayList<String> names = new ArrayList<String>();
+        for (ModelVariable var : model.getVariables()) {
+            names.add(var.getName());
+            engine.addDataCollector(new DataCollectorDescription(
+                    DataCollectorDescription.VARIABLE, var.getName(), 1, null, true));
+        }
+
+        for (String name : batch.dataLayerNames) {
+            engine.addDataCollector(new DataCollectorDescription(
+                    DataCollectorDescription.DATA_LAYER, name, batch.dataLayerInterval, null, true));
+        }
+
+        RunDataWriter writer = new RunDataWriter(dir, batch, values,
+                names.toArray(new String[names.size()]));
+        engine.addDataProcessor(writer);
+
+        ScheduledFuture<?> stop = null;
+        try {
+            if (warmStart == null)
+                engine.setup(null, null);
+            else
+                model.synchronizeVariables();
+
+            if (timeout > 0)
+                stop = timer.schedule(() -> commandQueue.put(new Command_Stop()),
+                        timeout, TimeUnit.MILLISECONDS);
+
+            engine.run(false);
+        } finally {
+            if (stop != null)
+                stop.cancel(false);
+            writer.close();
+            gridFiles.addAll(writer.getBinaryFiles());
+        }
+
+        ticks = Math.max(writer.getLastTick(), 0);
+        status = writer.isTerminated() ? Status.TIMEOUT : Status.COMPLETED;
+    }
+
+
+    /**
+     * Sets the value of a variable
+     */
+    private static void setValue(ModelVariable var, double value) throws Exception {
+        Class<?> type = var.getType();
+
+        if (type == Integer.class)
+            var.setValue(Integer.valueOf((int) Math.round(value)));
+        else if (type == Boolean.class)
+            var.setValue(Boolean.valueOf(value != 0));
+        else
+            var.setValue(Double.valueOf(value));
+    }
+
+
+    /**
+     * Returns the path to model classes
+     */
+    private File getRootPath(Document doc) {
+        File modelDir = modelFile.getAbsoluteFile().getParentFile();
+        Node files = XmlDocUtils.getChildByTagName(doc.getFirstChild(), "files");
+
+        if (files == null)
+            return modelDir;
+
+        return new File(modelDir, XmlDocUtils.getValue(files, "path", "."));
+    }
+
+
+    /**
+     * Returns names of variables of model parameters
+     */
+    private static HashMap<String, String> getParameterVariables(Document doc) {
+        HashMap<String, String> map = new HashMap<String, String>();
+
+        Node model = XmlDocUtils.getChildByTagName(doc.getFirstChild(), "model");
+        Node parameters = XmlDocUtils.getChildByTagName(model, "parameters");
+        if (parameters == null)
+            return map;
+
+        for (Node node : XmlDocUtils.getChildrenByTagName(parameters, "parameter")) {
+            String var = XmlDocUtils.getValue(node, "variable", null);
+            if (var == null)
+                continue;
+
+            map.put(XmlDocUtils.getValue(node, "name", var), var);
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,311 @@
+package org.sparkabm.runtime.batch;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.sparkabm.math.RandomStream;
+import org.sparkabm.runtime.data.GridSeriesReader;
+import org.sparkabm.utils.XmlDocUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Runs batches of simulations in one process without any user interface.
+ * The batch file format is the same as for the GUI batch runner.
+ * Points of the parameter space (and repetitions) are executed
+ * concurrently by a pool of worker threads. Each run saves its data
+ * into its own folder.
+ * <p>
+ * A run can start from a checkpoint (for instance, the state after a burn-in period)
+ * instead of the setup method, parameters and seeds of the run are set after the
+ * checkpoint is loaded. Runs can also save checkpoints periodically to resume them
+ * after a failure.
+ * <p>
+ * Usage: ParallelBatchRunner batchfile.xml [-threads N] [-timeout seconds] [-output dir]
+ * [-warm-start checkpoint] [-checkpoint ticks]
+ *
+ * @author Monad
+ */
+public class ParallelBatchRunner {
+    private static final Logger logger = Logger.getLogger(ParallelBatchRunner.class.getName());
+
+    // The number of worker threads
+    private int threads = Runtime.getRuntime().availableProcessors();
+    // The time limit of one run in milliseconds (0 means no limit)
+    private long timeout = 0;
+    // The output directory
+    private File outputDir = new File(".");
+    // The initial state of all runs
+    private File warmStart;
+    // The number of ticks between checkpoints of runs
+    private long checkpointInterval;
+
+
+    /**
+     * Sets the number of worker threads
+     *
+     * @param threads
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(threads, 1);
+    }
+
+
+    /**
+     * Sets the time limit of one run
+     *
+     * @param seconds 0 means no limit
+     */
+    public void setTimeout(double seconds) {
+        this.timeout = (long) (Math.max(seconds, 0) * 1000);
+    }
+
+
+    /**
+     * Sets the output directory
+     *
+     * @param dir
+     */
+    public void setOutputDir(File dir) {
+        this.outputDir = dir;
+    }
+
+
+    /**
+     * Sets the checkpoint which is loaded by all runs
+     * instead of calling the setup method
+     *
+     * @param file null means that the setup method is used
+     */
+    public void setWarmStart(File file) {
+        this.warmStart = file;
+    }
+
+
+    /**
+     * Sets the number of ticks between checkpoints
+     * which are saved in output folders of runs
+     *
+     * @param ticks 0 means no checkpoints
+     */
+    public void setCheckpointInterval(long ticks) {
+        this.checkpointInterval = Math.max(ticks, 0);
+    }
+
+
+    /**
+     * Runs all batches of the given batch file
+     *
+     * @param batchFile
+     * @throws Exception
+     */
+    public void run(File batchFile) throws Exception {
+        Document doc = XmlDocUtils.loadXmlFile(batchFile);
+        if (doc == null || doc.getFirstChild() == null)
+            throw new Exception("Cannot load the batch file " + batchFile);
+
+        File basePath = batchFile.getAbsoluteFile().getParentFile();
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File root = new File(outputDir, "batch-" + stamp);
+
+        ArrayList<Node> modelNodes = XmlDocUtils.getChildrenByTagName(doc.getFirstChild(), "model");
+
+        for (Node modelNode : modelNodes) {
+            String path = XmlDocUtils.getValue(modelNode, "path", null);
+            if (path == null) {
+                logger.severe("Attribute 'path' does not exist for a 'model' node");
+                continue;
+            }
+
+            File modelFile = new File(basePath, path);
+            if (!modelFile.exists()) {
+                logger.severe("The model file " + modelFile + " does not exist");
+                continue;
+            }
+
+            String modelName = modelFile.getName();
+            int k = modelName.lastIndexOf('.');
+            if (k > 0)
+                modelName = modelName.substring(0, k);
+
+            ArrayList<Node> batchNodes = XmlDocUtils.getChildrenByTagName(modelNode, "batch");
+            for (int i = 0; i < batchNodes.size(); i++) {
+                BatchDescription batch = new BatchDescription(batchNodes.get(i));
+                runBatch(modelFile, batch, new File(root, modelName + "-" + (i + 1)));
+            }
+        }
+    }
+
+
+    /**
+     * Runs all points of one batch
+     */
+    private void runBatch(File modelFile, BatchDescription batch, File dir) throws Exception {
+        dir.mkdirs();
+
+        long seed = batch.seed != null ? batch.seed : System.currentTimeMillis();
+        int points = batch.getPointsNumber();
+        int n = points * batch.repetitions;
+
+        logger.info("Batch " + dir + ": " + n + " runs, " + threads + " threads");
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new WorkerFactory());
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        // Binary data layers are exported to CSV files in a separate thread
+        ExecutorService exporter = batch.dataLayerBinary && batch.dataLayerCsvExport
+                ? Executors.newSingleThreadExecutor(new WorkerFactory()) : null;
+
+        ArrayList<Future<BatchRun>> results = new ArrayList<Future<BatchRun>>(n);
+        long t0 = System.currentTimeMillis();
+
+        try {
+            int index = 0;
+            for (int point = 0; point < points; point++) {
+                for (int rep = 0; rep < batch.repetitions; rep++, index++) {
+                    File runDir = new File(dir, "run-" + (point + 1) + "-" + (rep + 1));
+                    BatchRun run = new BatchRun(modelFile, batch, index, point, rep,
+                            RandomStream.deriveSeed(seed, index), runDir, timer, timeout);
+                    run.warmStart = warmStart;
+                    run.checkpointInterval = checkpointInterval;
+                    results.add(pool.submit(run));
+                }
+            }
+
+            PrintWriter log = new PrintWriter(new File(dir, "batch.csv"));
+            try {
+                log.print("run,point,repetition,seed,status,ticks,ms");
+                for (BatchDescription.ParameterRange p : batch.parameters)
+                    log.print("," + p.name);
+                log.println();
+
+                long totalTicks = 0;
+                int completed = 0;
+
+                for (Future<BatchRun> f : results) {
+                    BatchRun run = f.get();
+                    totalTicks += run.ticks;
+                    if (run.status == BatchRun.Status.COMPLETED)
+                        completed++;
+
+                    log.print(run.dir.getName() + "," + (run.point + 1) + "," + (run.repetition + 1)
+                            + "," + run.seed + "," + run.status + "," + run.ticks + "," + run.time);
+                    for (double v : run.values)
+                        log.print("," + v);
+                    log.println();
+                    log.flush();
+
+                    if (exporter != null) {
+                        for (File file : run.gridFiles)
+                            exporter.submit(() -> exportCsv(file, batch.dataLayerPrecision));
+                    }
+                }
+
+                if (exporter != null) {
+                    exporter.shutdown();
+                    exporter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                }
+
+                double sec = Math.max(System.currentTimeMillis() - t0, 1) / 1000.0;
+                String summary = String.format("%d runs (%d completed) in %.1f s: %.2f runs/min, %.0f ticks/s",
+                        n, completed, sec, n * 60 / sec, totalTicks / sec);
+
+                logger.info(summary);
+                System.out.println(dir.getName() + ": " + summary);
+            } finally {
+                log.close();
+            }
+        } finally {
+            pool.shutdownNow();
+            timer.shutdownNow();
+            if (exporter != null)
+                exporter.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Exports a binary file of data layers into a CSV file with the same name
+     */
+    private static void exportCsv(File file, int precision) {
+        String name = file.getName();
+        File csv = new File(file.getParentFile(), name.substring(0, name.length() - 4) + ".csv");
+
+        try {
+            GridSeriesReader reader = new GridSeriesReader(file);
+            try {
+                reader.exportCsv(csv, precision);
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Cannot export " + file, e);
+        }
+    }
+
+
+    /**
+     * Creates daemon worker threads
+     */
+    private static class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "batch-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+
+    /**
+     * Main method
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: ParallelBatchRunner batchfile.xml [-threads N] [-timeout seconds] [-output dir]"
+                    + " [-warm-start checkpoint] [-checkpoint ticks]");
+            return;
+        }
+
+        ParallelBatchRunner runner = new ParallelBatchRunner();
+
+        try {
+            for (int i = 1; i < args.length - 1; i += 2) {
+                String arg = args[i];
+                String value = args[i + 1];
+
+                if (arg.equals("-threads"))
+                    runner.setThreads(Integer.parseInt(value));
+                else if (arg.equals("-timeout"))
+                    runner.setTimeout(Double.parseDouble(value));
+                else if (arg.equals("-output"))
+                    runner.setOutputDir(new File(value));
+                else if (arg.equals("-warm-start"))
+                    runner.setWarmStart(new File(value));
+                else if (arg.equals("-checkpoint"))
+                    runner.setCheckpointInterval(Long.parseLong(value));
+                else
+                    System.out.println("Unknown option: " + arg);
+            }
+
+            runner.run(new File(args[0]));
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "exception", e);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.sparkabm.runtime.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.sparkabm.runtime.data.DataCollectorDescription;
+import org.sparkabm.runtime.data.DataObject;
+import org.sparkabm.runtime.data.DataObject_Grid;
+import org.sparkabm.runtime.data.DataObject_State;
+import org.sparkabm.runtime.data.DataRow;
+import org.sparkabm.runtime.data.GridSeriesWriter;
+import org.sparkabm.runtime.internal.data.DataProcessor;
+
+/**
+ * Saves variables and data layers of one batch run. The formats
+ * of files are the same as for the GUI batch runner. Data layers
+ * can also be saved in binary files (see GridSeriesWriter).
+ *
+ * @author Monad
+ */
+class RunDataWriter extends DataProcessor {
+    private static final Logger logger = Logger.getLogger(RunDataWriter.class.getName());
+
+    // Output directory of the run
+    private final File dir;
+    private final BatchDescription batch;
+
+    // Names and values of parameters
+    private final String[] parameterNames;
+    private final double[] parameterValues;
+
+    // Names of saved variables
+    private final String[] variables;
+
+    // Writers (created after the first data row)
+    private PrintWriter dataWriter;
+    private PrintWriter[] gridWriters;
+    private GridSeriesWriter[] binaryWriters;
+
+    // All created binary files
+    private final ArrayList<File> binaryFiles = new ArrayList<File>();
+
+    // Format of data layer values
+    private final String format;
+
+    // The last processed tick
+    private long lastTick = -1;
+    private boolean terminated;
+
+
+    /**
+     * Creates a writer for the given run
+     *
+     * @param dir
+     * @param batch
+     * @param parameterValues
+     * @param variables
+     */
+    RunDataWriter(File dir, BatchDescription batch, double[] parameterValues, String[] variables) {
+        this.dir = dir;
+        this.batch = batch;
+        this.parameterValues = parameterValues;
+        this.variables = variables;
+
+        parameterNames = new String[batch.parameters.size()];
+        for (int i = 0; i < parameterNames.length; i++)
+            parameterNames[i] = batch.parameters.get(i).name;
+
+        if (batch.dataLayerPrecision > 0)
+            format = "%." + batch.dataLayerPrecision + "g";
+        else
+            format = "%g";
+    }
+
+
+    /**
+     * Returns the last processed tick
+     *
+     * @return
+     */
+    long getLastTick() {
+        return lastTick;
+    }
+
+
+    /**
+     * Returns binary files of data layers
+     *
+     * @return
+     */
+    ArrayList<File> getBinaryFiles() {
+        return binaryFiles;
+    }
+
+
+    /**
+     * Returns true if the simulation was stopped before the end
+     *
+     * @return
+     */
+    boolean isTerminated() {
+        return terminated;
+    }
+
+
+    /**
+     * Opens all files
+     */
+    private void open(DataObject_State state) throws Exception {
+        if (batch.saveData) {
+            dataWriter = createWriter(batch.dataFile + ".csv");
+            PrintWriter out = dataWriter;
+
+            out.println("Random seed");
+            out.println(state.getSeed());
+
+            out.println("\"Parameters\"");
+            out.println(join(parameterNames));
+
+            StringBuilder str = new StringBuilder();
+            for (int i = 0; i < parameterValues.length; i++) {
+                if (i > 0)
+                    str.append(',');
+                str.append(parameterValues[i]);
+            }
+            out.println(str);
+
+            out.println("Experiment");
+            out.print("Tick");
+            if (variables.length > 0)
+                out.print(',');
+            out.println(join(variables));
+        }
+
+        String[] names = batch.dataLayerNames;
+        if (names.length == 0)
+            return;
+
+        if (batch.dataLayerBinary) {
+            if (batch.dataLayerOneFile) {
+                binaryWriters = new GridSeriesWriter[]{createBinaryWriter(batch.dataFile + "grids.bin", names)};
+            } else {
+                binaryWriters = new GridSeriesWriter[names.length];
+                for (int i = 0; i < names.length; i++)
+                    binaryWriters[i] = createBinaryWriter(batch.dataFile + names[i] + "-grid.bin",
+                            new String[]{names[i]});
+            }
+
+            return;
+        }
+
+        if (batch.dataLayerOneFile) {
+            gridWriters = new PrintWriter[]{createWriter(batch.dataFile + "grids.csv")};
+        } else {
+            gridWriters = new PrintWriter[names.length];
+            for (int i = 0; i < names.length; i++)
+                gridWriters[i] = createWriter(batch.dataFile + names[i] + "-grid.csv");
+        }
+    }
+
+
+    /**
+     * Creates a buffered writer for a file in the output directory
+     */
+    private PrintWriter createWriter(String fname) throws Exception {
+        return new PrintWriter(new BufferedWriter(new FileWriter(new File(dir, fname)), 1 << 16));
+    }
+
+
+    /**
+     * Creates a binary writer for a file in the output directory
+     */
+    private GridSeriesWriter createBinaryWriter(String fname, String[] names) throws Exception {
+        File file = new File(dir, fname);
+        binaryFiles.add(file);
+        return new GridSeriesWriter(file, names, batch.dataLayerDouble);
+    }
+
+
+    /**
+     * Joins strings with commas
+     */
+    private static String join(String[] items) {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < items.length; i++) {
+            if (i > 0)
+                str.append(',');
+            str.append(items[i]);
+        }
+
+        return str.toString();
+    }
+
+
+    @Override
+    public void processDataRow(DataRow row) throws Exception {
+        DataObject_State state = row.getState();
+        long tick = state.getTick();
+
+        if (state.isTerminated())
+            terminated = true;
+
+        // A row is saved once for each tick (as in the GUI)
+        if (tick <= lastTick)
+            return;
+
+        if (lastTick < 0)
+            open(state);
+
+        lastTick = tick;
+
+        // Variables
+        if (dataWriter != null) {
+            PrintWriter out = dataWriter;
+            out.print(tick);
+
+            for (String name : variables) {
+                out.print(',');
+                DataObject obj = row.get(DataCollectorDescription.VARIABLE, name);
+                out.print(obj != null ? obj.toString() : "n/a");
+            }
+
+            out.println();
+        }
+
+        // Data layers
+        if (gridWriters == null && binaryWriters == null)
+            return;
+
+        if (tick % batch.dataLayerInterval != 0 && !state.isFinalState())
+            return;
+
+        String[] names = batch.dataLayerNames;
+
+        if (binaryWriters != null) {
+            for (int i = 0; i < names.length; i++) {
+                DataObject_Grid data = row.getGrid(names[i]);
+                if (data == null)
+                    continue;
+
+                if (batch.dataLayerOneFile)
+                    binaryWriters[0].write(tick, i, data);
+                else
+                    binaryWriters[i].write(tick, 0, data);
+            }
+
+            return;
+        }
+
+        StringBuilder str = new StringBuilder(1 << 16);
+
+        for (int i = 0; i < names.length; i++) {
+            DataObject_Grid data = row.getGrid(names[i]);
+            if (data == null)
+                continue;
+
+            str.setLength(0);
+            str.append(tick).append(',').append(names[i]).append(',');
+
+            int xSize = data.getXSize();
+            int ySize = data.getYSize();
+
+            for (int y = 0; y < ySize; y++) {
+                for (int x = 0; x < xSize; x++) {
+                    str.append(String.format(format, data.getValue(x, y)));
+                    str.append(',');
+                }
+            }
+
+            gridWriters[batch.dataLayerOneFile ? 0 : i].println(str);
+        }
+    }
+
+
+    @Override
+    public void finalizeProcessing() throws Exception {
+        close();
+    }
+
+
+    /**
+     * Closes all files
+     */
+    void close() {
+        if (dataWriter != null) {
+            dataWriter.close();
+            dataWriter = null;
+        }
+
+        if (gridWriters != null) {
+            for (PrintWriter w : gridWriters)
+                w.close();
+            gridWriters = null;
+        }
+
+        if (binaryWriters != null) {
+            for (GridSeriesWriter w : binaryWriters) {
+                try {
+                    w.close();
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "exception", e);
+                }
+            }
+            binaryWriters = null;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package org.sparkabm.runtime.commands;
+
+import org.sparkabm.math.Vector;
+import org.sparkabm.runtime.data.DataCollectorDescription;
+import org.sparkabm.runtime.data.DataObject_Inspection;
+import org.sparkabm.runtime.internal.net.WireBuffer;
+
+/**
+ * Binary codec of model manager commands. Each command is written as
+ * a type tag followed by its parameters. Commands without a binary
+ * representation (e.g., the load command which contains model files)
+ * are serialized.
+ *
+ * @author Monad
+ */
+public final class CommandCodec {
+    // Type tags
+    private static final int EXIT = 1;
+    private static final int START = 2;
+    private static final int STOP = 3;
+    private static final int PAUSE_RESUME = 4;
+    private static final int SET_DELAY = 5;
+    private static final int SET_FREQUENCY = 6;
+    private static final int SET_SEED = 7;
+    private static final int SET_VARIABLE_VALUE = 8;
+    private static final int INVOKE_METHOD = 9;
+    private static final int CONTROL_EVENT = 10;
+    private static final int ADD_DATA_COLLECTOR = 11;
+    private static final int REMOVE_DATA_COLLECTOR = 12;
+    private static final int ADD_DATA_RECEIVER = 13;
+    private static final int SERIALIZED = 127;
+
+    // Types of variable values
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_DOUBLE = 1;
+    private static final int VALUE_INTEGER = 2;
+    private static final int VALUE_LONG = 3;
+    private static final int VALUE_BOOLEAN = 4;
+    private static final int VALUE_STRING = 5;
+
+
+    private CommandCodec() {
+    }
+
+
+    /**
+     * Writes the command into the buffer
+     *
+     * @param cmd
+     * @param out
+     * @throws Exception
+     */
+    public static void write(ModelManagerCommand cmd, WireBuffer out) throws Exception {
+        Class<?> cl = cmd.getClass();
+
+        if (cl == Command_Exit.class) {
+            out.putByte(EXIT);
+        } else if (cl == Command_Start.class) {
+            Command_Start c = (Command_Start) cmd;
+            out.putByte(START);
+            out.putLong(c.getSimulationTime());
+            out.putBoolean(c.getPausedFlag());
+            out.putString(c.getObserverName());
+            out.putString(c.getExecutionMode());
+        } else if (cl == Command_Stop.class) {
+            out.putByte(STOP);
+        } else if (cl == Command_PauseResume.class) {
+            out.putByte(PAUSE_RESUME);
+        } else if (cl == Command_SetDelay.class) {
+            out.putByte(SET_DELAY);
+            out.putInt(((Command_SetDelay) cmd).getDelay());
+        } else if (cl == Command_SetFrequency.class) {
+            out.putByte(SET_FREQUENCY);
+            out.putInt(((Command_SetFrequency) cmd).getFrequency());
+        } else if (cl == Command_SetSeed.class) {
+            Command_SetSeed c = (Command_SetSeed) cmd;
+            out.putByte(SET_SEED);
+            out.putLong(c.getSeed());
+            out.putBoolean(c.getUseTimeSeed());
+        } else if (cl == Command_SetVariableValue.class && canWriteValue((Command_SetVariableValue) cmd)) {
+            out.putByte(SET_VARIABLE_VALUE);
+            writeValue((Command_SetVariableValue) cmd, out);
+        } else if (cl == Command_InvokeMethod.class) {
+            out.putByte(INVOKE_METHOD);
+            out.putString(((Command_InvokeMethod) cmd).getMethodName());
+        } else if (cl == Command_ControlEvent.class) {
+            out.putByte(CONTROL_EVENT);
+            writeControlEvent((Command_ControlEvent) cmd, out);
+        } else if (cl == Command_AddDataCollector.class
+                && canWriteDescription(((Command_AddDataCollector) cmd).getDescription())) {
+            out.putByte(ADD_DATA_COLLECTOR);
+            writeDescription(((Command_AddDataCollector) cmd).getDescription(), out);
+        } else if (cl == Command_RemoveDataCollector.class
+                && canWriteDescription(((Command_RemoveDataCollector) cmd).getDescription())) {
+            out.putByte(REMOVE_DATA_COLLECTOR);
+            writeDescription(((Command_RemoveDataCollector) cmd).getDescription(), out);
+        } else if (cl == Command_AddDataReceiver.class) {
+            // The receiver is local, the server creates its own data sender
+            out.putByte(ADD_DATA_RECEIVER);
+        } else {
+            out.putByte(SERIALIZED);
+            out.putSerialized(cmd);
+        }
+    }
+
+
+    /**
+     * Reads a command from the buffer
+     *
+     * @param in
+     * @return
+     * @throws Exception
+     */
+    public static ModelManagerCommand read(WireBuffer in) throws Exception {
+        int tag = in.getByte();
+
+        switch (tag) {
+            case EXIT:
+                return new Command_Exit();
+            case START: {
+                long time = in.getLong();
+                boolean paused = in.getBoolean();
+                String observer = in.getString();
+                String mode = in.getString();
+                return new Command_Start(time, paused, observer, mode);
+            }
+            case STOP:
+                return new Command_Stop();
+            case PAUSE_RESUME:
+                return new Command_PauseResume();
+            case SET_DELAY:
+                return new Command_SetDelay(in.getInt());
+            case SET_FREQUENCY:
+                return new Command_SetFrequency(in.getInt());
+            case SET_SEED: {
+                long seed = in.getLong();
+                return new Command_SetSeed(seed, in.getBoolean());
+            }
+            case SET_VARIABLE_VALUE:
+                return readValue(in);
+            case INVOKE_METHOD:
+                return new Command_InvokeMethod(in.getString());
+            case CONTROL_EVENT:
+                return readControlEvent(in);
+            case ADD_DATA_COLLECTOR:
+                return new Command_AddDataCollector(readDescription(in));
+            case REMOVE_DATA_COLLECTOR:
+                return new Command_RemoveDataCollector(readDescription(in));
+            case ADD_DATA_RECEIVER:
+                return new Command_AddDataReceiver(null);
+            case SERIALIZED:
+                return (ModelManagerCommand) in.getSerialized();
+            default:
+                throw new Exception("Unknown command type: " + tag);
+        }
+    }
+
+
+    /* Variable values */
+
+    private static boolean canWriteValue(Command_SetVariableValue cmd) {
+        Object value = cmd.getValue();
+        return value == null || value instanceof Double || value instanceof Integer
+                || value instanceof Long || value instanceof Boolean;
+    }
+
+
+    private static void writeValue(Command_SetVariableValue cmd, WireBuffer out) {
+        Object value = cmd.getValue();
+        out.putString(cmd.getVarName());
+
+        if (value instanceof Double) {
+            out.putByte(VALUE_DOUBLE);
+            out.putDouble((Double) value);
+        } else if (value instanceof Integer) {
+            out.putByte(VALUE_INTEGER);
+            out.putInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.putByte(VALUE_LONG);
+            out.putLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.putByte(VALUE_BOOLEAN);
+            out.putBoolean((Boolean) value);
+        } else if (cmd.getStrValue() != null) {
+            out.putByte(VALUE_STRING);
+            out.putString(cmd.getStrValue());
+        } else {
+            out.putByte(VALUE_NULL);
+        }
+    }
+
+
+    private static Command_SetVariableValue readValue(WireBuffer in) throws Exception {
+        String name = in.getString();
+        int type = in.getByte();
+
+        switch (type) {
+            case VALUE_NULL:
+                return new Command_SetVariableValue(name, (Object) null);
+            case VALUE_DOUBLE:
+                return new Command_SetVariableValue(name, (Object) in.getDouble());
+            case VALUE_INTEGER:
+                return new Command_SetVariableValue(name, (Object) in.getInt());
+            case VALUE_LONG:
+                return new Command_SetVariableValue(name, (Object) in.getLong());
+            case VALUE_BOOLEAN:
+                return new Command_SetVariableValue(name, (Object) in.getBoolean());
+            case VALUE_STRING:
+                return new Command_SetVariableValue(name, in.getString());
+            default:
+                throw new Exception("Unknown value type: " + type);
+        }
+    }
+
+
+    /* Control events */
+
+    private static void writeControlEvent(Command_ControlEvent cmd, WireBuffer out) {
+        int type = cmd.getEventType();
+        out.putInt(type);
+        out.putString(cmd.getSpaceName());
+
+        if (type == Command_ControlEvent.KEY_PRESSED || type == Command_ControlEvent.KEY_RELEASED) {
+            out.putInt(cmd.getKeyCode());
+            out.putInt(cmd.getKeySymbol());
+            return;
+        }
+
+        out.putInt(cmd.getMouseButtons());
+        out.putInt(cmd.getMouseWheel());
+
+        Vector p = cmd.getMousePosition();
+        out.putBoolean(p != null);
+        if (p != null) {
+            out.putDouble(p.x);
+            out.putDouble(p.y);
+            out.putDouble(p.z);
+        }
+    }
+
+
+    private static Command_ControlEvent readControlEvent(WireBuffer in) {
+        int type = in.getInt();
+        String spaceName = in.getString();
+
+        if (type == Command_ControlEvent.KEY_PRESSED || type == Command_ControlEvent.KEY_RELEASED) {
+            int code = in.getInt();
+            char symbol = (char) in.getInt();
+            return new Command_ControlEvent(spaceName, type == Command_ControlEvent.KEY_PRESSED, code, symbol);
+        }
+
+        int buttons = in.getInt();
+        int wheel = in.getInt();
+
+        Vector p = null;
+        if (in.getBoolean()) {
+            double x = in.getDouble();
+            double y = in.getDouble();
+            double z = in.getDouble();
+            p = new Vector(x, y, z);
+        }
+
+        return new Command_ControlEvent(spaceName, type, buttons, p, wheel);
+    }
+
+
+    /* Data collector descriptions */
+
+    private static boolean canWriteDescription(DataCollectorDescription dcd) {
+        Object pars = dcd.getParameters();
+        return pars == null || pars instanceof DataObject_Inspection.Parameters;
+    }
+
+
+    private static void writeDescription(DataCollectorDescription dcd, WireBuffer out) {
+        out.putInt(dcd.getType());
+        out.putString(dcd.getDataName());
+        out.putInt(dcd.getInterval());
+        out.putBoolean(dcd.isRequired());
+
+        DataObject_Inspection.Parameters pars = (DataObject_Inspection.Parameters) dcd.getParameters();
+        out.putBoolean(pars != null);
+
+        if (pars != null) {
+            out.putString(pars.spaceName);
+            out.putBoolean(pars.position != null);
+            if (pars.position != null) {
+                out.putDouble(pars.position.x);
+                out.putDouble(pars.position.y);
+                out.putDouble(pars.position.z);
+            }
+        }
+    }
+
+
+    private static DataCollectorDescription readDescription(WireBuffer in) {
+        int type = in.getInt();
+        String name = in.getString();
+        int interval = in.getInt();
+        boolean required = in.getBoolean();
+
+        DataObject_Inspection.Parameters pars = null;
+        if (in.getBoolean()) {
+            String spaceName = in.getString();
+            Vector position = null;
+            if (in.getBoolean()) {
+                double x = in.getDouble();
+                double y = in.getDouble();
+                double z = in.getDouble();
+                position = new Vector(x, y, z);
+            }
+
+            pars = new DataObject_Inspection.Parameters(spaceName, position);
+        }
+
+        return new DataCollectorDescription(type, name, interval, pars, required);
+    }
+}
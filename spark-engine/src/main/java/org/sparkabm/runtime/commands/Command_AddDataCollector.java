@@ -26,6 +26,10 @@ public class Command_AddDataCollector extends ModelManagerCommand {
     }
 
 
+    DataCollectorDescription getDescription() {
+        return dcd;
+    }
+
     @Override
     public String toString() {
         return "AddDataCollector: " + dcd.toString();
@@ -170,6 +170,34 @@ public class Command_ControlEvent extends ModelManagerCommand {
     }
 
 
+    int getEventType() {
+        return eventType;
+    }
+
+    String getSpaceName() {
+        return spaceName;
+    }
+
+    int getKeyCode() {
+        return keyCode;
+    }
+
+    char getKeySymbol() {
+        return keySymbol;
+    }
+
+    int getMouseButtons() {
+        return mouseButtons;
+    }
+
+    Vector getMousePosition() {
+        return mousePosition;
+    }
+
+    int getMouseWheel() {
+        return mouseWheel;
+    }
+
     @Override
     public String toString() {
         String str = "Command_ControlEvent: " + eventToName(eventType);
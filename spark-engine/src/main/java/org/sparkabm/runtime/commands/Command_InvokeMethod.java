@@ -20,6 +20,11 @@ public class Command_InvokeMethod extends ModelManagerCommand {
     }
 
 
+    String getMethodName() {
+        return methodName;
+    }
+
+
     /**
      * Executes the command on the given model
      *
@@ -25,6 +25,10 @@ public class Command_RemoveDataCollector extends ModelManagerCommand {
         engine.removeDataCollector(dcd);
     }
 
+    DataCollectorDescription getDescription() {
+        return dcd;
+    }
+
     @Override
     public String toString() {
         return "RemoveDataCollector: " + dcd.toString();
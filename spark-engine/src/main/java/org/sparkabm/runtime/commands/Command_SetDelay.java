@@ -27,6 +27,10 @@ public class Command_SetDelay extends ModelManagerCommand {
         engine.setDelay(delay);
     }
 
+    int getDelay() {
+        return delay;
+    }
+
     @Override
     public String toString() {
         return "SetDelay: " + delay;
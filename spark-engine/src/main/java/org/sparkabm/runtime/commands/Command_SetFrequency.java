@@ -27,6 +27,10 @@ public class Command_SetFrequency extends ModelManagerCommand {
         engine.setFrequency(frequency);
     }
 
+    int getFrequency() {
+        return frequency;
+    }
+
     @Override
     public String toString() {
         return "SetFrequency: " + frequency;
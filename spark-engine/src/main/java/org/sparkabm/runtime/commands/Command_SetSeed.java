@@ -30,6 +30,14 @@ public class Command_SetSeed extends ModelManagerCommand {
             RandomHelper.setSeed((int) seed);
     }
 
+    long getSeed() {
+        return seed;
+    }
+
+    boolean getUseTimeSeed() {
+        return useTimeSeed;
+    }
+
     @Override
     public String toString() {
         return "SetSeed[seed = " + seed + "; timeSeed = " + useTimeSeed + "]";
@@ -49,6 +49,18 @@ public class Command_SetVariableValue extends ModelManagerCommand {
     }
 
 
+    String getVarName() {
+        return varName;
+    }
+
+    Object getValue() {
+        return value;
+    }
+
+    String getStrValue() {
+        return strValue;
+    }
+
     @Override
     public String toString() {
         String str = "Set value: ";
@@ -45,6 +45,18 @@ public class Command_Start extends ModelManagerCommand {
     }
 
 
+    long getSimulationTime() {
+        return simulationTime;
+    }
+
+    String getObserverName() {
+        return observerName;
+    }
+
+    String getExecutionMode() {
+        return executionMode;
+    }
+
     public boolean getPausedFlag() {
         return paused;
     }
@@ -48,11 +48,22 @@ public class DataCollectorDescription implements Serializable {
     /* Additional parameters */
     private final Object parameters;
 
+    /* If true, then the data is required for an output (batch data, saved data sets)
+     * and it is never subsampled by the engine.
+     */
+    private final boolean required;
+
 
     /**
-     * Default constructor
+     * Creates a description
+     *
+     * @param type
+     * @param dataName
+     * @param interval
+     * @param parameters
+     * @param required   true for data which must be collected at each interval
      */
-    public DataCollectorDescription(int type, String dataName, int interval, Object parameters) {
+    public DataCollectorDescription(int type, String dataName, int interval, Object parameters, boolean required) {
         if (interval < 0)
             interval = 0;
 
@@ -65,6 +76,15 @@ public class DataCollectorDescription implements Serializable {
         this.dataName = dataName;
         this.interval = interval;
         this.parameters = parameters;
+        this.required = required;
+    }
+
+
+    /**
+     * Default constructor
+     */
+    public DataCollectorDescription(int type, String dataName, int interval, Object parameters) {
+        this(type, dataName, interval, parameters, false);
     }
 
 
@@ -120,6 +140,16 @@ public class DataCollectorDescription implements Serializable {
     }
 
 
+    /**
+     * Returns true if the data is required for an output
+     *
+     * @return
+     */
+    public boolean isRequired() {
+        return required;
+    }
+
+
     /**
      * Returns collector's type
      *
@@ -176,7 +206,7 @@ public class DataCollectorDescription implements Serializable {
 
         DataCollectorDescription dcd = (DataCollectorDescription) obj;
 
-        if (type == dcd.type && interval == dcd.interval) {
+        if (type == dcd.type && interval == dcd.interval && required == dcd.required) {
             if (dataName == null)
                 return dcd.dataName == null;
             else
@@ -209,6 +239,9 @@ public class DataCollectorDescription implements Serializable {
 
         str += ":" + interval;
 
+        if (required)
+            str += ":required";
+
         return str;
     }
 }
@@ -71,6 +71,25 @@ public class DataObject_AgentData extends DataObject {
     }
 
 
+    /**
+     * Adds values of one agent
+     */
+    void addValues(HashMap<String, String> values) {
+        if (counter >= n)
+            return;
+
+        stringVals[counter++] = values;
+    }
+
+
+    /**
+     * Returns all values of the agent defined by the given index
+     */
+    HashMap<String, String> getValues(int index) {
+        return stringVals[index];
+    }
+
+
     /**
      * Returns the total number of agents in the data object
      *
@@ -33,6 +33,43 @@ public class DataObject_Grid extends DataObject {
         this.data = grid.data;
     }
 
+
+    /**
+     * Creates a grid with the same parameters as the given grid
+     * and with the given values
+     *
+     * @param grid
+     * @param data the array is not copied
+     */
+    DataObject_Grid(DataObject_Grid grid, double[] data) {
+        this.spaceIndex = grid.spaceIndex;
+        this.xStep = grid.xStep;
+        this.yStep = grid.yStep;
+        this.zStep = grid.zStep;
+        this.n = grid.n;
+        this.m = grid.m;
+        this.k = grid.k;
+        this.data = data;
+    }
+
+    /**
+     * Creates a grid with the given values
+     *
+     * @param data the array is not copied
+     */
+    DataObject_Grid(int spaceIndex, int n, int m, int k,
+                    double xStep, double yStep, double zStep, double[] data) {
+        this.spaceIndex = spaceIndex;
+        this.xStep = xStep;
+        this.yStep = yStep;
+        this.zStep = zStep;
+        this.n = n;
+        this.m = m;
+        this.k = k;
+        this.data = data;
+    }
+
+
     /**
      * Creates a copy of the given data array
      *
@@ -107,6 +144,17 @@ public class DataObject_Grid extends DataObject {
     }
 
 
+    /**
+     * Returns all values (x changes slowest, z changes fastest).
+     * The array should not be modified.
+     *
+     * @return
+     */
+    public double[] getFlatData() {
+        return data;
+    }
+
+
     /**
      * Returns the minimum value in the grid
      *
@@ -0,0 +1,198 @@
+package org.sparkabm.runtime.data;
+
+import java.util.Arrays;
+
+/**
+ * Changes of a grid since the previous data row. Changed cells are
+ * stored as runs of consecutive cells of the flat data array
+ * (short gaps of unchanged cells are included into runs).
+ *
+ * @author Monad
+ */
+@SuppressWarnings("serial")
+public class DataObject_GridDelta extends DataObject {
+    // Unchanged cells between changed cells which are included into one run
+    private static final int MAX_GAP = 4;
+
+    // Dimensions of the grid
+    private final int n, m, k;
+
+    // The first cell and the length of each run
+    private int[] starts;
+    private int[] lengths;
+    private int runs;
+
+    // New values of all runs
+    private double[] values;
+    private int size;
+
+
+    private DataObject_GridDelta(DataObject_Grid grid) {
+        this.n = grid.getXSize();
+        this.m = grid.getYSize();
+        this.k = grid.getZSize();
+
+        this.starts = new int[16];
+        this.lengths = new int[16];
+        this.values = new double[64];
+    }
+
+
+    /**
+     * Creates changes from the given runs
+     */
+    DataObject_GridDelta(int n, int m, int k, int[] starts, int[] lengths, double[] values) {
+        this.n = n;
+        this.m = m;
+        this.k = k;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.runs = starts.length;
+        this.values = values;
+        this.size = values.length;
+    }
+
+
+    /**
+     * Computes changes between two grids
+     *
+     * @param prev
+     * @param next
+     * @return null if grids have different sizes or if
+     * more than a half of cells are changed
+     */
+    public static DataObject_GridDelta create(DataObject_Grid prev, DataObject_Grid next) {
+        if (prev.getXSize() != next.getXSize() || prev.getYSize() != next.getYSize()
+                || prev.getZSize() != next.getZSize() || prev.getSpaceIndex() != next.getSpaceIndex())
+            return null;
+
+        double[] a = prev.getFlatData();
+        double[] b = next.getFlatData();
+        int total = b.length;
+        int limit = total / 2;
+
+        DataObject_GridDelta delta = new DataObject_GridDelta(next);
+
+        int i = 0;
+        while (i < total) {
+            if (same(a[i], b[i])) {
+                i++;
+                continue;
+            }
+
+            // Find the end of the run
+            int start = i;
+            int end = i + 1;
+            for (int j = end; j < total && j - end <= MAX_GAP; j++) {
+                if (!same(a[j], b[j]))
+                    end = j + 1;
+            }
+
+            delta.addRun(b, start, end - start);
+            if (delta.size > limit)
+                return null;
+
+            i = end;
+        }
+
+        // Do not serialize unused elements
+        delta.starts = Arrays.copyOf(delta.starts, delta.runs);
+        delta.lengths = Arrays.copyOf(delta.lengths, delta.runs);
+        delta.values = Arrays.copyOf(delta.values, delta.size);
+
+        return delta;
+    }
+
+
+    private static boolean same(double x, double y) {
+        return Double.doubleToLongBits(x) == Double.doubleToLongBits(y);
+    }
+
+
+    private void addRun(double[] data, int start, int length) {
+        if (runs == starts.length) {
+            starts = Arrays.copyOf(starts, runs * 2);
+            lengths = Arrays.copyOf(lengths, runs * 2);
+        }
+
+        if (size + length > values.length)
+            values = Arrays.copyOf(values, Math.max(values.length * 2, size + length));
+
+        starts[runs] = start;
+        lengths[runs] = length;
+        runs++;
+
+        System.arraycopy(data, start, values, size, length);
+        size += length;
+    }
+
+
+    /**
+     * Returns the number of changed cells (including cells in gaps)
+     *
+     * @return
+     */
+    public int getChangedNumber() {
+        return size;
+    }
+
+
+    int getXSize() {
+        return n;
+    }
+
+    int getYSize() {
+        return m;
+    }
+
+    int getZSize() {
+        return k;
+    }
+
+    int[] getStarts() {
+        return starts;
+    }
+
+    int[] getLengths() {
+        return lengths;
+    }
+
+    double[] getValues() {
+        return values;
+    }
+
+
+    /**
+     * Returns true if the delta can be applied to the given grid
+     *
+     * @param base
+     * @return
+     */
+    public boolean matches(DataObject_Grid base) {
+        return base.getXSize() == n && base.getYSize() == m && base.getZSize() == k;
+    }
+
+
+    /**
+     * Creates a new grid by applying changes to the given grid
+     *
+     * @param base the grid of the previous row
+     * @return
+     */
+    public DataObject_Grid apply(DataObject_Grid base) {
+        double[] data = base.getFlatData().clone();
+
+        for (int r = 0, pos = 0; r < runs; r++) {
+            System.arraycopy(values, pos, data, starts[r], lengths[r]);
+            pos += lengths[r];
+        }
+
+        return new DataObject_Grid(base, data);
+    }
+
+
+    @Override
+    public String toString() {
+        return "delta:" + size;
+    }
+}
@@ -1,31 +1,50 @@
 package org.sparkabm.runtime.data;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+
 import org.sparkabm.math.Vector;
 import org.sparkabm.math.Vector4d;
 import org.sparkabm.space.PhysicalNode;
 
 /**
- * Data for a set of space agents
+ * Data for a set of space agents. Values are stored in primitive arrays
+ * (one array for each property), labels and shapes of physical nodes
+ * are stored in tables and agents keep indices of table entries.
+ * Only the first getTotalNumber() elements of arrays are valid.
  *
  * @author Monad
  */
 @SuppressWarnings("serial")
 public class DataObject_SpaceAgents extends DataObject {
-    private String[] labels;
-    private Vector[] positions;
+    // Ids of agents (-1 if an id is unknown)
+    private int[] ids;
+    // Positions
+    private double[] xs, ys, zs;
+    // Colors: r, g, b, a for each agent
+    private float[] colors;
     private double[] radii;
-    private Vector4d[] colors;
     private double[] rotations;
-    private ShapeInfo[] shapeInfo;
 
     private int[] shapes;
     private int[] spaceIndices;
 
+    // Indices in the label table (-1 if no label)
+    private int[] labelIds;
+    private ArrayList<String> labelTable;
+    private transient HashMap<String, Integer> labelMap;
+
+    // Indices in the shape table (-1 for non-physical nodes)
+    private int[] shapeIds;
+    private ArrayList<ShapeInfo> shapeTable;
+    private transient HashMap<Long, Integer> shapeMap;
+
     private int counter;
     private int n;
 
     // Describes agent's shape
-    public static class ShapeInfo {
+    public static class ShapeInfo implements Serializable {
         public static final int CIRCLE = 0;
         public static final int RECTANGLE = 1;
 
@@ -33,9 +52,13 @@ public class DataObject_SpaceAgents extends DataObject {
         public final float hx, hy;
 
         public ShapeInfo(PhysicalNode.ShapeInfo si) {
-            this.type = si.type;
-            this.hx = si.hx;
-            this.hy = si.hy;
+            this(si.type, si.hx, si.hy);
+        }
+
+        public ShapeInfo(int type, float hx, float hy) {
+            this.type = type;
+            this.hx = hx;
+            this.hy = hy;
         }
     }
 
@@ -49,16 +72,35 @@ public class DataObject_SpaceAgents extends DataObject {
         if (agentsNumber < 0)
             agentsNumber = 0;
 
-        if (agentsNumber > 0) {
-            labels = new String[agentsNumber];
-            positions = new Vector[agentsNumber];
-            radii = new double[agentsNumber];
-            colors = new Vector4d[agentsNumber];
-            rotations = new double[agentsNumber];
-            shapes = new int[agentsNumber];
-            spaceIndices = new int[agentsNumber];
-            shapeInfo = new ShapeInfo[agentsNumber];
-        }
+        allocate(agentsNumber);
+        labelTable = new ArrayList<String>();
+        shapeTable = new ArrayList<ShapeInfo>();
+    }
+
+
+    /**
+     * Empty protected constructor
+     */
+    protected DataObject_SpaceAgents() {
+
+    }
+
+
+    /**
+     * Allocates arrays
+     */
+    private void allocate(int agentsNumber) {
+        ids = new int[agentsNumber];
+        xs = new double[agentsNumber];
+        ys = new double[agentsNumber];
+        zs = new double[agentsNumber];
+        colors = new float[agentsNumber * 4];
+        radii = new double[agentsNumber];
+        rotations = new double[agentsNumber];
+        shapes = new int[agentsNumber];
+        spaceIndices = new int[agentsNumber];
+        labelIds = new int[agentsNumber];
+        shapeIds = new int[agentsNumber];
 
         n = agentsNumber;
         counter = 0;
@@ -66,10 +108,95 @@ public class DataObject_SpaceAgents extends DataObject {
 
 
     /**
-     * Empty protected constructor
+     * Returns the index of the label in the label table
      */
-    protected DataObject_SpaceAgents() {
+    private int labelId(String label) {
+        if (label == null)
+            return -1;
+
+        if (labelMap == null) {
+            labelMap = new HashMap<String, Integer>();
+            for (int i = 0; i < labelTable.size(); i++)
+                labelMap.put(labelTable.get(i), i);
+        }
+
+        Integer id = labelMap.get(label);
+        if (id == null) {
+            id = labelTable.size();
+            labelTable.add(label);
+            labelMap.put(label, id);
+        }
+
+        return id;
+    }
+
+
+    /**
+     * Returns the index of the shape in the shape table
+     */
+    private int shapeId(int type, float hx, float hy) {
+        if (shapeMap == null) {
+            shapeMap = new HashMap<Long, Integer>();
+            for (int i = 0; i < shapeTable.size(); i++) {
+                ShapeInfo info = shapeTable.get(i);
+                shapeMap.put(shapeKey(info.hx, info.hy), i);
+            }
+        }
+
+        Long key = shapeKey(hx, hy);
+        Integer id = shapeMap.get(key);
+        if (id != null && shapeTable.get(id).type == type)
+            return id;
+
+        // Shapes of different types with the same sizes
+        for (int i = 0; i < shapeTable.size(); i++) {
+            ShapeInfo info = shapeTable.get(i);
+            if (info.type == type && info.hx == hx && info.hy == hy)
+                return i;
+        }
+
+        id = shapeTable.size();
+        shapeTable.add(new ShapeInfo(type, hx, hy));
+        shapeMap.put(key, id);
+
+        return id;
+    }
+
+
+    /**
+     * Returns a key of the shape size
+     */
+    private static long shapeKey(float hx, float hy) {
+        return ((long) Float.floatToIntBits(hx) << 32) | (Float.floatToIntBits(hy) & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Adds agent's parameters into the data object
+     *
+     * @param id         a stable id of the agent (-1 if unknown)
+     * @param label
+     * @param x
+     * @param y
+     * @param z
+     * @param r
+     * @param color      the color is copied
+     * @param rotation
+     * @param si         null for non-physical nodes
+     * @param shape
+     * @param spaceIndex
+     */
+    public void addAgent(int id, String label, double x, double y, double z, double r, Vector4d color,
+                         double rotation, PhysicalNode.ShapeInfo si, int shape, int spaceIndex) {
+        // Cannot hold any more agents
+        if (counter >= n)
+            return;
 
+        ids[counter] = id;
+        add(label, x, y, z, r, color, rotation, shape, spaceIndex);
+        shapeIds[counter] = si != null ? shapeId(si.type, si.hx, si.hy) : -1;
+
+        counter++;
     }
 
 
@@ -86,19 +213,128 @@ public class DataObject_SpaceAgents extends DataObject {
         if (counter >= n)
             return;
 
-        labels[counter] = label;
-        positions[counter] = position;
-        radii[counter] = r;
-        colors[counter] = color;
-        rotations[counter] = rotation;
-        shapeInfo[counter] = si;
-        shapes[counter] = shape;
-        spaceIndices[counter] = spaceIndex;
+        if (position == null || color == null)
+            return;
+
+        ids[counter] = -1;
+        add(label, position.x, position.y, position.z, r, color, rotation, shape, spaceIndex);
+        shapeIds[counter] = si != null ? shapeId(si.type, si.hx, si.hy) : -1;
+
+        counter++;
+    }
+
+
+    /**
+     * Sets the number of agents. Columns should be filled directly.
+     */
+    void setTotalNumber(int number) {
+        counter = Math.min(number, n);
+    }
+
+
+    /**
+     * Returns indices of shapes in the shape table
+     */
+    int[] getShapeIds() {
+        return shapeIds;
+    }
+
+
+    /**
+     * Returns the shape table
+     */
+    ArrayList<ShapeInfo> getShapeTable() {
+        return shapeTable;
+    }
+
+
+    /**
+     * Copies the i-th agent of the given data object into this data object
+     *
+     * @param src
+     * @param i
+     */
+    void copyAgent(DataObject_SpaceAgents src, int i) {
+        if (counter >= n)
+            return;
+
+        int j = counter;
+        ids[j] = src.ids[i];
+        xs[j] = src.xs[i];
+        ys[j] = src.ys[i];
+        zs[j] = src.zs[i];
+        System.arraycopy(src.colors, i << 2, colors, j << 2, 4);
+        radii[j] = src.radii[i];
+        rotations[j] = src.rotations[i];
+        shapes[j] = src.shapes[i];
+        spaceIndices[j] = src.spaceIndices[i];
+        labelIds[j] = labelId(src.getLabel(i));
+
+        ShapeInfo info = src.getShapeInfo(i);
+        shapeIds[j] = info != null ? shapeId(info.type, info.hx, info.hy) : -1;
 
         counter++;
     }
 
 
+    /**
+     * Returns true if the i-th agent of this data object and the j-th agent
+     * of the given data object have the same parameters
+     */
+    boolean sameAgent(int i, DataObject_SpaceAgents other, int j) {
+        if (xs[i] != other.xs[j] || ys[i] != other.ys[j] || zs[i] != other.zs[j])
+            return false;
+
+        if (radii[i] != other.radii[j] || rotations[i] != other.rotations[j])
+            return false;
+
+        if (shapes[i] != other.shapes[j] || spaceIndices[i] != other.spaceIndices[j])
+            return false;
+
+        for (int k = i << 2, l = j << 2, end = k + 4; k < end; k++, l++) {
+            if (colors[k] != other.colors[l])
+                return false;
+        }
+
+        String label = getLabel(i);
+        String label2 = other.getLabel(j);
+        if (label == null ? label2 != null : !label.equals(label2))
+            return false;
+
+        ShapeInfo s1 = getShapeInfo(i);
+        ShapeInfo s2 = other.getShapeInfo(j);
+        if (s1 == null || s2 == null)
+            return s1 == s2;
+
+        return s1.type == s2.type && s1.hx == s2.hx && s1.hy == s2.hy;
+    }
+
+
+    /**
+     * Sets values of the current agent
+     */
+    private void add(String label, double x, double y, double z, double r, Vector4d color,
+                     double rotation, int shape, int spaceIndex) {
+        int i = counter;
+
+        xs[i] = x;
+        ys[i] = y;
+        zs[i] = z;
+
+        int k = i << 2;
+        colors[k] = (float) color.x;
+        colors[k + 1] = (float) color.y;
+        colors[k + 2] = (float) color.z;
+        colors[k + 3] = (float) color.a;
+
+        radii[i] = r;
+        rotations[i] = rotation;
+        shapes[i] = shape;
+        spaceIndices[i] = spaceIndex;
+        labelIds[i] = labelId(label);
+    }
+
+
     /**
      * Returns the total number of agents in the data object
      *
@@ -109,45 +345,148 @@ public class DataObject_SpaceAgents extends DataObject {
     }
 
 
-    public String[] getLabels() {
-        return labels;
+    /**
+     * Returns ids of agents (-1 if an id is unknown)
+     *
+     * @return
+     */
+    public int[] getIds() {
+        return ids;
     }
 
-    public Vector[] getPositions() {
-        return positions;
+    public double[] getXs() {
+        return xs;
     }
 
-    public double[] getRadii() {
-        return radii;
+    public double[] getYs() {
+        return ys;
     }
 
-    public Vector4d[] getColors() {
+    public double[] getZs() {
+        return zs;
+    }
+
+    /**
+     * Returns colors of agents: r, g, b, a components
+     * of the i-th agent are at 4 * i, ..., 4 * i + 3
+     *
+     * @return
+     */
+    public float[] getColorComponents() {
         return colors;
     }
 
-    public double[] getRotations() {
-        return rotations;
+    public double[] getRadii() {
+        return radii;
     }
 
-    public ShapeInfo[] getShapeInfo() {
-        return shapeInfo;
+    public double[] getRotations() {
+        return rotations;
     }
 
     public int[] getShapes() {
         return shapes;
     }
 
-
     public int[] getSpaceIndices() {
         return spaceIndices;
     }
 
+    /**
+     * Returns indices of labels in the label table (-1 if an agent has no label)
+     *
+     * @return
+     */
+    public int[] getLabelIds() {
+        return labelIds;
+    }
+
+    public ArrayList<String> getLabelTable() {
+        return labelTable;
+    }
+
+    /**
+     * Returns the label of the i-th agent
+     *
+     * @param i
+     * @return
+     */
+    public String getLabel(int i) {
+        int id = labelIds[i];
+        return id < 0 ? null : labelTable.get(id);
+    }
+
+    /**
+     * Returns the shape of the i-th agent
+     *
+     * @param i
+     * @return null if the agent is not a physical node
+     */
+    public ShapeInfo getShapeInfo(int i) {
+        int id = shapeIds[i];
+        return id < 0 ? null : shapeTable.get(id);
+    }
+
+
+    /**
+     * Creates an array of labels
+     *
+     * @deprecated use getLabel(i) or getLabelIds()
+     */
+    @Deprecated
+    public String[] getLabels() {
+        String[] labels = new String[counter];
+        for (int i = 0; i < counter; i++)
+            labels[i] = getLabel(i);
+
+        return labels;
+    }
+
+    /**
+     * Creates an array of positions
+     *
+     * @deprecated use getXs(), getYs(), getZs()
+     */
+    @Deprecated
+    public Vector[] getPositions() {
+        Vector[] positions = new Vector[counter];
+        for (int i = 0; i < counter; i++)
+            positions[i] = new Vector(xs[i], ys[i], zs[i]);
+
+        return positions;
+    }
+
+    /**
+     * Creates an array of colors
+     *
+     * @deprecated use getColorComponents()
+     */
+    @Deprecated
+    public Vector4d[] getColors() {
+        Vector4d[] result = new Vector4d[counter];
+        for (int i = 0, k = 0; i < counter; i++, k += 4)
+            result[i] = new Vector4d(colors[k], colors[k + 1], colors[k + 2], colors[k + 3]);
+
+        return result;
+    }
+
+    /**
+     * Creates an array of shapes
+     *
+     * @deprecated use getShapeInfo(i)
+     */
+    @Deprecated
+    public ShapeInfo[] getShapeInfo() {
+        ShapeInfo[] result = new ShapeInfo[counter];
+        for (int i = 0; i < counter; i++)
+            result[i] = getShapeInfo(i);
+
+        return result;
+    }
+
     @Override
     public String toString() {
-        if (positions == null)
-            return "0";
-        else
-            return String.valueOf(positions.length);
+        return String.valueOf(counter);
     }
 
 }
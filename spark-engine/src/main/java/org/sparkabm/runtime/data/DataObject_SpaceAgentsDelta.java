@@ -0,0 +1,178 @@
+package org.sparkabm.runtime.data;
+
+/**
+ * Changes of space agents since the previous data row. Agents are
+ * identified by their ids. Moved (or otherwise changed) and born agents
+ * are stored in a data object, ids of dead agents are stored in an array.
+ *
+ * @author Monad
+ */
+@SuppressWarnings("serial")
+public class DataObject_SpaceAgentsDelta extends DataObject {
+    // Changed and born agents
+    private final DataObject_SpaceAgents changed;
+    private final int bornNumber;
+
+    // Ids of dead agents
+    private final int[] removedIds;
+
+
+    DataObject_SpaceAgentsDelta(DataObject_SpaceAgents changed, int bornNumber, int[] removedIds) {
+        this.changed = changed;
+        this.bornNumber = bornNumber;
+        this.removedIds = removedIds;
+    }
+
+
+    /**
+     * Returns true if all agents in the data object have ids
+     */
+    private static boolean hasIds(DataObject_SpaceAgents agents) {
+        int[] ids = agents.getIds();
+        for (int i = agents.getTotalNumber() - 1; i >= 0; i--) {
+            if (ids[i] < 0)
+                return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Computes changes between two sets of agents
+     *
+     * @param prev
+     * @param next
+     * @return null if agents have no ids or if more than a half of agents are changed
+     */
+    public static DataObject_SpaceAgentsDelta create(DataObject_SpaceAgents prev, DataObject_SpaceAgents next) {
+        if (!hasIds(prev) || !hasIds(next))
+            return null;
+
+        int n = next.getTotalNumber();
+        int prevN = prev.getTotalNumber();
+        int limit = n / 2;
+
+        int[] ids = next.getIds();
+        IdIndex index = new IdIndex(prev.getIds(), prevN);
+        boolean[] alive = new boolean[prevN];
+
+        int[] changedIndices = new int[n];
+        int changedNumber = 0;
+        int bornNumber = 0;
+
+        for (int i = 0; i < n; i++) {
+            int j = index.get(ids[i]);
+            if (j < 0) {
+                bornNumber++;
+                changedIndices[changedNumber++] = i;
+            } else {
+                alive[j] = true;
+                if (!next.sameAgent(i, prev, j))
+                    changedIndices[changedNumber++] = i;
+            }
+
+            if (changedNumber > limit)
+                return null;
+        }
+
+        int removedNumber = 0;
+        for (int j = 0; j < prevN; j++) {
+            if (!alive[j])
+                removedNumber++;
+        }
+
+        if (removedNumber > 0 && changedNumber + removedNumber > limit)
+            return null;
+
+        int[] removedIds = new int[removedNumber];
+        int[] prevIds = prev.getIds();
+        for (int j = 0, k = 0; j < prevN; j++) {
+            if (!alive[j])
+                removedIds[k++] = prevIds[j];
+        }
+
+        DataObject_SpaceAgents changed = new DataObject_SpaceAgents(changedNumber);
+        for (int i = 0; i < changedNumber; i++)
+            changed.copyAgent(next, changedIndices[i]);
+
+        return new DataObject_SpaceAgentsDelta(changed, bornNumber, removedIds);
+    }
+
+
+    /**
+     * Returns changed and born agents
+     *
+     * @return
+     */
+    public DataObject_SpaceAgents getChangedAgents() {
+        return changed;
+    }
+
+
+    /**
+     * Returns the number of born agents
+     *
+     * @return
+     */
+    public int getBornNumber() {
+        return bornNumber;
+    }
+
+
+    /**
+     * Returns ids of dead agents
+     *
+     * @return
+     */
+    public int[] getRemovedIds() {
+        return removedIds;
+    }
+
+
+    /**
+     * Creates a new data object by applying changes to the given agents.
+     * Surviving agents keep their order, born agents are added at the end.
+     *
+     * @param base agents of the previous row
+     * @return
+     */
+    public DataObject_SpaceAgents apply(DataObject_SpaceAgents base) {
+        int n = base.getTotalNumber();
+        int changedN = changed.getTotalNumber();
+
+        IdIndex changedIndex = new IdIndex(changed.getIds(), changedN);
+        IdIndex removedIndex = new IdIndex(removedIds, removedIds.length);
+        boolean[] used = new boolean[changedN];
+
+        DataObject_SpaceAgents result = new DataObject_SpaceAgents(n + changedN);
+        int[] ids = base.getIds();
+
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            if (removedIndex.get(id) >= 0)
+                continue;
+
+            int j = changedIndex.get(id);
+            if (j >= 0) {
+                result.copyAgent(changed, j);
+                used[j] = true;
+            } else {
+                result.copyAgent(base, i);
+            }
+        }
+
+        for (int j = 0; j < changedN; j++) {
+            if (!used[j])
+                result.copyAgent(changed, j);
+        }
+
+        return result;
+    }
+
+
+    @Override
+    public String toString() {
+        return "delta:" + changed.getTotalNumber() + ":" + removedIds.length;
+    }
+}
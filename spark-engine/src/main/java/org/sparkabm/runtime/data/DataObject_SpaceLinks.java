@@ -13,7 +13,8 @@ public class DataObject_SpaceLinks extends DataObject_SpaceAgents {
     private Vector[] end1;
     private Vector[] end2;
     private double[] width;
-    private Vector4d[] color;
+    // Colors: r, g, b, a for each link
+    private float[] colors;
     private int[] spaceIndices;
 
     private int counter;
@@ -33,7 +34,7 @@ public class DataObject_SpaceLinks extends DataObject_SpaceAgents {
             end1 = new Vector[linksNumber];
             end2 = new Vector[linksNumber];
             width = new double[linksNumber];
-            color = new Vector4d[linksNumber];
+            colors = new float[linksNumber * 4];
             spaceIndices = new int[linksNumber];
         }
 
@@ -53,7 +54,11 @@ public class DataObject_SpaceLinks extends DataObject_SpaceAgents {
         this.end1[counter] = end1;
         this.end2[counter] = end2;
         this.width[counter] = width;
-        this.color[counter] = color;
+        int k = counter * 4;
+        colors[k] = (float) color.x;
+        colors[k + 1] = (float) color.y;
+        colors[k + 2] = (float) color.z;
+        colors[k + 3] = (float) color.a;
         spaceIndices[counter] = spaceIndex;
 
         counter++;
@@ -83,9 +88,30 @@ public class DataObject_SpaceLinks extends DataObject_SpaceAgents {
         return width;
     }
 
+    /**
+     * Returns colors of links: r, g, b, a components
+     * of the i-th link are at 4 * i, ..., 4 * i + 3
+     *
+     * @return
+     */
+    @Override
+    public float[] getColorComponents() {
+        return colors;
+    }
+
+    /**
+     * Creates an array of colors
+     *
+     * @deprecated use getColorComponents()
+     */
+    @Deprecated
     @Override
     public Vector4d[] getColors() {
-        return color;
+        Vector4d[] result = new Vector4d[counter];
+        for (int i = 0, k = 0; i < counter; i++, k += 4)
+            result[i] = new Vector4d(colors[k], colors[k + 1], colors[k + 2], colors[k + 3]);
+
+        return result;
     }
 
     @Override
@@ -43,6 +43,23 @@ public class DataObject_State extends DataObject {
         this.elapsedTime = System.currentTimeMillis() - startTime;
     }
 
+    /**
+     * Creates a state with the given elapsed time
+     */
+    static DataObject_State create(SimulationTime time, long seed, int flags, long elapsedTime) {
+        DataObject_State state = new DataObject_State(time, seed, flags, 0);
+        state.elapsedTime = elapsedTime;
+        return state;
+    }
+
+
+    /**
+     * Returns all flags
+     */
+    int getFlags() {
+        return flags;
+    }
+
     /**
      * Returns true if this is the first simulation step
      *
@@ -30,6 +30,37 @@ public final class DataRow implements Serializable {
     }
 
 
+    /**
+     * Creates an empty data row with the given state
+     */
+    DataRow(DataObject_State state) {
+        data = new HashMap<String, DataObject>();
+        this.state = state;
+    }
+
+
+    /**
+     * Creates a shallow copy of the given row: data objects
+     * are shared but items can be replaced independently
+     *
+     * @param row
+     */
+    public DataRow(DataRow row) {
+        data = new HashMap<String, DataObject>(row.data);
+        state = row.state;
+    }
+
+
+    /**
+     * Removes the given item from the row
+     *
+     * @param fullName
+     */
+    public void removeDataObject(String fullName) {
+        data.remove(fullName);
+    }
+
+
     /**
      * Tells whether the row contains the given item
      *
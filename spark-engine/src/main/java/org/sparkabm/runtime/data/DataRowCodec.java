@@ -0,0 +1,510 @@
+package org.sparkabm.runtime.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sparkabm.math.RationalNumber;
+import org.sparkabm.math.SimulationTime;
+import org.sparkabm.math.Vector;
+import org.sparkabm.math.Vector4d;
+import org.sparkabm.runtime.internal.net.WireBuffer;
+
+/**
+ * Binary codec of data rows. A row is written as its state followed by
+ * the number of items and items. Each item is its name, a type tag and
+ * values of the data object. Arrays of primitive values are written
+ * with bulk operations. Data objects of unknown types are serialized.
+ *
+ * @author Monad
+ */
+public final class DataRowCodec {
+    // Type tags
+    private static final int DOUBLE = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int BOOL = 4;
+    private static final int GRID = 5;
+    private static final int GRID_DELTA = 6;
+    private static final int SPACE_AGENTS = 7;
+    private static final int SPACE_AGENTS_DELTA = 8;
+    private static final int SPACE_LINKS = 9;
+    private static final int SPACES = 10;
+    private static final int AGENT_DATA = 11;
+    private static final int INSPECTION = 12;
+    private static final int SERIALIZED = 127;
+
+
+    /**
+     * Simulation time restored from the binary data
+     */
+    @SuppressWarnings("serial")
+    private static class WireTime extends SimulationTime {
+        WireTime(long tick, RationalNumber time) {
+            super(tick, time);
+        }
+    }
+
+
+    private DataRowCodec() {
+    }
+
+
+    /**
+     * Writes the row into the buffer
+     *
+     * @param row
+     * @param out
+     * @throws Exception
+     */
+    public static void write(DataRow row, WireBuffer out) throws Exception {
+        DataObject_State state = row.getState();
+        SimulationTime time = state.getSimulationTime();
+        RationalNumber t = time.getTime();
+
+        out.putLong(time.getTick());
+        out.putLong(t.getNumerator());
+        out.putLong(t.getDenominator());
+        out.putLong(state.getSeed());
+        out.putInt(state.getFlags());
+        out.putLong(state.getElapsedTime());
+
+        String[] names = row.getNames();
+        out.putInt(names.length);
+
+        for (String name : names) {
+            out.putString(name);
+            writeObject(row.get(name), out);
+        }
+    }
+
+
+    /**
+     * Reads a row from the buffer
+     *
+     * @param in
+     * @return
+     * @throws Exception
+     */
+    public static DataRow read(WireBuffer in) throws Exception {
+        long tick = in.getLong();
+        long num = in.getLong();
+        long den = in.getLong();
+        long seed = in.getLong();
+        int flags = in.getInt();
+        long elapsedTime = in.getLong();
+
+        SimulationTime time = new WireTime(tick, new RationalNumber(num, den));
+        DataRow row = new DataRow(DataObject_State.create(time, seed, flags, elapsedTime));
+
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            String name = in.getString();
+            row.addDataObject(name, readObject(in));
+        }
+
+        return row;
+    }
+
+
+    /**
+     * Writes a data object
+     */
+    private static void writeObject(DataObject obj, WireBuffer out) throws Exception {
+        Class<?> cl = obj != null ? obj.getClass() : null;
+
+        if (cl == DataObject_Double.class) {
+            out.putByte(DOUBLE);
+            out.putDouble(((DataObject_Double) obj).getValue());
+        } else if (cl == DataObject_Integer.class) {
+            out.putByte(INTEGER);
+            out.putInt(((DataObject_Integer) obj).getValue());
+        } else if (cl == DataObject_Long.class) {
+            out.putByte(LONG);
+            out.putLong(((DataObject_Long) obj).getValue());
+        } else if (cl == DataObject_Bool.class) {
+            out.putByte(BOOL);
+            out.putBoolean(((DataObject_Bool) obj).getValue());
+        } else if (cl == DataObject_Grid.class) {
+            out.putByte(GRID);
+            writeGrid((DataObject_Grid) obj, out);
+        } else if (cl == DataObject_GridDelta.class) {
+            out.putByte(GRID_DELTA);
+            writeGridDelta((DataObject_GridDelta) obj, out);
+        } else if (cl == DataObject_SpaceAgents.class) {
+            out.putByte(SPACE_AGENTS);
+            writeSpaceAgents((DataObject_SpaceAgents) obj, out);
+        } else if (cl == DataObject_SpaceAgentsDelta.class) {
+            DataObject_SpaceAgentsDelta delta = (DataObject_SpaceAgentsDelta) obj;
+            out.putByte(SPACE_AGENTS_DELTA);
+            out.putInt(delta.getBornNumber());
+            int[] removed = delta.getRemovedIds();
+            out.putInt(removed.length);
+            out.putInts(removed, 0, removed.length);
+            writeSpaceAgents(delta.getChangedAgents(), out);
+        } else if (cl == DataObject_SpaceLinks.class) {
+            out.putByte(SPACE_LINKS);
+            writeSpaceLinks((DataObject_SpaceLinks) obj, out);
+        } else if (cl == DataObject_Spaces.class) {
+            out.putByte(SPACES);
+            writeSpaces((DataObject_Spaces) obj, out);
+        } else if (cl == DataObject_AgentData.class) {
+            out.putByte(AGENT_DATA);
+            writeAgentData((DataObject_AgentData) obj, out);
+        } else if (cl == DataObject_Inspection.class) {
+            out.putByte(INSPECTION);
+            writeInspection((DataObject_Inspection) obj, out);
+        } else {
+            out.putByte(SERIALIZED);
+            out.putSerialized(obj);
+        }
+    }
+
+
+    /**
+     * Reads a data object
+     */
+    private static DataObject readObject(WireBuffer in) throws Exception {
+        int tag = in.getByte();
+
+        switch (tag) {
+            case DOUBLE:
+                return new DataObject_Double(in.getDouble());
+            case INTEGER:
+                return new DataObject_Integer(in.getInt());
+            case LONG:
+                return new DataObject_Long(in.getLong());
+            case BOOL:
+                return new DataObject_Bool(in.getBoolean());
+            case GRID:
+                return readGrid(in);
+            case GRID_DELTA:
+                return readGridDelta(in);
+            case SPACE_AGENTS:
+                return readSpaceAgents(in);
+            case SPACE_AGENTS_DELTA: {
+                int born = in.getInt();
+                int[] removed = new int[in.getInt()];
+                in.getInts(removed, 0, removed.length);
+                return new DataObject_SpaceAgentsDelta(readSpaceAgents(in), born, removed);
+            }
+            case SPACE_LINKS:
+                return readSpaceLinks(in);
+            case SPACES:
+                return readSpaces(in);
+            case AGENT_DATA:
+                return readAgentData(in);
+            case INSPECTION:
+                return readInspection(in);
+            case SERIALIZED:
+                return (DataObject) in.getSerialized();
+            default:
+                throw new Exception("Unknown data object type: " + tag);
+        }
+    }
+
+
+    /* Grids */
+
+    private static void writeGrid(DataObject_Grid grid, WireBuffer out) {
+        double[] data = grid.getFlatData();
+
+        out.putInt(grid.getSpaceIndex());
+        out.putInt(grid.getXSize());
+        out.putInt(grid.getYSize());
+        out.putInt(grid.getZSize());
+        out.putDouble(grid.getXStep());
+        out.putDouble(grid.getYStep());
+        out.putDouble(grid.getZStep());
+        out.putInt(data.length);
+        out.putDoubles(data, 0, data.length);
+    }
+
+
+    private static DataObject_Grid readGrid(WireBuffer in) {
+        int spaceIndex = in.getInt();
+        int n = in.getInt();
+        int m = in.getInt();
+        int k = in.getInt();
+        double xStep = in.getDouble();
+        double yStep = in.getDouble();
+        double zStep = in.getDouble();
+
+        double[] data = new double[in.getInt()];
+        in.getDoubles(data, 0, data.length);
+
+        return new DataObject_Grid(spaceIndex, n, m, k, xStep, yStep, zStep, data);
+    }
+
+
+    private static void writeGridDelta(DataObject_GridDelta delta, WireBuffer out) {
+        int[] starts = delta.getStarts();
+        double[] values = delta.getValues();
+
+        out.putInt(delta.getXSize());
+        out.putInt(delta.getYSize());
+        out.putInt(delta.getZSize());
+        out.putInt(starts.length);
+        out.putInts(starts, 0, starts.length);
+        out.putInts(delta.getLengths(), 0, starts.length);
+        out.putInt(values.length);
+        out.putDoubles(values, 0, values.length);
+    }
+
+
+    private static DataObject_GridDelta readGridDelta(WireBuffer in) {
+        int n = in.getInt();
+        int m = in.getInt();
+        int k = in.getInt();
+
+        int runs = in.getInt();
+        int[] starts = new int[runs];
+        int[] lengths = new int[runs];
+        in.getInts(starts, 0, runs);
+        in.getInts(lengths, 0, runs);
+
+        double[] values = new double[in.getInt()];
+        in.getDoubles(values, 0, values.length);
+
+        return new DataObject_GridDelta(n, m, k, starts, lengths, values);
+    }
+
+
+    /* Space agents */
+
+    private static void writeSpaceAgents(DataObject_SpaceAgents agents, WireBuffer out) {
+        int n = agents.getTotalNumber();
+        out.putInt(n);
+
+        out.putInts(agents.getIds(), 0, n);
+        out.putDoubles(agents.getXs(), 0, n);
+        out.putDoubles(agents.getYs(), 0, n);
+        out.putDoubles(agents.getZs(), 0, n);
+        out.putFloats(agents.getColorComponents(), 0, n * 4);
+        out.putDoubles(agents.getRadii(), 0, n);
+        out.putDoubles(agents.getRotations(), 0, n);
+        out.putInts(agents.getShapes(), 0, n);
+        out.putInts(agents.getSpaceIndices(), 0, n);
+        out.putInts(agents.getLabelIds(), 0, n);
+        out.putInts(agents.getShapeIds(), 0, n);
+
+        ArrayList<String> labels = agents.getLabelTable();
+        out.putInt(labels.size());
+        for (String label : labels)
+            out.putString(label);
+
+        ArrayList<DataObject_SpaceAgents.ShapeInfo> shapes = agents.getShapeTable();
+        out.putInt(shapes.size());
+        for (DataObject_SpaceAgents.ShapeInfo info : shapes) {
+            out.putInt(info.type);
+            out.putFloat(info.hx);
+            out.putFloat(info.hy);
+        }
+    }
+
+
+    private static DataObject_SpaceAgents readSpaceAgents(WireBuffer in) {
+        int n = in.getInt();
+        DataObject_SpaceAgents agents = new DataObject_SpaceAgents(n);
+
+        // Values are read directly into columns
+        in.getInts(agents.getIds(), 0, n);
+        in.getDoubles(agents.getXs(), 0, n);
+        in.getDoubles(agents.getYs(), 0, n);
+        in.getDoubles(agents.getZs(), 0, n);
+        in.getFloats(agents.getColorComponents(), 0, n * 4);
+        in.getDoubles(agents.getRadii(), 0, n);
+        in.getDoubles(agents.getRotations(), 0, n);
+        in.getInts(agents.getShapes(), 0, n);
+        in.getInts(agents.getSpaceIndices(), 0, n);
+        in.getInts(agents.getLabelIds(), 0, n);
+        in.getInts(agents.getShapeIds(), 0, n);
+        agents.setTotalNumber(n);
+
+        ArrayList<String> labels = agents.getLabelTable();
+        for (int i = in.getInt(); i > 0; i--)
+            labels.add(in.getString());
+
+        ArrayList<DataObject_SpaceAgents.ShapeInfo> shapes = agents.getShapeTable();
+        for (int i = in.getInt(); i > 0; i--) {
+            int type = in.getInt();
+            float hx = in.getFloat();
+            float hy = in.getFloat();
+            shapes.add(new DataObject_SpaceAgents.ShapeInfo(type, hx, hy));
+        }
+
+        return agents;
+    }
+
+
+    /* Space links */
+
+    private static void writeVector(Vector v, WireBuffer out) {
+        out.putDouble(v.x);
+        out.putDouble(v.y);
+        out.putDouble(v.z);
+    }
+
+
+    private static Vector readVector(WireBuffer in) {
+        double x = in.getDouble();
+        double y = in.getDouble();
+        double z = in.getDouble();
+        return new Vector(x, y, z);
+    }
+
+
+    private static void writeSpaceLinks(DataObject_SpaceLinks links, WireBuffer out) {
+        int n = links.getTotalNumber();
+        out.putInt(n);
+
+        Vector[] end1 = links.getEnd1();
+        Vector[] end2 = links.getEnd2();
+        double[] width = links.getWidth();
+        float[] colors = links.getColorComponents();
+        int[] spaceIndices = links.getSpaceIndices();
+
+        for (int i = 0, k = 0; i < n; i++, k += 4) {
+            writeVector(end1[i], out);
+            writeVector(end2[i], out);
+            out.putDouble(width[i]);
+
+            out.putDouble(colors[k]);
+            out.putDouble(colors[k + 1]);
+            out.putDouble(colors[k + 2]);
+            out.putDouble(colors[k + 3]);
+            out.putInt(spaceIndices[i]);
+        }
+    }
+
+
+    private static DataObject_SpaceLinks readSpaceLinks(WireBuffer in) {
+        int n = in.getInt();
+        DataObject_SpaceLinks links = new DataObject_SpaceLinks(n);
+
+        for (int i = 0; i < n; i++) {
+            Vector end1 = readVector(in);
+            Vector end2 = readVector(in);
+            double width = in.getDouble();
+
+            double r = in.getDouble();
+            double g = in.getDouble();
+            double b = in.getDouble();
+            double a = in.getDouble();
+            links.addLink(end1, end2, width, new Vector4d(r, g, b, a), in.getInt());
+        }
+
+        return links;
+    }
+
+
+    /* Other objects */
+
+    private static void writeSpaces(DataObject_Spaces spaces, WireBuffer out) {
+        int n = spaces.getTotalNumber();
+        out.putInt(n);
+
+        for (int i = 0; i < n; i++) {
+            out.putString(spaces.getNames()[i]);
+            out.putInt(spaces.getIndices()[i]);
+            writeVector(spaces.getMins()[i], out);
+            writeVector(spaces.getMaxs()[i], out);
+        }
+    }
+
+
+    private static DataObject_Spaces readSpaces(WireBuffer in) {
+        int n = in.getInt();
+        DataObject_Spaces spaces = new DataObject_Spaces(n);
+
+        for (int i = 0; i < n; i++) {
+            String name = in.getString();
+            int index = in.getInt();
+            Vector min = readVector(in);
+            Vector max = readVector(in);
+            spaces.addSpace(name, index, min, max);
+        }
+
+        return spaces;
+    }
+
+
+    private static void writeAgentData(DataObject_AgentData data, WireBuffer out) {
+        int n = data.getTotalNumber();
+        out.putInt(n);
+
+        for (int i = 0; i < n; i++) {
+            HashMap<String, String> values = data.getValues(i);
+            if (values == null) {
+                out.putInt(-1);
+                continue;
+            }
+
+            out.putInt(values.size());
+            for (Map.Entry<String, String> e : values.entrySet()) {
+                out.putString(e.getKey());
+                out.putString(e.getValue());
+            }
+        }
+    }
+
+
+    private static DataObject_AgentData readAgentData(WireBuffer in) {
+        int n = in.getInt();
+        DataObject_AgentData data = new DataObject_AgentData(n);
+
+        for (int i = 0; i < n; i++) {
+            int size = in.getInt();
+            if (size < 0) {
+                data.addValues(null);
+                continue;
+            }
+
+            HashMap<String, String> values = new HashMap<String, String>(size * 2);
+            for (int j = 0; j < size; j++) {
+                String key = in.getString();
+                values.put(key, in.getString());
+            }
+
+            data.addValues(values);
+        }
+
+        return data;
+    }
+
+
+    private static void writeInspection(DataObject_Inspection data, WireBuffer out) {
+        ArrayList<DataObject_Inspection.ObjectInformation> objects = data.getObjects();
+        out.putInt(objects.size());
+
+        for (DataObject_Inspection.ObjectInformation obj : objects) {
+            out.putString(obj.objectName);
+
+            int n = obj.varNames.size();
+            out.putInt(n);
+            for (int i = 0; i < n; i++) {
+                out.putString(obj.varNames.get(i));
+                out.putString(obj.varValues.get(i));
+            }
+        }
+    }
+
+
+    private static DataObject_Inspection readInspection(WireBuffer in) {
+        DataObject_Inspection data = new DataObject_Inspection();
+
+        for (int k = in.getInt(); k > 0; k--) {
+            DataObject_Inspection.ObjectInformation obj =
+                    new DataObject_Inspection.ObjectInformation(in.getString());
+
+            for (int i = in.getInt(); i > 0; i--) {
+                String name = in.getString();
+                obj.addVariable(name, in.getString());
+            }
+
+            data.addObject(obj);
+        }
+
+        return data;
+    }
+}
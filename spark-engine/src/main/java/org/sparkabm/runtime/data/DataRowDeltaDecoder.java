@@ -0,0 +1,75 @@
+package org.sparkabm.runtime.data;
+
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+/**
+ * Restores full data rows encoded by DataRowDeltaEncoder.
+ * Rows without changes pass through the decoder unmodified.
+ * If the previous full data object of a change is unknown
+ * (e.g., a receiver is connected to a running simulation) then
+ * the item is removed from the row until the next keyframe.
+ *
+ * @author Monad
+ */
+public class DataRowDeltaDecoder {
+    private static final Logger logger = Logger.getLogger(DataRowDeltaDecoder.class.getName());
+
+    // Full data objects of previous rows
+    private final HashMap<String, DataObject> previous = new HashMap<String, DataObject>();
+
+
+    /**
+     * Removes all saved data objects
+     */
+    public synchronized void reset() {
+        previous.clear();
+    }
+
+
+    /**
+     * Decodes the given row
+     *
+     * @param row
+     * @return a row with full data objects
+     */
+    public synchronized DataRow decode(DataRow row) {
+        if (row.getState().isInitialState())
+            previous.clear();
+
+        DataRow result = row;
+
+        for (String name : row.getNames()) {
+            DataObject obj = row.get(name);
+            DataObject prev = previous.get(name);
+            DataObject full = null;
+
+            if (obj instanceof DataObject_GridDelta) {
+                DataObject_GridDelta delta = (DataObject_GridDelta) obj;
+                if (prev instanceof DataObject_Grid && delta.matches((DataObject_Grid) prev))
+                    full = delta.apply((DataObject_Grid) prev);
+            } else if (obj instanceof DataObject_SpaceAgentsDelta) {
+                if (prev instanceof DataObject_SpaceAgents)
+                    full = ((DataObject_SpaceAgentsDelta) obj).apply((DataObject_SpaceAgents) prev);
+            } else {
+                if (obj instanceof DataObject_Grid || obj instanceof DataObject_SpaceAgents)
+                    previous.put(name, obj);
+                continue;
+            }
+
+            if (result == row)
+                result = new DataRow(row);
+
+            if (full == null) {
+                logger.fine("No keyframe for " + name);
+                previous.remove(name);
+                result.removeDataObject(name);
+            } else {
+                previous.put(name, full);
+                result.addDataObject(name, full);
+            }
+        }
+
+        return result;
+    }
+}
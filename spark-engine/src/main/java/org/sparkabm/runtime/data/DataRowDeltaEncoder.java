@@ -0,0 +1,122 @@
+package org.sparkabm.runtime.data;
+
+import java.util.HashMap;
+
+/**
+ * Replaces grids and space agents in data rows with their changes
+ * since the previous row. Full data objects (keyframes) are sent
+ * periodically, so a receiver which lost its state recovers after
+ * at most keyframeInterval rows. One encoder should be used
+ * for one stream of rows, and DataRowDeltaDecoder restores full rows
+ * on the receiver side.
+ * <p>
+ * The encoder keeps references to data objects of the previous row,
+ * so these objects should not be changed after they are collected.
+ *
+ * @author Monad
+ */
+public class DataRowDeltaEncoder {
+    // The number of rows between keyframes
+    private final int keyframeInterval;
+
+    // Full data objects of previous rows
+    private final HashMap<String, DataObject> previous = new HashMap<String, DataObject>();
+
+    // The number of rows since the last keyframe
+    private int counter;
+    private boolean keyframeRequested = true;
+
+    // Statistics
+    private long keyframes;
+    private long deltas;
+
+
+    /**
+     * Creates an encoder
+     *
+     * @param keyframeInterval the number of rows between keyframes
+     *                         (1 means that all rows are keyframes)
+     */
+    public DataRowDeltaEncoder(int keyframeInterval) {
+        this.keyframeInterval = Math.max(keyframeInterval, 1);
+    }
+
+
+    /**
+     * The next row will be a keyframe
+     */
+    public synchronized void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+
+    /**
+     * Returns the number of encoded keyframes
+     *
+     * @return
+     */
+    public synchronized long getKeyframes() {
+        return keyframes;
+    }
+
+
+    /**
+     * Returns the number of encoded delta rows
+     *
+     * @return
+     */
+    public synchronized long getDeltas() {
+        return deltas;
+    }
+
+
+    /**
+     * Encodes the given row. The row itself is not modified.
+     *
+     * @param row
+     * @return a row which should be sent instead of the given row
+     */
+    public synchronized DataRow encode(DataRow row) {
+        DataObject_State state = row.getState();
+        if (state.isInitialState()) {
+            // A new simulation
+            previous.clear();
+            keyframeRequested = true;
+        }
+
+        boolean keyframe = keyframeRequested || counter >= keyframeInterval - 1;
+        DataRow result = null;
+
+        for (String name : row.getNames()) {
+            DataObject obj = row.get(name);
+            DataObject delta = null;
+
+            if (obj instanceof DataObject_Grid) {
+                DataObject prev = previous.put(name, obj);
+                if (!keyframe && prev instanceof DataObject_Grid)
+                    delta = DataObject_GridDelta.create((DataObject_Grid) prev, (DataObject_Grid) obj);
+            } else if (obj != null && obj.getClass() == DataObject_SpaceAgents.class) {
+                DataObject prev = previous.put(name, obj);
+                if (!keyframe && prev != null && prev.getClass() == DataObject_SpaceAgents.class)
+                    delta = DataObject_SpaceAgentsDelta.create((DataObject_SpaceAgents) prev, (DataObject_SpaceAgents) obj);
+            }
+
+            if (delta != null) {
+                if (result == null)
+                    result = new DataRow(row);
+                result.addDataObject(name, delta);
+            }
+        }
+
+        if (keyframe) {
+            counter = 0;
+            keyframeRequested = false;
+            keyframes++;
+        } else {
+            counter++;
+            deltas++;
+        }
+
+        return result != null ? result : row;
+    }
+}
@@ -0,0 +1,367 @@
+package org.sparkabm.runtime.data;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.sparkabm.runtime.data.GridSeriesWriter.*;
+
+/**
+ * Reads files created by GridSeriesWriter. Frames are read
+ * from a memory-mapped file. Files without an index (the writer was
+ * not closed) are scanned.
+ * <p>
+ * Usage: GridSeriesReader file [-csv output.csv] [-precision N]
+ *
+ * @author Monad
+ * @see org.sparkabm.runtime.data.GridSeriesWriter
+ */
+public class GridSeriesReader implements Closeable {
+    private static final Logger logger = Logger.getLogger(GridSeriesReader.class.getName());
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    private final String[] layerNames;
+    private final int valueSize;
+
+    // The whole file (null if the file is too large)
+    private final ByteBuffer data;
+
+    // Index
+    private final int frameCount;
+    private final long[] ticks;
+    private final long[] offsets;
+
+
+    /**
+     * Opens a file
+     *
+     * @param file
+     * @throws IOException
+     */
+    public GridSeriesReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+
+        try {
+            ByteBuffer header = read(0, HEADER_SIZE);
+            if (header.getInt() != MAGIC)
+                throw new IOException(file + " is not a grid series file");
+
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported version: " + version);
+
+            valueSize = header.getInt();
+            layerNames = new String[header.getInt()];
+            long dataStart = header.getLong();
+            long dataEnd = header.getLong();
+            int count = header.getInt();
+            header.getInt();
+            long indexOffset = header.getLong();
+
+            ByteBuffer names = read(HEADER_SIZE, (int) (dataStart - HEADER_SIZE));
+            for (int i = 0; i < layerNames.length; i++) {
+                byte[] name = new byte[names.getInt()];
+                names.get(name);
+                layerNames[i] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            long size = channel.size();
+            data = size <= Integer.MAX_VALUE
+                    ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN)
+                    : null;
+
+            ticks = new long[count];
+            offsets = new long[count];
+
+            if (indexOffset > 0 && indexOffset + count * 16L <= size) {
+                ByteBuffer index = read(indexOffset, count * 16);
+                for (int i = 0; i < count; i++) {
+                    ticks[i] = index.getLong();
+                    offsets[i] = index.getLong();
+                }
+
+                frameCount = count;
+            } else {
+                // Scan frames
+                int n = 0;
+                long pos = dataStart;
+                while (n < count && pos + FRAME_HEADER_SIZE <= Math.min(dataEnd, size)) {
+                    ByteBuffer frame = read(pos, FRAME_HEADER_SIZE);
+                    ticks[n] = frame.getLong(0);
+                    offsets[n] = pos;
+                    n++;
+
+                    long values = (long) frame.getInt(12) * frame.getInt(16) * frame.getInt(20);
+                    pos += (FRAME_HEADER_SIZE + values * valueSize + 7) & ~7L;
+                }
+
+                frameCount = n;
+            }
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Reads a part of the file
+     */
+    private ByteBuffer read(long pos, int size) throws IOException {
+        if (data != null) {
+            ByteBuffer buf = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            buf.position((int) pos);
+            buf.limit((int) pos + size);
+            return buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        }
+
+        buf.flip();
+        return buf;
+    }
+
+
+    /**
+     * Returns names of data layers
+     *
+     * @return
+     */
+    public String[] getLayerNames() {
+        return layerNames.clone();
+    }
+
+
+    /**
+     * Returns true if values are saved as doubles
+     *
+     * @return
+     */
+    public boolean isDoubleValues() {
+        return valueSize == 8;
+    }
+
+
+    /**
+     * Returns the number of frames
+     *
+     * @return
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+
+    /**
+     * Returns the tick of a frame
+     *
+     * @param frame
+     * @return
+     */
+    public long getTick(int frame) {
+        return ticks[frame];
+    }
+
+
+    /**
+     * Returns the header of a frame: tick, layer, xSize, ySize, zSize
+     */
+    private ByteBuffer getFrameHeader(int frame) throws IOException {
+        return read(offsets[frame], FRAME_HEADER_SIZE);
+    }
+
+
+    /**
+     * Returns the index of the data layer of a frame
+     *
+     * @param frame
+     * @return
+     * @throws IOException
+     */
+    public int getLayer(int frame) throws IOException {
+        return getFrameHeader(frame).getInt(8);
+    }
+
+
+    /**
+     * Returns sizes of the grid of a frame (x, y, z)
+     *
+     * @param frame
+     * @return
+     * @throws IOException
+     */
+    public int[] getSize(int frame) throws IOException {
+        ByteBuffer h = getFrameHeader(frame);
+        return new int[]{h.getInt(12), h.getInt(16), h.getInt(20)};
+    }
+
+
+    /**
+     * Finds a frame of the given data layer at the given tick
+     *
+     * @param tick
+     * @param layer
+     * @return -1 if no such frame exists
+     * @throws IOException
+     */
+    public int findFrame(long tick, int layer) throws IOException {
+        // Frames are ordered by ticks
+        int lo = 0, hi = frameCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ticks[mid] < tick)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        for (int i = lo; i < frameCount && ticks[i] == tick; i++) {
+            if (getLayer(i) == layer)
+                return i;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Reads values of a frame in the order x, y, z (z changes first)
+     *
+     * @param frame
+     * @param dest  an array for values (it is created if null or too small)
+     * @return
+     * @throws IOException
+     */
+    public double[] readFrame(int frame, double[] dest) throws IOException {
+        ByteBuffer h = getFrameHeader(frame);
+        int n = h.getInt(12) * h.getInt(16) * h.getInt(20);
+
+        if (dest == null || dest.length < n)
+            dest = new double[n];
+
+        ByteBuffer buf = read(offsets[frame] + FRAME_HEADER_SIZE, n * valueSize);
+        if (valueSize == 8) {
+            buf.asDoubleBuffer().get(dest, 0, n);
+        } else {
+            for (int i = 0; i < n; i++)
+                dest[i] = buf.getFloat(i * 4);
+        }
+
+        return dest;
+    }
+
+
+    /**
+     * Exports all frames into a CSV file (the format of
+     * the batch runner: tick,name,values for each y and x)
+     *
+     * @param out
+     * @param precision the number of significant digits
+     * @throws IOException
+     */
+    public void exportCsv(File out, int precision) throws IOException {
+        String format = precision > 0 ? "%." + precision + "g" : "%g";
+        PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(out), 1 << 16));
+
+        try {
+            double[] values = null;
+            StringBuilder str = new StringBuilder(1 << 16);
+
+            for (int i = 0; i < frameCount; i++) {
+                int[] size = getSize(i);
+                int m = size[1] * size[2];
+                values = readFrame(i, values);
+
+                str.setLength(0);
+                str.append(ticks[i]).append(',').append(layerNames[getLayer(i)]).append(',');
+
+                // z = 0 for 3d grids
+                for (int y = 0; y < size[1]; y++) {
+                    for (int x = 0; x < size[0]; x++) {
+                        str.append(String.format(format, values[x * m + y * size[2]]));
+                        str.append(',');
+                    }
+                }
+
+                w.println(str);
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+
+    /**
+     * Closes the file
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+
+    /**
+     * Prints information about a file or exports it into a CSV file
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: GridSeriesReader file [-csv output.csv] [-precision N]");
+            return;
+        }
+
+        File csv = null;
+        int precision = 5;
+
+        for (int i = 1; i < args.length - 1; i += 2) {
+            if (args[i].equals("-csv"))
+                csv = new File(args[i + 1]);
+            else if (args[i].equals("-precision"))
+                precision = Integer.parseInt(args[i + 1]);
+            else
+                System.out.println("Unknown option: " + args[i]);
+        }
+
+        try {
+            GridSeriesReader reader = new GridSeriesReader(new File(args[0]));
+            try {
+                if (csv != null) {
+                    reader.exportCsv(csv, precision);
+                    return;
+                }
+
+                System.out.println("Data layers: " + String.join(", ", reader.getLayerNames()));
+                System.out.println("Values: " + (reader.isDoubleValues() ? "double" : "float"));
+                System.out.println("Frames: " + reader.getFrameCount());
+
+                if (reader.getFrameCount() > 0) {
+                    int last = reader.getFrameCount() - 1;
+                    System.out.println("Ticks: " + reader.getTick(0) + " - " + reader.getTick(last));
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "exception", e);
+        }
+    }
+}
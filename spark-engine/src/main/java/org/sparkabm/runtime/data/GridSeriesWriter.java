@@ -0,0 +1,252 @@
+package org.sparkabm.runtime.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a series of data layer snapshots into a binary file.
+ * Frames are appended to a memory-mapped file, so saving a grid
+ * is a copy of its values.
+ * <p>
+ * File format (little-endian):
+ * <pre>
+ * header:  int magic ('SPKG'), int version, int value size (4 or 8),
+ *          int number of layers, long data start, long data end,
+ *          int number of frames, int reserved, long index offset (0 if no index),
+ *          names of layers (int length, UTF-8 bytes), padding to 8 bytes
+ * frame:   long tick, int layer, int xSize, int ySize, int zSize,
+ *          values (float or double) in the order x, y, z (z changes first)
+ * index:   for each frame: long tick, long offset of the frame
+ * </pre>
+ * The header is updated after each frame and the index is written by close(),
+ * so a file of a crashed simulation can be read as well (the reader scans frames).
+ *
+ * @author Monad
+ * @see org.sparkabm.runtime.data.GridSeriesReader
+ */
+public class GridSeriesWriter implements Closeable {
+    static final int MAGIC = 0x53504B47;
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 48;
+    static final int FRAME_HEADER_SIZE = 24;
+
+    // Offsets of header fields
+    static final int DATA_START = 16;
+    static final int DATA_END = 24;
+    static final int FRAME_COUNT = 32;
+    static final int INDEX_OFFSET = 40;
+
+    // Size of mapped regions
+    private static final long REGION_SIZE = 64L << 20;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    private final int layerCount;
+    private final boolean doubleValues;
+
+    private final MappedByteBuffer header;
+    private MappedByteBuffer region;
+    // Position of the region in the file
+    private long regionStart;
+
+    // The end of written frames
+    private long dataEnd;
+
+    // Index
+    private int frameCount;
+    private long[] ticks = new long[256];
+    private long[] offsets = new long[256];
+
+    // Buffer for converting values to floats
+    private float[] floats = new float[0];
+
+
+    /**
+     * Creates a file
+     *
+     * @param file
+     * @param layerNames   names of data layers
+     * @param doubleValues if false then values are saved as floats
+     * @throws IOException
+     */
+    public GridSeriesWriter(File file, String[] layerNames, boolean doubleValues) throws IOException {
+        this.layerCount = layerNames.length;
+        this.doubleValues = doubleValues;
+
+        int size = HEADER_SIZE;
+        byte[][] names = new byte[layerNames.length][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = layerNames[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + names[i].length;
+        }
+
+        long dataStart = (size + 7) & ~7;
+
+        this.file = new RandomAccessFile(file, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataStart);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(doubleValues ? 8 : 4);
+        header.putInt(layerCount);
+        header.putLong(dataStart);
+        header.putLong(dataStart);
+        header.putInt(0);
+        header.putInt(0);
+        header.putLong(0);
+
+        for (byte[] name : names) {
+            header.putInt(name.length);
+            header.put(name);
+        }
+
+        dataEnd = dataStart;
+    }
+
+
+    /**
+     * Returns the number of written frames
+     *
+     * @return
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+
+    /**
+     * Appends a frame
+     *
+     * @param tick
+     * @param layer the index of a data layer
+     * @param grid
+     * @throws IOException
+     */
+    public void write(long tick, int layer, DataObject_Grid grid) throws IOException {
+        if (layer < 0 || layer >= layerCount)
+            throw new IllegalArgumentException("Wrong layer index: " + layer);
+
+        double[] data = grid.getFlatData();
+        int n = data.length;
+        long size = FRAME_HEADER_SIZE + (long) n * (doubleValues ? 8 : 4);
+
+        ByteBuffer buf = map(size);
+        buf.putLong(tick);
+        buf.putInt(layer);
+        buf.putInt(grid.getXSize());
+        buf.putInt(grid.getYSize());
+        buf.putInt(Math.max(grid.getZSize(), 1));
+
+        if (doubleValues) {
+            buf.asDoubleBuffer().put(data);
+        } else {
+            if (floats.length < n)
+                floats = new float[n];
+
+            float[] tmp = floats;
+            for (int i = 0; i < n; i++)
+                tmp[i] = (float) data[i];
+
+            buf.asFloatBuffer().put(tmp, 0, n);
+        }
+
+        buf.position(buf.position() + (int) (size - FRAME_HEADER_SIZE));
+
+        // Values are 8-byte aligned for the next frame
+        int pad = (int) (-size & 7);
+        buf.position(buf.position() + pad);
+
+        addToIndex(tick, dataEnd);
+        dataEnd += size + pad;
+
+        header.putLong(DATA_END, dataEnd);
+        header.putInt(FRAME_COUNT, frameCount);
+    }
+
+
+    /**
+     * Returns a mapped buffer with at least the given number of free bytes
+     * at the end of written data
+     */
+    private ByteBuffer map(long size) throws IOException {
+        size += 8;
+        if (region == null || dataEnd + size > regionStart + region.capacity()) {
+            regionStart = dataEnd;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, size));
+            region.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        region.position((int) (dataEnd - regionStart));
+        return region;
+    }
+
+
+    private void addToIndex(long tick, long offset) {
+        if (frameCount == ticks.length) {
+            long[] t = new long[frameCount * 2];
+            long[] o = new long[frameCount * 2];
+            System.arraycopy(ticks, 0, t, 0, frameCount);
+            System.arraycopy(offsets, 0, o, 0, frameCount);
+            ticks = t;
+            offsets = o;
+        }
+
+        ticks[frameCount] = tick;
+        offsets[frameCount] = offset;
+        frameCount++;
+    }
+
+
+    /**
+     * Writes the index and closes the file
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (!channel.isOpen())
+            return;
+
+        try {
+            if (region != null)
+                region.force();
+
+            // Index
+            ByteBuffer index = ByteBuffer.allocate(frameCount * 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < frameCount; i++) {
+                index.putLong(ticks[i]);
+                index.putLong(offsets[i]);
+            }
+
+            index.flip();
+            long pos = dataEnd;
+            while (index.hasRemaining())
+                pos += channel.write(index, pos);
+
+            header.putLong(INDEX_OFFSET, dataEnd);
+            header.force();
+
+            region = null;
+            try {
+                channel.truncate(pos);
+            } catch (IOException e) {
+                // Some systems do not allow truncating mapped files,
+                // the reader uses the header to find the end of data
+            }
+        } finally {
+            file.close();
+        }
+    }
+}
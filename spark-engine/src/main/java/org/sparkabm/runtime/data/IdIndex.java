@@ -0,0 +1,87 @@
+package org.sparkabm.runtime.data;
+
+import java.util.Arrays;
+
+/**
+ * Maps agent ids to indices in data objects
+ * (a hash table with open addressing)
+ *
+ * @author Monad
+ */
+class IdIndex {
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+
+
+    /**
+     * Creates a table for the given number of ids
+     *
+     * @param size
+     */
+    IdIndex(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, 2) * 2 - 1) << 1;
+
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+
+        Arrays.fill(keys, EMPTY);
+    }
+
+
+    /**
+     * Creates a table of the given ids
+     *
+     * @param ids
+     * @param n   the number of ids
+     */
+    IdIndex(int[] ids, int n) {
+        this(n);
+
+        for (int i = 0; i < n; i++)
+            put(ids[i], i);
+    }
+
+
+    private int slot(int id) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+
+    /**
+     * Puts the id into the table
+     *
+     * @param id
+     * @param index
+     */
+    void put(int id, int index) {
+        int i = slot(id);
+        while (keys[i] != EMPTY && keys[i] != id)
+            i = (i + 1) & mask;
+
+        keys[i] = id;
+        values[i] = index;
+    }
+
+
+    /**
+     * Returns the index of the id (-1 if there is no such id)
+     *
+     * @param id
+     * @return
+     */
+    int get(int id) {
+        int i = slot(id);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == id)
+                return values[i];
+            i = (i + 1) & mask;
+        }
+
+        return -1;
+    }
+}
@@ -29,13 +29,10 @@ import org.w3c.dom.Node;
 public class SparkModelXMLFactory extends SparkModel.SparkModelFactory {
     private static final Logger logger = Logger.getLogger(SparkModelXMLFactory.class.getName());
 
-    /* A single instance of the factory */
-    private static SparkModelXMLFactory instance;
-
-
     /**
      * Loads a model from the given xml document and using the provided root
-     * path to the model Java class files
+     * path to the model Java class files. A new factory is used for each
+     * model, so models can be loaded concurrently.
      *
      * @param xmlDoc
      * @param rootPath
@@ -43,10 +40,7 @@ public class SparkModelXMLFactory extends SparkModel.SparkModelFactory {
      */
     public static SparkModel loadModel(Document xmlDoc, File rootPath)
             throws Exception {
-        if (instance == null)
-            instance = new SparkModelXMLFactory();
-
-        return instance.load(xmlDoc, rootPath);
+        return new SparkModelXMLFactory().load(xmlDoc, rootPath);
     }
 
 
@@ -134,6 +128,11 @@ public class SparkModelXMLFactory extends SparkModel.SparkModelFactory {
         }
 
         setDefaultObserver(defaultObserver, defaultExecutionMode);
+
+        // The order of agents is preserved by default
+        boolean preserveOrder = Boolean.parseBoolean(XmlDocUtils.getValue(
+                nodes.get(0), "preserve-order", "true"));
+        setPreserveAgentOrder(preserveOrder);
     }
 
 
@@ -1,9 +1,8 @@
 package org.sparkabm.runtime.internal;
 
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.logging.Logger;
 
 //import org.apache.log4j.BasicConfigurator;
@@ -12,20 +11,23 @@ import org.sparkabm.runtime.commands.Command_AddDataReceiver;
 import org.sparkabm.runtime.commands.Command_Exit;
 import org.sparkabm.runtime.commands.ModelManagerCommand;
 import org.sparkabm.runtime.data.DataRow;
+import org.sparkabm.runtime.data.DataRowDeltaEncoder;
 import org.sparkabm.runtime.internal.data.DataProcessor;
 import org.sparkabm.runtime.internal.manager.IModelManager;
 import org.sparkabm.runtime.internal.manager.ModelManager_Basic;
+import org.sparkabm.runtime.internal.net.WireConnection;
 
 /**
- * A test implementation of a SPARK server
+ * A test implementation of a SPARK server. Commands and data rows
+ * are exchanged in the binary format (see WireConnection).
  *
  * @author Monad
  */
 public class TestSparkServer implements Runnable {
     private static final Logger logger = Logger.getLogger(TestSparkServer.class.getName());
 
-    /* Socket for communications with a client */
-    private final Socket clientSocket;
+    /* Channel for communications with a client */
+    private final SocketChannel clientChannel;
 
     /* Main model manager */
     private final IModelManager manager;
@@ -34,10 +36,10 @@ public class TestSparkServer implements Runnable {
     /**
      * Creates a test server
      */
-    public TestSparkServer(Socket clientSocket) {
+    public TestSparkServer(SocketChannel clientChannel) {
         this.manager = new ModelManager_Basic();
-        this.clientSocket = clientSocket;
-        logger.info("Creating a server for the client: " + clientSocket.toString());
+        this.clientChannel = clientChannel;
+        logger.info("Creating a server for the client: " + clientChannel.toString());
     }
 
 
@@ -45,8 +47,7 @@ public class TestSparkServer implements Runnable {
      * Main server's method
      */
     public void run() {
-        ObjectInputStream ois = null;
-        ObjectOutputStream oos = null;
+        WireConnection connection = null;
 
         logger.info("Starting a model manager...");
         Thread managerThread = new Thread(manager);
@@ -56,16 +57,15 @@ public class TestSparkServer implements Runnable {
         logger.info("Server is started");
 
         try {
-            ois = new ObjectInputStream(clientSocket.getInputStream());
-            oos = new ObjectOutputStream(clientSocket.getOutputStream());
+            connection = new WireConnection(clientChannel);
             Object data;
 
             logger.info("Waiting for data...");
 
-            while ((data = ois.readObject()) != null) {
+            while ((data = connection.receive()) != null) {
                 if (data instanceof ModelManagerCommand) {
                     if (data instanceof Command_AddDataReceiver) {
-                        DataProcessor dp = new MyDataSender(oos);
+                        DataProcessor dp = new MyDataSender(connection);
                         data = new Command_AddDataProcessor(dp);
                     }
 
@@ -80,13 +80,11 @@ public class TestSparkServer implements Runnable {
             try {
                 manager.sendCommand(new Command_Exit());
 
-                if (ois != null)
-                    ois.close();
+                if (connection != null)
+                    logger.info("Sent " + connection.getMessagesSent() + " messages, "
+                            + connection.getBytesSent() + " bytes");
 
-                if (oos != null)
-                    oos.close();
-
-                clientSocket.close();
+                clientChannel.close();
 
                 logger.info("Stopping manager thread...");
 
@@ -106,7 +104,7 @@ public class TestSparkServer implements Runnable {
     public static void main(String[] args) {
         // TODO: ?
 //		BasicConfigurator.configure();
-        ServerSocket serverSocket = null;
+        ServerSocketChannel serverChannel = null;
         int port = 12345;
 
         if (args.length >= 2) {
@@ -114,24 +112,25 @@ public class TestSparkServer implements Runnable {
         }
 
         try {
-            serverSocket = new ServerSocket(port);
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
         } catch (Exception e) {
             e.printStackTrace();
             System.exit(-1);
         }
 
         while (true) {
-            Socket clientSocket = null;
+            SocketChannel clientChannel = null;
             logger.info("Waiting for a connection...");
 
             try {
-                clientSocket = serverSocket.accept();
+                clientChannel = serverChannel.accept();
             } catch (Exception e) {
                 e.printStackTrace();
                 System.exit(-1);
             }
 
-            TestSparkServer server = new TestSparkServer(clientSocket);
+            TestSparkServer server = new TestSparkServer(clientChannel);
             server.run();
             // Start up the server
 //			new Thread(server).start();
@@ -141,30 +140,37 @@ public class TestSparkServer implements Runnable {
 
 
     /**
-     * An implementation of data processor which sends all data to a client
+     * An implementation of data processor which sends all data to a client.
+     * If the system property spark.data.keyframe is greater than 1 then grids
+     * and space agents are sent as changes with a keyframe after the given
+     * number of rows.
      *
      * @author Monad
      */
     private static class MyDataSender extends DataProcessor {
-        private ObjectOutputStream oos;
+        private final WireConnection connection;
+        // Null if full rows are sent
+        private final DataRowDeltaEncoder encoder;
+
 
+        public MyDataSender(WireConnection connection) throws Exception {
+            this.connection = connection;
 
-        public MyDataSender(ObjectOutputStream oos) throws Exception {
-            this.oos = oos;
+            int keyframe = Integer.getInteger("spark.data.keyframe", 1);
+            this.encoder = keyframe > 1 ? new DataRowDeltaEncoder(keyframe) : null;
         }
 
 
         @Override
         public void finalizeProcessing() throws Exception {
-            // TODO Auto-generated method stub
-            if (oos != null)
-                oos.reset();
         }
 
         @Override
         public void processDataRow(DataRow row) throws Exception {
-            oos.reset();
-            oos.writeObject(row);
+            if (encoder != null)
+                row = encoder.encode(row);
+
+            connection.send(row);
         }
 
     }
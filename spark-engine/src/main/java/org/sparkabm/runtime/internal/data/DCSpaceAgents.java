@@ -23,6 +23,9 @@ public class DCSpaceAgents extends DataCollector {
     protected String typeName;
     protected Class<? extends Agent> type;
 
+    // Temporary vector for positions
+    private final Vector tmpPosition = new Vector();
+
     /**
      * Creates the data collector for the given type of space agents
      *
@@ -71,16 +74,17 @@ public class DCSpaceAgents extends DataCollector {
     private DataObject collectSpaceAgents(Agent[] agents) {
         int n = agents.length;
         DataObject_SpaceAgents result = new DataObject_SpaceAgents(n);
+        Vector pos = tmpPosition;
 
         for (int i = 0; i < n; i++) {
             SpaceAgent agent = (SpaceAgent) agents[i];
             SpaceNode node = agent.getNode();
 
             String label = agent.getLabel();
-            Vector pos = node.getPosition();
+            node.getPosition(pos);
             double r = node.getRelativeSize();
-            // Make a copy
-            Vector4d color = new Vector4d(node.getColor());
+            // The color is copied by the data object
+            Vector4d color = node.getColor();
             // TODO: node.getShape() => torus node does not exist yet (as a
             // node)
             int shape = agent.getType();
@@ -92,13 +96,11 @@ public class DCSpaceAgents extends DataCollector {
             }
 
             int spaceIndex = node.getSpace().getIndex();
-            DataObject_SpaceAgents.ShapeInfo si = null;
-            if (node instanceof PhysicalNode) {
-                PhysicalNode pNode = (PhysicalNode) node;
-                si = new DataObject_SpaceAgents.ShapeInfo(pNode.getShapeInfo());
-            }
+            PhysicalNode.ShapeInfo si = null;
+            if (node instanceof PhysicalNode)
+                si = ((PhysicalNode) node).getShapeInfo();
 
-            result.addAgent(label, pos, r, color, node.getRotation(), si, shape, spaceIndex);
+            result.addAgent(agent.getId(), label, pos.x, pos.y, pos.z, r, color, node.getRotation(), si, shape, spaceIndex);
         }
 
         return result;
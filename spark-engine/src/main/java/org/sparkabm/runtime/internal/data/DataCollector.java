@@ -1,6 +1,5 @@
 package org.sparkabm.runtime.internal.data;
 
-import org.sparkabm.math.SimulationTime;
 import org.sparkabm.core.SparkModel;
 import org.sparkabm.runtime.data.DataObject;
 import org.sparkabm.runtime.data.DataRow;
@@ -8,14 +7,12 @@ import org.sparkabm.runtime.data.DataRow;
 /**
  * Defines basic functionality for data collectors.
  * Each data collector is responsible for getting
- * some information about simulated model
+ * some information about simulated model.
+ * Collection intervals are scheduled by DataCollectorManager.
  *
  * @author Monad
  */
 public abstract class DataCollector {
-    /* Interval in ticks for data collection */
-    private int collectionInterval;
-
     /* Name of the data collected by this collector */
     protected String dataName;
 
@@ -27,7 +24,6 @@ public abstract class DataCollector {
      * Creates a default data collector
      */
     protected DataCollector() {
-        collectionInterval = 1;
         dataName = null;
         active = true;
     }
@@ -52,15 +48,12 @@ public abstract class DataCollector {
 
 
     /**
-     * Sets the data collection interval
+     * Returns the name of the collected data
      *
-     * @param interval
+     * @return
      */
-    public void setCollectionInterval(int interval) {
-        if (interval < 0)
-            interval = 0;
-
-        this.collectionInterval = interval;
+    public String getDataName() {
+        return dataName;
     }
 
 
@@ -68,24 +61,20 @@ public abstract class DataCollector {
      * Collects data into the given data row
      *
      * @param row
+     * @return false if the data is already in the row
      * @throws Exception
      */
-    public final void collect(SparkModel model, DataRow row, SimulationTime time, boolean specialCollection) throws Exception {
+    public final boolean collect(SparkModel model, DataRow row) throws Exception {
         if (dataName == null)
             throw new Exception("Name is not specified for the data collector");
 
-        // If the interval == 0, then do only special collections
-        if (collectionInterval == 0 && !specialCollection)
-            return;
-
-        if (specialCollection || time.getTick() % collectionInterval == 0) {
-            // The data is already collected
-            if (row.contains(dataName))
-                return;
+        // The data is already collected
+        if (row.contains(dataName))
+            return false;
 
-            DataObject obj = collect0(model);
-            row.addDataObject(dataName, obj);
-        }
+        DataObject obj = collect0(model);
+        row.addDataObject(dataName, obj);
+        return true;
     }
 
     /**
@@ -1,40 +1,166 @@
 package org.sparkabm.runtime.internal.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.sparkabm.core.SparkModel;
 import org.sparkabm.runtime.data.DataCollectorDescription;
 import org.sparkabm.runtime.data.DataObject_Inspection;
+import org.sparkabm.runtime.data.DataRow;
 
 /**
- * Manages data collectors
+ * Manages data collectors. All subscriptions for the same data
+ * share one collector which runs at ticks required by at least one
+ * subscription. The cost of each collector is measured and collectors
+ * which are not required for an output are subsampled when they take
+ * more than the given fraction of the tick time (spark.data.cost-limit,
+ * 0 disables subsampling).
  *
  * @author Monad
  */
 public class DataCollectorManager {
     private static final Logger logger = Logger.getLogger(DataCollectorManager.class.getName());
 
+    /* The maximal subsampling factor */
+    private static final int MAX_FACTOR = 64;
+
+    /* Weight of new measurements in average values */
+    private static final double ALPHA = 0.1;
+
     /**
-     * Adds a reference counter for each data collector
+     * Subscriptions and statistics of a data collector
      *
      * @author Monad
      */
     private static class DataCollectorInfo {
-        public DataCollector dataCollector;
-        public int refCounter;
+        public final DataCollector dataCollector;
+
+        /* Reference counters of subscriptions */
+        public final HashMap<DataCollectorDescription, Integer> subscriptions;
+
+        /* Merged schedule: intervals which are not multiples of other intervals */
+        public int[] intervals;
+
+        /* True if at least one subscription is required */
+        public boolean required;
+
+        /* Subsampling factor (a power of 2) */
+        public int factor;
+
+        /* Average cost of a collection in ns */
+        public double cost;
+
+        /* Total number and time of collections */
+        public long collections;
+        public long totalTime;
 
         public DataCollectorInfo(DataCollector dc) {
             this.dataCollector = dc;
-            this.refCounter = 1;
+            this.subscriptions = new HashMap<DataCollectorDescription, Integer>();
+            this.intervals = new int[0];
+            this.factor = 1;
+        }
+
+
+        /**
+         * Merges intervals of all subscriptions
+         */
+        public void updateSchedule() {
+            ArrayList<Integer> list = new ArrayList<Integer>();
+            required = false;
+
+            for (DataCollectorDescription dcd : subscriptions.keySet()) {
+                if (dcd.isRequired())
+                    required = true;
+
+                int interval = dcd.getInterval();
+                if (interval > 0 && !list.contains(interval))
+                    list.add(interval);
+            }
+
+            int n = 0;
+            int[] tmp = new int[list.size()];
+
+            // Ticks of multiples of another interval are already scheduled
+            loop:
+            for (int interval : list) {
+                for (int other : list) {
+                    if (other < interval && interval % other == 0)
+                        continue loop;
+                }
+
+                tmp[n++] = interval;
+            }
+
+            intervals = new int[n];
+            System.arraycopy(tmp, 0, intervals, 0, n);
+            Arrays.sort(intervals);
+
+            if (required)
+                factor = 1;
+        }
+
+
+        /**
+         * Returns true if the data should be collected at the given tick
+         */
+        public boolean isScheduled(long tick) {
+            // Ticks of larger factors are subsets of ticks of smaller factors,
+            // so subsampled collectors are still collected together
+            for (int interval : intervals) {
+                if (tick % ((long) interval * factor) == 0)
+                    return true;
+            }
+
+            return false;
+        }
+
+
+        /**
+         * Adds a new cost measurement and adjusts the subsampling factor
+         *
+         * @param time     the time of a collection in ns
+         * @param tickTime the average tick time in ns
+         * @param limit    the fraction of the tick time
+         */
+        public void addCost(long time, double tickTime, double limit) {
+            collections++;
+            totalTime += time;
+            cost = collections == 1 ? time : cost + (time - cost) * ALPHA;
+
+            if (required || limit <= 0 || tickTime <= 0 || intervals.length == 0)
+                return;
+
+            // The cost per tick
+            double budget = tickTime * limit;
+            double perTick = cost / ((double) intervals[0] * factor);
+
+            if (perTick > budget && factor < MAX_FACTOR) {
+                factor *= 2;
+                logger.fine(dataCollector.getDataName() + ": subsampling factor " + factor);
+            } else if (factor > 1 && perTick * 2 < budget * 0.5) {
+                // The cost would be below the half of the budget with the smaller factor
+                factor /= 2;
+                logger.fine(dataCollector.getDataName() + ": subsampling factor " + factor);
+            }
         }
     }
 
-    /* Table of all data collectors */
+    /* Table of all data collectors (keys do not depend on intervals) */
     private final HashMap<DataCollectorDescription, DataCollectorInfo> dataCollectors;
 
     /* List of active data collectors */
     private final ArrayList<DataCollector> activeCollectors;
+    private final ArrayList<DataCollectorInfo> activeInfo;
+
+    /* Average tick time in ns */
+    private double tickTime;
+
+    /* The maximal fraction of the tick time for a visual data collector */
+    private double costLimit;
 
 
     /**
@@ -43,6 +169,54 @@ public class DataCollectorManager {
     public DataCollectorManager() {
         dataCollectors = new HashMap<DataCollectorDescription, DataCollectorInfo>();
         activeCollectors = new ArrayList<DataCollector>();
+        activeInfo = new ArrayList<DataCollectorInfo>();
+
+        costLimit = 0.25;
+        String limit = System.getProperty("spark.data.cost-limit");
+        if (limit != null) {
+            try {
+                costLimit = Double.parseDouble(limit);
+            } catch (NumberFormatException e) {
+                logger.warning("Bad spark.data.cost-limit value: " + limit);
+            }
+        }
+    }
+
+
+    /**
+     * Sets the maximal fraction of the tick time for a data collector
+     * which is not required for an output. More expensive collectors are
+     * subsampled.
+     *
+     * @param limit 0 disables subsampling
+     */
+    public void setCostLimit(double limit) {
+        this.costLimit = limit;
+
+        if (limit <= 0) {
+            for (DataCollectorInfo info : activeInfo) {
+                if (!info.required)
+                    info.factor = 1;
+            }
+        }
+    }
+
+
+    /**
+     * Updates the average tick time
+     *
+     * @param time the time of a simulation step in ns
+     */
+    public void updateTickTime(long time) {
+        tickTime = tickTime == 0 ? time : tickTime + (time - tickTime) * ALPHA;
+    }
+
+
+    /**
+     * Returns a key which is the same for all subscriptions of a collector
+     */
+    private static DataCollectorDescription getKey(DataCollectorDescription dcd) {
+        return new DataCollectorDescription(dcd.getType(), dcd.getDataName(), 0, dcd.getParameters());
     }
 
 
@@ -52,10 +226,14 @@ public class DataCollectorManager {
      * @param dcd
      */
     public void addCollector(DataCollectorDescription dcd) {
-        if (dataCollectors.containsKey(dcd)) {
+        DataCollectorDescription key = getKey(dcd);
+        DataCollectorInfo info = dataCollectors.get(key);
+
+        if (info != null) {
             // Increment the reference counter
-            DataCollectorInfo info = dataCollectors.get(dcd);
-            info.refCounter++;
+            Integer counter = info.subscriptions.get(dcd);
+            info.subscriptions.put(dcd, counter == null ? 1 : counter + 1);
+            info.updateSchedule();
 
             return;
         }
@@ -109,11 +287,14 @@ public class DataCollectorManager {
             return;
         }
 
-        dc.setCollectionInterval(dcd.getInterval());
+        info = new DataCollectorInfo(dc);
+        info.subscriptions.put(dcd, 1);
+        info.updateSchedule();
 
         // Add the created data collector to the table and to the list
-        dataCollectors.put(dcd, new DataCollectorInfo(dc));
+        dataCollectors.put(key, info);
         activeCollectors.add(dc);
+        activeInfo.add(info);
     }
 
 
@@ -123,14 +304,111 @@ public class DataCollectorManager {
      * @param dcd
      */
     public void removeCollector(DataCollectorDescription dcd) {
-        if (dataCollectors.containsKey(dcd)) {
-            DataCollectorInfo info = dataCollectors.get(dcd);
-            info.refCounter--;
+        DataCollectorDescription key = getKey(dcd);
+        DataCollectorInfo info = dataCollectors.get(key);
+
+        if (info == null)
+            return;
+
+        Integer counter = info.subscriptions.get(dcd);
+        if (counter == null)
+            return;
+
+        if (counter > 1) {
+            info.subscriptions.put(dcd, counter - 1);
+            return;
+        }
+
+        info.subscriptions.remove(dcd);
+
+        if (info.subscriptions.isEmpty()) {
+            activeCollectors.remove(info.dataCollector);
+            activeInfo.remove(info);
+            dataCollectors.remove(key);
+        } else {
+            info.updateSchedule();
+        }
+    }
+
+
+    /**
+     * Collects data of all active data collectors which are scheduled
+     * for the given tick
+     *
+     * @param model
+     * @param row
+     * @param specialCollection if true, then all data is collected
+     * @throws Exception
+     */
+    public void collect(SparkModel model, DataRow row, boolean specialCollection) throws Exception {
+        long tick = row.getTime().getTick();
+
+        for (int i = 0; i < activeInfo.size(); i++) {
+            DataCollectorInfo info = activeInfo.get(i);
+            DataCollector dc = info.dataCollector;
+
+            if (!dc.isActive())
+                continue;
+
+            if (!specialCollection && !info.isScheduled(tick))
+                continue;
 
-            if (info.refCounter <= 0) {
-                activeCollectors.remove(info.dataCollector);
-                dataCollectors.remove(dcd);
+            long start = System.nanoTime();
+            boolean collected;
+
+            try {
+                collected = dc.collect(model, row);
+            } catch (BadDataSourceException e) {
+                logger.log(Level.SEVERE, "exception", e);
+                dc.deactivate();
+                continue;
             }
+
+            if (collected)
+                info.addCost(System.nanoTime() - start, tickTime, costLimit);
+        }
+    }
+
+
+    /**
+     * Returns the average cost of collections of the given data in ns
+     *
+     * @param dcd
+     * @return 0 if there were no collections
+     */
+    public double getCost(DataCollectorDescription dcd) {
+        DataCollectorInfo info = dataCollectors.get(getKey(dcd));
+        return info != null ? info.cost : 0;
+    }
+
+
+    /**
+     * Returns the current subsampling factor of the given data
+     *
+     * @param dcd
+     * @return 1 if the data is not subsampled
+     */
+    public int getSubsamplingFactor(DataCollectorDescription dcd) {
+        DataCollectorInfo info = dataCollectors.get(getKey(dcd));
+        return info != null ? info.factor : 1;
+    }
+
+
+    /**
+     * Logs statistics of all data collectors
+     */
+    public void logStatistics() {
+        if (!logger.isLoggable(Level.FINE))
+            return;
+
+        for (DataCollectorInfo info : activeInfo) {
+            if (info.collections == 0)
+                continue;
+
+            logger.fine(String.format("%s: %d collections, average %.1f us, last %.1f us, factor %d%s",
+                    info.dataCollector.getDataName(), info.collections,
+                    info.totalTime / (info.collections * 1000.0), info.cost / 1000.0,
+                    info.factor, info.required ? " (required)" : ""));
         }
     }
 
@@ -0,0 +1,327 @@
+package org.sparkabm.runtime.internal.data;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.sparkabm.core.SimulationContext;
+import org.sparkabm.runtime.data.DataObject_State;
+import org.sparkabm.runtime.data.DataRow;
+
+/**
+ * Passes collected data rows to data processors in a separate thread.
+ * The simulation thread only collects data (collectors copy all values
+ * into data objects, so a data row is an immutable snapshot of the tick)
+ * and puts the row into a bounded queue. If the queue is full then
+ * the behavior is defined by a policy. Initial and final rows
+ * are never dropped.
+ *
+ * @author Monad
+ */
+public class DataPipeline {
+    private static final Logger logger = Logger.getLogger(DataPipeline.class.getName());
+
+    /**
+     * Defines what happens when data processors are slower than the simulation
+     */
+    public enum Policy {
+        /* The simulation waits until there is space in the queue */
+        BLOCK,
+        /* The oldest row in the queue is dropped */
+        DROP_OLDEST,
+        /* Only the latest row is kept in the queue */
+        COALESCE;
+
+
+        /**
+         * Parses a policy name ('block', 'drop-oldest', 'coalesce')
+         *
+         * @param name
+         * @return
+         */
+        public static Policy parse(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+
+    // Data processors
+    private final List<DataProcessor> processors;
+    // Maximal number of rows in the queue
+    private final int capacity;
+    private final Policy policy;
+
+    // Rows which are not processed yet
+    private final ArrayDeque<DataRow> queue;
+    // True while the dispatcher processes a row
+    private boolean busy;
+    private boolean stopped = true;
+    // True if the dispatcher thread terminated before stop() was called
+    private boolean terminated;
+    private Thread thread;
+
+    // Statistics
+    private long dispatchedRows;
+    private long droppedRows;
+    private int maxQueueDepth;
+
+
+    /**
+     * Creates a pipeline
+     *
+     * @param processors a list of processors (it can be modified concurrently)
+     * @param capacity
+     * @param policy
+     */
+    public DataPipeline(List<DataProcessor> processors, int capacity, Policy policy) {
+        if (capacity < 1)
+            capacity = 1;
+
+        this.processors = processors;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new ArrayDeque<DataRow>(capacity);
+    }
+
+
+    /**
+     * Returns the policy
+     *
+     * @return
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+
+    /**
+     * Returns the capacity of the queue
+     *
+     * @return
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /**
+     * Returns the current number of rows in the queue
+     *
+     * @return
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+
+    /**
+     * Returns the maximal number of rows in the queue
+     *
+     * @return
+     */
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+
+    /**
+     * Returns the number of dropped rows
+     *
+     * @return
+     */
+    public synchronized long getDroppedRows() {
+        return droppedRows;
+    }
+
+
+    /**
+     * Returns the number of rows passed to data processors
+     *
+     * @return
+     */
+    public synchronized long getDispatchedRows() {
+        return dispatchedRows;
+    }
+
+
+    /**
+     * Starts the dispatcher thread
+     */
+    public synchronized void start() {
+        if (!stopped)
+            return;
+
+        stopped = false;
+        terminated = false;
+        final SimulationContext context = SimulationContext.current();
+
+        thread = new Thread(() -> {
+            try {
+                if (context != null)
+                    SimulationContext.bind(context);
+                dispatch();
+            } finally {
+                dispatcherExited();
+            }
+        }, "spark-data-pipeline");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Waits until all rows are processed and stops the dispatcher thread
+     *
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        Thread t;
+        synchronized (this) {
+            if (stopped)
+                return;
+
+            stopped = true;
+            notifyAll();
+            t = thread;
+            thread = null;
+        }
+
+        t.join();
+    }
+
+
+    /**
+     * Wakes up all waiting threads when the dispatcher thread exits
+     */
+    private synchronized void dispatcherExited() {
+        // stop() clears the thread reference
+        if (thread == Thread.currentThread()) {
+            terminated = true;
+            logger.severe("Data pipeline dispatcher terminated unexpectedly");
+        }
+
+        busy = false;
+        notifyAll();
+    }
+
+
+    /**
+     * Throws an exception if the dispatcher thread terminated
+     */
+    private void checkDispatcher() {
+        if (terminated)
+            throw new IllegalStateException("Data pipeline dispatcher is terminated");
+    }
+
+
+    /**
+     * Returns true if the row can be dropped
+     */
+    private static boolean canDrop(DataRow row) {
+        DataObject_State state = row.getState();
+        return !state.isInitialState() && !state.isFinalState();
+    }
+
+
+    /**
+     * Puts a row into the queue
+     *
+     * @param row
+     * @throws InterruptedException
+     * @throws IllegalStateException if the dispatcher thread terminated
+     */
+    public synchronized void put(DataRow row) throws InterruptedException {
+        checkDispatcher();
+
+        if (canDrop(row)) {
+            if (policy == Policy.COALESCE) {
+                removeDroppable(queue.size());
+            } else if (policy == Policy.DROP_OLDEST && queue.size() >= capacity) {
+                removeDroppable(queue.size() - capacity + 1);
+            }
+        }
+
+        while (queue.size() >= capacity && !stopped && !terminated)
+            wait();
+
+        checkDispatcher();
+
+        queue.addLast(row);
+        if (queue.size() > maxQueueDepth)
+            maxQueueDepth = queue.size();
+
+        notifyAll();
+    }
+
+
+    /**
+     * Removes at most n oldest rows which can be dropped
+     */
+    private void removeDroppable(int n) {
+        Iterator<DataRow> it = queue.iterator();
+        while (n > 0 && it.hasNext()) {
+            if (canDrop(it.next())) {
+                it.remove();
+                droppedRows++;
+                n--;
+            }
+        }
+    }
+
+
+    /**
+     * Waits until all rows in the queue are processed
+     *
+     * @throws InterruptedException
+     * @throws IllegalStateException if the dispatcher thread terminated
+     */
+    public synchronized void flush() throws InterruptedException {
+        while ((!queue.isEmpty() || busy) && !stopped && !terminated)
+            wait();
+
+        checkDispatcher();
+    }
+
+
+    /**
+     * Main loop of the dispatcher thread
+     */
+    private void dispatch() {
+        while (true) {
+            DataRow row;
+
+            synchronized (this) {
+                busy = false;
+                notifyAll();
+
+                while (queue.isEmpty() && !stopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+
+                // Process all remaining rows before stopping
+                if (queue.isEmpty())
+                    return;
+
+                row = queue.pollFirst();
+                busy = true;
+                dispatchedRows++;
+                notifyAll();
+            }
+
+            for (DataProcessor processor : processors) {
+                try {
+                    processor.processDataRow(row);
+                } catch (Throwable e) {
+                    // One failed processor should not stop the others
+                    logger.log(Level.SEVERE, "exception", e);
+                }
+            }
+        }
+    }
+}
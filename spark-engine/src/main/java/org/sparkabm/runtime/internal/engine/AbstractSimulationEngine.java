@@ -1,10 +1,11 @@
 package org.sparkabm.runtime.internal.engine;
 
-import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.sparkabm.core.SparkModel;
 import org.sparkabm.runtime.data.DataCollectorDescription;
 import org.sparkabm.runtime.internal.data.DataCollectorManager;
+import org.sparkabm.runtime.internal.data.DataPipeline;
 import org.sparkabm.runtime.internal.data.DataProcessor;
 import org.sparkabm.runtime.internal.manager.CommandQueue;
 
@@ -34,7 +35,10 @@ public abstract class AbstractSimulationEngine {
     protected final DataCollectorManager dataCollectors;
 
     /* All data processors */
-    protected final ArrayList<DataProcessor> dataProcessors;
+    protected final CopyOnWriteArrayList<DataProcessor> dataProcessors;
+
+    /* Passes data to processors in a separate thread (null for synchronous processing) */
+    protected DataPipeline dataPipeline;
 
 
     /**
@@ -47,7 +51,14 @@ public abstract class AbstractSimulationEngine {
         this.commandQueue = commandQueue;
 
         dataCollectors = new DataCollectorManager();
-        dataProcessors = new ArrayList<DataProcessor>();
+        dataProcessors = new CopyOnWriteArrayList<DataProcessor>();
+
+        // Default settings of the data pipeline
+        String policy = System.getProperty("spark.data.pipeline");
+        if (policy != null) {
+            int capacity = Integer.getInteger("spark.data.queue", 8);
+            setDataPipeline(capacity, DataPipeline.Policy.parse(policy));
+        }
     }
 
 
@@ -94,6 +105,17 @@ public abstract class AbstractSimulationEngine {
     }
 
 
+    /**
+     * Sets the maximal fraction of the tick time for data collectors
+     * which are not required for an output (0 disables subsampling)
+     *
+     * @param limit
+     */
+    public void setDataCostLimit(double limit) {
+        dataCollectors.setCostLimit(limit);
+    }
+
+
     /**
      * Removes the given data collector
      *
@@ -114,6 +136,32 @@ public abstract class AbstractSimulationEngine {
     }
 
 
+    /**
+     * Enables processing of collected data in a separate thread.
+     * Should be called before a simulation is started.
+     *
+     * @param capacity the maximal number of rows waiting for processing
+     *                 (0 means that data is processed in the simulation thread)
+     * @param policy   defines what happens when the queue is full
+     */
+    public void setDataPipeline(int capacity, DataPipeline.Policy policy) {
+        if (capacity <= 0 || policy == null)
+            dataPipeline = null;
+        else
+            dataPipeline = new DataPipeline(dataProcessors, capacity, policy);
+    }
+
+
+    /**
+     * Returns the data pipeline
+     *
+     * @return null if data is processed in the simulation thread
+     */
+    public DataPipeline getDataPipeline() {
+        return dataPipeline;
+    }
+
+
     /**
      * Sets up the model
      */
@@ -1,5 +1,12 @@
 package org.sparkabm.runtime.internal.engine;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -13,8 +20,8 @@ import org.sparkabm.math.RationalNumber;
 import org.sparkabm.runtime.commands.*;
 import org.sparkabm.runtime.data.DataObject_State;
 import org.sparkabm.runtime.data.DataRow;
-import org.sparkabm.runtime.internal.data.BadDataSourceException;
 import org.sparkabm.runtime.internal.data.DataCollector;
+import org.sparkabm.runtime.internal.data.DataPipeline;
 import org.sparkabm.runtime.internal.data.DataProcessor;
 import org.sparkabm.runtime.internal.manager.CommandQueue;
 import org.sparkabm.utils.FileUtils;
@@ -35,6 +42,10 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
     /* Time when a simulation was started */
     private long startSimulationTime;
 
+    /* Periodic checkpoints */
+    private File checkpointFile;
+    private long checkpointInterval;
+
     /**
      * Default constructor
      *
@@ -54,6 +65,22 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
     @Override
     public void setup(String observerName, String mode)
             throws Exception {
+        createObserver(observerName, mode);
+
+        // Setup is processed in serial mode always
+        model.getObserver().beginSetup();
+        model.setup();
+        model.getObserver().finalizeSetup();
+
+        // Synchronize variables right after setup method
+        model.synchronizeVariables();
+    }
+
+
+    /**
+     * Creates the observer of the model
+     */
+    private void createObserver(String observerName, String mode) throws Exception {
         // Close all open files
         FileUtils.closeAllOpenFiles();
 
@@ -76,23 +103,68 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
         // First, synchronize variables and methods
         model.synchronizeVariables();
         model.synchronizeMethods();
+    }
 
-        // Setup is processed in serial mode always
-        model.getObserver().beginSetup();
-        model.setup();
-        model.getObserver().finalizeSetup();
 
-        // Synchronize variables right after setup method
+    /**
+     * Initializes the model from a checkpoint (instead of the setup method).
+     * The simulation continues from the tick of the checkpoint.
+     *
+     * @param file a checkpoint created by saveState()
+     * @param observerName
+     * @param mode
+     * @throws Exception
+     */
+    public void loadState(File file, String observerName, String mode) throws Exception {
+        // Remark: it is possible to load a state and run a simulation for
+        // an arbitrary observer, because a state does not depend on an observer
+        createObserver(observerName, mode);
+
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            model.getObserver().loadCheckpoint(model, in);
+        } finally {
+            in.close();
+        }
+
         model.synchronizeVariables();
     }
 
 
-    // TODO: think about 'stateName', or 'stateFile' argument ('stateStream')
-    public void loadState(String stateName, String observerName, int executionMode) {
-        // Remark: it is possible to load a state and run a simulation for
-        // an arbitrary observer, because a state does not depend on an observer
-        // Relevant variable from the observer class are: simulationTime,
-        // actionQueue, agentTypes, etc.
+    /**
+     * Saves a checkpoint of the model. The file is replaced
+     * only when the checkpoint is written completely.
+     *
+     * @param file
+     * @throws Exception
+     */
+    public void saveState(File file) throws Exception {
+        File tmp = new File(file.getPath() + ".tmp");
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16);
+        try {
+            model.getObserver().saveCheckpoint(model, out);
+        } finally {
+            out.close();
+        }
+
+        if (file.exists() && !file.delete())
+            throw new Exception("Cannot replace " + file);
+
+        if (!tmp.renameTo(file))
+            throw new Exception("Cannot rename " + tmp + " to " + file);
+    }
+
+
+    /**
+     * Saves checkpoints periodically during the simulation
+     *
+     * @param file     the checkpoint file (it is replaced by each new checkpoint)
+     * @param interval the number of ticks between checkpoints (0 means no checkpoints)
+     */
+    public void setCheckpoint(File file, long interval) {
+        this.checkpointFile = file;
+        this.checkpointInterval = interval;
     }
 
 
@@ -134,22 +206,16 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
 
         // Create a data row
         DataRow row = new DataRow(time, flags, startSimulationTime);
-        ArrayList<DataCollector> collectors = dataCollectors.getActiveCollectors();
 
         // Collect all data
-        for (DataCollector collector : collectors) {
-            if (!collector.isActive())
-                continue;
+        dataCollectors.collect(model, row, specialFlag);
 
-            try {
-                collector.collect(model, row, time, specialFlag);
-            } catch (BadDataSourceException e) {
-                logger.log(Level.SEVERE, "exception", e);
-                collector.deactivate();
-            }
+        // Process collected data
+        if (dataPipeline != null) {
+            dataPipeline.put(row);
+            return;
         }
 
-        // Process collected data
         for (DataProcessor processor : dataProcessors) {
             try {
                 processor.processDataRow(row);
@@ -264,6 +330,10 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
         long tick = model.getObserver().getSimulationTick();
         long length = this.simulationTime;
         RationalNumber tickTime = model.getTickTime();
+        DataPipeline pipeline = dataPipeline;
+
+        if (pipeline != null)
+            pipeline.start();
 
         try {
             // Process data before simulation steps
@@ -282,9 +352,12 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
                 long tickStartTime = System.currentTimeMillis();
 
                 // Make one simulation step
+                long stepStart = System.nanoTime();
                 if (mainStep(tickTime, tick))
                     break;
 
+                dataCollectors.updateTickTime(System.nanoTime() - stepStart);
+
                 // Process data
                 processData(false, false, 0);
 
@@ -319,6 +392,14 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
                 // Advance simulation time
                 model.getObserver().advanceSimulationTick();
                 tick = model.getObserver().getSimulationTick();
+
+                if (checkpointInterval > 0 && tick % checkpointInterval == 0) {
+                    try {
+                        saveState(checkpointFile);
+                    } catch (Exception e) {
+                        logger.log(Level.SEVERE, "Cannot save a checkpoint", e);
+                    }
+                }
             }
 
             // Process all data one more time before the simulation stops
@@ -335,6 +416,16 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
                 dc.reset();
             }
 
+            dataCollectors.logStatistics();
+
+            // Wait until all data is processed
+            if (pipeline != null) {
+                pipeline.stop();
+                logger.info("Data pipeline: " + pipeline.getDispatchedRows() + " rows processed, "
+                        + pipeline.getDroppedRows() + " rows dropped, max queue depth "
+                        + pipeline.getMaxQueueDepth());
+            }
+
             for (DataProcessor dp : dataProcessors) {
                 dp.finalizeProcessing();
             }
@@ -342,6 +433,9 @@ public class StandardSimulationEngine extends AbstractSimulationEngine {
         } catch (Exception e) {
             throw e;
         } finally {
+            if (pipeline != null)
+                pipeline.stop();
+
             FileUtils.closeAllOpenFiles();
             stopFlag = false;
         }
@@ -0,0 +1,239 @@
+package org.sparkabm.runtime.internal.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A growable direct byte buffer with methods for writing and reading
+ * values of the binary protocol. Arrays are copied with bulk operations.
+ *
+ * @author Monad
+ */
+public final class WireBuffer {
+    private ByteBuffer buffer;
+
+
+    /**
+     * Creates a buffer with the given initial capacity
+     *
+     * @param capacity
+     */
+    public WireBuffer(int capacity) {
+        buffer = ByteBuffer.allocateDirect(Math.max(capacity, 64)).order(ByteOrder.BIG_ENDIAN);
+    }
+
+
+    /**
+     * Returns the underlying byte buffer. The buffer is replaced
+     * when the capacity is not enough.
+     *
+     * @return
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+
+    /**
+     * Makes sure that n bytes can be written at the current position
+     *
+     * @param n
+     */
+    public void ensureRemaining(int n) {
+        if (buffer.remaining() >= n)
+            return;
+
+        int capacity = buffer.capacity();
+        int required = buffer.position() + n;
+        while (capacity < required)
+            capacity *= 2;
+
+        ByteBuffer newBuffer = ByteBuffer.allocateDirect(capacity).order(buffer.order());
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+
+
+    /**
+     * Prepares the buffer for writing
+     */
+    public void clear() {
+        buffer.clear();
+    }
+
+
+    /* Writing */
+
+    public void putByte(int v) {
+        ensureRemaining(1);
+        buffer.put((byte) v);
+    }
+
+    public void putBoolean(boolean v) {
+        putByte(v ? 1 : 0);
+    }
+
+    public void putInt(int v) {
+        ensureRemaining(4);
+        buffer.putInt(v);
+    }
+
+    public void putLong(long v) {
+        ensureRemaining(8);
+        buffer.putLong(v);
+    }
+
+    public void putFloat(float v) {
+        ensureRemaining(4);
+        buffer.putFloat(v);
+    }
+
+    public void putDouble(double v) {
+        ensureRemaining(8);
+        buffer.putDouble(v);
+    }
+
+
+    /**
+     * Writes a string (null strings are allowed)
+     *
+     * @param s
+     */
+    public void putString(String s) {
+        if (s == null) {
+            putInt(-1);
+            return;
+        }
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        putBytes(bytes, 0, bytes.length);
+    }
+
+
+    public void putBytes(byte[] src, int offset, int n) {
+        ensureRemaining(n);
+        buffer.put(src, offset, n);
+    }
+
+    public void putInts(int[] src, int offset, int n) {
+        ensureRemaining(n * 4);
+        buffer.asIntBuffer().put(src, offset, n);
+        buffer.position(buffer.position() + n * 4);
+    }
+
+    public void putFloats(float[] src, int offset, int n) {
+        ensureRemaining(n * 4);
+        buffer.asFloatBuffer().put(src, offset, n);
+        buffer.position(buffer.position() + n * 4);
+    }
+
+    public void putDoubles(double[] src, int offset, int n) {
+        ensureRemaining(n * 8);
+        buffer.asDoubleBuffer().put(src, offset, n);
+        buffer.position(buffer.position() + n * 8);
+    }
+
+
+    /**
+     * Writes a serialized object. It is used for objects
+     * which have no binary codecs.
+     *
+     * @param obj
+     * @throws Exception
+     */
+    public void putSerialized(Object obj) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bytes);
+        oos.writeObject(obj);
+        oos.close();
+
+        byte[] data = bytes.toByteArray();
+        putInt(data.length);
+        putBytes(data, 0, data.length);
+    }
+
+
+    /* Reading */
+
+    public int getByte() {
+        return buffer.get();
+    }
+
+    public boolean getBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public int getInt() {
+        return buffer.getInt();
+    }
+
+    public long getLong() {
+        return buffer.getLong();
+    }
+
+    public float getFloat() {
+        return buffer.getFloat();
+    }
+
+    public double getDouble() {
+        return buffer.getDouble();
+    }
+
+
+    /**
+     * Reads a string
+     *
+     * @return
+     */
+    public String getString() {
+        int n = buffer.getInt();
+        if (n < 0)
+            return null;
+
+        byte[] bytes = new byte[n];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    public void getInts(int[] dest, int offset, int n) {
+        buffer.asIntBuffer().get(dest, offset, n);
+        buffer.position(buffer.position() + n * 4);
+    }
+
+    public void getFloats(float[] dest, int offset, int n) {
+        buffer.asFloatBuffer().get(dest, offset, n);
+        buffer.position(buffer.position() + n * 4);
+    }
+
+    public void getDoubles(double[] dest, int offset, int n) {
+        buffer.asDoubleBuffer().get(dest, offset, n);
+        buffer.position(buffer.position() + n * 8);
+    }
+
+
+    /**
+     * Reads a serialized object
+     *
+     * @return
+     * @throws Exception
+     */
+    public Object getSerialized() throws Exception {
+        byte[] data = new byte[buffer.getInt()];
+        buffer.get(data);
+
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            return ois.readObject();
+        } finally {
+            ois.close();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.sparkabm.runtime.internal.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.sparkabm.runtime.commands.CommandCodec;
+import org.sparkabm.runtime.commands.ModelManagerCommand;
+import org.sparkabm.runtime.data.DataRow;
+import org.sparkabm.runtime.data.DataRowCodec;
+
+/**
+ * A connection between a SPARK server and a client which exchanges
+ * commands and data rows in the binary format. Each side starts with
+ * a header (magic number and protocol version), then messages follow.
+ * A message is a length-prefixed frame: the length of the rest
+ * of the frame (int), the message type (byte) and the payload.
+ * All values are big-endian.
+ *
+ * @author Monad
+ */
+public class WireConnection {
+    public static final int MAGIC = 0x5350524B;
+    public static final int VERSION = 1;
+
+    // Message types
+    private static final int COMMAND = 1;
+    private static final int DATA_ROW = 2;
+
+    // Maximal size of a frame
+    private static final int MAX_FRAME_SIZE = 1 << 30;
+
+    private final SocketChannel channel;
+
+    private final WireBuffer out = new WireBuffer(1 << 16);
+    private final WireBuffer in = new WireBuffer(1 << 16);
+    private boolean headerReceived;
+
+    // Statistics (each value is modified by one thread)
+    private volatile long bytesSent, bytesReceived;
+    private volatile long messagesSent, messagesReceived;
+
+
+    /**
+     * Creates a connection for the given channel and sends the header
+     *
+     * @param channel
+     * @throws IOException
+     */
+    public WireConnection(SocketChannel channel) throws IOException {
+        this.channel = channel;
+
+        channel.configureBlocking(true);
+        channel.socket().setTcpNoDelay(true);
+
+        synchronized (out) {
+            out.clear();
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            flush();
+        }
+    }
+
+
+    /**
+     * Connects to the given server
+     *
+     * @param host
+     * @param port
+     * @return
+     * @throws IOException
+     */
+    public static WireConnection connect(String host, int port) throws IOException {
+        return new WireConnection(SocketChannel.open(new InetSocketAddress(host, port)));
+    }
+
+
+    /**
+     * Sends a command
+     *
+     * @param cmd
+     * @throws Exception
+     */
+    public void send(ModelManagerCommand cmd) throws Exception {
+        synchronized (out) {
+            beginFrame(COMMAND);
+            CommandCodec.write(cmd, out);
+            endFrame();
+        }
+    }
+
+
+    /**
+     * Sends a data row
+     *
+     * @param row
+     * @throws Exception
+     */
+    public void send(DataRow row) throws Exception {
+        synchronized (out) {
+            beginFrame(DATA_ROW);
+            DataRowCodec.write(row, out);
+            endFrame();
+        }
+    }
+
+
+    private void beginFrame(int type) {
+        out.clear();
+        // The length is written by endFrame()
+        out.putInt(0);
+        out.putByte(type);
+    }
+
+
+    private void endFrame() throws IOException {
+        ByteBuffer buf = out.buffer();
+        buf.putInt(0, buf.position() - 4);
+        flush();
+        messagesSent++;
+    }
+
+
+    /**
+     * Writes the content of the output buffer into the channel
+     */
+    private void flush() throws IOException {
+        ByteBuffer buf = out.buffer();
+        buf.flip();
+        bytesSent += buf.remaining();
+
+        while (buf.hasRemaining())
+            channel.write(buf);
+    }
+
+
+    /**
+     * Reads the next message. Blocks until a message is available.
+     *
+     * @return a command, a data row, or null if the connection is closed
+     * @throws Exception
+     */
+    public Object receive() throws Exception {
+        synchronized (in) {
+            if (!headerReceived) {
+                if (!read(8))
+                    return null;
+
+                int magic = in.getInt();
+                int version = in.getInt();
+                if (magic != MAGIC || version != VERSION)
+                    throw new IOException("Unsupported protocol: " + Integer.toHexString(magic) + ", version " + version);
+
+                headerReceived = true;
+            }
+
+            if (!read(4))
+                return null;
+
+            int length = in.getInt();
+            if (length < 1 || length > MAX_FRAME_SIZE)
+                throw new IOException("Bad frame length: " + length);
+
+            if (!read(length))
+                throw new EOFException("Incomplete frame");
+
+            messagesReceived++;
+            int type = in.getByte();
+
+            switch (type) {
+                case COMMAND:
+                    return CommandCodec.read(in);
+                case DATA_ROW:
+                    return DataRowCodec.read(in);
+                default:
+                    throw new IOException("Unknown message type: " + type);
+            }
+        }
+    }
+
+
+    /**
+     * Reads exactly n bytes into the input buffer and prepares
+     * the buffer for reading
+     *
+     * @return false if the end of the stream is reached before any byte is read
+     */
+    private boolean read(int n) throws IOException {
+        in.clear();
+        in.ensureRemaining(n);
+
+        ByteBuffer buf = in.buffer();
+        buf.limit(n);
+
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                if (buf.position() == 0)
+                    return false;
+                throw new EOFException();
+            }
+        }
+
+        bytesReceived += n;
+        buf.flip();
+        return true;
+    }
+
+
+    /**
+     * Returns the number of sent bytes
+     *
+     * @return
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+
+    /**
+     * Returns the number of sent messages
+     *
+     * @return
+     */
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+
+    /**
+     * Returns the number of received bytes
+     *
+     * @return
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+
+    /**
+     * Returns the number of received messages
+     *
+     * @return
+     */
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+
+    /**
+     * Closes the connection
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,230 @@
+package org.sparkabm.runtime.internal.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.sparkabm.math.RationalNumber;
+import org.sparkabm.math.SimulationTime;
+import org.sparkabm.math.Vector4d;
+import org.sparkabm.runtime.data.DataObject_Double;
+import org.sparkabm.runtime.data.DataObject_Grid;
+import org.sparkabm.runtime.data.DataObject_Integer;
+import org.sparkabm.runtime.data.DataObject_SpaceAgents;
+import org.sparkabm.runtime.data.DataObject_State;
+import org.sparkabm.runtime.data.DataRow;
+
+/**
+ * Compares the binary protocol with Java serialization on a loopback
+ * connection. Synthetic rows contain a grid, space agents and several
+ * variables. Prints throughput and bytes per row for both formats.
+ * <p>
+ * Usage: WireBenchmark [rows] [agents] [grid size]
+ *
+ * @author Monad
+ */
+public class WireBenchmark {
+    private final int rowsNumber;
+    private final DataRow[] rows;
+
+
+    @SuppressWarnings("serial")
+    private static class Time extends SimulationTime {
+        Time(long tick) {
+            super(tick, new RationalNumber(tick));
+        }
+    }
+
+
+    private WireBenchmark(int rowsNumber, int agents, int gridSize) {
+        this.rowsNumber = rowsNumber;
+
+        // A few distinct rows are sent repeatedly
+        Random rand = new Random(0);
+        rows = new DataRow[4];
+
+        for (int r = 0; r < rows.length; r++) {
+            int flags = r == 0 ? DataObject_State.INITIAL_STATE_FLAG : 0;
+            DataRow row = new DataRow(new Time(r), flags, System.currentTimeMillis());
+
+            double[][] grid = new double[gridSize][gridSize];
+            for (int i = 0; i < gridSize; i++)
+                for (int j = 0; j < gridSize; j++)
+                    grid[i][j] = rand.nextDouble();
+
+            row.addDataObject("$data-layer:grid", new DataObject_Grid(0, grid, 1, 1));
+
+            DataObject_SpaceAgents sa = new DataObject_SpaceAgents(agents);
+            Vector4d color = new Vector4d(1, 0, 0, 1);
+            for (int i = 0; i < agents; i++) {
+                sa.addAgent(i, null, rand.nextDouble() * 100, rand.nextDouble() * 100, 0,
+                        0.5, color, 0, null, 0, 0);
+            }
+
+            row.addDataObject("$space-agents:Agent", sa);
+
+            for (int i = 0; i < 10; i++) {
+                row.addDataObject("$variable:d" + i, new DataObject_Double(rand.nextDouble()));
+                row.addDataObject("$variable:i" + i, new DataObject_Integer(rand.nextInt()));
+            }
+
+            rows[r] = row;
+        }
+    }
+
+
+    /**
+     * Sends all rows with the binary protocol, returns {ms, bytes}
+     */
+    private long[] runBinary(ExecutorService exec) throws Exception {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+        Future<Long> received = exec.submit(new Callable<Long>() {
+            public Long call() throws Exception {
+                WireConnection conn = new WireConnection(server.accept());
+                long n = 0;
+                while (conn.receive() != null)
+                    n++;
+                conn.close();
+                return n;
+            }
+        });
+
+        SocketChannel channel = SocketChannel.open(server.getLocalAddress());
+        WireConnection conn = new WireConnection(channel);
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rowsNumber; i++)
+            conn.send(rows[i % rows.length]);
+        channel.shutdownOutput();
+
+        check(received.get());
+        long t = (System.nanoTime() - t0) / 1000000;
+
+        conn.close();
+        server.close();
+        return new long[]{t, conn.getBytesSent()};
+    }
+
+
+    /**
+     * Sends all rows with Java serialization, returns {ms, bytes}
+     */
+    private long[] runSerialization(ExecutorService exec) throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        Future<Long> received = exec.submit(new Callable<Long>() {
+            public Long call() throws Exception {
+                Socket socket = server.accept();
+                ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+                long n = 0;
+                try {
+                    while (ois.readObject() != null)
+                        n++;
+                } finally {
+                    socket.close();
+                }
+                return n;
+            }
+        });
+
+        Socket socket = new Socket(server.getInetAddress(), server.getLocalPort());
+        CountingStream counter = new CountingStream(socket.getOutputStream());
+        ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(counter));
+
+        long t0 = System.nanoTime();
+        for (int i = 0; i < rowsNumber; i++) {
+            oos.reset();
+            oos.writeObject(rows[i % rows.length]);
+            oos.flush();
+        }
+        oos.writeObject(null);
+        oos.close();
+
+        check(received.get());
+        long t = (System.nanoTime() - t0) / 1000000;
+
+        server.close();
+        return new long[]{t, counter.bytes};
+    }
+
+
+    private void check(long received) throws Exception {
+        if (received != rowsNumber)
+            throw new Exception("Received " + received + " rows instead of " + rowsNumber);
+    }
+
+
+    /**
+     * Counts written bytes
+     */
+    private static class CountingStream extends FilterOutputStream {
+        long bytes;
+
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+        }
+    }
+
+
+    private void print(String name, long[] result) {
+        double sec = Math.max(result[0], 1) / 1000.0;
+        System.out.println(String.format("%-14s %8.1f rows/s %12d bytes/row %8.1f MB/s",
+                name, rowsNumber / sec, result[1] / rowsNumber, result[1] / sec / 1e6));
+    }
+
+
+    /**
+     * Main method
+     *
+     * @param args
+     */
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int agents = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int gridSize = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        WireBenchmark benchmark = new WireBenchmark(rows, agents, gridSize);
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+
+        try {
+            // Warm up
+            benchmark.runBinary(exec);
+            benchmark.runSerialization(exec);
+
+            System.out.println(rows + " rows, " + agents + " agents, grid " + gridSize + "x" + gridSize);
+            benchmark.print("binary", benchmark.runBinary(exec));
+            benchmark.print("serialization", benchmark.runSerialization(exec));
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+}
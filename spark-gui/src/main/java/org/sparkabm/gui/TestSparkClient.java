@@ -1,20 +1,17 @@
 package org.sparkabm.gui;
 
 import java.io.File;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
 import java.util.logging.Logger;
 
 import javax.swing.JOptionPane;
 
 //import org.apache.log4j.BasicConfigurator;
 //import org.apache.log4j.PropertyConfigurator;
-import org.sparkabm.gui.data.DataReceiver;
+import org.sparkabm.gui.data.RemoteDataReceiver;
 import org.sparkabm.runtime.commands.FileTransfer;
 import org.sparkabm.runtime.commands.ModelManagerCommand;
-import org.sparkabm.runtime.data.DataRow;
 import org.sparkabm.runtime.internal.manager.IModelManager;
+import org.sparkabm.runtime.internal.net.WireConnection;
 import org.w3c.dom.Node;
 
 /**
@@ -47,9 +44,7 @@ public class TestSparkClient {
 //		}
 
 
-        Socket socket = null;
-        ObjectOutputStream oos = null;
-        ObjectInputStream ois = null;
+        WireConnection connection = null;
 
         String address = JOptionPane.showInputDialog("Enter SPARK server address", "localhost:12345");
         if (address == null)
@@ -62,18 +57,11 @@ public class TestSparkClient {
 
         try {
             logger.info("Connecting to server " + host + ":" + p);
-            socket = new Socket(host, p);
-
-            logger.info("Obtaining output stream...");
-            oos = new ObjectOutputStream(socket.getOutputStream());
-
-//			logger.info("Obtaining input stream...");
-//			ois = new ObjectInputStream(socket.getInputStream());
-
+            connection = WireConnection.connect(host, p);
 
             logger.info("Creating communication objects...");
-            ClientModelManager manager = new ClientModelManager(oos);
-            ClientDataReceiver receiver = new ClientDataReceiver(socket);
+            ClientModelManager manager = new ClientModelManager(connection);
+            RemoteDataReceiver receiver = new RemoteDataReceiver(connection);
 
             logger.info("Starting the main application");
             Coordinator.init(manager, receiver);
@@ -82,68 +70,25 @@ public class TestSparkClient {
             e.printStackTrace();
             System.exit(-1);
         } finally {
-            if (oos != null)
-                oos.close();
-
-            if (ois != null)
-                ois.close();
-
-            if (socket != null)
-                socket.close();
+            if (connection != null)
+                connection.close();
         }
 
         System.exit(0);
     }
 
 
-    /**
-     * A client implementation of a data receiver
-     *
-     * @author Monad
-     */
-    private static class ClientDataReceiver extends DataReceiver implements Runnable {
-        private ObjectInputStream ois;
-        private Socket socket;
-
-
-        public ClientDataReceiver(Socket socket) {
-            this.socket = socket;
-        }
-
-
-        public void run() {
-            Object data;
-
-            try {
-                logger.info("Obtaining input stream...");
-                this.ois = new ObjectInputStream(socket.getInputStream());
-
-                while ((data = ois.readObject()) != null) {
-                    if (data instanceof DataRow) {
-                        receive((DataRow) data);
-                    } else {
-                        logger.severe("Bad data received: " + data);
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
-    }
-
-
     /**
      * A client implementation of a model manager
      *
      * @author Monad
      */
     private static class ClientModelManager implements IModelManager {
-        private ObjectOutputStream oos;
+        private final WireConnection connection;
 
 
-        public ClientModelManager(ObjectOutputStream oos) {
-            this.oos = oos;
+        public ClientModelManager(WireConnection connection) {
+            this.connection = connection;
         }
 
 
@@ -161,8 +106,7 @@ public class TestSparkClient {
 
         public synchronized void sendCommand(ModelManagerCommand cmd) {
             try {
-                oos.reset();
-                oos.writeObject(cmd);
+                connection.send(cmd);
             } catch (Exception e) {
                 e.printStackTrace();
             }
@@ -164,6 +164,17 @@ public class BatchRunController {
     }
 
 
+    /**
+     * Sets the format of saved data layers
+     *
+     * @param binary       if true then binary files are created (see GridSeriesWriter)
+     * @param doubleValues if false then binary files contain floats
+     */
+    public void setDataLayerFormat(boolean binary, boolean doubleValues) {
+        dataLayerSaver.setBinaryFormat(binary, doubleValues);
+    }
+
+
     /**
      * Sets a log file and initializes an output folder
      *
@@ -60,6 +60,7 @@ public class BatchRunManager implements IDataConsumer {
         this.receiver = Coordinator.getInstance().getDataReceiver();
         this.controller = controller;
         this.dataFilter = new DataFilter(this, "state");
+        this.dataFilter.setRequiredFlag(true);
 
         if (varName != null) {
             dataSet = new DataSet();
@@ -100,9 +101,9 @@ public class BatchRunManager implements IDataConsumer {
             outputFolder = c.getCurrentDir();
 
         // TODO: it does not work in a natural way:
-        // if an output directory is removed in the stop function
-        // then not all snapshots will be saved in that folder
-        // because snapshots are saved on AWTEvent thread
+        // the output directory is not removed in the stop function.
+        // (Snapshots are saved asynchronously, but the output directory
+        // is taken when a snapshot is requested)
         c.popOutputDir();
         c.pushOutputDir(outputFolder);
 
@@ -2,7 +2,7 @@ package org.sparkabm.gui.batchrun;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 
 /**
@@ -12,10 +12,10 @@ import java.util.ArrayList;
  */
 public class DataAnalyzer {
     /* Experimental data */
-    private final ArrayList<Double> experimentalData;
+    private double[] experimentalData;
 
     /* Time points for the experimental data */
-    private final ArrayList<Long> experimentalTimePoints;
+    private long[] experimentalTimePoints;
 
     /* Method name */
     private String method;
@@ -28,9 +28,6 @@ public class DataAnalyzer {
      * @param methodName
      */
     public DataAnalyzer(String fname, String methodName) throws Exception {
-        experimentalData = new ArrayList<Double>();
-        experimentalTimePoints = new ArrayList<Long>();
-
         readFile(fname);
 
         this.method = methodName;
@@ -46,10 +43,17 @@ public class DataAnalyzer {
         FileReader fr = new FileReader(fname);
         BufferedReader br = new BufferedReader(fr);
 
+        experimentalData = new double[0];
+        experimentalTimePoints = new long[0];
+
         String line = br.readLine();
         if (line == null)
             return;
 
+        double[] data = new double[64];
+        long[] timePoints = new long[64];
+        int n = 0;
+
         // TODO: analyze first line
 
         for (int i = 2; ; i++) {
@@ -64,11 +68,20 @@ public class DataAnalyzer {
             long tick = Long.parseLong(vals[0]);
             double val = Double.parseDouble(vals[1]);
 
-            experimentalTimePoints.add(tick);
-            experimentalData.add(val);
+            if (n == data.length) {
+                data = Arrays.copyOf(data, n * 2);
+                timePoints = Arrays.copyOf(timePoints, n * 2);
+            }
+
+            timePoints[n] = tick;
+            data[n] = val;
+            n++;
         }
 
         br.close();
+
+        experimentalData = Arrays.copyOf(data, n);
+        experimentalTimePoints = Arrays.copyOf(timePoints, n);
     }
 
 
@@ -80,18 +93,18 @@ public class DataAnalyzer {
     public double analyze(DataSet dataSet, String variableName) {
         double error = 0;
 
-        ArrayList<Double> data = dataSet.getDataAtGivenTicks(variableName, experimentalTimePoints);
+        double[] data = dataSet.getDataAtGivenTicks(variableName, experimentalTimePoints);
         if (data == null)
             return 1e+10;
 
-        int n = Math.min(data.size(), experimentalData.size());
+        int n = Math.min(data.length, experimentalData.length);
         if (n <= 1)
             return 1e+10;
 
         if (method.equals("Least Squares")) {
             for (int i = 0; i < n; i++) {
-                double val1 = data.get(i).doubleValue();
-                double val2 = experimentalData.get(i);
+                double val1 = data[i];
+                double val2 = experimentalData[i];
 
                 error += (val1 - val2) * (val1 - val2);
             }
@@ -103,8 +116,8 @@ public class DataAnalyzer {
             double A = 0;
 
             for (int i = 0; i < n; i++) {
-                double val1 = data.get(i).doubleValue();
-                double val2 = experimentalData.get(i);
+                double val1 = data[i];
+                double val2 = experimentalData[i];
 
                 A += val1 * val2;
 
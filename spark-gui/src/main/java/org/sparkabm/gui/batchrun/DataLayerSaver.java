@@ -11,6 +11,7 @@ import org.sparkabm.gui.data.IDataConsumer;
 import org.sparkabm.runtime.data.DataCollectorDescription;
 import org.sparkabm.runtime.data.DataObject_Grid;
 import org.sparkabm.runtime.data.DataRow;
+import org.sparkabm.runtime.data.GridSeriesWriter;
 import org.sparkabm.gui.Coordinator;
 
 /**
@@ -33,6 +34,10 @@ class DataLayerSaver implements IDataConsumer {
     // Prefix of output file names
     private String fileNamePrefix;
 
+    // If true, then data is saved in binary files
+    private boolean binaryFlag;
+    private boolean doubleValues;
+
     /* Data filter */
     private final DataFilter dataFilter;
 
@@ -41,14 +46,18 @@ class DataLayerSaver implements IDataConsumer {
     private final ArrayList<PrintWriter> fileWriters;
     private PrintWriter writer;
 
+    private final ArrayList<GridSeriesWriter> binaryWriters;
+
     /**
      * Default internal constructor
      */
     DataLayerSaver() {
         dataLayers = new ArrayList<String>();
         dataFilter = new DataFilter(this, "grid");
+        dataFilter.setRequiredFlag(true);
         lastTick = -1;
         fileWriters = new ArrayList<PrintWriter>();
+        binaryWriters = new ArrayList<GridSeriesWriter>();
         fileNamePrefix = "grid";
         savePrecision = 5;
     }
@@ -80,6 +89,17 @@ class DataLayerSaver implements IDataConsumer {
         this.savePrecision = precision;
     }
 
+    /**
+     * Sets the format of files
+     *
+     * @param binary       if true then data is saved in binary files (see GridSeriesWriter)
+     * @param doubleValues if false then binary files contain floats
+     */
+    public void setBinaryFormat(boolean binary, boolean doubleValues) {
+        this.binaryFlag = binary;
+        this.doubleValues = doubleValues;
+    }
+
     /**
      * Sets the flag for saving all data in one file
      */
@@ -124,9 +144,56 @@ class DataLayerSaver implements IDataConsumer {
         }
 
         fileWriters.clear();
+
+        for (GridSeriesWriter w : binaryWriters) {
+            try {
+                w.close();
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "exception", e);
+            }
+        }
+
+        binaryWriters.clear();
         lastTick = -1;
     }
 
+
+    /**
+     * Saves the data in binary files
+     */
+    private void saveBinary(long tick, DataRow row) {
+        Coordinator c = Coordinator.getInstance();
+
+        try {
+            // Create new files (if necessary)
+            if (binaryWriters.size() == 0) {
+                if (oneFileFlag) {
+                    File file = new File(c.getOutputDir(), fileNamePrefix + "grids.bin");
+                    String[] names = dataLayers.toArray(new String[dataLayers.size()]);
+                    binaryWriters.add(new GridSeriesWriter(file, names, doubleValues));
+                } else {
+                    for (String name : dataLayers) {
+                        File file = new File(c.getOutputDir(), fileNamePrefix + name + "-grid.bin");
+                        binaryWriters.add(new GridSeriesWriter(file, new String[]{name}, doubleValues));
+                    }
+                }
+            }
+
+            for (int i = 0; i < dataLayers.size(); i++) {
+                DataObject_Grid data = row.getGrid(dataLayers.get(i));
+                if (data == null)
+                    continue;
+
+                if (oneFileFlag)
+                    binaryWriters.get(0).write(tick, i, data);
+                else
+                    binaryWriters.get(i).write(tick, 0, data);
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "exception", e);
+        }
+    }
+
     /**
      * Saves the data
      */
@@ -214,7 +281,10 @@ class DataLayerSaver implements IDataConsumer {
         if (tick > lastTick) {
             lastTick = tick;
             if (dataLayers.size() > 0) {
-                save(tick, data);
+                if (binaryFlag)
+                    saveBinary(tick, data);
+                else
+                    save(tick, data);
             }
         }
     }
@@ -1,9 +1,11 @@
 package org.sparkabm.gui.batchrun;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.sparkabm.gui.data.DataFilter;
 import org.sparkabm.gui.data.IDataConsumer;
+import org.sparkabm.gui.data.TimeSeriesStore;
 import org.sparkabm.runtime.data.DataCollectorDescription;
 import org.sparkabm.runtime.data.DataRow;
 
@@ -17,44 +19,11 @@ import org.sparkabm.runtime.data.DataRow;
  * @author Monad
  */
 class DataSet implements IDataConsumer {
-    /**
-     * A data item class
-     */
-    private static class DataItem {
-        public ArrayList<Double> data = new ArrayList<Double>(5000);
-        public String variableName;
-
-        public DataItem(String variableName) {
-            this.variableName = variableName;
-        }
-
+    /* Names of all variables */
+    private final ArrayList<String> variables;
 
-        public void clear() {
-            data.clear();
-        }
-
-
-        public void add(DataRow row) {
-            Double number = row.getVarDoubleValue(variableName);
-            data.add(number);
-        }
-
-
-        public void replaceLast(DataRow row) {
-            Double number = row.getVarDoubleValue(variableName);
-            int n = data.size();
-            data.remove(n - 1);
-            data.add(number);
-        }
-    }
-
-
-    /* Data for all variables */
-    private final ArrayList<DataItem> items;
-
-    /* Ticks */
-    private final ArrayList<Long> ticks = new ArrayList<Long>(5000);
-    private long lastTick;
+    /* Data for all variables (created when the first row is received) */
+    private TimeSeriesStore store;
 
     /* Data filter */
     private final DataFilter dataFilter;
@@ -63,9 +32,9 @@ class DataSet implements IDataConsumer {
      * Default internal constructor
      */
     DataSet() {
-        items = new ArrayList<DataItem>();
+        variables = new ArrayList<String>();
         dataFilter = new DataFilter(this, "variable");
-        lastTick = -1;
+        dataFilter.setRequiredFlag(true);
     }
 
 
@@ -85,7 +54,8 @@ class DataSet implements IDataConsumer {
      * @param name
      */
     public synchronized void addVariable(String varName) {
-        items.add(new DataItem(varName));
+        variables.add(varName);
+        store = null;
         dataFilter.addData(DataCollectorDescription.VARIABLE, varName);
     }
 
@@ -94,12 +64,8 @@ class DataSet implements IDataConsumer {
      * Clears the data set
      */
     public synchronized void clear() {
-        for (DataItem item : items) {
-            item.clear();
-        }
-
-        ticks.clear();
-        lastTick = -1;
+        if (store != null)
+            store.clear();
     }
 
 
@@ -110,19 +76,17 @@ class DataSet implements IDataConsumer {
         if (data.getState().isInitialState())
             clear();
 
+        if (store == null)
+            store = new TimeSeriesStore(variables.size());
+
         long tick = data.getState().getTick();
 
-        if (tick == lastTick) {
-            for (DataItem item : items) {
-                item.replaceLast(data);
-            }
-        } else {
-            lastTick = tick;
-            ticks.add(tick);
-
-            for (DataItem item : items) {
-                item.add(data);
-            }
+        // Values of the same tick replace the last row
+        if (tick != store.getLastTick())
+            store.addRow(tick);
+
+        for (int i = 0; i < variables.size(); i++) {
+            store.setLast(i, data.getVarDoubleValue(variables.get(i)));
         }
     }
 
@@ -132,39 +96,35 @@ class DataSet implements IDataConsumer {
      * tick points
      *
      * @param varName
-     * @param ticks   could be null, in which case all data is returned
+     * @param ticks   could be null, in which case all data is returned.
+     *                Values are returned until the first tick which is not
+     *                in the data set
      * @return null if no such variable in the data set
      */
-    public ArrayList<Double> getDataAtGivenTicks(String varName, ArrayList<Long> ticks) {
-        for (DataItem var : items) {
-            if (var.variableName.equals(varName)) {
-                if (ticks == null)
-                    return var.data;
-
-                ArrayList<Double> data = new ArrayList<Double>(ticks.size());
+    public synchronized double[] getDataAtGivenTicks(String varName, long[] ticks) {
+        int index = variables.indexOf(varName);
+        if (index < 0)
+            return null;
 
-                int currentTickIndex = 0;
-                long currentTick = ticks.get(0);
+        if (store == null)
+            return new double[0];
 
-                for (int i = 0; i < var.data.size(); i++) {
-                    long tick = this.ticks.get(i);
+        TimeSeriesStore.Column column = store.getColumn(index);
+        if (ticks == null)
+            return column.toArray();
 
-                    if (tick == currentTick) {
-                        data.add(var.data.get(i));
+        double[] data = new double[ticks.length];
+        int n = 0;
 
-                        currentTickIndex++;
-                        if (currentTickIndex < ticks.size())
-                            currentTick = ticks.get(currentTickIndex);
-                        else
-                            break;
-                    }
-                }
+        for (; n < ticks.length; n++) {
+            int i = column.indexOf(ticks[n]);
+            if (i < 0)
+                break;
 
-                return data;
-            }
+            data[n] = column.get(i);
         }
 
-        return null;
+        return n == data.length ? data : Arrays.copyOf(data, n);
     }
 
 
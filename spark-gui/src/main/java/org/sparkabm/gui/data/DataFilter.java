@@ -36,6 +36,9 @@ public class DataFilter implements IDataConsumer {
     /* If true, then collectionInterval is used strictly */
     private boolean synchronizedCollection;
 
+    /* If true, then the data is required for an output and it is never subsampled */
+    private boolean required;
+
 
     /**
      * Creates a default data filter which consumes any new data
@@ -81,6 +84,18 @@ public class DataFilter implements IDataConsumer {
     }
 
 
+    /**
+     * Marks the data of this filter as required for an output
+     * (the engine subsamples other data when it is expensive to collect).
+     * Should be called before adding data.
+     *
+     * @param flag
+     */
+    public void setRequiredFlag(boolean flag) {
+        this.required = flag;
+    }
+
+
     /**
      * Sets the collection interval for all data collectors
      *
@@ -112,7 +127,7 @@ public class DataFilter implements IDataConsumer {
         for (int i = 0; i < dcds.length; i++) {
             int type = dcds[i].getType();
             String dataName = dcds[i].getDataName();
-            DataCollectorDescription dcd = new DataCollectorDescription(type, dataName, collectionInterval);
+            DataCollectorDescription dcd = new DataCollectorDescription(type, dataName, collectionInterval, null, required);
 
             inputDataList.add(dcd);
             c.addDataCollector(dcd);
@@ -149,7 +164,7 @@ public class DataFilter implements IDataConsumer {
         for (int i = 0; i < dcds.length; i++) {
             int type = dcds[i].getType();
             String dataName = dcds[i].getDataName();
-            DataCollectorDescription dcd = new DataCollectorDescription(type, dataName, collectionInterval);
+            DataCollectorDescription dcd = new DataCollectorDescription(type, dataName, collectionInterval, null, required);
 
             inputDataList.add(dcd);
             c.addDataCollector(dcd);
@@ -161,7 +176,7 @@ public class DataFilter implements IDataConsumer {
      * Adds data for filtering
      */
     public synchronized void addData(int type, String dataName, Object parameters) {
-        DataCollectorDescription dcd = new DataCollectorDescription(type, dataName, collectionInterval, parameters);
+        DataCollectorDescription dcd = new DataCollectorDescription(type, dataName, collectionInterval, parameters, required);
 
         if (inputDataList.contains(dcd))
             return;
@@ -183,7 +198,7 @@ public class DataFilter implements IDataConsumer {
      * @param dataName
      */
     public synchronized void removeData(int type, String dataName) {
-        DataCollectorDescription dcd = new DataCollectorDescription(type, dataName, collectionInterval);
+        DataCollectorDescription dcd = new DataCollectorDescription(type, dataName, collectionInterval, null, required);
 
         if (inputDataList.contains(dcd)) {
             inputDataList.remove(dcd);
@@ -1,6 +1,8 @@
 package org.sparkabm.gui.data;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.logging.Level;
@@ -29,7 +31,6 @@ public class DataSetTmp implements IDataConsumer {
      * A data item class
      */
     private static class DataItem {
-        public final ArrayList<Double> data = new ArrayList<Double>(5000);
         public final String name;
         public final String variableName;
 
@@ -37,33 +38,13 @@ public class DataSetTmp implements IDataConsumer {
             this.name = name;
             this.variableName = variableName;
         }
-
-
-        public void clear() {
-            data.clear();
-        }
-
-
-        public void add(DataRow row) {
-            Double number = row.getVarDoubleValue(variableName);
-            data.add(number);
-        }
-
-
-        public void replaceLast(DataRow row) {
-            Double number = row.getVarDoubleValue(variableName);
-            int n = data.size();
-            data.remove(n - 1);
-            data.add(number);
-        }
     }
 
     /* List of collected data items */
     private final ArrayList<DataItem> dataItems = new ArrayList<DataItem>(10);
 
-    /* Ticks */
-    private final ArrayList<Long> ticks = new ArrayList<Long>(5000);
-    private long lastTick;
+    /* Collected values (one column for each data item) */
+    private final TimeSeriesStore store;
 
 
     /**
@@ -74,19 +55,20 @@ public class DataSetTmp implements IDataConsumer {
     public DataSetTmp(Node node) {
         // Create data filter and load data items
         dataFilter = new DataFilter(this, "variable");
+        dataFilter.setRequiredFlag(true);
 //		name = XmlDocUtils.getValue(node, "name", "Data");
         int interval = XmlDocUtils.getIntegerValue(node, "interval", 1);
 
         dataFilter.setInterval(interval);
         dataFilter.setSynchronizedFlag(true);
 
-        lastTick = -1;
-
         ArrayList<Node> items = XmlDocUtils.getChildrenByTagName(node, "item");
         for (int i = 0; i < items.size(); i++) {
             Node itemNode = items.get(i);
             addItem(itemNode);
         }
+
+        store = new TimeSeriesStore(dataItems.size());
     }
 
 
@@ -128,17 +110,12 @@ public class DataSetTmp implements IDataConsumer {
 
         long tick = data.getState().getTick();
 
-        if (tick == lastTick) {
-            for (DataItem item : dataItems) {
-                item.replaceLast(data);
-            }
-        } else {
-            lastTick = tick;
-            ticks.add(tick);
-
-            for (DataItem item : dataItems) {
-                item.add(data);
-            }
+        // Values of the same tick replace the last row
+        if (tick != store.getLastTick())
+            store.addRow(tick);
+
+        for (int i = 0; i < dataItems.size(); i++) {
+            store.setLast(i, data.getVarDoubleValue(dataItems.get(i).variableName));
         }
     }
 
@@ -147,36 +124,37 @@ public class DataSetTmp implements IDataConsumer {
      * Resets the data set
      */
     public synchronized void reset() {
-        ticks.clear();
-        lastTick = -1;
+        store.clear();
+    }
 
+
+    /**
+     * Returns a view of the data values for the given item
+     * (the view is not changed by new data)
+     *
+     * @param name
+     * @return null if there is no such item
+     */
+    public TimeSeriesStore.Column getColumn(String name) {
         for (int i = 0; i < dataItems.size(); i++) {
-            dataItems.get(i).clear();
+            if (dataItems.get(i).name.equals(name))
+                return store.getColumn(i);
         }
+
+        return null;
     }
 
 
     /**
      * Returns the data values for the given variable
+     * (missing values are NaN)
      *
      * @param name
      * @return
      */
     public double[] getData(String name) {
-        for (DataItem item : dataItems) {
-            if (item.name.equals(name)) {
-                ArrayList<Double> data = item.data;
-
-                int n = data.size();
-                double[] result = new double[n];
-                for (int i = 0; i < n; i++)
-                    result[i] = data.get(i);
-
-                return result;
-            }
-        }
-
-        return null;
+        TimeSeriesStore.Column column = getColumn(name);
+        return column != null ? column.toArray() : null;
     }
 
 
@@ -214,7 +192,7 @@ public class DataSetTmp implements IDataConsumer {
         PrintStream out = null;
 
         try {
-            out = new PrintStream(file);
+            out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
             saveData(out, interval);
         } catch (Exception e) {
             logger.log(Level.SEVERE, "exception", e);
@@ -242,41 +220,7 @@ public class DataSetTmp implements IDataConsumer {
 
         out.println("Experiment");
 
-        try {
-            int n = dataItems.size();
-
-            out.print("Tick");
-            if (n > 0)
-                out.print(',');
-
-            for (int i = 0; i < n; i++) {
-                out.print(dataItems.get(i).name);
-                if (i != n - 1)
-                    out.print(',');
-            }
-
-            out.println();
-
-            int l = ticks.size();
-            for (int k = 0; k < l; k += interval) {
-                out.print(ticks.get(k));
-                if (n > 0)
-                    out.print(',');
-
-                for (int i = 0; i < n; i++) {
-                    Object Entry = dataItems.get(i).data.get(k);
-                    if (Entry == null) out.print("n/a");
-                    else out.print((Number) Entry);
-
-                    if (i != n - 1)
-                        out.print(',');
-                }
-
-                out.println();
-            }
-        } finally {
-            out.flush();
-        }
+        store.save(out, getNames(), interval);
     }
 
 
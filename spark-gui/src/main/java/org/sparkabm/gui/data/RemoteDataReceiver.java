@@ -0,0 +1,63 @@
+package org.sparkabm.gui.data;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.sparkabm.runtime.data.DataRow;
+import org.sparkabm.runtime.data.DataRowDeltaDecoder;
+import org.sparkabm.runtime.internal.net.WireConnection;
+
+/**
+ * Receives data rows from a remote SPARK server. The run() method reads
+ * rows from the connection until it is closed, restores rows sent
+ * as changes and passes them to data consumers.
+ *
+ * @author Monad
+ */
+public class RemoteDataReceiver extends DataReceiver implements Runnable {
+    private static final Logger logger = Logger.getLogger(RemoteDataReceiver.class.getName());
+
+    private final WireConnection connection;
+    // Restores rows sent as changes
+    private final DataRowDeltaDecoder decoder = new DataRowDeltaDecoder();
+
+
+    /**
+     * Creates a receiver for the given connection
+     *
+     * @param connection
+     */
+    public RemoteDataReceiver(WireConnection connection) {
+        this.connection = connection;
+    }
+
+
+    /**
+     * Returns the connection
+     *
+     * @return
+     */
+    public WireConnection getConnection() {
+        return connection;
+    }
+
+
+    public void run() {
+        Object data;
+
+        try {
+            while ((data = connection.receive()) != null) {
+                if (data instanceof DataRow) {
+                    receive(decoder.decode((DataRow) data));
+                } else {
+                    logger.severe("Bad data received: " + data);
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "exception", e);
+        }
+
+        logger.info("Received " + connection.getMessagesReceived() + " messages, "
+                + connection.getBytesReceived() + " bytes");
+    }
+}
@@ -0,0 +1,319 @@
+package org.sparkabm.gui.data;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Columnar storage of time series: ticks and values of each column
+ * are kept in primitive chunks. Chunks are never moved or reallocated,
+ * so columns are read through views without copying.
+ * Ticks must increase (rows with the same tick replace the last row).
+ * Missing values are stored as NaN and marked in a bit set.
+ *
+ * @author Monad
+ */
+public class TimeSeriesStore {
+    /* Chunk size (a power of 2) */
+    private static final int SHIFT = 12;
+    private static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    /* The number of characters written at once by the save method */
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    /* Chunks of ticks */
+    private long[][] ticks;
+
+    /* Chunks of values: values[column][chunk] */
+    private final double[][][] values;
+
+    /* Indices of missing values of each column */
+    private final BitSet[] missing;
+
+    /* The number of rows */
+    private int size;
+
+
+    /**
+     * A read-only view of a column. The view contains the rows which
+     * exist when it is created, later rows are not visible.
+     */
+    public static class Column {
+        private final long[][] ticks;
+        private final double[][] data;
+        private final BitSet missing;
+        private final int size;
+
+        private Column(long[][] ticks, double[][] data, BitSet missing, int size) {
+            this.ticks = ticks;
+            this.data = data;
+            this.missing = missing;
+            this.size = size;
+        }
+
+        /**
+         * Returns the number of values
+         *
+         * @return
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the i-th value (NaN if the value is missing)
+         *
+         * @param i
+         * @return
+         */
+        public double get(int i) {
+            return data[i >>> SHIFT][i & MASK];
+        }
+
+        /**
+         * Returns the tick of the i-th value
+         *
+         * @param i
+         * @return
+         */
+        public long getTick(int i) {
+            return ticks[i >>> SHIFT][i & MASK];
+        }
+
+        /**
+         * Returns true if the i-th value is missing
+         *
+         * @param i
+         * @return
+         */
+        public boolean isMissing(int i) {
+            return missing.get(i);
+        }
+
+        /**
+         * Returns the index of the given tick (-1 if there is no such tick)
+         *
+         * @param tick
+         * @return
+         */
+        public int indexOf(long tick) {
+            return TimeSeriesStore.indexOf(ticks, size, tick);
+        }
+
+        /**
+         * Copies all values into a new array
+         *
+         * @return
+         */
+        public double[] toArray() {
+            double[] result = new double[size];
+            for (int i = 0, k = 0; i < size; i += CHUNK, k++)
+                System.arraycopy(data[k], 0, result, i, Math.min(CHUNK, size - i));
+
+            return result;
+        }
+    }
+
+
+    /**
+     * Creates a store with the given number of columns
+     *
+     * @param columns
+     */
+    public TimeSeriesStore(int columns) {
+        ticks = new long[1][CHUNK];
+        values = new double[columns][][];
+        missing = new BitSet[columns];
+
+        for (int c = 0; c < columns; c++) {
+            values[c] = new double[1][CHUNK];
+            missing[c] = new BitSet();
+        }
+    }
+
+
+    /**
+     * Returns the number of columns
+     *
+     * @return
+     */
+    public int getColumnCount() {
+        return values.length;
+    }
+
+
+    /**
+     * Returns the number of rows
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the tick of the last row (-1 if the store is empty)
+     *
+     * @return
+     */
+    public synchronized long getLastTick() {
+        if (size == 0)
+            return -1;
+
+        int i = size - 1;
+        return ticks[i >>> SHIFT][i & MASK];
+    }
+
+
+    /**
+     * Adds a new row for the given tick. All values of the new row are NaN
+     */
+    public synchronized void addRow(long tick) {
+        int k = size >>> SHIFT;
+        if (k == ticks.length) {
+            // Only references to chunks are copied
+            ticks = Arrays.copyOf(ticks, k * 2);
+            for (int c = 0; c < values.length; c++)
+                values[c] = Arrays.copyOf(values[c], k * 2);
+        }
+
+        if (ticks[k] == null) {
+            ticks[k] = new long[CHUNK];
+            for (int c = 0; c < values.length; c++)
+                values[c][k] = new double[CHUNK];
+        }
+
+        int i = size & MASK;
+        ticks[k][i] = tick;
+        for (int c = 0; c < values.length; c++)
+            values[c][k][i] = Double.NaN;
+
+        size++;
+    }
+
+
+    /**
+     * Sets a value of the last row
+     *
+     * @param column
+     * @param value  null for a missing value
+     */
+    public synchronized void setLast(int column, Double value) {
+        int i = size - 1;
+        if (value == null) {
+            values[column][i >>> SHIFT][i & MASK] = Double.NaN;
+            missing[column].set(i);
+        } else {
+            values[column][i >>> SHIFT][i & MASK] = value;
+            // Clearing a bit may scan the whole set, so only set bits are cleared
+            if (missing[column].get(i))
+                missing[column].clear(i);
+        }
+    }
+
+
+    /**
+     * Removes all rows. Existing views are not changed
+     */
+    public synchronized void clear() {
+        // New chunks are allocated, so old views remain valid
+        ticks = new long[1][CHUNK];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = new double[1][CHUNK];
+            missing[c] = new BitSet();
+        }
+
+        size = 0;
+    }
+
+
+    /**
+     * Returns a view of the given column
+     *
+     * @param column
+     * @return
+     */
+    public synchronized Column getColumn(int column) {
+        BitSet m = (BitSet) missing[column].clone();
+        return new Column(ticks.clone(), values[column].clone(), m, size);
+    }
+
+
+    /**
+     * Returns the index of the row with the given tick (-1 if there is no such row)
+     *
+     * @param tick
+     * @return
+     */
+    public synchronized int indexOf(long tick) {
+        return indexOf(ticks, size, tick);
+    }
+
+
+    /**
+     * Binary search of a tick in the given chunks
+     */
+    private static int indexOf(long[][] ticks, int size, long tick) {
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long t = ticks[mid >>> SHIFT][mid & MASK];
+            if (t < tick)
+                lo = mid + 1;
+            else if (t > tick)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+
+        return -1;
+    }
+
+
+    /**
+     * Writes rows in the CSV format: the header "Tick,name1,name2,..."
+     * and every interval-th row. Missing values are written as "n/a"
+     *
+     * @param out
+     * @param names  names of columns
+     * @param interval
+     */
+    public synchronized void save(PrintStream out, String[] names, int interval) {
+        String newLine = System.getProperty("line.separator");
+        int n = values.length;
+        interval = Math.max(interval, 1);
+
+        StringBuilder buf = new StringBuilder(WRITE_BUFFER + 1024);
+        buf.append("Tick");
+        for (int c = 0; c < n; c++)
+            buf.append(',').append(names[c]);
+
+        buf.append(newLine);
+
+        for (int i = 0; i < size; i += interval) {
+            int k = i >>> SHIFT;
+            int j = i & MASK;
+
+            buf.append(ticks[k][j]);
+            for (int c = 0; c < n; c++) {
+                buf.append(',');
+                if (missing[c].get(i))
+                    buf.append("n/a");
+                else
+                    buf.append(values[c][k][j]);
+            }
+
+            buf.append(newLine);
+
+            if (buf.length() >= WRITE_BUFFER) {
+                out.append(buf);
+                buf.setLength(0);
+            }
+        }
+
+        out.append(buf);
+        out.flush();
+    }
+}
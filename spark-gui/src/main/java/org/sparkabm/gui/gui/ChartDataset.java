@@ -0,0 +1,164 @@
+package org.sparkabm.gui.gui;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * A dataset of a line chart which shows a limited number of points
+ * of each series. Points are taken from the visible range of the domain axis
+ * (the dataset listens to axis changes), so zooming in shows more details.
+ * Series are updated from any thread, points are taken in the event thread.
+ *
+ * @author Monad
+ */
+@SuppressWarnings("serial")
+class ChartDataset extends AbstractXYDataset implements AxisChangeListener {
+    /* The maximum number of displayed points of a series */
+    static final int POINT_BUDGET = Math.max(Integer.getInteger("spark.chart.points", 1000), 16);
+
+    /* If true, then all points are saved in temporary files */
+    static final boolean SPILL = Boolean.getBoolean("spark.chart.spill");
+
+    private final ArrayList<Comparable<?>> keys = new ArrayList<Comparable<?>>();
+    private final ArrayList<ChartSeries> series = new ArrayList<ChartSeries>();
+
+    /* Displayed points (used in the event thread only) */
+    private final ArrayList<ChartPoints> points = new ArrayList<ChartPoints>();
+
+    /* The visible range */
+    private double viewMin = Double.NEGATIVE_INFINITY;
+    private double viewMax = Double.POSITIVE_INFINITY;
+
+    private volatile boolean refreshRequested;
+
+
+    /**
+     * Creates and adds a new series
+     *
+     * @param key
+     * @return
+     */
+    public synchronized ChartSeries addSeries(Comparable<?> key) {
+        // Levels keep more buckets than the budget for zooming in
+        ChartSeries s = new ChartSeries(POINT_BUDGET * 2, SPILL);
+
+        keys.add(key);
+        series.add(s);
+        points.add(new ChartPoints());
+
+        refresh();
+        return s;
+    }
+
+
+    /**
+     * Requests an update of displayed points. This method is thread-safe
+     */
+    public void update() {
+        if (refreshRequested)
+            return;
+
+        refreshRequested = true;
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                refreshRequested = false;
+                refresh();
+            }
+        });
+    }
+
+
+    /**
+     * Takes displayed points from all series and notifies listeners
+     */
+    private synchronized void refresh() {
+        for (int i = 0; i < series.size(); i++) {
+            series.get(i).getPoints(viewMin, viewMax, POINT_BUDGET, points.get(i));
+        }
+
+        fireDatasetChanged();
+    }
+
+
+    /**
+     * Deletes temporary files of all series
+     */
+    public synchronized void close() {
+        for (ChartSeries s : series) {
+            s.close();
+        }
+    }
+
+
+    /**
+     * Takes points of the visible range when the domain axis is changed
+     */
+    public void axisChanged(AxisChangeEvent event) {
+        if (!(event.getAxis() instanceof ValueAxis))
+            return;
+
+        ValueAxis axis = (ValueAxis) event.getAxis();
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+
+        if (!axis.isAutoRange()) {
+            min = axis.getLowerBound();
+            max = axis.getUpperBound();
+        }
+
+        synchronized (this) {
+            if (min == viewMin && max == viewMax)
+                return;
+
+            viewMin = min;
+            viewMax = max;
+        }
+
+        update();
+    }
+
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return keys.size();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Comparable getSeriesKey(int s) {
+        return keys.get(s);
+    }
+
+    public int getItemCount(int s) {
+        return points.get(s).size();
+    }
+
+    public Number getX(int s, int item) {
+        return points.get(s).getX(item);
+    }
+
+    public Number getY(int s, int item) {
+        return points.get(s).getY(item);
+    }
+
+    @Override
+    public double getXValue(int s, int item) {
+        return points.get(s).getX(item);
+    }
+
+    @Override
+    public double getYValue(int s, int item) {
+        return points.get(s).getY(item);
+    }
+}
@@ -0,0 +1,48 @@
+package org.sparkabm.gui.gui;
+
+/**
+ * A growable list of chart points
+ *
+ * @author Monad
+ */
+class ChartPoints {
+    private double[] xs = new double[256];
+    private double[] ys = new double[256];
+    private int size;
+
+
+    void add(double x, double y) {
+        if (size == xs.length) {
+            double[] tx = new double[size * 2];
+            double[] ty = new double[size * 2];
+            System.arraycopy(xs, 0, tx, 0, size);
+            System.arraycopy(ys, 0, ty, 0, size);
+            xs = tx;
+            ys = ty;
+        }
+
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+
+    void clear() {
+        size = 0;
+    }
+
+
+    int size() {
+        return size;
+    }
+
+
+    double getX(int i) {
+        return xs[i];
+    }
+
+
+    double getY(int i) {
+        return ys[i];
+    }
+}
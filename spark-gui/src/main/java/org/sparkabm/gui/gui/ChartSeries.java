@@ -0,0 +1,347 @@
+package org.sparkabm.gui.gui;
+
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A chart series with bounded memory. The most recent points are kept
+ * in a ring buffer. Older points are kept at several resolutions: each level
+ * is a ring buffer of buckets with the minimum and the maximum of FACTOR
+ * buckets of the previous level. Points of a visible range are taken from
+ * the finest level which does not exceed the point budget, so zooming in
+ * shows more details of recent data. All points can be saved in a file
+ * (the spill file) which is used when the number of visible points is small.
+ * <p>
+ * X values must not decrease (a smaller value clears the series).
+ *
+ * @author Monad
+ */
+class ChartSeries {
+    private static final Logger logger = Logger.getLogger(ChartSeries.class.getName());
+
+    /* The number of buckets aggregated into one bucket of the next level */
+    static final int FACTOR = 4;
+
+    /* The maximum number of buckets in each level */
+    private final int capacity;
+
+    /* Level 0 contains points, level k contains buckets of FACTOR^k points */
+    private final ArrayList<Buckets> levels = new ArrayList<Buckets>();
+
+    /* The file with all points (null if points are not saved) */
+    private ChartSeriesSpill spill;
+    private boolean spillFlag;
+
+    /* The last x value */
+    private double lastX = Double.NEGATIVE_INFINITY;
+
+
+    /**
+     * A ring buffer of buckets of one level
+     */
+    private static class Buckets {
+        // Bucket data: x range, points of minimum and maximum values
+        final double[] firstX, lastX;
+        final double[] minX, minY, maxX, maxY;
+
+        // The index of the oldest bucket and the number of buckets
+        int head, size;
+        // True if old buckets were removed
+        boolean dropped;
+
+        // The bucket of the next level which is being filled
+        int accCount;
+        double accFirstX, accLastX, accMinX, accMinY, accMaxX, accMaxY;
+
+        Buckets(int capacity) {
+            firstX = new double[capacity];
+            lastX = new double[capacity];
+            minX = new double[capacity];
+            minY = new double[capacity];
+            maxX = new double[capacity];
+            maxY = new double[capacity];
+        }
+
+        /**
+         * Adds a bucket
+         */
+        void add(double x0, double x1, double mx, double my, double Mx, double My) {
+            int capacity = firstX.length;
+            int i = head + size;
+            if (i >= capacity)
+                i -= capacity;
+
+            if (size == capacity) {
+                head = head + 1 == capacity ? 0 : head + 1;
+                dropped = true;
+            } else {
+                size++;
+            }
+
+            firstX[i] = x0;
+            lastX[i] = x1;
+            minX[i] = mx;
+            minY[i] = my;
+            maxX[i] = Mx;
+            maxY[i] = My;
+        }
+
+        /**
+         * Adds a bucket to the accumulator
+         *
+         * @return true if the accumulator is full
+         */
+        boolean accumulate(double x0, double x1, double mx, double my, double Mx, double My) {
+            if (accCount == 0) {
+                accFirstX = x0;
+                accMinX = mx;
+                accMinY = my;
+                accMaxX = Mx;
+                accMaxY = My;
+            } else {
+                // NaN values are ignored if possible
+                if (my < accMinY || accMinY != accMinY) {
+                    accMinX = mx;
+                    accMinY = my;
+                }
+
+                if (My > accMaxY || accMaxY != accMaxY) {
+                    accMaxX = Mx;
+                    accMaxY = My;
+                }
+            }
+
+            accLastX = x1;
+            return ++accCount == FACTOR;
+        }
+
+        /**
+         * Returns the physical index of the i-th bucket
+         */
+        int index(int i) {
+            i += head;
+            return i >= firstX.length ? i - firstX.length : i;
+        }
+
+        /**
+         * Returns the first x value of retained buckets
+         * (-infinity if no buckets were removed)
+         */
+        double start() {
+            return dropped ? firstX[head] : Double.NEGATIVE_INFINITY;
+        }
+
+        /**
+         * Returns the position of the first bucket with lastX >= x
+         */
+        int lowerBound(double x) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (lastX[index(mid)] < x)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+
+            return lo;
+        }
+
+        /**
+         * Returns the position after the last bucket with firstX <= x
+         */
+        int upperBound(double x) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (firstX[index(mid)] <= x)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+
+            return lo;
+        }
+    }
+
+
+    /**
+     * Creates a series
+     *
+     * @param capacity  the number of buckets in each level
+     * @param spillFlag if true then all points are saved in a temporary file
+     */
+    ChartSeries(int capacity, boolean spillFlag) {
+        this.capacity = Math.max(capacity, 16);
+        this.spillFlag = spillFlag;
+        levels.add(new Buckets(this.capacity));
+    }
+
+
+    /**
+     * Adds a point
+     */
+    synchronized void add(double x, double y) {
+        if (x < lastX)
+            clear();
+
+        lastX = x;
+
+        if (spillFlag) {
+            try {
+                if (spill == null)
+                    spill = new ChartSeriesSpill();
+
+                spill.add(x, y);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Chart points cannot be saved", e);
+                closeSpill();
+                spillFlag = false;
+            }
+        }
+
+        double x0 = x, x1 = x, mx = x, my = y, Mx = x, My = y;
+
+        for (int k = 0; ; k++) {
+            Buckets level = levels.get(k);
+            level.add(x0, x1, mx, my, Mx, My);
+
+            if (!level.accumulate(x0, x1, mx, my, Mx, My))
+                break;
+
+            // Pass the full bucket to the next level
+            x0 = level.accFirstX;
+            x1 = level.accLastX;
+            mx = level.accMinX;
+            my = level.accMinY;
+            Mx = level.accMaxX;
+            My = level.accMaxY;
+            level.accCount = 0;
+
+            if (k + 1 == levels.size())
+                levels.add(new Buckets(capacity));
+        }
+    }
+
+
+    /**
+     * Removes all points
+     */
+    synchronized void clear() {
+        levels.clear();
+        levels.add(new Buckets(capacity));
+        lastX = Double.NEGATIVE_INFINITY;
+        closeSpill();
+    }
+
+
+    /**
+     * Deletes the spill file
+     */
+    synchronized void close() {
+        closeSpill();
+    }
+
+
+    private void closeSpill() {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+    }
+
+
+    /**
+     * Writes points in the given range into the output buffer.
+     * The number of points is about the budget (if it is possible).
+     *
+     * @param x0
+     * @param x1
+     * @param budget the maximum number of points
+     * @param out
+     */
+    synchronized void getPoints(double x0, double x1, int budget, ChartPoints out) {
+        out.clear();
+
+        if (spill != null) {
+            try {
+                if (spill.count(x0, x1) <= budget) {
+                    spill.read(x0, x1, out);
+                    return;
+                }
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Chart points cannot be read", e);
+                closeSpill();
+                out.clear();
+            }
+        }
+
+        // Each bucket gives at most two points
+        getPoints(0, x0, x1, Double.POSITIVE_INFINITY, Math.max(budget / 2, 1), out);
+    }
+
+
+    /**
+     * Writes points of buckets which intersect the given range
+     * (points with x >= limit are skipped) starting from the level k
+     */
+    private void getPoints(int k, double x0, double x1, double limit, int buckets, ChartPoints out) {
+        // Find the finest level with the number of buckets in the range below the limit
+        int n = levels.size();
+        for (; k < n - 1; k++) {
+            Buckets level = levels.get(k);
+            int i0 = level.lowerBound(x0);
+            int i1 = level.upperBound(x1);
+            if (i1 - i0 <= buckets)
+                break;
+        }
+
+        Buckets level = levels.get(k);
+        double start = level.start();
+
+        // Older points are taken from coarser levels
+        if (x0 < start && k + 1 < n)
+            getPoints(k + 1, x0, Math.min(x1, start), Math.min(limit, start), buckets, out);
+
+        if (x1 < start)
+            return;
+
+        x0 = Math.max(x0, start);
+
+        for (int i = level.lowerBound(x0), i1 = level.upperBound(x1); i < i1; i++) {
+            int j = level.index(i);
+            addBucket(level.minX[j], level.minY[j], level.maxX[j], level.maxY[j], limit, out);
+        }
+
+        // The newest points are in unfinished buckets (accumulators of finer levels)
+        for (int j = k - 1; j >= 0; j--) {
+            Buckets prev = levels.get(j);
+            if (prev.accCount > 0 && prev.accLastX >= x0 && prev.accFirstX <= x1) {
+                addBucket(prev.accMinX, prev.accMinY, prev.accMaxX, prev.accMaxY, limit, out);
+            }
+        }
+    }
+
+
+    /**
+     * Adds points of a bucket in the order of x values
+     */
+    private static void addBucket(double mx, double my, double Mx, double My,
+                                  double limit, ChartPoints out) {
+        if (mx > Mx) {
+            double t = mx;
+            mx = Mx;
+            Mx = t;
+            t = my;
+            my = My;
+            My = t;
+        }
+
+        if (mx < limit)
+            out.add(mx, my);
+
+        if (Mx != mx && Mx < limit)
+            out.add(Mx, My);
+    }
+}
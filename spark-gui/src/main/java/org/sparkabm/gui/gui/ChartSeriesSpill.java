@@ -0,0 +1,165 @@
+package org.sparkabm.gui.gui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A temporary file with all points of a chart series.
+ * Points (x and y as doubles) are appended through a buffer.
+ * X values do not decrease, so points of a range are found
+ * with a binary search.
+ *
+ * @author Monad
+ */
+class ChartSeriesSpill {
+    private static final int POINT_SIZE = 16;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    /* Points which are not written yet */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(POINT_SIZE << 12);
+
+    /* The number of points in the file */
+    private long count;
+
+    /* A buffer for reading x values */
+    private final ByteBuffer xBuffer = ByteBuffer.allocate(8);
+
+
+    /**
+     * Creates a temporary file
+     *
+     * @throws IOException
+     */
+    ChartSeriesSpill() throws IOException {
+        file = File.createTempFile("spark-chart", ".bin");
+        file.deleteOnExit();
+
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+    }
+
+
+    /**
+     * Appends a point
+     */
+    void add(double x, double y) throws IOException {
+        if (buffer.remaining() < POINT_SIZE)
+            flush();
+
+        buffer.putDouble(x);
+        buffer.putDouble(y);
+    }
+
+
+    /**
+     * Writes buffered points into the file
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        int n = buffer.remaining() / POINT_SIZE;
+
+        long pos = count * POINT_SIZE;
+        while (buffer.hasRemaining())
+            pos += channel.write(buffer, pos);
+
+        count += n;
+        buffer.clear();
+    }
+
+
+    /**
+     * Returns the number of points in the given range
+     */
+    long count(double x0, double x1) throws IOException {
+        flush();
+        return lowerBound(x1, true) - lowerBound(x0, false);
+    }
+
+
+    /**
+     * Reads points in the given range and one point before
+     * and after the range (if they exist)
+     */
+    void read(double x0, double x1, ChartPoints out) throws IOException {
+        flush();
+
+        long i = Math.max(lowerBound(x0, false) - 1, 0);
+        long end = Math.min(lowerBound(x1, true) + 1, count);
+
+        ByteBuffer buf = ByteBuffer.allocate(POINT_SIZE << 12);
+        while (i < end) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), (end - i) * POINT_SIZE));
+
+            long pos = i * POINT_SIZE;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, pos);
+                if (n < 0)
+                    throw new IOException("Unexpected end of file");
+
+                pos += n;
+            }
+
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.add(buf.getDouble(), buf.getDouble());
+                i++;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the index of the first point with x >= value
+     * (x > value if strict == true)
+     */
+    private long lowerBound(double value, boolean strict) throws IOException {
+        long lo = 0, hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            double x = getX(mid);
+            if (x < value || strict && x == value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+
+        return lo;
+    }
+
+
+    private double getX(long i) throws IOException {
+        xBuffer.clear();
+        long pos = i * POINT_SIZE;
+        while (xBuffer.hasRemaining()) {
+            int n = channel.read(xBuffer, pos);
+            if (n < 0)
+                throw new IOException("Unexpected end of file");
+
+            pos += n;
+        }
+
+        return xBuffer.getDouble(0);
+    }
+
+
+    /**
+     * Closes and deletes the file
+     */
+    void close() {
+        try {
+            raf.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+
+        if (!file.delete())
+            file.deleteOnExit();
+    }
+}
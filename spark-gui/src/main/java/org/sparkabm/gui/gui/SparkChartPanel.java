@@ -17,8 +17,6 @@ import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.general.DefaultPieDataset;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 import org.sparkabm.gui.Coordinator;
 import org.sparkabm.gui.data.DataFilter;
 import org.sparkabm.gui.data.IDataConsumer;
@@ -66,7 +64,7 @@ public class SparkChartPanel extends JPanel implements ActionListener,
     private ChartType type;
 
     // Main dataset
-    private XYSeriesCollection dataset;
+    private ChartDataset dataset;
     private DefaultPieDataset pieData;
 
     // List of series in the chart
@@ -127,7 +125,7 @@ public class SparkChartPanel extends JPanel implements ActionListener,
         this.type = type;
 
         // Create a dataset
-        dataset = new XYSeriesCollection();
+        dataset = new ChartDataset();
 
         JFreeChart chart;
 
@@ -139,6 +137,9 @@ public class SparkChartPanel extends JPanel implements ActionListener,
         } else {
             chart = ChartFactory.createXYLineChart(null, "x", "y", dataset,
                     PlotOrientation.VERTICAL, true, false, false);
+
+            // Visible points depend on the range of the domain axis
+            chart.getXYPlot().getDomainAxis().addChangeListener(dataset);
         }
 
         // Create a chart panel
@@ -243,10 +244,9 @@ public class SparkChartPanel extends JPanel implements ActionListener,
      * Adds a series to the chart
      */
     public void addSeries(String varName, String label) {
-        XYSeries s = new XYSeries(label, false);
+        ChartSeries s = dataset.addSeries(label);
         SeriesInfo info = new SeriesInfo(varName, label, s, null);
         series.add(info);
-        dataset.addSeries(s);
 
         info.register(dataFilter);
     }
@@ -255,12 +255,11 @@ public class SparkChartPanel extends JPanel implements ActionListener,
      * Adds a series to the chart
      */
     public void addSeries(UserFunction uf, String label) {
-        XYSeries s = new XYSeries(label, false);
+        ChartSeries s = dataset.addSeries(label);
         Function f = new Function(uf);
 
         SeriesInfo info = new SeriesInfo(null, label, s, f);
         series.add(info);
-        dataset.addSeries(s);
 
         info.register(dataFilter);
     }
@@ -280,6 +279,7 @@ public class SparkChartPanel extends JPanel implements ActionListener,
                 dataFilter.removeAllData();
                 Coordinator.getInstance().getDataReceiver().removeDataConsumer(
                         dataFilter);
+                dataset.close();
 
                 if (xmlNode != null)
                     xmlNode.getParentNode().removeChild(xmlNode);
@@ -295,6 +295,8 @@ public class SparkChartPanel extends JPanel implements ActionListener,
         for (SeriesInfo info : series) {
             info.clear();
         }
+
+        dataset.update();
     }
 
     /**
@@ -401,6 +403,9 @@ public class SparkChartPanel extends JPanel implements ActionListener,
                 // e.printStackTrace();
             }
         }
+
+        if (pieData == null)
+            dataset.update();
     }
 
     /**
@@ -550,13 +555,13 @@ class Function {
 class SeriesInfo {
     final String varName;
     public final String label;
-    private final XYSeries series;
+    private final ChartSeries series;
     public final Function function;
 
     /**
      * Constructor
      */
-    public SeriesInfo(String varName, String label, XYSeries series,
+    public SeriesInfo(String varName, String label, ChartSeries series,
                       Function function) {
         this.varName = varName;
         this.label = label;
@@ -580,9 +585,7 @@ class SeriesInfo {
      */
     public void clear() {
         if (series != null) {
-            synchronized (series) {
-                series.clear();
-            }
+            series.clear();
         }
     }
 
@@ -591,9 +594,7 @@ class SeriesInfo {
      */
     public void addValue(double x, double y) {
         if (series != null) {
-            synchronized (series) {
-                series.add(x, y);
-            }
+            series.add(x, y);
         }
     }
 
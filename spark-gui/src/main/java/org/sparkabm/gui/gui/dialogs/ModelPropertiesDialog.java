@@ -109,7 +109,8 @@ public class ModelPropertiesDialog extends JDialog implements ActionListener {
                 "default",
                 "Observer1",
                 "Observer2",
-                "ObserverParallel"
+                "ObserverParallel",
+                "ObserverForkJoin"
         });
 
         boxObserverName.setSelectedIndex(0);
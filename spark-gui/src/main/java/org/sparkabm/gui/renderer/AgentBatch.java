@@ -0,0 +1,293 @@
+package org.sparkabm.gui.renderer;
+
+import java.nio.ByteBuffer;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.GLContext;
+import org.sparkabm.runtime.data.DataObject_SpaceAgents;
+
+/**
+ * Draws all agents of one style with two calls (shapes and borders).
+ * Shapes of agents are transformed on the CPU and written into vertex
+ * arrays (position and color of each vertex) which are uploaded into
+ * vertex buffer objects. Client-side vertex arrays are used when
+ * vertex buffers are not available, so only OpenGL 1.1 is required.
+ *
+ * @author Monad
+ */
+class AgentBatch {
+    /* The number of segments of circles */
+    private static final int SEGMENTS = 16;
+
+    /* Vertices of shapes (x, y pairs of triangles) and borders (x, y pairs of lines) */
+    private static final float[] CIRCLE;
+    private static final float[] CIRCLE_BORDER;
+    private static final float[] SQUARE;
+    private static final float[] SQUARE_BORDER;
+    private static final float[] TORUS;
+    private static final float[] TORUS_BORDER;
+
+    /* Vertex sizes in bytes: x, y, rgba for shapes; x, y for borders */
+    private static final int SHAPE_STRIDE = 12;
+    private static final int BORDER_STRIDE = 8;
+
+    /* The maximum number of bytes added for one agent */
+    private static final int MAX_SHAPE_BYTES = SEGMENTS * 6 * SHAPE_STRIDE;
+    private static final int MAX_BORDER_BYTES = SEGMENTS * 4 * BORDER_STRIDE;
+
+    static {
+        float[] c = new float[SEGMENTS + 1];
+        float[] s = new float[SEGMENTS + 1];
+        for (int i = 0; i <= SEGMENTS; i++) {
+            double angle = 2 * Math.PI / SEGMENTS * i;
+            c[i] = (float) Math.cos(angle);
+            s[i] = (float) Math.sin(angle);
+        }
+
+        CIRCLE = new float[SEGMENTS * 6];
+        CIRCLE_BORDER = new float[SEGMENTS * 4];
+        TORUS = new float[SEGMENTS * 12];
+        TORUS_BORDER = new float[SEGMENTS * 8];
+
+        for (int i = 0; i < SEGMENTS; i++) {
+            float[] t = {0, 0, c[i], s[i], c[i + 1], s[i + 1]};
+            System.arraycopy(t, 0, CIRCLE, i * 6, 6);
+
+            float[] b = {c[i], s[i], c[i + 1], s[i + 1]};
+            System.arraycopy(b, 0, CIRCLE_BORDER, i * 4, 4);
+            System.arraycopy(b, 0, TORUS_BORDER, i * 8, 4);
+
+            // Inner border
+            for (int j = 0; j < 4; j++)
+                TORUS_BORDER[i * 8 + 4 + j] = b[j] * 0.5f;
+
+            // Two triangles of a quad between radii 0.5 and 1
+            float[] q = {c[i] * 0.5f, s[i] * 0.5f, c[i], s[i], c[i + 1], s[i + 1],
+                    c[i] * 0.5f, s[i] * 0.5f, c[i + 1], s[i + 1], c[i + 1] * 0.5f, s[i + 1] * 0.5f};
+            System.arraycopy(q, 0, TORUS, i * 12, 12);
+        }
+
+        SQUARE = new float[]{-1, -1, -1, 1, 1, 1, -1, -1, 1, 1, 1, -1};
+        SQUARE_BORDER = new float[]{-1, -1, -1, 1, -1, 1, 1, 1, 1, 1, 1, -1, 1, -1, -1, -1};
+    }
+
+    /* Vertex data */
+    private ByteBuffer shapes = Buffers.newDirectByteBuffer(1 << 16);
+    private ByteBuffer borders = Buffers.newDirectByteBuffer(1 << 14);
+
+    /* Vertex buffer objects (0 if not available) */
+    private final int[] vbo = new int[2];
+    /* The context of vertex buffer objects */
+    private GLContext context;
+
+
+    /**
+     * Draws agents of the given style in the given space
+     */
+    void render(GL2 gl, DataObject_SpaceAgents agents, int spaceIndex, AgentStyle style) {
+        build(agents, spaceIndex, style);
+
+        int shapeCount = shapes.position() / SHAPE_STRIDE;
+        int borderCount = borders.position() / BORDER_STRIDE;
+        if (shapeCount == 0)
+            return;
+
+        boolean useVbo = initBuffers(gl);
+
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+
+        // Shapes
+        shapes.flip();
+        gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
+        if (useVbo) {
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vbo[0]);
+            gl.glBufferData(GL2.GL_ARRAY_BUFFER, shapes.limit(), shapes, GL2.GL_STREAM_DRAW);
+            gl.glVertexPointer(2, GL2.GL_FLOAT, SHAPE_STRIDE, 0);
+            gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, SHAPE_STRIDE, 8);
+        } else {
+            gl.glVertexPointer(2, GL2.GL_FLOAT, SHAPE_STRIDE, shapes.position(0));
+            gl.glColorPointer(4, GL2.GL_UNSIGNED_BYTE, SHAPE_STRIDE, shapes.duplicate().position(8));
+        }
+
+        gl.glDrawArrays(GL2.GL_TRIANGLES, 0, shapeCount);
+        gl.glDisableClientState(GL2.GL_COLOR_ARRAY);
+
+        // Borders
+        if (borderCount > 0) {
+            borders.flip();
+            gl.glColor3f(0, 0, 0);
+            if (useVbo) {
+                gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vbo[1]);
+                gl.glBufferData(GL2.GL_ARRAY_BUFFER, borders.limit(), borders, GL2.GL_STREAM_DRAW);
+                gl.glVertexPointer(2, GL2.GL_FLOAT, BORDER_STRIDE, 0);
+            } else {
+                gl.glVertexPointer(2, GL2.GL_FLOAT, BORDER_STRIDE, borders);
+            }
+
+            gl.glDrawArrays(GL2.GL_LINES, 0, borderCount);
+        }
+
+        if (useVbo)
+            gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+
+        gl.glDisableClientState(GL2.GL_VERTEX_ARRAY);
+
+        shapes.clear();
+        borders.clear();
+    }
+
+
+    /**
+     * Creates vertex buffer objects in the current context
+     *
+     * @return false if vertex buffer objects are not available
+     */
+    private boolean initBuffers(GL2 gl) {
+        if (context != gl.getContext()) {
+            context = gl.getContext();
+            vbo[0] = vbo[1] = 0;
+
+            if (gl.isFunctionAvailable("glGenBuffers") && gl.isFunctionAvailable("glBufferData"))
+                gl.glGenBuffers(2, vbo, 0);
+        }
+
+        return vbo[0] != 0;
+    }
+
+
+    /**
+     * Writes vertices of agents into buffers
+     */
+    private void build(DataObject_SpaceAgents agents, int spaceIndex, AgentStyle style) {
+        int n = agents.getTotalNumber();
+        double[] xs = agents.getXs();
+        double[] ys = agents.getYs();
+        double[] radii = agents.getRadii();
+        float[] colors = agents.getColorComponents();
+        int[] types = agents.getShapes();
+        int[] spaceIndices = agents.getSpaceIndices();
+        double[] rotations = agents.getRotations();
+
+        boolean border = style.border;
+        int alpha = style.transparent ? toByte(style.getTransparencyCoefficient()) : 255;
+
+        shapes.clear();
+        borders.clear();
+
+        for (int i = 0; i < n; i++) {
+            if (spaceIndices[i] != spaceIndex)
+                continue;
+
+            if (shapes.remaining() < MAX_SHAPE_BYTES)
+                shapes = grow(shapes);
+            if (borders.remaining() < MAX_BORDER_BYTES)
+                borders = grow(borders);
+
+            int k = i << 2;
+            int r = toByte(colors[k]);
+            int g = toByte(colors[k + 1]);
+            int b = toByte(colors[k + 2]);
+
+            float x = (float) xs[i];
+            float y = (float) ys[i];
+            float size = (float) radii[i];
+
+            double phi = rotations[i];
+            float cos = 1, sin = 0;
+            if (phi != 0) {
+                cos = (float) Math.cos(phi);
+                sin = (float) Math.sin(phi);
+            }
+
+            DataObject_SpaceAgents.ShapeInfo shapeInfo = agents.getShapeInfo(i);
+            if (shapeInfo != null) {
+                switch (shapeInfo.type) {
+                    case 0:
+                        addShape(CIRCLE, x, y, size, size, cos, sin, r, g, b, alpha);
+                        addBorder(CIRCLE_BORDER, x, y, size, size, cos, sin);
+                        break;
+
+                    case 1:
+                        addShape(SQUARE, x, y, shapeInfo.hx, shapeInfo.hy, cos, sin, r, g, b, alpha);
+                        break;
+                }
+
+                continue;
+            }
+
+            float[] shape, shapeBorder;
+            switch (types[i]) {
+                // case SpaceAgent.CIRCLE:
+                case 1:
+                    shape = CIRCLE;
+                    shapeBorder = CIRCLE_BORDER;
+                    break;
+                // case SpaceAgent.SQUARE:
+                case 2:
+                    shape = SQUARE;
+                    shapeBorder = SQUARE_BORDER;
+                    break;
+                // case SpaceAgent.TORUS:
+                case 3:
+                    shape = TORUS;
+                    shapeBorder = TORUS_BORDER;
+                    break;
+                default:
+                    continue;
+            }
+
+            addShape(shape, x, y, size, size, cos, sin, r, g, b, alpha);
+            if (border)
+                addBorder(shapeBorder, x, y, size, size, cos, sin);
+        }
+    }
+
+
+    private void addShape(float[] v, float x, float y, float sx, float sy, float cos, float sin,
+                          int r, int g, int b, int a) {
+        ByteBuffer buf = shapes;
+        for (int i = 0; i < v.length; i += 2) {
+            float vx = v[i] * sx;
+            float vy = v[i + 1] * sy;
+
+            buf.putFloat(x + vx * cos - vy * sin);
+            buf.putFloat(y + vx * sin + vy * cos);
+            buf.put((byte) r);
+            buf.put((byte) g);
+            buf.put((byte) b);
+            buf.put((byte) a);
+        }
+    }
+
+
+    private void addBorder(float[] v, float x, float y, float sx, float sy, float cos, float sin) {
+        ByteBuffer buf = borders;
+        for (int i = 0; i < v.length; i += 2) {
+            float vx = v[i] * sx;
+            float vy = v[i + 1] * sy;
+
+            buf.putFloat(x + vx * cos - vy * sin);
+            buf.putFloat(y + vx * sin + vy * cos);
+        }
+    }
+
+
+    private static ByteBuffer grow(ByteBuffer buf) {
+        ByteBuffer tmp = Buffers.newDirectByteBuffer(buf.capacity() * 2);
+        buf.flip();
+        tmp.put(buf);
+        return tmp;
+    }
+
+
+    private static int toByte(float c) {
+        if (c <= 0)
+            return 0;
+
+        if (c >= 1)
+            return 255;
+
+        return (int) (c * 255 + 0.5f);
+    }
+}
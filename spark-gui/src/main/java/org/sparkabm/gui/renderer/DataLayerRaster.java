@@ -0,0 +1,242 @@
+package org.sparkabm.gui.renderer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+
+import org.sparkabm.math.Vector;
+import org.sparkabm.runtime.data.DataObject_Grid;
+import org.sparkabm.runtime.data.DataRow;
+
+/**
+ * Converts data layers into an image with one pixel for each cell.
+ * Values are mapped to colors through lookup tables and written directly
+ * into the pixels of a reusable image. Colors of several data layers
+ * are blended with their weights in the same pass.
+ *
+ * @author Monad
+ */
+class DataLayerRaster {
+    /* The number of colors in a lookup table */
+    private static final int LUT_SIZE = 1024;
+
+    /* The image and its pixels (pixel (x, y) is the cell (x, y)) */
+    private BufferedImage image;
+    private int[] pixels;
+
+    /* Lookup tables of blended layers (r, g, b multiplied by weights) */
+    private float[][] luts = new float[0][];
+
+    /* Lookup table of packed colors for a single layer */
+    private final int[] rgbLut = new int[LUT_SIZE];
+
+
+    /**
+     * Returns an image of the given data layers. The image is
+     * reused by next calls.
+     *
+     * @param graphics
+     * @param dataRow
+     * @return null if data is not available or sizes of data layers are different
+     */
+    public BufferedImage render(DataLayerGraphics graphics, DataRow dataRow) {
+        ArrayList<DataLayerGraphics.DataLayerInfo> layers = graphics.getDescriptors();
+        int n = layers.size();
+
+        if (n == 0)
+            return null;
+
+        // Compute the total weight
+        double total = 0;
+        for (DataLayerGraphics.DataLayerInfo info : layers) {
+            total += info.colorWeight;
+        }
+
+        if (total <= 1e-10)
+            return null;
+
+        // Get the data of layers with positive weights
+        double[][] values = new double[n][];
+        int[] strides = new int[n];
+        double[] mins = new double[n];
+        double[] scales = new double[n];
+
+        int xSize = -1, ySize = -1;
+        int count = 0;
+
+        if (luts.length < n)
+            luts = new float[n][];
+
+        for (int i = 0; i < n; i++) {
+            DataLayerGraphics.DataLayerInfo info = layers.get(i);
+            DataObject_Grid grid = dataRow.getGrid(info.dataLayerStyle.getName());
+            if (grid == null)
+                return null;
+
+            if (xSize < 0) {
+                xSize = grid.getXSize();
+                ySize = grid.getYSize();
+            }
+
+            if (grid.getXSize() != xSize || grid.getYSize() != ySize)
+                return null;
+
+            double weight = info.colorWeight / total;
+            if (weight <= 0.0)
+                continue;
+
+            // Use z = 0 for 3d grids
+            strides[count] = Math.max(grid.getZSize(), 1);
+            values[count] = grid.getFlatData();
+
+            DataLayerStyle style = info.dataLayerStyle;
+            double dv = style.getVal2() - style.getVal1();
+            if (dv < 1e-6)
+                dv = 1;
+
+            mins[count] = style.getVal1();
+            scales[count] = (LUT_SIZE - 1) / dv;
+
+            if (luts[count] == null)
+                luts[count] = new float[LUT_SIZE * 3];
+
+            createLut(style, dv, weight, luts[count]);
+            count++;
+        }
+
+        if (count == 0)
+            return null;
+
+        if (image == null || image.getWidth() != xSize || image.getHeight() != ySize) {
+            image = new BufferedImage(xSize, ySize, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        }
+
+        if (count == 1)
+            renderSingle(values[0], strides[0], mins[0], scales[0], luts[0], xSize, ySize);
+        else
+            renderBlended(values, strides, mins, scales, count, xSize, ySize);
+
+        return image;
+    }
+
+
+    /**
+     * Renders one data layer
+     */
+    private void renderSingle(double[] data, int stride, double min, double scale,
+                              float[] lut, int xSize, int ySize) {
+        int[] rgb = rgbLut;
+        for (int i = 0; i < LUT_SIZE; i++) {
+            rgb[i] = pack(lut[i * 3], lut[i * 3 + 1], lut[i * 3 + 2]);
+        }
+
+        int[] pixels = this.pixels;
+        int last = LUT_SIZE - 1;
+
+        for (int x = 0; x < xSize; x++) {
+            int pos = x * ySize * stride;
+
+            for (int y = 0, p = x; y < ySize; y++, p += xSize, pos += stride) {
+                // NaN is converted into 0
+                int index = (int) ((data[pos] - min) * scale + 0.5);
+                if (index < 0)
+                    index = 0;
+                else if (index > last)
+                    index = last;
+
+                pixels[p] = rgb[index];
+            }
+        }
+    }
+
+
+    /**
+     * Blends colors of several data layers
+     */
+    private void renderBlended(double[][] values, int[] strides, double[] mins, double[] scales,
+                               int count, int xSize, int ySize) {
+        int[] pixels = this.pixels;
+        float[][] luts = this.luts;
+        int last = LUT_SIZE - 1;
+
+        for (int x = 0; x < xSize; x++) {
+            int cell = x * ySize;
+
+            for (int y = 0, p = x; y < ySize; y++, p += xSize, cell++) {
+                float r = 0, g = 0, b = 0;
+
+                for (int k = 0; k < count; k++) {
+                    double value = values[k][cell * strides[k]];
+                    int index = (int) ((value - mins[k]) * scales[k] + 0.5);
+                    if (index < 0)
+                        index = 0;
+                    else if (index > last)
+                        index = last;
+
+                    float[] lut = luts[k];
+                    index *= 3;
+                    r += lut[index];
+                    g += lut[index + 1];
+                    b += lut[index + 2];
+                }
+
+                pixels[p] = pack(r, g, b);
+            }
+        }
+    }
+
+
+    /**
+     * Fills a lookup table with colors of the given style
+     * multiplied by the weight
+     */
+    private static void createLut(DataLayerStyle style, double dv, double weight, float[] lut) {
+        double val1 = style.getVal1();
+        Vector color1 = style.getColor1();
+        Vector color2 = style.getColor2();
+
+        // Intermediate colors
+        boolean sorted = style.sortValues();
+
+        for (int i = 0; i < LUT_SIZE; i++) {
+            double t = (double) i / (LUT_SIZE - 1);
+            double r, g, b;
+
+            if (sorted) {
+                Vector c = style.getColor(val1 + t * dv);
+                r = c.x;
+                g = c.y;
+                b = c.z;
+            } else {
+                r = color1.x + (color2.x - color1.x) * t;
+                g = color1.y + (color2.y - color1.y) * t;
+                b = color1.z + (color2.z - color1.z) * t;
+            }
+
+            lut[i * 3] = (float) (r * weight);
+            lut[i * 3 + 1] = (float) (g * weight);
+            lut[i * 3 + 2] = (float) (b * weight);
+        }
+    }
+
+
+    /**
+     * Converts color components (from 0 to 1) into an RGB value
+     * in the same way as java.awt.Color
+     */
+    private static int pack(float r, float g, float b) {
+        return (channel(r) << 16) | (channel(g) << 8) | channel(b);
+    }
+
+
+    private static int channel(float c) {
+        if (c <= 0)
+            return 0;
+
+        if (c >= 1)
+            return 255;
+
+        return (int) (c * 255 + 0.5f);
+    }
+}
@@ -4,7 +4,9 @@ import java.awt.Canvas;
 import java.awt.event.KeyEvent;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
+import java.nio.IntBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,6 +70,15 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
     private GLOffscreenAutoDrawable pbuffer;
     private int pbufferWidth, pbufferHeight;
 
+    /* Vertex arrays of agents */
+    private final AgentBatch agentBatch = new AgentBatch();
+
+    /* Image of data layers, its texture and the context of the texture */
+    private final DataLayerRaster dataLayerRaster = new DataLayerRaster();
+    private final int[] gridTexture = new int[1];
+    private int gridTextureWidth, gridTextureHeight;
+    private GLContext gridTextureContext;
+
     /**
      * Default constructor
      */
@@ -100,6 +111,14 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
             canvas.display();
     }
 
+    /**
+     * Snapshots are taken with a pbuffer
+     */
+    @Override
+    protected boolean useSnapshotService() {
+        return false;
+    }
+
     /**
      * Saves a screenshot into a file
      */
@@ -467,6 +486,10 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
         if (gridInfo.spaceIndex != spaceIndex)
             return;
 
+        // Flat data layers are drawn as one texture
+        if (!info.is3d() && renderDataLayerTexture(gl, info, data, gridInfo))
+            return;
+
         // Deal with a 3d-case
         /*
          * if (grid.getZSize() > 0) { try { grid = new DataGridZSlice(grid,
@@ -676,6 +699,75 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
          */
     }
 
+    /**
+     * Renders data layers as a texture with one texel for each cell.
+     * Linear filtering interpolates colors between centers of cells.
+     *
+     * @return false if the texture cannot be created
+     */
+    private boolean renderDataLayerTexture(GL2 gl, DataLayerGraphics info, DataRow data,
+                                           DataLayerGraphics.GridInfo gridInfo) {
+        if (!gl.isNPOTTextureAvailable())
+            return false;
+
+        BufferedImage image = dataLayerRaster.render(info, data);
+        if (image == null)
+            return false;
+
+        int w = image.getWidth();
+        int h = image.getHeight();
+        // Pixels are 0x00RRGGBB values, the row y = 0 is the first one
+        IntBuffer pixels = IntBuffer.wrap(((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+
+        if (gridTextureContext != gl.getContext()) {
+            gridTextureContext = gl.getContext();
+            gl.glGenTextures(1, gridTexture, 0);
+            gridTextureWidth = gridTextureHeight = 0;
+        }
+
+        gl.glBindTexture(GL2.GL_TEXTURE_2D, gridTexture[0]);
+
+        if (w != gridTextureWidth || h != gridTextureHeight) {
+            gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_LINEAR);
+            gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_MAG_FILTER, GL2.GL_LINEAR);
+            gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP_TO_EDGE);
+            gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP_TO_EDGE);
+            gl.glTexImage2D(GL2.GL_TEXTURE_2D, 0, GL2.GL_RGB8, w, h, 0,
+                    GL2.GL_BGRA, GL2.GL_UNSIGNED_INT_8_8_8_8_REV, pixels);
+
+            gridTextureWidth = w;
+            gridTextureHeight = h;
+        } else {
+            gl.glTexSubImage2D(GL2.GL_TEXTURE_2D, 0, 0, 0, w, h,
+                    GL2.GL_BGRA, GL2.GL_UNSIGNED_INT_8_8_8_8_REV, pixels);
+        }
+
+        float x0 = xMin;
+        float y0 = yMin;
+        float x1 = (float) (xMin + w * gridInfo.xStep);
+        float y1 = (float) (yMin + h * gridInfo.yStep);
+
+        gl.glTexEnvi(GL2.GL_TEXTURE_ENV, GL2.GL_TEXTURE_ENV_MODE, GL2.GL_REPLACE);
+        gl.glEnable(GL2.GL_TEXTURE_2D);
+
+        gl.glBegin(GL2.GL_QUADS);
+        gl.glTexCoord2f(0, 0);
+        gl.glVertex2f(x0, y0);
+        gl.glTexCoord2f(1, 0);
+        gl.glVertex2f(x1, y0);
+        gl.glTexCoord2f(1, 1);
+        gl.glVertex2f(x1, y1);
+        gl.glTexCoord2f(0, 1);
+        gl.glVertex2f(x0, y1);
+        gl.glEnd();
+
+        gl.glDisable(GL2.GL_TEXTURE_2D);
+        gl.glTexEnvi(GL2.GL_TEXTURE_ENV, GL2.GL_TEXTURE_ENV_MODE, GL2.GL_MODULATE);
+        gl.glBindTexture(GL2.GL_TEXTURE_2D, 0);
+
+        return true;
+    }
+
     /**
      * Renders all visible space links of the given type (style)
      */
@@ -690,7 +782,7 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
         int n = links.getTotalNumber();
         Vector[] ends1 = links.getEnd1();
         Vector[] ends2 = links.getEnd2();
-        Vector4d[] colors = links.getColors();
+        float[] colors = links.getColorComponents();
         int[] spaceIndices = links.getSpaceIndices();
         double[] width = links.getWidth();
 
@@ -705,14 +797,14 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
             if (spaceIndices[i] != spaceIndex)
                 continue;
 
-            Vector4d color = colors[i];
+            int k = i * 4;
 
             double x1 = end1.x, y1 = end1.y, z1 = end1.z;
             double x2 = end2.x, y2 = end2.y, z2 = end2.z;
 
             float w = (float) width[i];
             gl.glLineWidth(w);
-            gl.glColor3d(color.x, color.y, color.z);
+            gl.glColor3f(colors[k], colors[k + 1], colors[k + 2]);
 
             gl.glVertex3d(x1, y1, z1);
             gl.glVertex3d(x2, y2, z2);
@@ -886,14 +978,15 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
             return;
 
         int n = agents.getTotalNumber();
-        Vector[] positions = agents.getPositions();
+        double[] xs = agents.getXs();
+        double[] ys = agents.getYs();
         double[] radii = agents.getRadii();
-        Vector4d[] colors = agents.getColors();
+        float[] colors = agents.getColorComponents();
         int[] shapes = agents.getShapes();
         int[] spaceIndices = agents.getSpaceIndices();
         double[] rotations = agents.getRotations();
-        DataObject_SpaceAgents.ShapeInfo[] shapeInfo = agents.getShapeInfo();
-        String[] labels = agents.getLabels();
+        // Color of the current agent (for tiles and labels)
+        Vector4d color = new Vector4d();
 
         /* Parameters */
         float baseScale = agentStyle.getScaleFactor();
@@ -940,23 +1033,25 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
 
         double rad2angles = 180.0 / Math.PI;
 
+        // Agents without images are drawn from vertex arrays
+        // (the loop adds their labels only)
+        boolean batched = tiles == null;
+        if (batched) {
+            agentBatch.render(gl, agents, spaceIndex, agentStyle);
+
+            if (!agentStyle.label || bitmapFont == null)
+                n = 0;
+        }
+
         /* Iterate through all agents */
         for (int i = 0; i < n; i++) {
             if (spaceIndices[i] != spaceIndex)
                 continue;
 
-            Vector pos = positions[i];
-            Vector4d color = colors[i];
-
-            if (pos == null || color == null)
-                continue;
-
-            gl.glPushMatrix();
-            gl.glTranslated(pos.x, pos.y, 0);
-            double phi = rotations[i];
-            if (phi != 0) {
-                gl.glRotated(phi * rad2angles, 0, 0, 1);
-            }
+            double x = xs[i];
+            double y = ys[i];
+            int k = i << 2;
+            color.set(colors[k], colors[k + 1], colors[k + 2], colors[k + 3]);
 
             // Compute the scale factor
             float scale = baseScale;
@@ -964,7 +1059,16 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
             if (modulateSize)
                 scale *= realSize;
 
-            boolean drawShape = true;
+            boolean drawShape = !batched;
+
+            if (!batched) {
+                gl.glPushMatrix();
+                gl.glTranslated(x, y, 0);
+                double phi = rotations[i];
+                if (phi != 0) {
+                    gl.glRotated(phi * rad2angles, 0, 0, 1);
+                }
+            }
 
             // Render a picture first
             if (tiles != null) {
@@ -977,12 +1081,13 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
             if (drawShape) {
                 /* Usual rendering */
                 if (agentStyle.transparent)
-                    gl.glColor4d(color.x, color.y, color.z, agentStyle.getTransparencyCoefficient());
+                    gl.glColor4f(colors[k], colors[k + 1], colors[k + 2], agentStyle.getTransparencyCoefficient());
                 else
-                    gl.glColor3d(color.x, color.y, color.z);
+                    gl.glColor3f(colors[k], colors[k + 1], colors[k + 2]);
 
-                if (shapeInfo[i] != null) {
-                    drawShape(gl, realSize, shapeInfo[i], agentStyle.border);
+                DataObject_SpaceAgents.ShapeInfo shapeInfo = agents.getShapeInfo(i);
+                if (shapeInfo != null) {
+                    drawShape(gl, realSize, shapeInfo, agentStyle.border);
                 } else {
                     gl.glScalef(realSize, realSize, realSize);
 
@@ -1005,10 +1110,10 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
 
             // Render label
             if (agentStyle.label && bitmapFont != null) {
-                String label = labels[i];
+                String label = agents.getLabel(i);
                 if (label != null) {
-                    labelRect.x = label_dx + (float) pos.x;
-                    labelRect.y = label_dy + (float) pos.y;
+                    labelRect.x = label_dx + (float) x;
+                    labelRect.y = label_dy + (float) y;
                     labelRect.width = labelWidth;
                     labelRect.height = labelHeight;
 
@@ -1030,7 +1135,8 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
                 }
             }
 
-            gl.glPopMatrix();
+            if (!batched)
+                gl.glPopMatrix();
         }
 
         // Disable the stencil test
@@ -1057,9 +1163,11 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
 
         // Get data of agents
         int n = agents.getTotalNumber();
-        Vector[] positions = agents.getPositions();
+        double[] xs = agents.getXs();
+        double[] ys = agents.getYs();
+        double[] zs = agents.getZs();
         double[] radii = agents.getRadii();
-        Vector4d[] colors = agents.getColors();
+        float[] colors = agents.getColorComponents();
         int[] shapes = agents.getShapes();
         int[] spaceIndices = agents.getSpaceIndices();
 
@@ -1068,23 +1176,19 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
             if (spaceIndices[i] != spaceIndex)
                 continue;
 
-            Vector pos = positions[i];
-            Vector4d color = colors[i];
-
-            if (pos == null || color == null)
-                continue;
+            int k = i << 2;
 
             // Save world matrix
             gl.glPushMatrix();
-            gl.glTranslated(pos.x, pos.y, pos.z);
+            gl.glTranslated(xs[i], ys[i], zs[i]);
 
             float scale = (float) radii[i];
             gl.glScalef(scale, scale, scale);
 
             if (agentStyle.transparent)
-                gl.glColor4d(color.x, color.y, color.z, 0.5);
+                gl.glColor4f(colors[k], colors[k + 1], colors[k + 2], 0.5f);
             else
-                gl.glColor3d(color.x, color.y, color.z);
+                gl.glColor3f(colors[k], colors[k + 1], colors[k + 2]);
 
             switch (shapes[i]) {
                 // case SpaceAgent.CIRCLE:
@@ -1119,9 +1223,11 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
             return;
 
         int n = agents.getTotalNumber();
-        Vector[] positions = agents.getPositions();
+        double[] xs = agents.getXs();
+        double[] ys = agents.getYs();
+        double[] zs = agents.getZs();
         double[] radii = agents.getRadii();
-        Vector4d[] colors = agents.getColors();
+        float[] colors = agents.getColorComponents();
         int[] shapes = agents.getShapes();
         int[] spaceIndices = agents.getSpaceIndices();
 
@@ -1167,20 +1273,16 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
             if (spaceIndices[i] != spaceIndex)
                 continue;
 
-            Vector pos = positions[i];
-            Vector4d color = colors[i];
-
-            if (pos == null || color == null)
-                continue;
+            int k = i << 2;
 
             // Compute the distance between the agent and the plane
-            double dist = Math.abs(pos.z - zPlane);
+            double dist = Math.abs(zs[i] - zPlane);
             double r = radii[i];
             if (dist >= r - 1e-6)
                 continue;
 
             gl.glPushMatrix();
-            gl.glTranslated(pos.x, pos.y, 0);
+            gl.glTranslated(xs[i], ys[i], 0);
             float scale = (float) Math.sqrt(r * r - dist * dist);
             gl.glScalef(scale, scale, scale);
 
@@ -1200,9 +1302,9 @@ public class JOGLRenderer extends Renderer implements GLEventListener {
 			} else {*/
             /* Usual rendering */
             if (agentStyle.transparent)
-                gl.glColor4d(color.x, color.y, color.z, 0.5);
+                gl.glColor4f(colors[k], colors[k + 1], colors[k + 2], 0.5f);
             else
-                gl.glColor3d(color.x, color.y, color.z);
+                gl.glColor3f(colors[k], colors[k + 1], colors[k + 2]);
             switch (shapes[i]) {
                 // case SpaceAgent.CIRCLE:
                 case 1:
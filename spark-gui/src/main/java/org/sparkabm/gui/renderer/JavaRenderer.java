@@ -30,7 +30,6 @@ import org.sparkabm.runtime.data.DataObject_Spaces;
 import org.sparkabm.runtime.data.DataRow;
 import org.sparkabm.gui.renderer.images.TileManager;
 import org.sparkabm.math.Vector;
-import org.sparkabm.math.Vector4d;
 
 /**
  * Render using Java2d
@@ -52,6 +51,9 @@ public class JavaRenderer extends Renderer {
     /* Graphics transformation */
     private AffineTransform transform = new AffineTransform();
 
+    /* Image of data layers */
+    private final DataLayerRaster dataLayerRaster = new DataLayerRaster();
+
     /**
      * Internal constructor
      */
@@ -92,24 +94,38 @@ public class JavaRenderer extends Renderer {
             return;
         }
 
+        BufferedImage image = renderImage(data, w, h);
+
+        try {
+            File out = new File(dir, fname + ".png");
+            ImageIO.write(image, "png", out);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "exception", e);
+        }
+    }
+
+    /**
+     * Draws the given data into a new image
+     *
+     * @param data
+     * @param w
+     * @param h
+     * @return
+     */
+    BufferedImage renderImage(DataRow data, int w, int h) {
         BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
         Graphics2D g = image.createGraphics();
 
         DataRow tmp = this.data;
         this.data = data;
-        display(g);
+        display(g, w, h);
         this.data = tmp;
 
         g.dispose();
-
-        try {
-            File out = new File(dir, fname + ".png");
-            ImageIO.write(image, "png", out);
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "exception", e);
-        }
+        return image;
     }
 
+
     /**
      * Reshape method
      *
@@ -231,29 +247,27 @@ public class JavaRenderer extends Renderer {
         if (gridInfo.spaceIndex != spaceIndex)
             return;
 
-        int xSize = gridInfo.xSize;
-        int ySize = gridInfo.ySize;
-
         double xStep = gridInfo.xStep;
         double yStep = gridInfo.yStep;
 
-        Vector[][] colors = info.getColors(data);
-        if (colors == null)
-            return;
+        // Snapshots may be rendered in another thread
+        synchronized (dataLayerRaster) {
+            BufferedImage image = dataLayerRaster.render(info, data);
+            if (image == null)
+                return;
 
-        Rectangle2D.Double rect = new Rectangle2D.Double(0, 0, xStep, yStep);
-        double x = xMin;
-        double y = yMin;
-        for (int i = 0; i < xSize; i++, x += xStep) {
-            y = yMin;
-            for (int j = 0; j < ySize; j++, y += yStep) {
-                rect.x = x;
-                rect.y = y;
-                g.setColor(colors[i][j].toAWTColor());
-                g.fill(rect);
-            }
-        }
+            // Each pixel of the image is one cell
+            AffineTransform cells = new AffineTransform(xStep, 0, 0, yStep, xMin, yMin);
 
+            Object interpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+            g.drawImage(image, cells, null);
+
+            if (interpolation != null)
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
     }
 
     /**
@@ -272,7 +286,7 @@ public class JavaRenderer extends Renderer {
         int n = links.getTotalNumber();
         Vector[] ends1 = links.getEnd1();
         Vector[] ends2 = links.getEnd2();
-        Vector4d[] colors = links.getColors();
+        float[] colors = links.getColorComponents();
         int[] spaceIndices = links.getSpaceIndices();
         double[] width = links.getWidth();
 
@@ -286,14 +300,12 @@ public class JavaRenderer extends Renderer {
             if (spaceIndices[i] != spaceIndex)
                 continue;
 
-            Vector4d color = colors[i];
-
             double x1 = end1.x, y1 = end1.y;
             double x2 = end2.x, y2 = end2.y;
 
             float w = (float) width[i];
             g.setStroke(new BasicStroke(w));
-            g.setColor(color.toAWTColor());
+            g.setColor(toAWTColor(colors, i * 4));
 
             Shape s = new Line2D.Double(x1, y1, x2, y2);
             g.draw(s);
@@ -384,6 +396,22 @@ public class JavaRenderer extends Renderer {
     }
 
 
+    /**
+     * Creates an AWT color from the given components (r, g, b at k, k + 1, k + 2)
+     */
+    private static Color toAWTColor(float[] colors, int k) {
+        return new Color(clamp(colors[k]), clamp(colors[k + 1]), clamp(colors[k + 2]));
+    }
+
+
+    /**
+     * Clamps a color component into [0, 1]
+     */
+    private static float clamp(float c) {
+        return c < 0 ? 0 : (c > 1 ? 1 : c);
+    }
+
+
     /**
      * Renders agents
      */
@@ -399,14 +427,13 @@ public class JavaRenderer extends Renderer {
 
         // Get parameters
         int n = agents.getTotalNumber();
-        Vector[] positions = agents.getPositions();
+        double[] xs = agents.getXs();
+        double[] ys = agents.getYs();
         double[] radii = agents.getRadii();
-        Vector4d[] colors = agents.getColors();
+        float[] colors = agents.getColorComponents();
         double[] rotations = agents.getRotations();
-        DataObject_SpaceAgents.ShapeInfo[] shapeInfo = agents.getShapeInfo();
         int[] shapes = agents.getShapes();
         int[] spaceIndices = agents.getSpaceIndices();
-        String[] labels = agents.getLabels();
 
         // Special composite
         Composite originalComposite = null;
@@ -438,18 +465,12 @@ public class JavaRenderer extends Renderer {
             if (spaceIndices[i] != spaceIndex)
                 continue;
 
-            Vector pos = positions[i];
-            Vector4d color = colors[i];
-
-            if (pos == null || color == null)
-                continue;
-
             double r = radii[i];
             double r2 = r * 2.0;
-            double x = pos.x;
-            double y = pos.y;
+            double x = xs[i];
+            double y = ys[i];
 
-            g.setColor(color.toAWTColor());
+            g.setColor(toAWTColor(colors, i << 2));
 
             boolean drawShape = true;
 
@@ -463,11 +484,12 @@ public class JavaRenderer extends Renderer {
 
             // Render a geometric shape
             if (drawShape) {
-                if (shapeInfo[i] != null) {
+                DataObject_SpaceAgents.ShapeInfo shapeInfo = agents.getShapeInfo(i);
+                if (shapeInfo != null) {
                     AffineTransform oldTr = g.getTransform();
                     g.translate(x, y);
                     g.rotate(rotations[i]);
-                    drawShape(g, shapeInfo[i], agentStyle.border);
+                    drawShape(g, shapeInfo, agentStyle.border);
                     g.setTransform(oldTr);
                 } else if (r > 0) {
                     Shape s = null;
@@ -499,7 +521,7 @@ public class JavaRenderer extends Renderer {
 
             // Draw labels
             if (agentStyle.label) {
-                String label = labels[i];
+                String label = agents.getLabel(i);
                 if (label != null) {
                     g.setColor(labelColor);
                     AffineTransform tr = g.getTransform();
@@ -533,6 +555,17 @@ public class JavaRenderer extends Renderer {
      * @param g
      */
     protected void display(Graphics2D g) {
+        if (canvas != null)
+            display(g, canvas.getWidth(), canvas.getHeight());
+        else
+            display(g, 800, 800);
+    }
+
+
+    /**
+     * Displays the data in the area of the given size
+     */
+    private void display(Graphics2D g, int width, int height) {
         if (data == null)
             return;
 
@@ -551,10 +584,7 @@ public class JavaRenderer extends Renderer {
         int spaceIndex = spaces.getIndices()[index];
 
         // TODO: call it when necessary only
-        if (canvas != null)
-            reshape(0, 0, canvas.getWidth(), canvas.getHeight());
-        else
-            reshape(0, 0, 800, 800);
+        reshape(0, 0, width, height);
 
         // Apply transformations
         g.transform(transform);
@@ -61,6 +61,9 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
     /* Prefix for file names of (automatic) snapshots */
     private String snapshotNamePrefix;
 
+    /* Java2D renderer for the snapshot service (used by the render thread only) */
+    private JavaRenderer snapshotRenderer;
+
 
     /***** Style parameters *****/
 
@@ -140,7 +143,8 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
                 if (!saveSnapshotsFlag)
                     return;
 
-                takeSnapshot(row, snapshotNamePrefix);
+                // Automatic snapshots are dropped if the snapshot queue is full
+                takeSnapshot(row, snapshotNamePrefix, false);
             }
         }, "render-snapshot");
 
@@ -225,36 +229,122 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
     protected abstract void saveSnapshot(File dir, String name, DataRow data);
 
 
+    /**
+     * Returns true if snapshots are drawn by the snapshot service with
+     * the Java2D renderer. Otherwise, snapshots are saved by saveSnapshot()
+     * on the awt event queue
+     */
+    protected boolean useSnapshotService() {
+        return true;
+    }
+
+
+    /**
+     * Returns a Java2D renderer with styles of this renderer.
+     * Called from the render thread of the snapshot service
+     * (all methods which change styles are synchronized)
+     */
+    JavaRenderer getSnapshotRenderer() {
+        if (snapshotRenderer == null)
+            snapshotRenderer = new JavaRenderer(0, true);
+
+        JavaRenderer r = snapshotRenderer;
+
+        synchronized (this) {
+            r.selectedSpace = selectedSpace;
+            r.selectedDataLayer = selectedDataLayer;
+            r.globalDataLayerStyles = globalDataLayerStyles;
+
+            r.agentStyles.clear();
+            r.agentStyles.addAll(agentStyles);
+            r.dataLayerStyles.clear();
+            r.dataLayerStyles.putAll(dataLayerStyles);
+
+            r.dx = dx;
+            r.dy = dy;
+            r.zoom = zoom;
+            r.view_rotx = view_rotx;
+            r.view_roty = view_roty;
+            r.rendererName = rendererName;
+        }
+
+        return r;
+    }
+
+
+    /**
+     * Blocks until all snapshots submitted to the snapshot service are saved
+     */
+    public static void waitForSnapshots() {
+        SnapshotService.waitForAll();
+    }
+
+
     /**
      * Saves a snapshot of the current data to an automatically generated file
      */
-    public synchronized final void takeSnapshot(final String prefix) {
-        takeSnapshot(data, prefix);
+    public final void takeSnapshot(final String prefix) {
+        DataRow row;
+        synchronized (dataLock) {
+            row = data;
+        }
+
+        takeSnapshot(row, prefix, true);
     }
 
 
     /**
      * Saves a snapshot to an automatically generated file
      */
-    public synchronized final void takeSnapshot(final DataRow row, final String prefix) {
+    public final void takeSnapshot(final DataRow row, final String prefix) {
+        takeSnapshot(row, prefix, true);
+    }
+
+
+    /**
+     * Saves a snapshot to an automatically generated file.
+     * If wait == false and the snapshot queue is full, then the snapshot is dropped
+     */
+    private void takeSnapshot(final DataRow row, final String prefix, boolean wait) {
+        if (row == null)
+            return;
+
         final File dir = Coordinator.getInstance().getOutputDir();
 
-        EventQueue.invokeLater(new Runnable() {
-            public void run() {
-                if (row == null)
-                    return;
+        StringBuilder str = new StringBuilder((prefix != null ? prefix : ""));
+        str.append(rendererName != null && !rendererName.isEmpty() ? rendererName : "pic");
+        str.append("-");
 
-                StringBuilder name = new StringBuilder((prefix != null ? prefix : ""));
-                name.append(rendererName != null && !rendererName.isEmpty() ? rendererName : "pic");
-                name.append("-");
+        String time = String.valueOf(row.getTime().getTick());
+        for (int i = time.length(); i < 4; i++)
+            str.append("0");
 
-                String time = String.valueOf(row.getTime().getTick());
-                for (int i = time.length(); i < 4; i++)
-                    name.append("0");
+        str.append(time);
+        final String name = str.toString();
 
-                name.append(time);
+        if (useSnapshotService()) {
+            // Default values of width and height
+            int w = 800;
+            int h = 800;
 
-                saveSnapshot(dir, name.toString(), row);
+            Canvas canvas = getCanvas();
+            if (canvas != null) {
+                w = canvas.getWidth();
+                h = canvas.getHeight();
+            }
+
+            if (w <= 0 || h <= 0) {
+                logger.warning("Width or height is negative");
+                return;
+            }
+
+            SnapshotService.getInstance().submit(this, row, new File(dir, name + ".png"), w, h, wait);
+            return;
+        }
+
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                saveSnapshot(dir, name, row);
             }
         });
     }
@@ -395,7 +485,7 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
     /**
      * Sets the active space
      */
-    public void setSpace(SpaceStyle style) {
+    public synchronized void setSpace(SpaceStyle style) {
         if (style == null) {
             selectedSpace = null;
         } else {
@@ -445,7 +535,7 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
     /**
      * Sets an active data layer
      */
-    public void setDataLayer(DataLayerGraphics dataLayerGraphics) {
+    public synchronized void setDataLayer(DataLayerGraphics dataLayerGraphics) {
         this.selectedDataLayer = dataLayerGraphics;
     }
 
@@ -453,7 +543,7 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
     /**
      * Adds a new agent style
      */
-    public void addAgentStyle(AgentStyle style) {
+    public synchronized void addAgentStyle(AgentStyle style) {
         agentStyles.add(style);
     }
 
@@ -461,7 +551,7 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
     /**
      * Sets a reference to all data layer styles in a model
      */
-    public void setGlobalDataLayerStyles(HashMap<String, DataLayerStyle> globalStyles) {
+    public synchronized void setGlobalDataLayerStyles(HashMap<String, DataLayerStyle> globalStyles) {
         globalDataLayerStyles = globalStyles;
     }
 
@@ -469,7 +559,7 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
     /**
      * Sets data layer styles
      */
-    private void setDataLayerStyles(HashMap<String, DataLayerStyle> styles) {
+    private synchronized void setDataLayerStyles(HashMap<String, DataLayerStyle> styles) {
         dataLayerStyles.clear();
         selectedDataLayer = null;
 
@@ -505,7 +595,7 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
     /**
      * Changes the priority of agent styles
      */
-    public void swapAgentStyles(AgentStyle style1, AgentStyle style2) {
+    public synchronized void swapAgentStyles(AgentStyle style1, AgentStyle style2) {
         if (style1 == style2) return;
 
         int i1 = agentStyles.indexOf(style1);
@@ -541,7 +631,8 @@ public abstract class Renderer implements KeyListener, IDataConsumer, MouseWheel
                                           HashMap<String, String> agentTypesAndNames,
                                           File modelPath, boolean noGUI) {
         Renderer renderer = null;
-        if (renderType == Renderer.JOGL_RENDERER) {
+        // OpenGL is not available without a display
+        if (renderType == Renderer.JOGL_RENDERER && !noGUI) {
             try {
                 renderer = new JOGLRenderer(interval);
             } catch (Exception e) {
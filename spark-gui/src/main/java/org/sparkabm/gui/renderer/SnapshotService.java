@@ -0,0 +1,222 @@
+package org.sparkabm.gui.renderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import org.sparkabm.runtime.data.DataRow;
+
+/**
+ * Saves snapshots without blocking the simulation. Requests are put into
+ * a bounded queue, a render thread draws them with the Java2D renderer
+ * (no display or OpenGL is required) and PNG files are encoded by a pool
+ * of worker threads.
+ *
+ * @author Monad
+ */
+class SnapshotService {
+    private static final Logger logger = Logger.getLogger(SnapshotService.class.getName());
+
+    /* The maximum number of snapshots waiting for rendering */
+    private static final int QUEUE_SIZE = Math.max(Integer.getInteger("spark.snapshot.queue-size", 32), 1);
+
+    /* The number of PNG encoding threads */
+    private static final int ENCODER_THREADS = Math.max(Integer.getInteger("spark.snapshot.threads",
+            Math.min(Runtime.getRuntime().availableProcessors() - 1, 4)), 1);
+
+    private static SnapshotService instance;
+
+    /* Snapshots waiting for rendering */
+    private final BlockingQueue<Job> queue = new ArrayBlockingQueue<Job>(QUEUE_SIZE);
+
+    /* PNG encoders (the render thread encodes images itself when all encoders are busy) */
+    private final ThreadPoolExecutor encoders;
+
+    /* The number of submitted snapshots which are not saved yet */
+    private int pending;
+
+    /* The number of dropped snapshots */
+    private long dropped;
+
+
+    /**
+     * A snapshot request
+     */
+    private static class Job {
+        final Renderer renderer;
+        final DataRow row;
+        final File file;
+        final int width, height;
+
+        Job(Renderer renderer, DataRow row, File file, int width, int height) {
+            this.renderer = renderer;
+            this.row = row;
+            this.file = file;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+
+    /**
+     * Returns the service (threads are started by the first call)
+     *
+     * @return
+     */
+    static synchronized SnapshotService getInstance() {
+        if (instance == null)
+            instance = new SnapshotService();
+
+        return instance;
+    }
+
+
+    /**
+     * Blocks until all submitted snapshots are saved
+     */
+    static void waitForAll() {
+        SnapshotService service;
+        synchronized (SnapshotService.class) {
+            service = instance;
+        }
+
+        if (service == null)
+            return;
+
+        synchronized (service) {
+            try {
+                while (service.pending > 0)
+                    service.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private SnapshotService() {
+        encoders = new ThreadPoolExecutor(ENCODER_THREADS, ENCODER_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(ENCODER_THREADS * 2), daemonFactory("snapshot-encoder"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        Thread renderThread = daemonFactory("snapshot-render").newThread(new Runnable() {
+            public void run() {
+                renderLoop();
+            }
+        });
+
+        renderThread.start();
+        logger.info("Snapshot service: queue size = " + QUEUE_SIZE + ", encoders = " + ENCODER_THREADS);
+    }
+
+
+    private static ThreadFactory daemonFactory(final String name) {
+        return new ThreadFactory() {
+            private int counter;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + (counter++));
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+
+    /**
+     * Submits a snapshot of the given data
+     *
+     * @param renderer the renderer whose styles are used
+     * @param row
+     * @param file     a PNG file
+     * @param width
+     * @param height
+     * @param wait     if true then waits for a free place in the queue,
+     *                 otherwise the snapshot is dropped when the queue is full
+     * @return false if the snapshot is dropped
+     */
+    boolean submit(Renderer renderer, DataRow row, File file, int width, int height, boolean wait) {
+        Job job = new Job(renderer, row, file, width, height);
+
+        synchronized (this) {
+            pending++;
+        }
+
+        boolean added;
+        if (wait) {
+            try {
+                queue.put(job);
+                added = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                added = false;
+            }
+        } else {
+            added = queue.offer(job);
+        }
+
+        if (!added) {
+            long n;
+            synchronized (this) {
+                n = ++dropped;
+            }
+
+            done();
+            logger.warning("Snapshot queue is full: " + file.getName() + " is dropped (" + n + " dropped)");
+        }
+
+        return added;
+    }
+
+
+    /**
+     * Renders queued snapshots and passes images to encoders
+     */
+    private void renderLoop() {
+        while (true) {
+            final Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                JavaRenderer r = job.renderer.getSnapshotRenderer();
+                final BufferedImage image = r.renderImage(job.row, job.width, job.height);
+
+                encoders.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            ImageIO.write(image, "png", job.file);
+                        } catch (Throwable e) {
+                            logger.log(Level.SEVERE, "Cannot save " + job.file, e);
+                        } finally {
+                            done();
+                        }
+                    }
+                });
+            } catch (Throwable e) {
+                // Errors (e.g. OutOfMemoryError for a large image) do not stop the render thread.
+                // The encoder task never throws, so done() is called once
+                logger.log(Level.SEVERE, "Cannot render " + job.file, e);
+                done();
+            }
+        }
+    }
+
+
+    private synchronized void done() {
+        pending--;
+        if (pending == 0)
+            notifyAll();
+    }
+}
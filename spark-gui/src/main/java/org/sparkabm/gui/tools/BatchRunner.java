@@ -16,6 +16,7 @@ import org.sparkabm.gui.batchrun.BatchRunController;
 import org.sparkabm.gui.batchrun.BatchRunManager;
 import org.sparkabm.gui.batchrun.ParameterSweep;
 import org.sparkabm.gui.data.DataReceiver;
+import org.sparkabm.gui.renderer.Renderer;
 import org.sparkabm.runtime.internal.manager.ModelManager_Basic;
 import org.sparkabm.utils.XmlDocUtils;
 
@@ -110,6 +111,8 @@ class Batch {
     private final int dataLayerPrecision;
     private final boolean dataLayerOneFile;
     private final String[] dataLayerNames;
+    private final boolean dataLayerBinary;
+    private final boolean dataLayerDouble;
 
     private final Object lock = new Object();
 
@@ -193,6 +196,8 @@ class Batch {
             dataLayerInterval = XmlDocUtils.getIntegerValue(grids, "interval", 1);
             dataLayerPrecision = XmlDocUtils.getIntegerValue(grids, "precision", 5);
             dataLayerOneFile = XmlDocUtils.getBooleanValue(grids, "one-file", true);
+            dataLayerBinary = XmlDocUtils.getValue(grids, "format", "csv").trim().equalsIgnoreCase("binary");
+            dataLayerDouble = XmlDocUtils.getValue(grids, "values", "float").trim().equalsIgnoreCase("double");
 
             String text = grids.getTextContent();
             String[] tmp = text.split(",");
@@ -206,6 +211,8 @@ class Batch {
             dataLayerPrecision = 5;
             dataLayerOneFile = true;
             dataLayerNames = new String[0];
+            dataLayerBinary = false;
+            dataLayerDouble = false;
         }
     }
 
@@ -235,6 +242,7 @@ class Batch {
         // Set up data layers
         batchRunController.setDataLayers(dataLayerNames,
                 dataLayerInterval, dataLayerPrecision, dataLayerOneFile);
+        batchRunController.setDataLayerFormat(dataLayerBinary, dataLayerDouble);
 
         // Change parameters before setup method is called
         sweep.setInitialValuesAndAdvance();
@@ -305,6 +313,10 @@ public class BatchRunner {
 //			BasicConfigurator.configure();
 //		}
 
+        // Snapshots are rendered without a display
+        if (System.getProperty("java.awt.headless") == null)
+            System.setProperty("java.awt.headless", "true");
+
         try {
             // Initialize main objects
             ModelManager_Basic manager = new ModelManager_Basic();
@@ -346,6 +358,9 @@ public class BatchRunner {
         } catch (Exception e) {
             Log.error(e);
         } finally {
+            // Save all queued snapshots
+            Renderer.waitForSnapshots();
+
             // FIXME: make a good exit without sleeping for finishing the work
             Thread.sleep(1000);
             System.exit(0);
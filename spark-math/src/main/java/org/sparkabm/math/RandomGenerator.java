@@ -0,0 +1,169 @@
+package org.sparkabm.math;
+
+import cern.jet.random.Normal;
+import cern.jet.random.engine.MersenneTwister;
+import cern.jet.random.engine.RandomEngine;
+
+import java.util.logging.Logger;
+
+/**
+ * Random number generators of one simulation. The static methods
+ * of RandomHelper use the generator bound to the current thread
+ * (or the default generator if no generator is bound), so several
+ * simulations with different generators can run in one JVM.
+ *
+ * @see org.sparkabm.math.RandomHelper#bindGenerator(RandomGenerator)
+ */
+public final class RandomGenerator {
+    // Logger
+    private static final Logger logger = Logger.getLogger(RandomGenerator.class.getName());
+
+    // Random seed
+    private long rngSeed;
+    // If true then the current time is used for seeding a generator
+    private boolean timeSeed = true;
+
+    // If true then the operations are synchronized
+    boolean synchronizedFlag = false;
+
+    // The random number generators
+    private RandomEngine generator1;
+    private RandomEngine generator2;
+
+    RandomEngine generator0;
+
+
+    // The generators for normally distributed numbers
+    private Normal normalGenerator1;
+    private Normal normalGenerator2;
+
+    Normal normalGenerator0;
+
+    // Independent streams derived from the seed (for the parallel mode)
+    private volatile RandomStream[] streams = new RandomStream[0];
+
+
+    /**
+     * Creates generators seeded with the current time
+     */
+    public RandomGenerator() {
+        rngSeed = System.currentTimeMillis();
+        generator1 = new MersenneTwister((int) rngSeed);
+        generator2 = new MersenneTwister((int) rngSeed);
+        normalGenerator1 = new Normal(0.0, 1.0, generator1);
+        normalGenerator2 = new Normal(0.0, 1.0, generator2);
+
+        generator0 = generator1;
+        normalGenerator0 = normalGenerator1;
+    }
+
+
+    /**
+     * Sets the time seed
+     */
+    public synchronized void setTimeSeed() {
+        timeSeed = true;
+    }
+
+
+    /**
+     * Returns true if the time seed is used
+     *
+     * @return
+     */
+    public synchronized boolean isTimeSeed() {
+        return timeSeed;
+    }
+
+
+    /**
+     * Sets the random generator's seed. The seed is used
+     * after the next reset.
+     *
+     * @param seed
+     */
+    public synchronized void setSeed(int seed) {
+        timeSeed = false;
+        rngSeed = seed;
+    }
+
+
+    /**
+     * Returns the seed of the current random generator
+     *
+     * @return
+     */
+    public synchronized long getSeed() {
+        return rngSeed;
+    }
+
+
+    /**
+     * Resets the random generators
+     */
+    public synchronized void reset(boolean synchronizedFlag) {
+        if (timeSeed) {
+            rngSeed = System.currentTimeMillis();
+        }
+
+        logger.finest("Generators are resetted: " + (int) rngSeed);
+
+        this.synchronizedFlag = synchronizedFlag;
+        generator1 = new MersenneTwister((int) rngSeed);
+        generator2 = new MersenneTwister((int) rngSeed);
+        normalGenerator1 = new Normal(0.0, 1.0, generator1);
+        normalGenerator2 = new Normal(0.0, 1.0, generator2);
+
+        generator0 = generator1;
+        normalGenerator0 = normalGenerator1;
+
+        streams = new RandomStream[0];
+    }
+
+
+    /**
+     * Returns a stream with the given index
+     *
+     * @param index a non-negative index of a stream
+     * @return
+     * @see org.sparkabm.math.RandomHelper#getStream(int)
+     */
+    public RandomStream getStream(int index) {
+        RandomStream[] tmp = streams;
+        if (index < tmp.length && tmp[index] != null)
+            return tmp[index];
+
+        synchronized (this) {
+            tmp = streams;
+            if (index >= tmp.length) {
+                RandomStream[] newStreams = new RandomStream[Math.max(index + 1, tmp.length * 2)];
+                System.arraycopy(tmp, 0, newStreams, 0, tmp.length);
+                tmp = newStreams;
+            }
+
+            if (tmp[index] == null)
+                tmp[index] = new RandomStream(RandomStream.deriveSeed(rngSeed, index));
+
+            streams = tmp;
+            return tmp[index];
+        }
+    }
+
+
+    /**
+     * Activates the first generator
+     */
+    public synchronized void usePrimaryGenerator() {
+        generator0 = generator1;
+        normalGenerator0 = normalGenerator1;
+    }
+
+
+    /**
+     * Activates the second generator
+     */
+    public synchronized void useSecondaryGenerator() {
+        generator0 = generator2;
+        normalGenerator0 = normalGenerator2;
+    }
+}
@@ -6,51 +6,68 @@
 
 package org.sparkabm.math;
 
-import cern.jet.random.Normal;
-import cern.jet.random.engine.MersenneTwister;
-import cern.jet.random.engine.RandomEngine;
-
 import java.util.logging.Logger;
 
 /**
- * Auxiliary class for working with random numbers
+ * Auxiliary class for working with random numbers.
+ * All methods use the generator bound to the current thread
+ * (see bindGenerator()) or the default generator.
  */
 public class RandomHelper {
     // Logger
     private static final Logger logger = Logger.getLogger(RandomHelper.class.getName());
 
-    // Random seed
-    private static long rngSeed;
-    // If true then the current time is used for seeding a generator
-    private static boolean timeSeed = true;
+    // The generator which is used when no generator is bound to a thread
+    private static final RandomGenerator defaultGenerator;
 
-    // If true then the operations are synchronized
-    private static boolean synchronizedFlag = false;
+    // A generator bound to the current thread
+    private static final ThreadLocal<RandomGenerator> threadGenerator = new ThreadLocal<RandomGenerator>();
+    // True after a generator was bound to some thread
+    private static volatile boolean threadGenerators = false;
 
-    // The random number generators
-    private static RandomEngine generator1;
-    private static RandomEngine generator2;
+    // A stream bound to the current thread
+    private static final ThreadLocal<RandomStream> threadStream = new ThreadLocal<RandomStream>();
 
-    private static RandomEngine generator0;
 
+    static {
+        logger.finest("Initializing RandomHelper class");
+        defaultGenerator = new RandomGenerator();
+    }
 
-    // The generators for normally distributed numbers
-    private static Normal normalGenerator1;
-    private static Normal normalGenerator2;
 
-    private static Normal normalGenerator0;
+    /**
+     * Returns the generator of the current thread
+     *
+     * @return
+     */
+    public static RandomGenerator getGenerator() {
+        if (threadGenerators) {
+            RandomGenerator generator = threadGenerator.get();
+            if (generator != null)
+                return generator;
+        }
 
+        return defaultGenerator;
+    }
 
-    static {
-        logger.finest("Initializing RandomHelper class");
-        rngSeed = System.currentTimeMillis();
-        generator1 = new MersenneTwister((int) rngSeed);
-        generator2 = new MersenneTwister((int) rngSeed);
-        normalGenerator1 = new Normal(0.0, 1.0, generator1);
-        normalGenerator2 = new Normal(0.0, 1.0, generator2);
 
-        generator0 = generator1;
-        normalGenerator0 = normalGenerator1;
+    /**
+     * Binds the generator to the current thread. All static methods
+     * called in the current thread use the bound generator.
+     *
+     * @param generator a generator to bind (null removes the current generator)
+     * @return the previously bound generator
+     */
+    public static RandomGenerator bindGenerator(RandomGenerator generator) {
+        RandomGenerator prev = threadGenerator.get();
+        if (generator == null) {
+            threadGenerator.remove();
+        } else {
+            threadGenerators = true;
+            threadGenerator.set(generator);
+        }
+
+        return prev;
     }
 
 
@@ -58,7 +75,7 @@ public class RandomHelper {
      * Sets the time seed
      */
     public static void setTimeSeed() {
-        timeSeed = true;
+        getGenerator().setTimeSeed();
     }
 
 
@@ -68,7 +85,7 @@ public class RandomHelper {
      * @return
      */
     public static boolean isTimeSeed() {
-        return timeSeed;
+        return getGenerator().isTimeSeed();
     }
 
 
@@ -78,8 +95,7 @@ public class RandomHelper {
      * @param seed
      */
     public static void setSeed(int seed) {
-        timeSeed = false;
-        rngSeed = seed;
+        getGenerator().setSeed(seed);
     }
 
 
@@ -87,20 +103,40 @@ public class RandomHelper {
      * Resets the random generators
      */
     public static void reset(boolean synchronizedFlag) {
-        if (timeSeed) {
-            rngSeed = System.currentTimeMillis();
-        }
+        getGenerator().reset(synchronizedFlag);
+    }
 
-        logger.finest("Generators are resetted: " + (int) rngSeed);
 
-        RandomHelper.synchronizedFlag = synchronizedFlag;
-        generator1 = new MersenneTwister((int) rngSeed);
-        generator2 = new MersenneTwister((int) rngSeed);
-        normalGenerator1 = new Normal(0.0, 1.0, generator1);
-        normalGenerator2 = new Normal(0.0, 1.0, generator2);
+    /**
+     * Returns a stream with the given index. Streams are derived
+     * from the current seed, so the same seed and the same index always
+     * give the same sequence of numbers. All streams are recreated when
+     * the generators are reset.
+     *
+     * @param index a non-negative index of a stream
+     * @return
+     */
+    public static RandomStream getStream(int index) {
+        return getGenerator().getStream(index);
+    }
 
-        generator0 = generator1;
-        normalGenerator0 = normalGenerator1;
+
+    /**
+     * Binds the stream to the current thread. In the parallel mode,
+     * all random numbers in the current thread are taken from the bound
+     * stream without any synchronization.
+     *
+     * @param stream a stream to bind (null removes the current stream)
+     * @return the previously bound stream
+     */
+    public static RandomStream bindStream(RandomStream stream) {
+        RandomStream prev = threadStream.get();
+        if (stream == null)
+            threadStream.remove();
+        else
+            threadStream.set(stream);
+
+        return prev;
     }
 
 
@@ -108,16 +144,14 @@ public class RandomHelper {
      * Activates the first generator
      */
     public static void usePrimaryGenerator() {
-        generator0 = generator1;
-        normalGenerator0 = normalGenerator1;
+        getGenerator().usePrimaryGenerator();
     }
 
     /**
      * Activates the second generator
      */
     public static void useSecondaryGenerator() {
-        generator0 = generator2;
-        normalGenerator0 = normalGenerator2;
+        getGenerator().useSecondaryGenerator();
     }
 
 
@@ -127,7 +161,7 @@ public class RandomHelper {
      * @return
      */
     public static long getSeed() {
-        return rngSeed;
+        return getGenerator().getSeed();
     }
 
     /**
@@ -138,13 +172,18 @@ public class RandomHelper {
      * @return a random number
      */
     public static double nextDoubleFromTo(double a, double b) {
-        if (synchronizedFlag) {
-            synchronized (RandomHelper.class) {
-                return generator0.nextDouble() * (b - a) + a;
+        RandomGenerator g = getGenerator();
+        if (g.synchronizedFlag) {
+            RandomStream stream = threadStream.get();
+            if (stream != null)
+                return stream.random(a, b);
+
+            synchronized (g) {
+                return g.generator0.nextDouble() * (b - a) + a;
             }
         }
 
-        return generator0.nextDouble() * (b - a) + a;
+        return g.generator0.nextDouble() * (b - a) + a;
     }
 
 
@@ -155,13 +194,18 @@ public class RandomHelper {
      * @return
      */
     public static double random(double number) {
-        if (synchronizedFlag) {
-            synchronized (RandomHelper.class) {
-                return generator0.nextDouble() * number;
+        RandomGenerator g = getGenerator();
+        if (g.synchronizedFlag) {
+            RandomStream stream = threadStream.get();
+            if (stream != null)
+                return stream.random(number);
+
+            synchronized (g) {
+                return g.generator0.nextDouble() * number;
             }
         }
 
-        return generator0.nextDouble() * number;
+        return g.generator0.nextDouble() * number;
     }
 
 
@@ -171,13 +215,18 @@ public class RandomHelper {
      * @return
      */
     public static double random() {
-        if (synchronizedFlag) {
-            synchronized (RandomHelper.class) {
-                return generator0.nextDouble();
+        RandomGenerator g = getGenerator();
+        if (g.synchronizedFlag) {
+            RandomStream stream = threadStream.get();
+            if (stream != null)
+                return stream.random();
+
+            synchronized (g) {
+                return g.generator0.nextDouble();
             }
         }
 
-        return generator0.nextDouble();
+        return g.generator0.nextDouble();
     }
 
 
@@ -189,13 +238,18 @@ public class RandomHelper {
      * @return a random number
      */
     public static double random(double a, double b) {
-        if (synchronizedFlag) {
-            synchronized (RandomHelper.class) {
-                return generator0.nextDouble() * (b - a) + a;
+        RandomGenerator g = getGenerator();
+        if (g.synchronizedFlag) {
+            RandomStream stream = threadStream.get();
+            if (stream != null)
+                return stream.random(a, b);
+
+            synchronized (g) {
+                return g.generator0.nextDouble() * (b - a) + a;
             }
         }
 
-        return generator0.nextDouble() * (b - a) + a;
+        return g.generator0.nextDouble() * (b - a) + a;
     }
 
 
@@ -205,13 +259,18 @@ public class RandomHelper {
      * @return
      */
     public static double normal() {
-        if (synchronizedFlag) {
-            synchronized (RandomHelper.class) {
-                return normalGenerator0.nextDouble();
+        RandomGenerator g = getGenerator();
+        if (g.synchronizedFlag) {
+            RandomStream stream = threadStream.get();
+            if (stream != null)
+                return stream.normal();
+
+            synchronized (g) {
+                return g.normalGenerator0.nextDouble();
             }
         }
 
-        return normalGenerator0.nextDouble();
+        return g.normalGenerator0.nextDouble();
     }
 
 
@@ -220,15 +279,17 @@ public class RandomHelper {
      * mean and standard deviation
      */
     public static double normal(double mean, double std) {
-        if (synchronizedFlag) {
-            synchronized (RandomHelper.class) {
-                return normalGenerator0.nextDouble(mean, std);
+        RandomGenerator g = getGenerator();
+        if (g.synchronizedFlag) {
+            RandomStream stream = threadStream.get();
+            if (stream != null)
+                return stream.normal(mean, std);
+
+            synchronized (g) {
+                return g.normalGenerator0.nextDouble(mean, std);
             }
         }
 
-        return normalGenerator0.nextDouble(mean, std);
+        return g.normalGenerator0.nextDouble(mean, std);
     }
 }
-
-
-
@@ -0,0 +1,101 @@
+package org.sparkabm.math;
+
+import cern.jet.random.Normal;
+import cern.jet.random.engine.MersenneTwister;
+import cern.jet.random.engine.RandomEngine;
+
+/**
+ * An independent stream of random numbers.
+ * Streams are not thread safe: each stream should be used
+ * by one thread at a time.
+ *
+ * @see org.sparkabm.math.RandomHelper#getStream(int)
+ */
+public final class RandomStream {
+    // The random number generator
+    private final RandomEngine generator;
+    // The generator for normally distributed numbers
+    private final Normal normalGenerator;
+
+
+    /**
+     * Creates a stream with the given seed
+     *
+     * @param seed
+     */
+    public RandomStream(int seed) {
+        generator = new MersenneTwister(seed);
+        normalGenerator = new Normal(0.0, 1.0, generator);
+    }
+
+
+    /**
+     * Derives a seed of a stream with the given index from the base seed.
+     * Seeds of different streams are well separated even for
+     * consecutive indices (SplitMix64 mixing function is used).
+     *
+     * @param seed
+     * @param index
+     * @return
+     */
+    public static int deriveSeed(long seed, long index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+
+        return (int) (z ^ (z >>> 32));
+    }
+
+
+    /**
+     * Returns a uniformly distributed number in the interval (0, 1)
+     *
+     * @return
+     */
+    public double random() {
+        return generator.nextDouble();
+    }
+
+
+    /**
+     * Returns a uniformly distributed random number in the interval (0, number)
+     *
+     * @param number
+     * @return
+     */
+    public double random(double number) {
+        return generator.nextDouble() * number;
+    }
+
+
+    /**
+     * Returns a uniformly distributed random number from the interval (a,b)
+     *
+     * @param a a left end of an interval
+     * @param b a right end of an interval
+     * @return a random number
+     */
+    public double random(double a, double b) {
+        return generator.nextDouble() * (b - a) + a;
+    }
+
+
+    /**
+     * Returns a normally distributed random number with the parameters (0,1)
+     *
+     * @return
+     */
+    public double normal() {
+        return normalGenerator.nextDouble();
+    }
+
+
+    /**
+     * Returns a normally distributed random number with the given
+     * mean and standard deviation
+     */
+    public double normal(double mean, double std) {
+        return normalGenerator.nextDouble(mean, std);
+    }
+}
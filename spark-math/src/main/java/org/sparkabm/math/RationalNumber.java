@@ -158,6 +158,26 @@ public class RationalNumber extends Number implements Comparable<RationalNumber>
         denominator /= q;
     }
 
+    /**
+     * Returns the numerator
+     *
+     * @return
+     */
+    public long getNumerator() {
+        return numerator;
+    }
+
+
+    /**
+     * Returns the denominator (it is always positive)
+     *
+     * @return
+     */
+    public long getDenominator() {
+        return denominator;
+    }
+
+
     /* Implementation of Number class */
     @Override
     public double doubleValue() {
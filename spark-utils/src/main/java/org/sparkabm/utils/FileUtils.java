@@ -24,11 +24,57 @@ import org.sparkabm.math.Vector;
 public class FileUtils {
     private static final Logger logger = Logger.getLogger(FileUtils.class.getName());
 
-    /* Collection of all file writers */
-    private static final Map<String, PrintStream> writers = new HashMap<>();
+    /**
+     * Open files and the base directory of a simulation
+     */
+    private static final class Scope {
+        /* Collection of all file writers */
+        final Map<String, PrintStream> writers = new HashMap<>();
+
+        /* Base directory for file operations */
+        File baseDir = null;
+    }
+
+    /* The scope which is used when no scope is bound to a thread */
+    private static final Scope globalScope = new Scope();
+
+    /* The scope of the current thread */
+    private static final ThreadLocal<Scope> threadScope = new ThreadLocal<>();
+
+
+    /**
+     * Returns the scope of the current thread
+     */
+    private static Scope scope() {
+        Scope scope = threadScope.get();
+        return scope != null ? scope : globalScope;
+    }
 
-    /* Base directory for file operations */
-    private static File baseDir = null;
+
+    /**
+     * Begins a new scope for file operations in the current thread.
+     * Files opened in the scope are not visible in other threads and
+     * relative file names are resolved against the given directory.
+     * Used for running several simulations concurrently.
+     */
+    public static void beginThreadScope(File baseDir) {
+        Scope scope = new Scope();
+        scope.baseDir = baseDir;
+        threadScope.set(scope);
+    }
+
+
+    /**
+     * Closes all files of the current thread scope and
+     * returns to the global scope
+     */
+    public static void endThreadScope() {
+        if (threadScope.get() == null)
+            return;
+
+        closeAllOpenFiles();
+        threadScope.remove();
+    }
 
 
     /**
@@ -41,7 +87,7 @@ public class FileUtils {
         }
 
         logger.info("New base directory: " + baseDir);
-        FileUtils.baseDir = baseDir;
+        scope().baseDir = baseDir;
     }
 
 
@@ -50,6 +96,7 @@ public class FileUtils {
      */
     public static File getFile(String fname) {
         final File file = new File(fname);
+        final File baseDir = scope().baseDir;
         if (baseDir != null) {
             if (!file.isAbsolute()) {
                 return new File(baseDir, fname);
@@ -252,6 +299,7 @@ public class FileUtils {
      * @return null if there is an error
      */
     public static PrintStream getFileWriter(String name) {
+        Map<String, PrintStream> writers = scope().writers;
         PrintStream writer = writers.get(name);
         if (writer != null) return writer;
 
@@ -297,6 +345,7 @@ public class FileUtils {
         int counter = 2;
 
         File output;
+        File baseDir = scope().baseDir;
         if (baseDir != null) {
             output = baseDir;
         } else {
@@ -328,6 +377,7 @@ public class FileUtils {
      * Closes the file associated with the given name
      */
     public static void closeFile(String name) {
+        Map<String, PrintStream> writers = scope().writers;
         PrintStream writer = writers.get(name);
 
         if (writer != null) {
@@ -341,6 +391,7 @@ public class FileUtils {
      * Closes all open files
      */
     public static void closeAllOpenFiles() {
+        Map<String, PrintStream> writers = scope().writers;
         for (PrintStream writer : writers.values()) {
             writer.close();
         }